@@ -0,0 +1,47 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import apijson.JSON;
+import apijson.RequestMethod;
+import apijson.orm.AbstractFunctionParser;
+
+/**远程函数，需要在 {@link AbstractFunctionParser#FUNCTION_MAP} 中配置后才能调用
+ * @author Lemon
+ */
+public class BenchmarkFunctionParser extends AbstractFunctionParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	public BenchmarkFunctionParser() {
+		super();
+	}
+	public BenchmarkFunctionParser(RequestMethod method, String tag, int version, LinkedHashMap<String, Object> request) {
+		super(method, tag, version, request);
+	}
+
+	/**
+	 * @param current
+	 * @param i0
+	 * @param i1
+	 * @return i0 + i1
+	 */
+	public Object plus(LinkedHashMap<String, Object> current, String i0, String i1) {
+		return JSON.getLongValue(current, i0) + JSON.getLongValue(current, i1);
+	}
+
+	/**
+	 * @param current
+	 * @param key
+	 * @return key 对应的值是否为空
+	 */
+	public Object isEmpty(LinkedHashMap<String, Object> current, String key) {
+		Object value = current.get(key);
+		return value == null || (value instanceof String && ((String) value).isEmpty());
+	}
+
+}
@@ -0,0 +1,35 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import apijson.RequestMethod;
+import apijson.orm.AbstractObjectParser;
+import apijson.orm.Join;
+import apijson.orm.SQLConfig;
+
+/**
+ * @author Lemon
+ */
+public class BenchmarkObjectParser extends AbstractObjectParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	public BenchmarkObjectParser(LinkedHashMap<String, Object> request, String parentPath
+			, SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> arrayConfig
+			, boolean isSubquery, boolean isTable, boolean isArrayMainTable) throws Exception {
+		super(request, parentPath, arrayConfig, isSubquery, isTable, isArrayMainTable);
+	}
+
+	@Override
+	public SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> newSQLConfig(RequestMethod method
+			, String table, String alias, LinkedHashMap<String, Object> request
+			, List<Join<Long, LinkedHashMap<String, Object>, ArrayList<Object>>> joinList, boolean isProcedure) throws Exception {
+		return BenchmarkSQLConfig.newSQLConfig(method, table, alias, request, joinList, isProcedure);
+	}
+
+}
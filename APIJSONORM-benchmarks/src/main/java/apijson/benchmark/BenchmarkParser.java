@@ -0,0 +1,90 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import apijson.RequestMethod;
+import apijson.orm.AbstractParser;
+import apijson.orm.FunctionParser;
+import apijson.orm.ObjectParser;
+import apijson.orm.SQLConfig;
+import apijson.orm.SQLExecutor;
+import apijson.orm.Verifier;
+
+/**压测用的 Parser，全部组件都在进程内，不依赖数据库
+ * @author Lemon
+ */
+public class BenchmarkParser extends AbstractParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	public BenchmarkParser() {
+		super();
+	}
+	public BenchmarkParser(RequestMethod method) {
+		super(method);
+	}
+	public BenchmarkParser(RequestMethod method, boolean needVerify) {
+		super(method, needVerify);
+	}
+
+	@Override
+	public BenchmarkParser createParser() {
+		return new BenchmarkParser();
+	}
+
+	@Override
+	public BenchmarkFunctionParser createFunctionParser() {
+		return new BenchmarkFunctionParser();
+	}
+
+	@Override
+	public Verifier<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createVerifier() {
+		return new BenchmarkVerifier();
+	}
+
+	@Override
+	public SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createSQLConfig() {
+		return new BenchmarkSQLConfig();
+	}
+
+	@Override
+	public SQLExecutor<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createSQLExecutor() {
+		return new BenchmarkSQLExecutor();
+	}
+
+	@Override
+	public ObjectParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createObjectParser(
+			LinkedHashMap<String, Object> request, String parentPath
+			, SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> arrayConfig
+			, boolean isSubquery, boolean isTable, boolean isArrayMainTable) throws Exception {
+		return new BenchmarkObjectParser(request, parentPath, arrayConfig, isSubquery, isTable, isArrayMainTable)
+				.setMethod(getMethod()).setParser(this);
+	}
+
+
+	private FunctionParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> functionParser;
+
+	@Override
+	public Object onFunctionParse(String key, String function, String parentPath, String currentName
+			, LinkedHashMap<String, Object> currentObject, boolean containRaw) throws Exception {
+		if (functionParser == null) {
+			functionParser = createFunctionParser();
+			functionParser.setParser(this);
+			functionParser.setMethod(getMethod());
+			functionParser.setTag(getTag());
+			functionParser.setVersion(getVersion());
+			functionParser.setRequest(requestObject);
+		}
+
+		functionParser.setKey(key);
+		functionParser.setParentPath(parentPath);
+		functionParser.setCurrentName(currentName);
+		functionParser.setCurrentObject(currentObject);
+		return functionParser.invoke(function, currentObject, containRaw);
+	}
+
+}
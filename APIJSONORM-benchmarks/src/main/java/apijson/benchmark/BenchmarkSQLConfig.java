@@ -0,0 +1,74 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import apijson.RequestMethod;
+import apijson.orm.AbstractSQLConfig;
+import apijson.orm.Join;
+import apijson.orm.SQLConfig;
+
+/**默认连接 {@link StubDriver} 的 SQLConfig
+ * @author Lemon
+ */
+public class BenchmarkSQLConfig extends AbstractSQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	/**
+	 * 连接的数据库，测试中可改为嵌入式数据库，例如 jdbc:h2:mem:test;MODE=MySQL
+	 */
+	public static String DB_URI = StubDriver.URL_PREFIX + "sys";
+	public static String DB_ACCOUNT = "root";
+	public static String DB_PASSWORD = "apijson";
+
+	public static final Callback<Long, LinkedHashMap<String, Object>, ArrayList<Object>> CALLBACK = new SimpleCallback<Long, LinkedHashMap<String, Object>, ArrayList<Object>>() {
+
+		@Override
+		public SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> getSQLConfig(
+				RequestMethod method, String database, String schema, String datasource, String table) {
+			return new BenchmarkSQLConfig(method, table);
+		}
+	};
+
+	public BenchmarkSQLConfig() {
+		this(RequestMethod.GET);
+	}
+	public BenchmarkSQLConfig(RequestMethod method) {
+		super(method);
+	}
+	public BenchmarkSQLConfig(RequestMethod method, String table) {
+		super(method, table);
+	}
+
+	@Override
+	public String gainDBVersion() {
+		return "8.0.11";
+	}
+
+	@Override
+	public String gainDBUri() {
+		return DB_URI;
+	}
+
+	@Override
+	public String gainDBAccount() {
+		return DB_ACCOUNT;
+	}
+
+	@Override
+	public String gainDBPassword() {
+		return DB_PASSWORD;
+	}
+
+	public static SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> newSQLConfig(
+			RequestMethod method, String table, String alias, LinkedHashMap<String, Object> request
+			, List<Join<Long, LinkedHashMap<String, Object>, ArrayList<Object>>> joinList, boolean isProcedure) throws Exception {
+		return newSQLConfig(method, table, alias, request, joinList, isProcedure, CALLBACK);
+	}
+
+}
@@ -0,0 +1,22 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import apijson.orm.AbstractSQLExecutor;
+
+/**通过 DriverManager 连接 {@link StubDriver}
+ * @author Lemon
+ */
+public class BenchmarkSQLExecutor extends AbstractSQLExecutor<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	static {
+		StubDriver.register();
+	}
+
+}
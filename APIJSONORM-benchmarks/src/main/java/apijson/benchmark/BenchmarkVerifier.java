@@ -0,0 +1,41 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import apijson.orm.AbstractParser;
+import apijson.orm.AbstractVerifier;
+import apijson.orm.Parser;
+
+/**
+ * @author Lemon
+ */
+public class BenchmarkVerifier extends AbstractVerifier<Long, LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	private Parser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> parser;
+
+	@Override
+	public Parser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createParser() {
+		return new BenchmarkParser();
+	}
+
+	@Override
+	public Parser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> getParser() {
+		if (parser == null) {
+			parser = createParser();
+		}
+		return parser;
+	}
+
+	@Override
+	public BenchmarkVerifier setParser(AbstractParser<Long, LinkedHashMap<String, Object>, ArrayList<Object>> parser) {
+		this.parser = parser;
+		return this;
+	}
+
+}
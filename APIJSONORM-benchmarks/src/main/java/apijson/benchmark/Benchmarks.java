@@ -0,0 +1,99 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import apijson.JSON;
+import apijson.Log;
+import apijson.orm.AbstractFunctionParser;
+
+/**压测的公共配置和请求样例
+ * @author Lemon
+ */
+public class Benchmarks {
+
+	/**
+	 * 单个对象
+	 */
+	public static final String REQUEST_SINGLE = "{\"User\":{\"id\":82001,\"@column\":\"id,name,date\"}}";
+	/**
+	 * 数组，副表按主表的 userId 逐条查询
+	 */
+	public static final String REQUEST_ARRAY = "{\"[]\":{\"count\":10,"
+			+ "\"Moment\":{\"userId{}\":[82001,82002,82003],\"@order\":\"date-\"},"
+			+ "\"User\":{\"id@\":\"/Moment/userId\",\"@column\":\"id,name\"}}}";
+	/**
+	 * 数组，主副表 INNER JOIN
+	 */
+	public static final String REQUEST_JOIN = "{\"[]\":{\"count\":10,\"join\":\"&/User/id@\","
+			+ "\"Moment\":{\"@order\":\"date-\"},"
+			+ "\"User\":{\"id@\":\"/Moment/userId\",\"@column\":\"id,name\"}}}";
+	/**
+	 * 数组，条件为子查询
+	 */
+	public static final String REQUEST_SUBQUERY = "{\"[]\":{\"count\":10,"
+			+ "\"User\":{\"id{}@\":{\"from\":\"Moment\",\"Moment\":{\"@column\":\"userId\",\"content$\":\"%APIJSON%\"}}}}}";
+	/**
+	 * 分页，@combine 组合条件，并查总数
+	 */
+	public static final String REQUEST_COMBINE = "{\"[]\":{\"count\":10,\"page\":1,\"query\":2,"
+			+ "\"User\":{\"name~\":\"a\",\"id>\":80000,\"@combine\":\"name~ | id>\"}},"
+			+ "\"total@\":\"/[]/total\"}";
+
+	/**
+	 * @param type single, array, join, subquery, combine
+	 * @return
+	 */
+	public static String getRequest(String type) {
+		switch (type) {
+			case "single":
+				return REQUEST_SINGLE;
+			case "array":
+				return REQUEST_ARRAY;
+			case "join":
+				return REQUEST_JOIN;
+			case "subquery":
+				return REQUEST_SUBQUERY;
+			case "combine":
+				return REQUEST_COMBINE;
+			default:
+				throw new IllegalArgumentException("type = " + type + " 不合法！");
+		}
+	}
+
+	private static boolean inited;
+
+	/**设置 JSON 解析器，关闭日志，注册 {@link StubDriver} 和远程函数，每个压测的 @Setup 都先调用
+	 */
+	public static synchronized void init() {
+		if (inited) {
+			return;
+		}
+		inited = true;
+
+		if (JSON.DEFAULT_JSON_PARSER == null) {
+			JSON.DEFAULT_JSON_PARSER = new SimpleJSONParser();
+		}
+		Log.DEBUG = false;
+		StubDriver.register();
+
+		Map<String, Object> plus = new LinkedHashMap<>();
+		plus.put("name", "plus");
+		plus.put("language", "Java");
+		plus.put("returnType", "Object");
+		AbstractFunctionParser.FUNCTION_MAP.put("plus", plus);
+
+		Map<String, Object> isEmpty = new LinkedHashMap<>();
+		isEmpty.put("name", "isEmpty");
+		isEmpty.put("language", "Java");
+		isEmpty.put("returnType", "Object");
+		isEmpty.put(AbstractFunctionParser.KEY_DETERMINISTIC, true);
+		AbstractFunctionParser.FUNCTION_MAP.put("isEmpty", isEmpty);
+	}
+
+}
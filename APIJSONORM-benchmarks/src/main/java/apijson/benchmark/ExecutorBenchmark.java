@@ -0,0 +1,84 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.JSON;
+import apijson.RequestMethod;
+import apijson.orm.AbstractSQLExecutor;
+import apijson.orm.ConnectionPool;
+import apijson.orm.SQLConfig;
+
+/**AbstractSQLExecutor 把 StubDriver 的 ResultSet 映射为 Map，用连接池排除建立连接的开销
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int rows;
+
+	private SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config;
+	private ConnectionPool pool;
+	private ConnectionPool oldPool;
+
+	@Setup
+	public void setup() throws Exception {
+		Benchmarks.init();
+
+		oldPool = AbstractSQLExecutor.CONNECTION_POOL;
+		pool = new ConnectionPool();
+		AbstractSQLExecutor.CONNECTION_POOL = pool;
+
+		config = BenchmarkSQLConfig.newSQLConfig(RequestMethod.GET, "Moment", null
+				, JSON.parseObject("{\"userId{}\":[82001,82002,82003],\"@order\":\"date-\"}"), null, false);
+		config.setCount(rows);
+	}
+
+	@TearDown
+	public void tearDown() {
+		AbstractSQLExecutor.CONNECTION_POOL = oldPool;
+		pool.close();
+	}
+
+	/**
+	 * @return 第一行，全部行在 {@link AbstractSQLExecutor#KEY_RAW_LIST} 中。同一个 executor 内相同 SQL 会命中缓存，所以每次都新建
+	 * @throws Exception
+	 */
+	@Benchmark
+	public Map<String, Object> execute() throws Exception {
+		BenchmarkSQLExecutor executor = new BenchmarkSQLExecutor();
+		try {
+			return executor.execute(config, false);
+		}
+		finally {
+			executor.close();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.JSON;
+import apijson.JSONResponse;
+import apijson.JSONWriter;
+import apijson.RequestMethod;
+
+/**格式化响应的 key：JSONResponse.format 深拷贝后再序列化，和 JSONWriter 边写边格式化对比
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+	@Param({ "10", "100" })
+	public int count;
+
+	private LinkedHashMap<String, Object> response;
+
+	@Setup
+	public void setup() {
+		Benchmarks.init();
+
+		String request = "{\"Moment[]\":{\"count\":" + count + ",\"Moment\":{\"@order\":\"date-\"}}"
+				+ ",\"[]\":{\"count\":" + count + ",\"join\":\"&/User/id@\",\"Moment\":{},\"User\":{\"id@\":\"/Moment/userId\",\"@column\":\"id,name\"}}}";
+		response = new BenchmarkParser(RequestMethod.GET, false).parseResponse(request);
+	}
+
+	@Benchmark
+	public Map<String, Object> format() {
+		return JSONResponse.format(response);
+	}
+
+	@Benchmark
+	public String formatAndToJSONString() {
+		return JSON.toJSONString(JSONResponse.format(response));
+	}
+
+	@Benchmark
+	public String writeFormatted() throws IOException {
+		StringWriter sw = new StringWriter();
+		new JSONWriter(sw).write(response, true);
+		return sw.toString();
+	}
+
+}
@@ -0,0 +1,57 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.JSON;
+import apijson.RequestMethod;
+
+/**远程函数调用：解析 function(key0,key1)、校验 Function 表配置、反射调用；deterministic 的函数同一请求内命中 memo
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunctionBenchmark {
+
+	private BenchmarkFunctionParser parser;
+	private LinkedHashMap<String, Object> current;
+
+	@Setup
+	public void setup() {
+		Benchmarks.init();
+
+		current = JSON.parseObject("{\"id\":10001,\"userId\":82001,\"name\":\"\"}");
+		parser = new BenchmarkFunctionParser(RequestMethod.GET, null, 0, new LinkedHashMap<>());
+	}
+
+	@Benchmark
+	public Object invoke() throws Exception {
+		return parser.invoke("plus(id,userId)", current);
+	}
+
+	@Benchmark
+	public Object invokeDeterministic() throws Exception {
+		return parser.invoke("isEmpty(name)", current);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.orm.IdGenerator;
+
+/**多个线程同时向同一个 IdGenerator 的同一张表申请 id，对比单线程和 8 线程竞争时的吞吐量
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+	@Param({ "TimeSequence", "Snowflake", "Segment" })
+	public String type;
+
+	private IdGenerator generator;
+
+	@Setup
+	public void setup() {
+		switch (type) {
+			case "TimeSequence":
+				generator = new IdGenerator.TimeSequence();
+				break;
+			case "Snowflake":
+				generator = new IdGenerator.Snowflake(1, 1);
+				break;
+			case "Segment":
+				// 内存中分配号段，排除数据库的耗时，只测号段内分配和换号段时加锁的开销
+				AtomicLong maxId = new AtomicLong();
+				generator = new IdGenerator.Segment((database, schema, datasource, table, step) -> maxId.getAndAdd(step));
+				break;
+			default:
+				throw new IllegalArgumentException("type = " + type + " 不合法！");
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public long nextId() {
+		return generator.nextId(null, null, null, "Moment");
+	}
+
+	@Benchmark
+	@Threads(8)
+	public long nextIdContended() {
+		return generator.nextId(null, null, null, "Moment");
+	}
+
+}
@@ -0,0 +1,121 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.RequestMethod;
+import apijson.orm.AbstractParser;
+import apijson.orm.AbstractSQLExecutor;
+import apijson.orm.ConnectionPool;
+import apijson.orm.Join;
+import apijson.orm.SQLConfig;
+import apijson.orm.SQLExecutor;
+
+/**AbstractSQLExecutor 把主表 JOIN 3 张副表的 ResultSet 映射为 Map，包括按 ON 条件的值给副表数据去重并生成 viceSql
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinBenchmark {
+
+	/**
+	 * User 按主键 JOIN，全部行只有 10 组不同的 ON 条件值；Comment, Praise 不按主键 JOIN，每行都单独存放
+	 */
+	public static final String REQUEST = "{\"[]\":{\"count\":%d,\"join\":\"&/User/id@,&/Comment/momentId@,&/Praise/momentId@\","
+			+ "\"Moment\":{\"@order\":\"date-\"},"
+			+ "\"User\":{\"id@\":\"/Moment/userId\",\"@column\":\"id,name\"},"
+			+ "\"Comment\":{\"momentId@\":\"/Moment/id\",\"@column\":\"id,content\"},"
+			+ "\"Praise\":{\"momentId@\":\"/Moment/id\",\"@column\":\"id,userId\"}}}";
+
+	@Param({ "10", "1000" })
+	public int rows;
+
+	private SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config;
+	private ConnectionPool pool;
+	private ConnectionPool oldPool;
+	private int oldMaxQueryCount;
+
+	@Setup
+	public void setup() throws Exception {
+		Benchmarks.init();
+
+		oldPool = AbstractSQLExecutor.CONNECTION_POOL;
+		pool = new ConnectionPool();
+		AbstractSQLExecutor.CONNECTION_POOL = pool;
+
+		oldMaxQueryCount = AbstractParser.MAX_QUERY_COUNT;
+		AbstractParser.MAX_QUERY_COUNT = Math.max(oldMaxQueryCount, rows);
+
+		// 走一遍完整的解析，拿到主表带 joinList 的 SQLConfig
+		List<SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>>> configs = new ArrayList<>();
+		new BenchmarkParser(RequestMethod.GET, false) {
+			@Override
+			public SQLExecutor<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createSQLExecutor() {
+				return new BenchmarkSQLExecutor() {
+					@Override
+					public LinkedHashMap<String, Object> execute(SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config
+							, boolean unknownType) throws Exception {
+						List<Join<Long, LinkedHashMap<String, Object>, ArrayList<Object>>> joinList = config.getJoinList();
+						if (configs.isEmpty() && joinList != null && joinList.size() == 3) {
+							configs.add(config);
+						}
+						return super.execute(config, unknownType);
+					}
+				};
+			}
+		}.parseResponse(String.format(REQUEST, rows));
+
+		if (configs.isEmpty()) {
+			throw new IllegalStateException("没有执行主表 JOIN 3 张副表的 SQL！");
+		}
+		config = configs.get(0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		AbstractParser.MAX_QUERY_COUNT = oldMaxQueryCount;
+		AbstractSQLExecutor.CONNECTION_POOL = oldPool;
+		pool.close();
+	}
+
+	/**
+	 * @return 第一行，全部行在 {@link AbstractSQLExecutor#KEY_RAW_LIST} 中。同一个 executor 内相同 SQL 会命中缓存，所以每次都新建
+	 * @throws Exception
+	 */
+	@Benchmark
+	public Map<String, Object> execute() throws Exception {
+		BenchmarkSQLExecutor executor = new BenchmarkSQLExecutor();
+		try {
+			return executor.execute(config, false);
+		}
+		finally {
+			executor.close();
+		}
+	}
+
+}
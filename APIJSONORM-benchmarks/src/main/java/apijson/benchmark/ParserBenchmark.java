@@ -0,0 +1,52 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.RequestMethod;
+
+/**AbstractParser.parseResponse 全流程：解析请求 JSON、生成 SQL、执行(StubDriver)、组装并格式化响应
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({ "single", "array", "join", "subquery", "combine" })
+	public String type;
+
+	private String request;
+
+	@Setup
+	public void setup() {
+		Benchmarks.init();
+		request = Benchmarks.getRequest(type);
+	}
+
+	@Benchmark
+	public Map<String, Object> parseResponse() {
+		return new BenchmarkParser(RequestMethod.GET, false).parseResponse(request);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.JSON;
+import apijson.RequestMethod;
+import apijson.orm.SQLConfig;
+
+/**AbstractSQLConfig.newSQLConfig + gainSQL，JOIN 和子查询依赖 ObjectParser 解析，见 {@link ParserBenchmark}
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQLConfigBenchmark {
+
+	@Param({ "single", "combine", "function", "group" })
+	public String type;
+
+	@Param({ "true", "false" })
+	public boolean prepared;
+
+	private String table;
+	private LinkedHashMap<String, Object> request;
+	private SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config;
+
+	@Setup
+	public void setup() throws Exception {
+		Benchmarks.init();
+
+		String json;
+		switch (type) {
+			case "single":
+				table = "User";
+				json = "{\"id\":82001,\"@column\":\"id,name,date\"}";
+				break;
+			case "combine":
+				table = "User";
+				json = "{\"name~\":\"a\",\"id>\":80000,\"date<\":\"2024-01-01\",\"@combine\":\"(name~ | id>) & date<\""
+						+ ",\"@column\":\"id,name\",\"@order\":\"date-,id+\"}";
+				break;
+			case "function":
+				table = "Moment";
+				json = "{\"userId{}\":[82001,82002,82003],\"content$\":\"%APIJSON%\",\"id&{}\":\">10000,<=90000\""
+						+ ",\"@column\":\"id,userId,date;length(content):length\",\"@order\":\"date-\"}";
+				break;
+			case "group":
+				table = "Moment";
+				json = "{\"userId{}\":[82001,82002,82003],\"@column\":\"userId;count(*):count;max(date):date\""
+						+ ",\"@group\":\"userId\",\"@having\":\"count(*)>1\",\"@order\":\"count-\"}";
+				break;
+			default:
+				throw new IllegalArgumentException("type = " + type + " 不合法！");
+		}
+		request = JSON.parseObject(json);
+
+		config = newSQLConfig();
+	}
+
+	private SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> newSQLConfig() throws Exception {
+		// newSQLConfig 会移除和重新放入 request 中的 key，每次都复制一份
+		SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config = BenchmarkSQLConfig.newSQLConfig(
+				RequestMethod.GET, table, null, new LinkedHashMap<>(request), null, false);
+		config.setCount(10);
+		config.setPrepared(prepared);
+		return config;
+	}
+
+	/**
+	 * @return 新建 SQLConfig 并生成 SQL
+	 * @throws Exception
+	 */
+	@Benchmark
+	public String newSQLConfigAndGainSQL() throws Exception {
+		return newSQLConfig().gainSQL(prepared);
+	}
+
+	/**
+	 * @return 同一个 SQLConfig 重复生成 SQL，命中 AbstractSQLConfig.ENABLE_SQL_CACHE 的缓存
+	 * @throws Exception
+	 */
+	@Benchmark
+	public String gainSQL() throws Exception {
+		return config.gainSQL(prepared);
+	}
+
+}
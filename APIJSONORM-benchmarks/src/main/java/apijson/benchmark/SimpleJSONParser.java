@@ -0,0 +1,332 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import apijson.JSONParser;
+import apijson.JSONWriter;
+
+/**不依赖第三方库的最简 JSON 解析器，只为了压测能离线运行，不要用在生产环境。
+ * 解析结果为 LinkedHashMap, ArrayList, String, Boolean, Integer, Long, BigDecimal；
+ * 序列化用 {@link JSONWriter}，日期等其它类型按 toString 输出为字符串
+ * @author Lemon
+ */
+public class SimpleJSONParser implements JSONParser<LinkedHashMap<String, Object>, ArrayList<Object>> {
+
+	@Override
+	public LinkedHashMap<String, Object> createJSONObject() {
+		return new LinkedHashMap<>();
+	}
+
+	@Override
+	public ArrayList<Object> createJSONArray() {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public Object parse(Object json) {
+		if (json == null) {
+			return null;
+		}
+		if (json instanceof String == false) {
+			return json;
+		}
+		return new Reader((String) json).read();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public LinkedHashMap<String, Object> parseObject(Object json) {
+		Object obj = parse(json);
+		if (obj == null || obj instanceof LinkedHashMap) {
+			return (LinkedHashMap<String, Object>) obj;
+		}
+		if (obj instanceof Map) {
+			return new LinkedHashMap<>((Map<String, Object>) obj);
+		}
+		throw new IllegalArgumentException("不是 JSONObject：" + json);
+	}
+
+	@Override
+	public <T> T parseObject(Object json, Class<T> clazz) {
+		Object obj = parse(json);
+		if (obj == null || clazz.isInstance(obj)) {
+			return clazz.cast(obj);
+		}
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " 不支持转为 " + clazz.getName() + " ！");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public ArrayList<Object> parseArray(Object json) {
+		Object obj = parse(json);
+		if (obj == null || obj instanceof ArrayList) {
+			return (ArrayList<Object>) obj;
+		}
+		if (obj instanceof Collection) {
+			return new ArrayList<>((Collection<Object>) obj);
+		}
+		throw new IllegalArgumentException("不是 JSONArray：" + json);
+	}
+
+	@Override
+	public <T> List<T> parseArray(Object json, Class<T> clazz) {
+		List<Object> arr = parseArray(json);
+		if (arr == null) {
+			return null;
+		}
+
+		List<T> list = new ArrayList<>(arr.size());
+		for (Object item : arr) {
+			if (item != null && clazz.isInstance(item) == false) {
+				throw new UnsupportedOperationException(getClass().getSimpleName() + " 不支持转为 " + clazz.getName() + " ！");
+			}
+			list.add(clazz.cast(item));
+		}
+		return list;
+	}
+
+	@Override
+	public String toJSONString(Object obj, boolean format) {
+		if (obj == null) {
+			return null;
+		}
+
+		StringWriter sw = new StringWriter();
+		try {
+			boolean known = obj instanceof Map || obj instanceof Collection || obj.getClass().isArray()
+					|| obj instanceof String || obj instanceof Number || obj instanceof Boolean || obj instanceof Character;
+			// 其它类型交给 JSONWriter 会回调 JSON.toJSONString 导致死循环
+			new JSONWriter(sw).write(known ? obj : obj.toString(), false);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return sw.toString();
+	}
+
+
+	private static class Reader {
+		private final String s;
+		private int i;
+
+		Reader(String s) {
+			this.s = s;
+		}
+
+		Object read() {
+			Object value = readValue();
+			skipSpace();
+			if (i < s.length()) {
+				throw error("多余的字符");
+			}
+			return value;
+		}
+
+		private Object readValue() {
+			skipSpace();
+			if (i >= s.length()) {
+				throw error("缺少值");
+			}
+
+			char c = s.charAt(i);
+			switch (c) {
+				case '{':
+					return readObject();
+				case '[':
+					return readArray();
+				case '"':
+					return readString();
+				case 't':
+					expect("true");
+					return Boolean.TRUE;
+				case 'f':
+					expect("false");
+					return Boolean.FALSE;
+				case 'n':
+					expect("null");
+					return null;
+				default:
+					return readNumber();
+			}
+		}
+
+		private LinkedHashMap<String, Object> readObject() {
+			LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+			i ++;
+			skipSpace();
+			if (peek() == '}') {
+				i ++;
+				return map;
+			}
+
+			while (true) {
+				skipSpace();
+				if (peek() != '"') {
+					throw error("key 必须是字符串");
+				}
+				String key = readString();
+				skipSpace();
+				if (peek() != ':') {
+					throw error("缺少 :");
+				}
+				i ++;
+				map.put(key, readValue());
+
+				skipSpace();
+				char c = peek();
+				i ++;
+				if (c == '}') {
+					return map;
+				}
+				if (c != ',') {
+					throw error("缺少 , 或 }");
+				}
+			}
+		}
+
+		private ArrayList<Object> readArray() {
+			ArrayList<Object> list = new ArrayList<>();
+			i ++;
+			skipSpace();
+			if (peek() == ']') {
+				i ++;
+				return list;
+			}
+
+			while (true) {
+				list.add(readValue());
+
+				skipSpace();
+				char c = peek();
+				i ++;
+				if (c == ']') {
+					return list;
+				}
+				if (c != ',') {
+					throw error("缺少 , 或 ]");
+				}
+			}
+		}
+
+		private String readString() {
+			i ++;
+			StringBuilder sb = null;
+			int start = i;
+			while (i < s.length()) {
+				char c = s.charAt(i);
+				if (c == '"') {
+					String str = sb == null ? s.substring(start, i) : sb.append(s, start, i).toString();
+					i ++;
+					return str;
+				}
+				if (c != '\\') {
+					i ++;
+					continue;
+				}
+
+				if (sb == null) {
+					sb = new StringBuilder();
+				}
+				sb.append(s, start, i);
+				if (i + 1 >= s.length()) {
+					break;
+				}
+
+				char e = s.charAt(i + 1);
+				i += 2;
+				switch (e) {
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'u':
+						if (i + 4 > s.length()) {
+							throw error("\\u 后必须有 4 位十六进制数");
+						}
+						sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+						i += 4;
+						break;
+					default:
+						sb.append(e);
+						break;
+				}
+				start = i;
+			}
+			throw error("字符串没有结束");
+		}
+
+		private Number readNumber() {
+			int start = i;
+			boolean decimal = false;
+			while (i < s.length()) {
+				char c = s.charAt(i);
+				if (c == '.' || c == 'e' || c == 'E') {
+					decimal = true;
+				}
+				else if ((c < '0' || c > '9') && c != '-' && c != '+') {
+					break;
+				}
+				i ++;
+			}
+			if (start == i) {
+				throw error("不合法的字符");
+			}
+
+			String n = s.substring(start, i);
+			if (decimal) {
+				return new BigDecimal(n);
+			}
+
+			long l = Long.parseLong(n);
+			return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? Integer.valueOf((int) l) : Long.valueOf(l);
+		}
+
+		private void expect(String word) {
+			if (s.startsWith(word, i) == false) {
+				throw error("不合法的字符");
+			}
+			i += word.length();
+		}
+
+		private char peek() {
+			if (i >= s.length()) {
+				throw error("JSON 没有结束");
+			}
+			return s.charAt(i);
+		}
+
+		private void skipSpace() {
+			while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+				i ++;
+			}
+		}
+
+		private IllegalArgumentException error(String msg) {
+			return new IllegalArgumentException("JSON 格式错误，位置 " + i + "：" + msg);
+		}
+	}
+
+}
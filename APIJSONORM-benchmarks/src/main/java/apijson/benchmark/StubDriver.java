@@ -0,0 +1,457 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**进程内的假 JDBC 驱动，不连数据库，按 SQL 生成固定的结果，压测时排除网络和数据库的影响。
+ * 查询返回 SELECT 中的列，* 则按 FROM/JOIN 中的每张表返回 id, userId, name, content, date 5 列，行数为 LIMIT 的值，没有则为 {@link #DEFAULT_ROW_COUNT}；
+ * SELECT count(*) 返回 1 行 {@link #TOTAL_COUNT}，count, sum, min, max 等函数按括号内的列取值；增删改都返回影响 1 行。
+ * FROM 的表名以 _0, _1 等结尾时视为分片，id 按 {@link #SHARD_ID_STRIDE} 错开，各分片的 id 不重复且都按行号递增
+ * @author Lemon
+ */
+public class StubDriver implements Driver {
+
+	public static final String URL_PREFIX = "jdbc:apijson-stub:";
+
+	/**
+	 * SQL 中没有 LIMIT 时返回的行数
+	 */
+	public static int DEFAULT_ROW_COUNT = 10;
+	/**
+	 * SELECT count(*) 返回的总数
+	 */
+	public static long TOTAL_COUNT = 1000;
+	/**
+	 * 分片第 row 行的 id 为 10000 + row*SHARD_ID_STRIDE + 分片序号
+	 */
+	public static final int SHARD_ID_STRIDE = 100;
+	/**
+	 * 不为 null 时按顺序记录执行的 SQL，用来检查分片路由等，压测时不要设置
+	 */
+	public static volatile List<String> SQL_LIST;
+
+	private static final String[] COLUMNS = { "id", "userId", "name", "content", "date" };
+	private static final int[] TYPES = { Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP };
+	private static final String[] TYPE_NAMES = { "BIGINT", "BIGINT", "VARCHAR", "VARCHAR", "DATETIME" };
+	private static final Timestamp DATE = Timestamp.valueOf("2024-01-01 08:00:00");
+
+	private static final Pattern PATTERN_TABLE = Pattern.compile("(?i)\\b(?:FROM|JOIN)\\s+(?:[`\"]?\\w+[`\"]?\\.)?[`\"]?(\\w+)[`\"]?");
+	private static final Pattern PATTERN_LIMIT = Pattern.compile("(?i)\\bLIMIT\\s+(\\d+)");
+	private static final Pattern PATTERN_SELECT = Pattern.compile("(?i)^\\s*SELECT\\s+(?:DISTINCT\\s+)?");
+	private static final Pattern PATTERN_ALIAS = Pattern.compile("(?i)\\s+AS\\s+([`\"]?\\w+[`\"]?)\\s*$");
+	private static final Pattern PATTERN_QUALIFIER = Pattern.compile("^[`\"]?(\\w+)[`\"]?\\.[`\"]?\\w+[`\"]?(?:\\s|$)");
+	private static final Pattern PATTERN_COUNT = Pattern.compile("(?i)^\\s*SELECT\\s+count\\s*\\(");
+	private static final Pattern PATTERN_FUNCTION = Pattern.compile("(?i)^(\\w+)\\s*\\(\\s*(?:DISTINCT\\s+)?(?:[`\"]?\\w+[`\"]?\\.)?[`\"]?(\\w+|\\*)[`\"]?\\s*\\)");
+	private static final Pattern PATTERN_SHARD = Pattern.compile("_(\\d+)$");
+
+	private static final StubDriver INSTANCE = new StubDriver();
+	static {
+		try {
+			DriverManager.registerDriver(INSTANCE);
+		}
+		catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**注册到 DriverManager，多次调用只注册一次
+	 */
+	public static void register() {
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		return acceptsURL(url) ? newConnection() : null;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+
+	private static Connection newConnection() {
+		boolean[] closed = { false };
+		boolean[] autoCommit = { true };
+		return proxy(Connection.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "createStatement":
+					return newStatement(proxy, null);
+				case "prepareStatement":
+				case "prepareCall":
+					return newStatement(proxy, (String) args[0]);
+				case "isClosed":
+					return closed[0];
+				case "close":
+					closed[0] = true;
+					return null;
+				case "isValid":
+					return closed[0] == false;
+				case "getAutoCommit":
+					return autoCommit[0];
+				case "setAutoCommit":
+					autoCommit[0] = (Boolean) args[0];
+					return null;
+				case "getTransactionIsolation":
+					return Connection.TRANSACTION_READ_COMMITTED;
+				default:
+					return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+			}
+		});
+	}
+
+	private static Statement newStatement(Object connection, String preparedSQL) {
+		Object[] result = { null };
+		boolean[] closed = { false };
+		return proxy(PreparedStatement.class, (proxy, method, args) -> {
+			String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSQL;
+			List<String> sqlList = SQL_LIST;
+			if (sqlList != null && method.getName().startsWith("execute") && method.getName().equals("executeBatch") == false) {
+				sqlList.add(sql);
+			}
+			switch (method.getName()) {
+				case "executeQuery":
+					return newResultSet(proxy, sql);
+				case "execute":
+					boolean query = sql != null && sql.trim().regionMatches(true, 0, "SELECT", 0, 6);
+					result[0] = query ? newResultSet(proxy, sql) : null;
+					return query;
+				case "getResultSet":
+					return result[0];
+				case "executeUpdate":
+				case "executeLargeUpdate":
+					return method.getReturnType() == long.class ? (Object) 1L : (Object) 1;
+				case "getUpdateCount":
+					return result[0] == null ? 1 : -1;
+				case "executeBatch":
+					return new int[0];
+				case "getGeneratedKeys":
+					return newResultSet(proxy, new String[0], new int[0], new String[0], new String[0], 0);
+				case "getConnection":
+					return connection;
+				case "isClosed":
+					return closed[0];
+				case "close":
+					closed[0] = true;
+					return null;
+				default:
+					return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+			}
+		});
+	}
+
+	private static ResultSet newResultSet(Object statement, String sql) {
+		if (sql != null && PATTERN_COUNT.matcher(sql).find()) {
+			return newResultSet(statement, new String[]{ "count" }, new int[]{ Types.BIGINT }
+					, new String[]{ "BIGINT" }, new String[]{ "" }, 1);
+		}
+
+		List<String> tables = new ArrayList<>();
+		Matcher m = PATTERN_TABLE.matcher(sql == null ? "" : sql);
+		while (m.find()) {
+			if (tables.contains(m.group(1)) == false) {
+				tables.add(m.group(1));
+			}
+		}
+		if (tables.isEmpty()) {
+			tables.add("");
+		}
+
+		List<String> labelList = new ArrayList<>();
+		List<String> tableList = new ArrayList<>();
+		List<String> sourceList = new ArrayList<>();
+		for (String item : splitColumns(sql)) {
+			if (item.equals("*") || item.endsWith(".*")) {
+				for (String t : item.equals("*") ? tables : Collections.singletonList(unquote(item.substring(0, item.length() - 2)))) {
+					for (String c : COLUMNS) {
+						labelList.add(c);
+						tableList.add(t);
+						sourceList.add(c);
+					}
+				}
+				continue;
+			}
+
+			Matcher am = PATTERN_ALIAS.matcher(item);
+			String label = unquote(am.find() ? am.group(1) : item.substring(item.lastIndexOf('.') + 1));
+			Matcher tm = PATTERN_QUALIFIER.matcher(item);
+			Matcher fm = PATTERN_FUNCTION.matcher(item);
+			labelList.add(label);
+			tableList.add(tm.find() ? tm.group(1) : tables.get(0));
+			sourceList.add(fm.find() == false ? label : ("count".equalsIgnoreCase(fm.group(1)) ? "count" : fm.group(2)));
+		}
+
+		int size = labelList.size();
+		String[] labels = labelList.toArray(new String[size]);
+		String[] tableNames = tableList.toArray(new String[size]);
+		String[] sources = sourceList.toArray(new String[size]);
+		int[] types = new int[size];
+		String[] typeNames = new String[size];
+		for (int i = 0; i < size; i++) {
+			int j = sources[i].equals("count") ? 0 : Arrays.asList(COLUMNS).indexOf(sources[i]);
+			types[i] = j < 0 ? Types.VARCHAR : TYPES[j];
+			typeNames[i] = j < 0 ? "VARCHAR" : TYPE_NAMES[j];
+		}
+
+		Matcher sm = PATTERN_SHARD.matcher(tables.get(0));
+		int shard = sm.find() ? Integer.parseInt(sm.group(1)) : -1;
+
+		Matcher lm = PATTERN_LIMIT.matcher(sql == null ? "" : sql);
+		int count = lm.find() ? Integer.parseInt(lm.group(1)) : DEFAULT_ROW_COUNT;
+		return newResultSet(statement, labels, types, typeNames, tableNames, sources, shard, count);
+	}
+
+	private static ResultSet newResultSet(Object statement, String[] labels, int[] types
+			, String[] typeNames, String[] tableNames, int count) {
+		return newResultSet(statement, labels, types, typeNames, tableNames, labels, -1, count);
+	}
+
+	/**
+	 * @param sources 每列按哪个列取值，例如 max(id) AS maxId 按 id
+	 * @param shard 分片序号，不是分片则为 -1
+	 */
+	private static ResultSet newResultSet(Object statement, String[] labels, int[] types
+			, String[] typeNames, String[] tableNames, String[] sources, int shard, int count) {
+		ResultSetMetaData rsmd = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+			int index = args != null && args.length > 0 && args[0] instanceof Integer ? (Integer) args[0] - 1 : -1;
+			switch (method.getName()) {
+				case "getColumnCount":
+					return labels.length;
+				case "getColumnLabel":
+				case "getColumnName":
+					return labels[index];
+				case "getTableName":
+					return tableNames[index];
+				case "getColumnType":
+					return types[index];
+				case "getColumnTypeName":
+					return typeNames[index];
+				default:
+					return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+			}
+		});
+
+		int[] row = { 0 };
+		boolean[] wasNull = { false };
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "next":
+					row[0] = Math.min(row[0] + 1, count + 1);
+					return row[0] <= count;
+				case "beforeFirst":
+					row[0] = 0;
+					return null;
+				case "last":
+					row[0] = count;
+					return count > 0;
+				case "getRow":
+					return row[0] <= count ? row[0] : 0;
+				case "getMetaData":
+					return rsmd;
+				case "getStatement":
+					return statement;
+				case "wasNull":
+					return wasNull[0];
+				case "findColumn":
+					return indexOf(labels, (String) args[0]) + 1;
+				default:
+					break;
+			}
+
+			if (method.getName().startsWith("get") && args != null && args.length >= 1) {
+				int index = args[0] instanceof Integer ? (Integer) args[0] - 1 : indexOf(labels, (String) args[0]);
+				Object value = getValue(sources[index], types[index], shard, row[0]);
+				wasNull[0] = value == null;
+				return convert(value, method.getReturnType());
+			}
+			return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+		});
+	}
+
+	private static Object getValue(String label, int type, int shard, int row) {
+		switch (label) {
+			case "count":
+				return TOTAL_COUNT;
+			case "id":
+				return shard < 0 ? 10000L + row : 10000L + (long) row*SHARD_ID_STRIDE + shard;
+			case "userId":
+				return 82000L + row % 10;
+			case "name":
+				return "name_" + row;
+			case "content":
+				return "APIJSON 是一种专为 API 而生的 JSON 网络传输协议 以及 基于这套协议实现的 ORM 库，row " + row;
+			default:
+				return type == Types.TIMESTAMP ? DATE : label + "_" + row;
+		}
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if (value == null) {
+			return type.isPrimitive() ? defaultPrimitive(type) : null;
+		}
+		if (type == Object.class || type.isInstance(value)) {
+			return value;
+		}
+		if (type == String.class) {
+			return value.toString();
+		}
+		if (value instanceof Number) {
+			Number n = (Number) value;
+			if (type == long.class || type == Long.class) {
+				return n.longValue();
+			}
+			if (type == int.class || type == Integer.class) {
+				return n.intValue();
+			}
+			if (type == double.class || type == Double.class) {
+				return n.doubleValue();
+			}
+			if (type == BigDecimal.class) {
+				return BigDecimal.valueOf(n.longValue());
+			}
+		}
+		throw new UnsupportedOperationException("StubDriver 不支持把 " + value.getClass().getName() + " 转为 " + type.getName());
+	}
+
+	private static int indexOf(String[] labels, String label) {
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i].equalsIgnoreCase(label)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("StubDriver 没有列 " + label);
+	}
+
+	/**
+	 * @return SELECT 和 FROM 之间按最外层 , 分割的每一项，解析不了则为 *
+	 */
+	private static List<String> splitColumns(String sql) {
+		Matcher m = PATTERN_SELECT.matcher(sql == null ? "" : sql);
+		if (m.find() == false) {
+			return Collections.singletonList("*");
+		}
+
+		List<String> list = new ArrayList<>();
+		int depth = 0;
+		int start = m.end();
+		for (int i = start; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '(') {
+				depth ++;
+			}
+			else if (c == ')') {
+				depth --;
+			}
+			else if (depth == 0 && c == ',') {
+				list.add(sql.substring(start, i).trim());
+				start = i + 1;
+			}
+			else if (depth == 0 && sql.regionMatches(true, i, " FROM ", 0, 6)) {
+				list.add(sql.substring(start, i).trim());
+				return list;
+			}
+		}
+		return Collections.singletonList("*");
+	}
+
+	private static String unquote(String s) {
+		s = s.trim();
+		return s.length() >= 2 && (s.charAt(0) == '`' || s.charAt(0) == '"') ? s.substring(1, s.length() - 1) : s;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> cls, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[]{ cls }, handler);
+	}
+
+	private static Object defaultValue(Object proxy, String name, Class<?> returnType, Object[] args) {
+		switch (name) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "StubDriver@" + Integer.toHexString(System.identityHashCode(proxy));
+			default:
+				break;
+		}
+		return returnType.isPrimitive() ? defaultPrimitive(returnType) : null;
+	}
+
+	private static Object defaultPrimitive(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == double.class) {
+			return 0D;
+		}
+		if (type == float.class) {
+			return 0F;
+		}
+		if (type == short.class) {
+			return (short) 0;
+		}
+		if (type == byte.class) {
+			return (byte) 0;
+		}
+		if (type == char.class) {
+			return (char) 0;
+		}
+		return type == void.class ? null : 0;
+	}
+
+}
@@ -0,0 +1,61 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import apijson.JSON;
+import apijson.RequestMethod;
+import apijson.orm.AbstractVerifier;
+
+/**AbstractVerifier.verifyRequest 按 Request 表的 structure 校验 POST 请求，VERIFY 条件都在内存中计算
+ * @author Lemon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerifierBenchmark {
+
+	private LinkedHashMap<String, Object> target;
+	private LinkedHashMap<String, Object> request;
+	private BenchmarkParser parser;
+
+	@Setup
+	public void setup() {
+		Benchmarks.init();
+
+		target = JSON.parseObject("{\"Moment\":{\"MUST\":\"content\",\"REFUSE\":\"id\""
+				+ ",\"TYPE\":{\"userId\":\"NUMBER\",\"content\":\"STRING\",\"pictureList\":\"STRING[]\"}"
+				+ ",\"VERIFY\":{\"userId{}\":\">0\",\"content$\":\"%API%\"}"
+				+ ",\"INSERT\":{\"@role\":\"OWNER\"}}}");
+		request = JSON.parseObject("{\"Moment\":{\"userId\":82001,\"content\":\"APIJSON 是一种专为 API 而生的 JSON 网络传输协议\""
+				+ ",\"pictureList\":[\"https://github.com/Tencent/APIJSON/raw/master/logo.png\",\"https://apijson.cn/logo.png\"]}"
+				+ ",\"tag\":\"Moment\"}");
+		parser = new BenchmarkParser(RequestMethod.POST, false);
+	}
+
+	@Benchmark
+	public Map<String, Object> verifyRequest() throws Exception {
+		return AbstractVerifier.verifyRequest(RequestMethod.POST, "", target, request, parser);
+	}
+
+}
@@ -0,0 +1,278 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import apijson.JSON;
+import apijson.JSONResponse;
+import apijson.RequestMethod;
+import apijson.orm.AbstractSQLConfig;
+import apijson.orm.AbstractSQLExecutor;
+import apijson.orm.SQLConfig;
+import apijson.orm.SQLExecutor;
+import apijson.orm.ShardRule;
+
+/**在嵌入式 H2 上检查分表的路由、k 路归并、跨分片重新聚合及全局分页，串行和并行查各分片的结果必须一样
+ * @author Lemon
+ */
+public class ShardTest {
+
+	public static final String TABLE = "Moment";
+	public static final int SHARD_COUNT = 4;
+	public static final int ROW_COUNT = 40;
+	public static final String URI = "jdbc:h2:mem:apijson_shard;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	private static ShardRule rule;
+	private static ShardRule oldRule;
+	private static String oldUri;
+	private static String oldAccount;
+	private static String oldPassword;
+
+	/**
+	 * 上个请求查过的分片
+	 */
+	private static final Set<String> SHARD_SET = Collections.synchronizedSet(new LinkedHashSet<>());
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Benchmarks.init();
+
+		oldUri = BenchmarkSQLConfig.DB_URI;
+		oldAccount = BenchmarkSQLConfig.DB_ACCOUNT;
+		oldPassword = BenchmarkSQLConfig.DB_PASSWORD;
+		BenchmarkSQLConfig.DB_URI = URI;
+		BenchmarkSQLConfig.DB_ACCOUNT = "sa";
+		BenchmarkSQLConfig.DB_PASSWORD = "";
+
+		rule = ShardRule.hash(TABLE, "userId", SHARD_COUNT);
+		oldRule = AbstractSQLConfig.SHARD_RULE_MAP.put(TABLE, rule);
+
+		try (Connection conn = DriverManager.getConnection(URI, "sa", ""); Statement statement = conn.createStatement()) {
+			statement.execute("CREATE SCHEMA IF NOT EXISTS `" + AbstractSQLConfig.DEFAULT_SCHEMA + "`");
+			for (String shard : rule.getTableList()) {
+				statement.execute("CREATE TABLE `" + AbstractSQLConfig.DEFAULT_SCHEMA + "`.`" + shard
+						+ "` (`id` BIGINT PRIMARY KEY, `userId` BIGINT NOT NULL, `content` VARCHAR(100))");
+			}
+
+			// 同一个 userId 的行都在一个分片，content 的每个值都分布在多个分片
+			for (long id = 1; id <= ROW_COUNT; id++) {
+				long userId = getUserId(id);
+				String sql = "INSERT INTO `" + AbstractSQLConfig.DEFAULT_SCHEMA + "`.`" + rule.route(userId)
+						+ "` (`id`, `userId`, `content`) VALUES (?, ?, ?)";
+				try (PreparedStatement ps = conn.prepareStatement(sql)) {
+					ps.setLong(1, id);
+					ps.setLong(2, userId);
+					ps.setString(3, getContent(id));
+					ps.executeUpdate();
+				}
+			}
+		}
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception {
+		BenchmarkSQLConfig.DB_URI = oldUri;
+		BenchmarkSQLConfig.DB_ACCOUNT = oldAccount;
+		BenchmarkSQLConfig.DB_PASSWORD = oldPassword;
+		if (oldRule == null) {
+			AbstractSQLConfig.SHARD_RULE_MAP.remove(TABLE);
+		}
+		else {
+			AbstractSQLConfig.SHARD_RULE_MAP.put(TABLE, oldRule);
+		}
+
+		try (Connection conn = DriverManager.getConnection(URI, "sa", ""); Statement statement = conn.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+	}
+
+	private static long getUserId(long id) {
+		return 82000 + id % 8;
+	}
+	private static String getContent(long id) {
+		return "content_" + id % 3;
+	}
+
+
+	/**数字和数字字符串，整数和小数点后全为 0 的小数都路由到同一分片
+	 */
+	@Test
+	public void testRouteNumber() {
+		String shard = rule.route(82001);
+		assertEquals(shard, rule.route(82001L));
+		assertEquals(shard, rule.route(82001.0));
+		assertEquals(shard, rule.route("82001"));
+		assertEquals(shard, rule.route("82001.0"));
+		assertEquals(shard, rule.route(new BigDecimal("82001.00")));
+		assertEquals(rule.route(1.5), rule.route("1.50"));
+	}
+
+	/**有分片键的条件只查对应的分片，没有则查全部分片
+	 */
+	@Test
+	public void testRoute() throws Exception {
+		Map<String, Object> response = get("{\"" + TABLE + "\":{\"userId\":82001}}");
+		assertEquals(Collections.singleton(rule.route(82001L)), SHARD_SET);
+		Map<String, Object> obj = JSON.get(response, TABLE);
+		assertEquals(82001L, ((Number) obj.get("userId")).longValue());
+
+		response = get("{\"[]\":{\"count\":20,\"" + TABLE + "\":{\"userId{}\":[82001,82002],\"@order\":\"id+\"}}}");
+		assertEquals(new LinkedHashSet<>(rule.route(Arrays.asList(82001L, 82002L))), SHARD_SET);
+		List<Map<String, Object>> list = getList(response);
+		assertEquals(ROW_COUNT/8*2, list.size());
+		for (Map<String, Object> item : list) {
+			long userId = ((Number) item.get("userId")).longValue();
+			assertTrue("userId = " + userId, userId == 82001 || userId == 82002);
+		}
+
+		get("{\"[]\":{\"count\":10,\"" + TABLE + "\":{\"@order\":\"id+\"}}}");
+		assertEquals(new LinkedHashSet<>(rule.getTableList()), SHARD_SET);
+	}
+
+	/**每个分片查前 page + 1 页，按 @order 归并后再取第 page 页
+	 */
+	@Test
+	public void testMerge() throws Exception {
+		assertMerge();
+	}
+
+	/**@group 及 count, max, sum 在各分片的结果合并后重新聚合
+	 */
+	@Test
+	public void testAggregate() throws Exception {
+		assertAggregate();
+	}
+
+	/**HEAD 把各分片的数量相加
+	 */
+	@Test
+	public void testHead() throws Exception {
+		Map<String, Object> response = parse(RequestMethod.HEAD, "{\"" + TABLE + "\":{}}");
+		Map<String, Object> obj = JSON.get(response, TABLE);
+		assertEquals(ROW_COUNT, ((Number) obj.get(JSONResponse.KEY_COUNT)).intValue());
+	}
+
+	/**并行查各分片，结果必须和串行一样
+	 */
+	@Test
+	public void testParallel() throws Exception {
+		Executor oldExecutor = AbstractSQLExecutor.SHARD_EXECUTOR;
+		ExecutorService executor = Executors.newFixedThreadPool(SHARD_COUNT);
+		AbstractSQLExecutor.SHARD_EXECUTOR = executor;
+		try {
+			assertMerge();
+			assertAggregate();
+		}
+		finally {
+			AbstractSQLExecutor.SHARD_EXECUTOR = oldExecutor;
+			executor.shutdown();
+		}
+	}
+
+
+	private void assertMerge() throws Exception {
+		int count = 5;
+		int page = 2;
+		Map<String, Object> response = get("{\"[]\":{\"count\":" + count + ",\"page\":" + page + ",\"" + TABLE + "\":{\"@order\":\"id+\"}}}");
+		assertEquals(new LinkedHashSet<>(rule.getTableList()), SHARD_SET);
+
+		List<Long> ids = new ArrayList<>();
+		for (Map<String, Object> item : getList(response)) {
+			ids.add(((Number) item.get("id")).longValue());
+		}
+
+		List<Long> expected = new ArrayList<>();
+		for (long id = page*count + 1; id <= (page + 1)*count; id++) {
+			expected.add(id);
+		}
+		assertEquals(expected, ids);
+	}
+
+	private void assertAggregate() throws Exception {
+		Map<String, Object> response = get("{\"[]\":{\"count\":10,\"" + TABLE
+				+ "\":{\"@column\":\"content;count(*):count;max(id):maxId;sum(id):sumId\",\"@group\":\"content\"}}}");
+
+		Map<String, long[]> expected = new LinkedHashMap<>();
+		for (long id = 1; id <= ROW_COUNT; id++) {
+			long[] agg = expected.computeIfAbsent(getContent(id), k -> new long[3]);
+			agg[0] ++;
+			agg[1] = Math.max(agg[1], id);
+			agg[2] += id;
+		}
+
+		List<Map<String, Object>> list = getList(response);
+		assertEquals(expected.size(), list.size());
+		for (Map<String, Object> item : list) {
+			String content = (String) item.get("content");
+			long[] agg = expected.get(content);
+			assertTrue("content = " + content, agg != null);
+			assertEquals(content + " count", agg[0], ((Number) item.get("count")).longValue());
+			assertEquals(content + " maxId", agg[1], ((Number) item.get("maxId")).longValue());
+			assertEquals(content + " sumId", agg[2], ((Number) item.get("sumId")).longValue());
+		}
+	}
+
+
+	private static Map<String, Object> get(String request) throws Exception {
+		return parse(RequestMethod.GET, request);
+	}
+
+	private static Map<String, Object> parse(RequestMethod method, String request) throws Exception {
+		SHARD_SET.clear();
+		Map<String, Object> response = new BenchmarkParser(method, false) {
+			@Override
+			public SQLExecutor<Long, LinkedHashMap<String, Object>, ArrayList<Object>> createSQLExecutor() {
+				return new BenchmarkSQLExecutor() {
+					@Override
+					protected String switchShard(SQLConfig<Long, LinkedHashMap<String, Object>, ArrayList<Object>> config, String shard) {
+						SHARD_SET.add(shard);
+						return super.switchShard(config, shard);
+					}
+				};
+			}
+		}.parseResponse(request);
+
+		Object code = response == null ? null : response.get(JSONResponse.KEY_CODE);
+		assertTrue(request + " 请求失败：" + response, code instanceof Number && ((Number) code).intValue() == JSONResponse.CODE_SUCCESS);
+		return response;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> getList(Map<String, Object> response) {
+		List<Map<String, Object>> list = new ArrayList<>();
+		List<Object> arr = (List<Object>) response.get("[]");
+		if (arr != null) {
+			for (Object item : arr) {
+				list.add(JSON.get((Map<String, Object>) item, TABLE));
+			}
+		}
+		return list;
+	}
+
+}
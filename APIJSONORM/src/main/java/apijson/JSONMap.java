@@ -166,6 +166,7 @@ public interface JSONMap<M extends Map<String, Object>, L extends List<Object>>
 	String KEY_SCHEMA = "@schema"; //数据库，Table 在非默认 schema 内时需要声明
 	String KEY_EXPLAIN = "@explain"; //分析 true/false
 	String KEY_CACHE = "@cache"; //缓存 RAM/ROM/ALL
+	String KEY_PRIMARY = "@primary"; //读写分离时查询也用主库 true/false，可以读到刚写入的数据
 	String KEY_COLUMN = "@column"; //查询的Table字段或SQL函数
 	String KEY_FROM = "@from"; //FROM语句
 	String KEY_COMBINE = "@combine"; //条件组合，每个条件key前面可以放&,|,!逻辑关系  "id!{},&sex,!name&$"
@@ -308,6 +309,13 @@ public interface JSONMap<M extends Map<String, Object>, L extends List<Object>>
 	default JSONMap<M, L> setExplain(Boolean explain) {
 		return puts(KEY_EXPLAIN, explain);
 	}
+	/**set if query from primary datasource only
+	 * @param primary
+	 * @return
+	 */
+	default JSONMap<M, L> setPrimary(Boolean primary) {
+		return puts(KEY_PRIMARY, primary);
+	}
 	/**set cache type
 	 * @param cache
 	 * @return
@@ -101,11 +101,12 @@ public interface JSONRequest<M extends Map<String, Object>, L extends List<Objec
 	public static final String KEY_COUNT = "count";
 	public static final String KEY_PAGE = "page";
 	public static final String KEY_JOIN = "join";
+	public static final String KEY_CURSOR = "cursor";
 	public static final String KEY_SUBQUERY_RANGE = "range";
 	public static final String KEY_SUBQUERY_FROM = "from";
 
 	public static final List<String> ARRAY_KEY_LIST = new ArrayList<>(Arrays.asList(
-        KEY_QUERY, KEY_COMPAT ,KEY_COUNT, KEY_PAGE, KEY_JOIN, KEY_SUBQUERY_RANGE, KEY_SUBQUERY_FROM
+        KEY_QUERY, KEY_COMPAT ,KEY_COUNT, KEY_PAGE, KEY_JOIN, KEY_CURSOR, KEY_SUBQUERY_RANGE, KEY_SUBQUERY_FROM
 	));
 
 	/**set what to query in Array layer
@@ -135,6 +136,14 @@ public interface JSONRequest<M extends Map<String, Object>, L extends List<Objec
 		return puts(KEY_PAGE, page);
 	}
 
+	/**set cursor for keyset pagination in Array layer, page must be 0
+	 * @param cursor "" for the first page, or info.cursor returned by the previous page
+	 * @return
+	 */
+	default JSONRequest<M, L> setCursor(String cursor) {
+		return puts(KEY_CURSOR, cursor);
+	}
+
 	/**set joins of Main Table and it's Vice Tables in Array layer
 	 * @param joins "@/User/id@", "&/User/id@,>/Comment/momentId@" ...
 	 * @return
@@ -78,6 +78,8 @@ public interface JSONResponse<M extends Map<String, Object>, L extends List<Obje
 	public static final String KEY_LAST = "last"; //是否为尾页
 	public static final String KEY_MAX = "max"; //最大页码
 	public static final String KEY_MORE = "more"; //是否有更多
+	public static final String KEY_CURSOR = "cursor"; //游标分页的下一页游标
+	public static final String KEY_APPROXIMATE = "approximate"; //总数是否为估算值
 
 	/**获取状态
 	 * @return
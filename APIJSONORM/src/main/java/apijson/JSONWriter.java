@@ -0,0 +1,191 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+package apijson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**把 Map, List 组成的响应直接写到 Writer，不用先转成完整的 String，
+ * 可以在写的同时按 {@link JSONResponse#format(Map)} 的规则格式化 key，不用再深拷贝一份格式化后的对象。
+ * Map, Collection, 数组, String, Boolean 及常见的 Number 自己序列化，
+ * 其它类型(日期等)交给 {@link JSON#DEFAULT_JSON_PARSER}，保证和 JSON.toJSONString 结果一致
+ * @author Lemon
+ */
+public class JSONWriter {
+
+	/**
+	 * 是否输出值为 null 的键值对，默认和 fastjson 一样不输出
+	 */
+	public static boolean IS_WRITE_NULL = false;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer writer;
+
+	public JSONWriter(@NotNull Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * @param value
+	 * @param format 是否格式化 key
+	 * @throws IOException
+	 */
+	public void write(Object value, boolean format) throws IOException {
+		write(value, format, null);
+	}
+	/**
+	 * @param value
+	 * @param format 是否格式化 key
+	 * @param formatKeySet 最外层只格式化这些 key，为 null 则全部格式化，内层总是全部格式化
+	 * @throws IOException
+	 */
+	public void write(Object value, boolean format, Set<String> formatKeySet) throws IOException {
+		if (value instanceof Map<?, ?>) {
+			writeObject((Map<?, ?>) value, format, formatKeySet);
+		}
+		else {
+			writeValue(value, format);
+		}
+		writer.flush();
+	}
+
+	private void writeObject(Map<?, ?> map, boolean format, Set<String> formatKeySet) throws IOException {
+		writer.write('{');
+		boolean first = true;
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			String key = String.valueOf(entry.getKey());
+			Object value = entry.getValue();
+			if (value == null && IS_WRITE_NULL == false) {
+				continue;
+			}
+
+			if (format && (formatKeySet == null || formatKeySet.contains(key))) {
+				key = value instanceof List<?> ? JSONResponse.formatArrayKey(key)
+						: (value instanceof Map<?, ?> ? JSONResponse.formatObjectKey(key) : JSONResponse.formatOtherKey(key));
+			}
+
+			if (first == false) {
+				writer.write(',');
+			}
+			first = false;
+
+			writeString(key);
+			writer.write(':');
+			writeValue(value, format);
+		}
+		writer.write('}');
+	}
+
+	private void writeValue(Object value, boolean format) throws IOException {
+		if (value == null) {
+			writer.write("null");
+		}
+		else if (value instanceof String) {
+			writeString((String) value);
+		}
+		else if (value instanceof Map<?, ?>) {
+			writeObject((Map<?, ?>) value, format, null);
+		}
+		else if (value instanceof Collection<?>) {
+			writer.write('[');
+			boolean first = true;
+			for (Object item : (Collection<?>) value) {
+				if (first == false) {
+					writer.write(',');
+				}
+				first = false;
+				writeValue(item, format);
+			}
+			writer.write(']');
+		}
+		else if (value instanceof Object[] || (value.getClass().isArray() && value instanceof byte[] == false)) {
+			writer.write('[');
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeValue(Array.get(value, i), format);
+			}
+			writer.write(']');
+		}
+		else if (value instanceof Boolean || value instanceof Integer || value instanceof Long
+				|| value instanceof Short || value instanceof Byte || value instanceof BigInteger) {
+			writer.write(value.toString());
+		}
+		else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			writer.write(Double.isNaN(d) || Double.isInfinite(d) ? "null" : value.toString());
+		}
+		else if (value instanceof BigDecimal) {
+			writer.write(value.toString());
+		}
+		else if (value instanceof Character) {
+			writeString(value.toString());
+		}
+		else {
+			String s = JSON.toJSONString(value);
+			writer.write(s == null ? "null" : s);
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		writer.write('"');
+		int start = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			String escape;
+			switch (c) {
+				case '"':
+					escape = "\\\"";
+					break;
+				case '\\':
+					escape = "\\\\";
+					break;
+				case '\n':
+					escape = "\\n";
+					break;
+				case '\r':
+					escape = "\\r";
+					break;
+				case '\t':
+					escape = "\\t";
+					break;
+				case '\b':
+					escape = "\\b";
+					break;
+				case '\f':
+					escape = "\\f";
+					break;
+				default:
+					if (c >= 0x20 && c != '\u2028' && c != '\u2029') {  // JavaScript 中 \u2028, \u2029 是换行符
+						continue;
+					}
+					escape = "\\u" + HEX[(c >> 12) & 0xF] + HEX[(c >> 8) & 0xF] + HEX[(c >> 4) & 0xF] + HEX[c & 0xF];
+					break;
+			}
+
+			if (i > start) {
+				writer.write(s, start, i - start);
+			}
+			writer.write(escape);
+			start = i + 1;
+		}
+		if (length > start) {
+			writer.write(s, start, length - start);
+		}
+		writer.write('"');
+	}
+
+}
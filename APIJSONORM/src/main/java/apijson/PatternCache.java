@@ -0,0 +1,347 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**编译后的正则缓存，避免每次校验、每行数据都 Pattern.compile，有数量上限，线程安全
+ * 对 Request 表 VERIFY 等外部配置的正则可开启防护，拒绝 (a+)+ 这种嵌套量词导致回溯爆炸的正则，
+ * 也可以开启线性匹配模式，匹配时读取字符的次数超过 输入长度 * LINEAR_FACTOR 就中止
+ * @author Lemon
+ */
+public class PatternCache {
+	private static final String TAG = "PatternCache";
+
+	/**
+	 * 最多缓存的正则数量，超过后淘汰任意一个，<= 0 则不缓存
+	 */
+	public static int MAX_SIZE = 2000;
+	/**
+	 * 外部配置的正则最大长度，<= 0 则不限制
+	 */
+	public static int MAX_LENGTH = 1000;
+	/**
+	 * 是否拒绝外部配置的嵌套量词正则，例如 (a+)+, (\\w*)*, (\\w+\\s?)*
+	 */
+	public static boolean ENABLE_GUARD = true;
+	/**
+	 * 是否对外部配置的正则使用线性匹配模式
+	 */
+	public static boolean ENABLE_LINEAR = false;
+	/**
+	 * 线性匹配模式下，每个输入字符平均最多被读取的次数
+	 */
+	public static int LINEAR_FACTOR = 100;
+
+	private static final Map<String, Pattern> PATTERN_MAP = new ConcurrentHashMap<>();
+
+	private static final AtomicLong HIT_COUNT = new AtomicLong();
+	private static final AtomicLong MISS_COUNT = new AtomicLong();
+	private static final AtomicLong EVICT_COUNT = new AtomicLong();
+	private static final AtomicLong REJECT_COUNT = new AtomicLong();
+	private static final AtomicLong ABORT_COUNT = new AtomicLong();
+
+	/**获取编译后的正则，用于后端代码内的正则，不做防护
+	 * @param regex
+	 * @return
+	 * @throws java.util.regex.PatternSyntaxException
+	 */
+	public static Pattern compile(@NotNull String regex) {
+		return compile(regex, false);
+	}
+	/**获取编译后的正则
+	 * @param regex
+	 * @param guard 是否为外部配置的正则，需要检查长度和嵌套量词
+	 * @return
+	 * @throws IllegalArgumentException 正则过长或可能导致回溯爆炸
+	 * @throws java.util.regex.PatternSyntaxException
+	 */
+	public static Pattern compile(@NotNull String regex, boolean guard) {
+		// 缓存是防护和不防护共用的，后端代码先编译过的正则不能绕过防护，而且 ENABLE_GUARD, MAX_LENGTH 随时可能改，所以每次都检查
+		if (guard) {
+			verify(regex);
+		}
+
+		Pattern pattern = MAX_SIZE > 0 ? PATTERN_MAP.get(regex) : null;
+		if (pattern != null) {
+			HIT_COUNT.incrementAndGet();
+			return pattern;
+		}
+
+		MISS_COUNT.incrementAndGet();
+		pattern = Pattern.compile(regex);
+
+		if (MAX_SIZE > 0) {
+			if (PATTERN_MAP.size() >= MAX_SIZE) {
+				Iterator<String> iterator = PATTERN_MAP.keySet().iterator();
+				while (PATTERN_MAP.size() >= MAX_SIZE && iterator.hasNext()) {
+					iterator.next();
+					iterator.remove();
+					EVICT_COUNT.incrementAndGet();
+				}
+			}
+			PATTERN_MAP.put(regex, pattern);
+		}
+		return pattern;
+	}
+
+	/**全匹配，外部配置的正则在开启 ENABLE_LINEAR 时使用线性匹配模式
+	 * @param regex
+	 * @param input
+	 * @param guard 是否为外部配置的正则
+	 * @return
+	 */
+	public static boolean matches(@NotNull String regex, CharSequence input, boolean guard) {
+		return matches(compile(regex, guard), input, guard && ENABLE_LINEAR);
+	}
+	/**全匹配
+	 * @param pattern
+	 * @param input
+	 * @param linear 是否使用线性匹配模式
+	 * @return
+	 * @throws IllegalArgumentException 线性匹配模式下超出读取次数限制
+	 */
+	public static boolean matches(@NotNull Pattern pattern, CharSequence input, boolean linear) {
+		if (input == null) {
+			return false;
+		}
+		if (linear == false || LINEAR_FACTOR <= 0) {
+			return pattern.matcher(input).matches();
+		}
+
+		LinearCharSequence seq = new LinearCharSequence(input, (input.length() + 1L)*LINEAR_FACTOR);
+		try {
+			return pattern.matcher(seq).matches();
+		}
+		catch (LinearLimitException e) {
+			ABORT_COUNT.incrementAndGet();
+			Log.e(TAG, "matches  LinearLimitException pattern = " + pattern.pattern() + "; input.length() = " + input.length());
+			throw new IllegalArgumentException("正则 " + pattern.pattern() + " 匹配步数超过输入长度的 " + LINEAR_FACTOR
+					+ " 倍，已中止！请简化正则或缩短输入内容！");
+		}
+	}
+
+	/**检查外部配置的正则
+	 * @param regex
+	 * @throws IllegalArgumentException
+	 */
+	public static void verify(@NotNull String regex) throws IllegalArgumentException {
+		if (MAX_LENGTH > 0 && regex.length() > MAX_LENGTH) {
+			REJECT_COUNT.incrementAndGet();
+			throw new IllegalArgumentException("正则 " + regex.substring(0, Math.min(50, regex.length())) + "... 长度 " + regex.length()
+					+ " 超过了最大值 " + MAX_LENGTH + " ！");
+		}
+		if (ENABLE_GUARD && isNestedQuantifier(regex)) {
+			REJECT_COUNT.incrementAndGet();
+			throw new IllegalArgumentException("正则 " + regex + " 不合法！不允许 (a+)+, (\\w*)* 这种在带量词的分组外再加 +, *, {n,} 量词，"
+					+ "可能导致回溯次数指数级增长！");
+		}
+	}
+
+	/**是否有以量词结尾的分组外再加量词，例如 (a+)+, (\\w*)*, (\\w+\\s?)*
+	 * 不完全等价于会回溯爆炸，但常见的灾难性回溯都是这种结构；([a-z]+\\.)+ 这种量词后有分隔符的不算
+	 * @param regex
+	 * @return
+	 */
+	public static boolean isNestedQuantifier(String regex) {
+		if (regex == null || regex.isEmpty()) {
+			return false;
+		}
+
+		int len = regex.length();
+		// 每层分组内是否有 +, *, {n,} 这种可重复多次的量词
+		boolean[] stack = new boolean[len + 1];
+		int depth = 0;
+		boolean inClass = false;
+		boolean lastIsQuantifier = false;
+		for (int i = 0; i < len; i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i ++;
+				lastIsQuantifier = false;
+				continue;
+			}
+			if (inClass) {
+				if (c == ']') {
+					inClass = false;
+				}
+				continue;
+			}
+
+			switch (c) {
+				case '[':
+					inClass = true;
+					lastIsQuantifier = false;
+					break;
+				case '(':
+					depth ++;
+					stack[depth] = false;
+					lastIsQuantifier = false;
+					if (i + 1 < len && regex.charAt(i + 1) == '?') {  // (?: (?= (?<name> 等
+						i ++;
+					}
+					break;
+				case ')':
+					if (depth <= 0) {
+						lastIsQuantifier = false;
+						break;
+					}
+					boolean inner = stack[depth];
+					depth --;
+					if (inner && lastIsQuantifier && isRepeat(regex, i + 1)) {
+						return true;
+					}
+					if (inner && depth > 0) {
+						stack[depth] = true;
+					}
+					lastIsQuantifier = false;
+					break;
+				case '?':
+					lastIsQuantifier = true;
+					break;
+				case '{':
+					int end = regex.indexOf('}', i);
+					if (end < 0) {
+						lastIsQuantifier = false;
+						break;
+					}
+					if (depth > 0 && isRepeat(regex, i)) {
+						stack[depth] = true;
+					}
+					i = end;
+					lastIsQuantifier = true;
+					break;
+				case '+':
+				case '*':
+					if (depth > 0) {
+						stack[depth] = true;
+					}
+					lastIsQuantifier = true;
+					break;
+				default:
+					lastIsQuantifier = false;
+					break;
+			}
+		}
+		return false;
+	}
+
+	/**index 处是否为 +, *, {n,} 或 {n,m} (m > 1) 这种可重复多次的量词
+	 */
+	private static boolean isRepeat(String regex, int index) {
+		if (index >= regex.length()) {
+			return false;
+		}
+
+		char c = regex.charAt(index);
+		if (c == '+' || c == '*') {
+			return true;
+		}
+		if (c != '{') {
+			return false;
+		}
+
+		int end = regex.indexOf('}', index);
+		if (end < 0) {
+			return false;
+		}
+		String range = regex.substring(index + 1, end);
+		int comma = range.indexOf(',');
+		if (comma < 0) {
+			return false;
+		}
+		String max = range.substring(comma + 1).trim();
+		try {
+			return max.isEmpty() || Integer.parseInt(max) > 1;
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+
+	public static long getHitCount() {
+		return HIT_COUNT.get();
+	}
+	public static long getMissCount() {
+		return MISS_COUNT.get();
+	}
+	public static double getHitRate() {
+		long hit = HIT_COUNT.get();
+		long total = hit + MISS_COUNT.get();
+		return total <= 0 ? 0 : 1.0*hit/total;
+	}
+	public static int getSize() {
+		return PATTERN_MAP.size();
+	}
+	public static void clear() {
+		PATTERN_MAP.clear();
+	}
+
+	/**监控指标
+	 * @return { hit, miss, hitRate, evict, reject, abort, size, maxSize }
+	 */
+	public static Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("hit", HIT_COUNT.get());
+		metrics.put("miss", MISS_COUNT.get());
+		metrics.put("hitRate", getHitRate());
+		metrics.put("evict", EVICT_COUNT.get());
+		metrics.put("reject", REJECT_COUNT.get());
+		metrics.put("abort", ABORT_COUNT.get());
+		metrics.put("size", PATTERN_MAP.size());
+		metrics.put("maxSize", MAX_SIZE);
+		return metrics;
+	}
+
+
+	/**限制读取次数的 CharSequence，java.util.regex 回溯时会反复读取同一位置的字符
+	 */
+	private static final class LinearCharSequence implements CharSequence {
+		private final CharSequence sequence;
+		private final long limit;
+		private long count;
+
+		LinearCharSequence(CharSequence sequence, long limit) {
+			this.sequence = sequence;
+			this.limit = limit;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (++ count > limit) {
+				throw new LinearLimitException();
+			}
+			return sequence.charAt(index);
+		}
+		@Override
+		public int length() {
+			return sequence.length();
+		}
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return sequence.subSequence(start, end);
+		}
+		@Override
+		public String toString() {
+			return sequence.toString();
+		}
+	}
+
+	private static final class LinearLimitException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		LinearLimitException() {
+			super(null, null, false, false);
+		}
+	}
+
+}
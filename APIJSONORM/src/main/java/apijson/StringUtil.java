@@ -279,7 +279,7 @@ public class StringUtil {
 	 * @return
 	 */
 	public static String noBlank(String s) {
-		return get(s).replaceAll("\\s", "");
+		return PatternCache.compile("\\s").matcher(get(s)).replaceAll("");
 	}
 
 	/**FIXME 用 noBlank 替代
@@ -612,32 +612,55 @@ public class StringUtil {
 			return false;
 		}
 		
-		String first = s.substring(0, 1);
-		if ("_".equals(first) == false && PATTERN_ALPHA.matcher(first).matches() == false) {
+		char first = s.charAt(0);
+		if (first != '_' && isAlpha(first) == false) {
 			return false;
 		}
 		
-		return s.length() <= 1 ? true : PATTERN_NAME.matcher(s.substring(1)).matches();
+		return isNameRest(s);
 	}
 	/**判断是否为首字母大写的代码名称
 	 * @param s
 	 * @return
 	 */
 	public static boolean isBigName(String s) {
-		if (s == null || s.isEmpty() || PATTERN_ALPHA_BIG.matcher(s.substring(0, 1)).matches() == false) {
+		if (s == null || s.isEmpty() || isBigAlpha(s.charAt(0)) == false) {
 			return false;
 		}
-		return s.length() <= 1 ? true : PATTERN_NAME.matcher(s.substring(1)).matches();
+		return isNameRest(s);
 	}
 	/**判断是否为首字母小写的代码名称
 	 * @param s
 	 * @return
 	 */
 	public static boolean isSmallName(String s) {
-		if (s == null || s.isEmpty() || PATTERN_ALPHA_SMALL.matcher(s.substring(0, 1)).matches() == false) {
+		if (s == null || s.isEmpty() || isSmallAlpha(s.charAt(0)) == false) {
 			return false;
 		}
-		return s.length() <= 1 ? true : PATTERN_NAME.matcher(s.substring(1)).matches();
+		return isNameRest(s);
+	}
+
+	// 以下和 PATTERN_ALPHA, PATTERN_ALPHA_BIG, PATTERN_ALPHA_SMALL, PATTERN_NAME 等价，
+	// isName 等对每个 key 都会调用，逐个字符判断，不用 substring 和 new Matcher
+	private static boolean isBigAlpha(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+	private static boolean isSmallAlpha(char c) {
+		return c >= 'a' && c <= 'z';
+	}
+	private static boolean isAlpha(char c) {
+		return isBigAlpha(c) || isSmallAlpha(c);
+	}
+	/**除首字符外都符合 PATTERN_NAME
+	 */
+	private static boolean isNameRest(String s) {
+		for (int i = 1; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (isAlpha(c) == false && (c < '0' || c > '9') && c != '_' && c != '.' && c != ':') {
+				return false;
+			}
+		}
+		return true;
 	}
 
 
@@ -14,6 +14,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static apijson.orm.AbstractSQLConfig.PATTERN_SCHEMA;
 
@@ -45,6 +46,53 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
 		SCRIPT_EXECUTOR_MAP = new HashMap<>();
 	}
 
+	/**
+	 * 最多缓存的函数解析模板数量，超过后淘汰任意一个，<= 0 则不缓存
+	 */
+	public static int MAX_FUNCTION_BEAN_SIZE = 2000;
+
+	// <function, 只有 function, schema, method, keys 的 FunctionBean>
+	// <isContain(praiseUserIdList,userId), { method: isContain, keys: [praiseUserIdList, userId] }>
+	private static final Map<String, FunctionBean> FUNCTION_BEAN_MAP = new ConcurrentHashMap<>();
+	private static final Map<String, FunctionBean> SQL_FUNCTION_BEAN_MAP = new ConcurrentHashMap<>();
+	// <methodName, 从 FUNCTION_MAP 对应配置中解析出的 language, version, tag, methods>，FUNCTION_MAP 重新加载后按新的配置重新解析
+	private static final Map<String, FunctionRow> FUNCTION_ROW_MAP = new ConcurrentHashMap<>();
+
+	/**Function 表中的字段，为 true 或 1 表示函数结果只由参数值决定，没有副作用，
+	 * 同一个请求内相同参数值只调用一次，MEMO_TTL > 0 时还跨请求缓存
+	 */
+	public static final String KEY_DETERMINISTIC = "deterministic";
+	/**
+	 * 确定性函数结果缓存的最大数量，单个请求内及跨请求的分别限制，按最近最少使用(LRU)淘汰，<= 0 则不缓存
+	 */
+	public static int MEMO_MAX_SIZE = 1000;
+	/**
+	 * 确定性函数结果跨请求缓存的有效时间(ms)，<= 0 则只在单个请求内缓存
+	 */
+	public static long MEMO_TTL = 0;
+
+	private static final Object MEMO_NULL = new Object();
+	private static final Object MEMO_MISS = new Object();
+	// <[parserClass, method, argValue0, argValue1...], [result, expireTime]>
+	private static final Map<List<Object>, Object[]> GLOBAL_MEMO_MAP = new LinkedHashMap<List<Object>, Object[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Object[]> eldest) {
+			return size() > MEMO_MAX_SIZE;
+		}
+	};
+
+	// <[parserClass, method, argValue0, argValue1...], result>，一般一个请求对应一个 FunctionParser
+	private final Map<List<Object>, Object> memoMap = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+			return size() > MEMO_MAX_SIZE;
+		}
+	};
+
 	private Parser<T, M, L> parser;
 	private RequestMethod method;
 	private String tag;
@@ -410,8 +458,17 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
 			throw new UnsupportedOperationException("不允许调用远程函数 " + fb.getMethod() + " !");
 		}
 
-        String language = (String) row.get("language");
-        String lang = "java".equalsIgnoreCase(language) ? null : language;
+        FunctionRow fr = FUNCTION_ROW_MAP.get(fb.getMethod());
+        if (fr == null || fr.row != row) {
+            if (fr != null) {  // FUNCTION_MAP 重新加载了，之前缓存的结果可能已经过时
+                clearMemo();
+            }
+            fr = new FunctionRow(row);
+            FUNCTION_ROW_MAP.put(fb.getMethod(), fr);
+        }
+
+        String language = fr.language;
+        String lang = fr.lang;
 
         if (ENABLE_SCRIPT_FUNCTION == false && lang != null) {
             throw new UnsupportedOperationException("language = " + language + " 不合法！AbstractFunctionParser.ENABLE_SCRIPT_FUNCTION" +
@@ -422,22 +479,34 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
 			throw new ClassNotFoundException("找不到脚本语言 " + lang + " 对应的执行引擎！请先依赖相关库并在后端 APIJSONFunctionParser<T, M, L> 中注册！");
 		}
 
-		int version = row.get("version") != null ? Integer.parseInt(row.get("version").toString()) : 0;
+		int version = fr.version;
 		if (parser.getVersion() < version) {
 			throw new UnsupportedOperationException("不允许 version = " + parser.getVersion() + " 的请求调用远程函数 " + fb.getMethod() + " ! 必须满足 version >= " + version + " !");
 		}
-		String tag = (String) row.get("tag");  // TODO 改为 tags，类似 methods 支持多个 tag。或者干脆不要？因为目前非开放请求全都只能后端指定
+		String tag = fr.tag;  // TODO 改为 tags，类似 methods 支持多个 tag。或者干脆不要？因为目前非开放请求全都只能后端指定
 		if (tag != null && tag.equals(parser.getTag()) == false) {
 			throw new UnsupportedOperationException("不允许 tag = " + parser.getTag() + " 的请求调用远程函数 " + fb.getMethod() + " ! 必须满足 tag = " + tag + " !");
 		}
-		String[] methods = StringUtil.split((String) row.get("methods"));
-		List<String> ml = methods == null || methods.length <= 0 ? null : Arrays.asList(methods);
+		String[] methods = fr.methods;
+		List<String> ml = fr.methodList;
 		if (ml != null && ml.contains(parser.getMethod().toString()) == false) {
 			throw new UnsupportedOperationException("不允许 method = " + parser.getMethod() + " 的请求调用远程函数 " + fb.getMethod() + " ! 必须满足 method 在 " + Arrays.toString(methods) + "内 !");
 		}
 
+		List<Object> memoKey = fr.deterministic && MEMO_MAX_SIZE > 0 ? getMemoKey(parser, fb, current, containRaw) : null;
+		if (memoKey != null) {
+			Object memo = parser.getMemo(memoKey);
+			if (memo != MEMO_MISS) {
+				return memo;
+			}
+		}
+
 		try {
-            return invoke(parser, fb.getMethod(), fb.getTypes(), fb.getValues(), (String) row.get("returnType"), current, SCRIPT_EXECUTOR_MAP.get(lang));
+            Object result = invoke(parser, fb.getMethod(), fb.getTypes(), fb.getValues(), fr.returnType, current, SCRIPT_EXECUTOR_MAP.get(lang));
+            if (memoKey != null) {
+                parser.putMemo(memoKey, result);
+            }
+            return result;
 		}
         catch (Exception e) {
 			if (e instanceof NoSuchMethodException) {
@@ -462,6 +531,111 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
 
 	}
 
+	/**确定性函数的缓存 key，由参数值而不是参数 key 决定
+	 * @return 参数值不能作为 key 时返回 null，不缓存
+	 */
+	private static List<Object> getMemoKey(AbstractFunctionParser<?, ?, ?> parser, FunctionBean fb
+			, Map<String, Object> current, boolean containRaw) {
+		String[] keys = fb.getKeys();
+		List<Object> memoKey = new ArrayList<>((keys == null ? 0 : keys.length) + 2);
+		memoKey.add(parser.getClass());
+		memoKey.add(fb.getMethod());
+		if (keys == null) {
+			return memoKey;
+		}
+
+		try {
+			for (String key : keys) {
+				Object v = getArgValue(current, key, containRaw);
+				// 复制为字符串，避免缓存后原对象被修改
+				memoKey.add(v instanceof Map || v instanceof Collection ? JSON.toJSONString(v) : v);
+			}
+		}
+		catch (Throwable e) {
+			Log.w(TAG, "getMemoKey  " + fb.getFunction() + " catch (Throwable e) = " + e.getMessage() + " >> return null;");
+			return null;
+		}
+		return memoKey;
+	}
+
+	/**
+	 * @param memoKey
+	 * @return 没有缓存则返回 MEMO_MISS
+	 */
+	private Object getMemo(List<Object> memoKey) {
+		Object memo;
+		synchronized (memoMap) {
+			memo = memoMap.get(memoKey);
+		}
+
+		if (memo == null && MEMO_TTL > 0) {
+			synchronized (GLOBAL_MEMO_MAP) {
+				Object[] entry = GLOBAL_MEMO_MAP.get(memoKey);
+				if (entry != null) {
+					if ((long) entry[1] > System.currentTimeMillis()) {
+						memo = entry[0];
+					} else {
+						GLOBAL_MEMO_MAP.remove(memoKey);
+					}
+				}
+			}
+
+			if (memo != null) {
+				synchronized (memoMap) {
+					memoMap.put(memoKey, memo);
+				}
+			}
+		}
+
+		return memo == null ? MEMO_MISS : (memo == MEMO_NULL ? null : copyMemo(memo));
+	}
+
+	private void putMemo(List<Object> memoKey, Object result) {
+		Object memo = result == null ? MEMO_NULL : copyMemo(result);
+		synchronized (memoMap) {
+			memoMap.put(memoKey, memo);
+		}
+
+		if (MEMO_TTL > 0) {
+			synchronized (GLOBAL_MEMO_MAP) {
+				GLOBAL_MEMO_MAP.put(memoKey, new Object[]{ memo, System.currentTimeMillis() + MEMO_TTL });
+			}
+		}
+	}
+
+	/**深拷贝 Map 和 Collection，避免缓存的结果被调用方修改后影响其它对象、请求和线程
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object copyMemo(Object value) {
+		if (value instanceof Map<?, ?>) {
+			Map<String, Object> map = (Map<String, Object>) value;
+			Map<String, Object> copy = JSON.createJSONObject();
+			for (Map.Entry<String, Object> e : map.entrySet()) {
+				copy.put(e.getKey(), copyMemo(e.getValue()));
+			}
+			return copy;
+		}
+		if (value instanceof Collection<?>) {
+			Collection<?> c = (Collection<?>) value;
+			List<Object> copy = value instanceof List<?> ? JSON.createJSONArray() : new ArrayList<>(c.size());
+			for (Object v : c) {
+				copy.add(copyMemo(v));
+			}
+			return copy;
+		}
+		return value;
+	}
+
+	/**清空跨请求缓存的确定性函数结果，例如在函数实现或依赖的数据变更后，FUNCTION_MAP 重新加载后也会自动清空
+	 */
+	public static void clearMemo() {
+		synchronized (GLOBAL_MEMO_MAP) {
+			GLOBAL_MEMO_MAP.clear();
+		}
+	}
+
 	/**反射调用
      * @param parser
      * @param methodName
@@ -497,7 +671,8 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
         }
 
 		Class<? extends AbstractFunctionParser> cls = parser.getClass();
-        Method m = cls.getMethod(methodName, parameterTypes); // 不用判空，拿不到就会抛异常
+        MethodInvoker invoker = MethodInvoker.get(cls, methodName, parameterTypes); // 不用判空，拿不到就会抛异常
+        Method m = invoker.getMethod();
 
         if (Log.DEBUG) {
             String rt = Log.DEBUG && m.getReturnType() != null ? m.getReturnType().getSimpleName() : null;
@@ -514,7 +689,7 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
             }
         }
 
-        return m.invoke(parser, args);
+        return invoker.invoke(parser, args);
 	}
 
     /**Java 调用 JavaScript 函数
@@ -584,30 +759,10 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
      * @throws Exception
      */
 	public static FunctionBean parseFunction(@NotNull String function, @NotNull Map<String, Object> request, boolean isSQLFunction, boolean containRaw) throws Exception {
-
-		int start = function.indexOf("(");
-		int end = function.lastIndexOf(")");
-		String method = (start <= 0 || end != function.length() - 1) ? null : function.substring(0, start);
-
-        int dotInd = method == null ? -1 : method.indexOf(".");
-        String schema = dotInd < 0 ? null : method.substring(0, dotInd);
-        method = dotInd < 0 ? method : method.substring(dotInd + 1);
-
-        if (StringUtil.isName(method) == false) {
-			throw new IllegalArgumentException("字符 " + method + " 不合法！函数的名称 function 不能为空且必须符合方法命名规范！"
-					+ "总体必须为 function(key0,key1,...) 这种单函数格式！"
-					+ "\nfunction必须符合 " + (isSQLFunction ? "SQL 函数/SQL 存储过程" : "Java 函数") + " 命名，key 是用于在 request 内取值的键！");
-		}
-        if (isSQLFunction != true && schema != null) { // StringUtil.isNotEmpty(schema, false)) {
-            throw new IllegalArgumentException("字符 " + schema + " 不合法！远程函数不允许指定类名！"
-                    + "且必须为 function(key0,key1,...) 这种单函数格式！"
-                    + "\nfunction必须符合 " + (isSQLFunction ? "SQL 函数/SQL 存储过程" : "Java 函数") + " 命名，key 是用于在 request 内取值的键！");
-        }
-        if (schema != null) { // StringUtil.isName(schema) == false) {
-			schema = extractSchema(schema, null);
-        }
-
-		String[] keys = StringUtil.split(function.substring(start + 1, end));
+		FunctionBean template = parseFunctionTemplate(function, isSQLFunction);
+		String schema = template.getSchema();
+		String method = template.getMethod();
+		String[] keys = template.getKeys();
 		int length = keys == null ? 0 : keys.length;
 
 		Class<?>[] types;
@@ -682,6 +837,62 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
 		return fb;
 	}
 
+	/**解析函数名、schema 及参数 key，和取到的值无关，按函数字符串缓存，避免列表中每一项都重复解析及校验
+	 * @param function
+	 * @param isSQLFunction
+	 * @return 只有 function, schema, method, keys 的 FunctionBean，不能修改
+	 * @throws Exception
+	 */
+	private static FunctionBean parseFunctionTemplate(@NotNull String function, boolean isSQLFunction) throws Exception {
+		Map<String, FunctionBean> map = isSQLFunction ? SQL_FUNCTION_BEAN_MAP : FUNCTION_BEAN_MAP;
+		FunctionBean template = MAX_FUNCTION_BEAN_SIZE > 0 ? map.get(function) : null;
+		if (template != null) {
+			return template;
+		}
+
+		int start = function.indexOf("(");
+		int end = function.lastIndexOf(")");
+		String method = (start <= 0 || end != function.length() - 1) ? null : function.substring(0, start);
+
+        int dotInd = method == null ? -1 : method.indexOf(".");
+        String schema = dotInd < 0 ? null : method.substring(0, dotInd);
+        method = dotInd < 0 ? method : method.substring(dotInd + 1);
+
+        if (StringUtil.isName(method) == false) {
+			throw new IllegalArgumentException("字符 " + method + " 不合法！函数的名称 function 不能为空且必须符合方法命名规范！"
+					+ "总体必须为 function(key0,key1,...) 这种单函数格式！"
+					+ "\nfunction必须符合 " + (isSQLFunction ? "SQL 函数/SQL 存储过程" : "Java 函数") + " 命名，key 是用于在 request 内取值的键！");
+		}
+        if (isSQLFunction != true && schema != null) { // StringUtil.isNotEmpty(schema, false)) {
+            throw new IllegalArgumentException("字符 " + schema + " 不合法！远程函数不允许指定类名！"
+                    + "且必须为 function(key0,key1,...) 这种单函数格式！"
+                    + "\nfunction必须符合 " + (isSQLFunction ? "SQL 函数/SQL 存储过程" : "Java 函数") + " 命名，key 是用于在 request 内取值的键！");
+        }
+        if (schema != null) { // StringUtil.isName(schema) == false) {
+			schema = extractSchema(schema, null);
+        }
+
+		String[] keys = StringUtil.split(function.substring(start + 1, end));
+
+		template = new FunctionBean();
+		template.setFunction(function);
+		template.setSchema(schema);
+		template.setMethod(method);
+		template.setKeys(keys);
+
+		if (MAX_FUNCTION_BEAN_SIZE > 0) {
+			if (map.size() >= MAX_FUNCTION_BEAN_SIZE) {
+				Iterator<String> iterator = map.keySet().iterator();
+				while (map.size() >= MAX_FUNCTION_BEAN_SIZE && iterator.hasNext()) {
+					iterator.next();
+					iterator.remove();
+				}
+			}
+			map.put(function, template);
+		}
+		return template;
+	}
+
 	public static void verifySchema(String sch, String table) {
 		extractSchema(sch, table);
 	}
@@ -798,6 +1009,35 @@ public abstract class AbstractFunctionParser<T, M extends Map<String, Object>, L
         return (T) current.get(keyOrValue);
     }
 
+	/**FUNCTION_MAP 中一个函数的配置，解析后缓存
+	 */
+	private static final class FunctionRow {
+		final Map<String, Object> row;
+		final String language;
+		final String lang;
+		final int version;
+		final String tag;
+		final String[] methods;
+		final List<String> methodList;
+		final String returnType;
+		final boolean deterministic;
+
+		FunctionRow(Map<String, Object> row) {
+			this.row = row;
+			this.language = (String) row.get("language");
+			this.lang = "java".equalsIgnoreCase(language) ? null : language;
+			this.version = row.get("version") != null ? Integer.parseInt(row.get("version").toString()) : 0;
+			this.tag = (String) row.get("tag");
+			this.methods = StringUtil.split((String) row.get("methods"));
+			this.methodList = methods == null || methods.length <= 0 ? null : Arrays.asList(methods);
+			this.returnType = (String) row.get("returnType");
+
+			Object d = row.get(KEY_DETERMINISTIC);
+			this.deterministic = Boolean.TRUE.equals(d) || (d instanceof Number && ((Number) d).intValue() == 1)
+					|| "true".equalsIgnoreCase(String.valueOf(d)) || "1".equals(String.valueOf(d));
+		}
+	}
+
 	public static class FunctionBean {
 		private String function;
 		private String schema;
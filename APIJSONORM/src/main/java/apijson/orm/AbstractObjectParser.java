@@ -15,6 +15,9 @@ import apijson.orm.exception.UnsupportedDataTypeException;
 import java.rmi.ServerException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static apijson.JSON.*;
 import static apijson.JSONMap.KEY_COMBINE;
@@ -33,6 +36,15 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 		implements ObjectParser<T, M, L> {
 	private static final String TAG = "AbstractObjectParser";
 
+	/**
+	 * Table[]: [{}] 批量新增/修改时，如果每一项都只有字段，则合并为批量 SQL 执行，减少数据库往返
+	 */
+	public static boolean ENABLE_BATCH_TABLE_ARRAY = true;
+	/**
+	 * []:{ Table:{}, Child:{ id@:"/Table/key" } } 数组内按主键引用主表字段的副表对象，合并为每个副表一条 id{}:[...] 查询，避免每一项都查一次
+	 */
+	public static boolean ENABLE_BATCH_ARRAY_CHILD = true;
+
 	@NotNull
 	protected AbstractParser<T, M, L> parser;
 	@Override
@@ -250,6 +262,7 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 					int index = 0;
                     // hasOtherKeyNotFun = false;
 					M viceItem = null;
+					Map<String, CompletableFuture<Object>> parallelMap = onParallelChildParse(set);
 
 					for (Entry<String, Object> entry : set) {
 						if (isBreakParse()) {
@@ -291,10 +304,14 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 								}
 								else {  // 直接解析并替换原来的，[]:{} 内必须直接解析，否则会因为丢掉count等属性，并且total@:"/[]/total"必须在[]:{} 后！
 									Object cache = index <= 0 || type != TYPE_ITEM || viceItem == null ? null : JSON.get(viceItem, key);
-									Object result = onChildParse(index, key, (M) value, cache);
+									CompletableFuture<Object> future = parallelMap == null ? null : parallelMap.get(key);
+									Object result = future != null ? getParallelResult(future) : onChildParse(index, key, (M) value, cache);
 									if (index <= 0 && type == TYPE_ITEM) {
 										M mainItem = (M) result;
 										viceItem = result == null ? null : (M) mainItem.remove(AbstractSQLExecutor.KEY_VICE_ITEM);
+										if (result != null) {
+											onArrayChildBatchParse(key, set);
+										}
 									}
 
 									response.put(key, result);
@@ -306,7 +323,7 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 								onTableArrayParse(key, (L) value);
 							}
 							else if (_method == PUT && value instanceof List<?> && (whereList == null || whereList.contains(key) == false)
-									&& StringUtil.isName(key.replaceFirst("[+-]$", ""))) {  // PUT L
+									&& StringUtil.isName(key.endsWith("+") || key.endsWith("-") ? key.substring(0, key.length() - 1) : key)) {  // PUT L
 								onPUTArrayParse(key, (L) value);
 							}
 							else {  // L 或其它 Object，直接填充
@@ -609,8 +626,10 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 					String keyPath = AbstractParser.getValuePath(type == TYPE_ITEM ? path : parentPath, "/" + key);
 					String totalPath = keyPath + "/total";
 					String infoPath = keyPath + "/info";
-					response.put(totalKey, onReferenceParse(totalPath));
-					response.put(infoKey, onReferenceParse(infoPath));
+					synchronized (response) {  // 并行解析时可能有多个线程同时写入
+						response.put(totalKey, onReferenceParse(totalPath));
+						response.put(infoKey, onReferenceParse(infoPath));
+					}
 				}
 			}
 		}
@@ -645,6 +664,302 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 	}
 
 
+	/**并行解析最外层互不依赖的对象/数组，只对 GET, HEAD 等查询请求生效，不满足条件则返回 null，按原来的顺序串行解析
+	 * 依赖关系来自 {@link RequestPlan}，被引用的对象/数组执行完后，引用方才开始执行；每个分支用单独的 SQLExecutor
+	 * @param set 当前对象内的键值对
+	 * @return key - 已执行完的结果，按 key 在请求中的顺序排列
+	 */
+	@SuppressWarnings("unchecked")
+	protected Map<String, CompletableFuture<Object>> onParallelChildParse(Set<Entry<String, Object>> set) {
+		Executor executor = parentPath != null || arrayConfig != null || isTable || isSubquery ? null : parser.getParallelExecutor();
+		RequestPlan plan = executor == null ? null : parser.getRequestPlan();
+		if (plan == null || RequestMethod.isQueryMethod(method) == false || RequestMethod.isQueryMethod(parser.getMethod()) == false) {
+			return null;
+		}
+
+		List<String> keyList = new ArrayList<>();
+		List<M> valueList = new ArrayList<>();
+		int objCount = 0;
+		int arrCount = 0;
+		for (Entry<String, Object> entry : set) {
+			Object field = entry == null ? null : entry.getKey();
+			String key = field instanceof Map ? toJSONString(field) : String.valueOf(field);
+			Object value = entry == null ? null : entry.getValue();
+			if (value == null) {
+				continue;
+			}
+			if (key.endsWith("@")) {  // key@ 可能引用后面的对象/数组，只有串行才能保证结果不变
+				return null;
+			}
+			if (value instanceof Map<?, ?> == false || key.startsWith("@") || key.endsWith("<>")) {
+				continue;
+			}
+
+			if (plan.getNode(key) == null) {
+				return null;
+			}
+			if (JSONMap.isArrayKey(key)) {
+				arrCount ++;
+			} else {
+				objCount ++;
+			}
+			keyList.add(key);
+			valueList.add((M) value);
+		}
+
+		// 数量超限的交给串行解析，按原来的顺序抛异常
+		if (keyList.size() < AbstractParser.MIN_PARALLEL_COUNT
+				|| objCount > parser.getMaxObjectCount() || arrCount > parser.getMaxArrayCount()) {
+			return null;
+		}
+
+		List<Set<Integer>> dependencyList = new ArrayList<>(keyList.size());
+		for (int i = 0; i < keyList.size(); i++) {
+			String key = keyList.get(i);
+			Set<Integer> dependencySet = new LinkedHashSet<>();
+			for (RequestPlan.Node node : plan.getNodeList()) {
+				String p = node.getPath();
+				if (p.equals(key) == false && p.startsWith(key + "/") == false) {
+					continue;
+				}
+				if (node.hasSubquery() || node.hasFunction()) {  // 子查询内的引用没有解析，远程函数可能有共享状态
+					return null;
+				}
+
+				for (String dp : node.getDependencySet()) {
+					int ind = dp.indexOf("/");
+					int d = keyList.indexOf(ind < 0 ? dp : dp.substring(0, ind));
+					if (d == i) {
+						continue;
+					}
+					if (d < 0 || d > i) {  // 串行时引用后面的对象/数组拿不到结果，并行会改变结果
+						return null;
+					}
+					dependencySet.add(d);
+				}
+			}
+			dependencyList.add(dependencySet);
+		}
+
+		Map<String, CompletableFuture<Object>> futureMap = new LinkedHashMap<>();
+		List<CompletableFuture<Object>> futureList = new ArrayList<>(keyList.size());
+		for (int i = 0; i < keyList.size(); i++) {
+			Set<Integer> dependencySet = dependencyList.get(i);
+			CompletableFuture<?>[] dependencies = new CompletableFuture<?>[dependencySet.size()];
+			int j = 0;
+			for (Integer d : dependencySet) {
+				dependencies[j ++] = futureList.get(d);
+			}
+
+			final int index = i;
+			final String key = keyList.get(i);
+			final M value = valueList.get(i);
+			// 依赖的对象/数组出错也继续执行，和串行一样最后按顺序抛出第一个异常
+			CompletableFuture<Object> future = CompletableFuture.allOf(dependencies)
+					.handle((v, e) -> (Object) null)
+					.thenApplyAsync(v -> {
+						try {
+							return parser.executeBranch(() -> onChildParse(index, key, value, null));
+						}
+						catch (Exception e) {
+							throw new CompletionException(e);
+						}
+					}, executor);
+
+			futureList.add(future);
+			futureMap.put(key, future);
+		}
+
+		try {
+			CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (Throwable e) {  // 异常在 getParallelResult 内按顺序抛出
+			Log.e(TAG, "onParallelChildParse  CompletableFuture.allOf(...).join();  catch (Throwable e) = " + e.getMessage());
+		}
+		return futureMap;
+	}
+
+	/**获取并行解析的结果，解析出错则抛出原来的异常
+	 * @param future
+	 * @return
+	 * @throws Exception
+	 */
+	protected Object getParallelResult(CompletableFuture<Object> future) throws Exception {
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof Exception) {
+				throw (Exception) t;
+			}
+			throw e;
+		}
+	}
+
+
+	private static final List<String> BATCH_CHILD_KEY_LIST = Arrays.asList(
+			KEY_ROLE, KEY_DATABASE, KEY_DATASOURCE, KEY_NAMESPACE, KEY_CATALOG, KEY_SCHEMA, KEY_COLUMN, KEY_ORDER
+	);
+
+	/**数组第 0 项的主表查询完后，把同一项内按主键引用主表字段的副表对象 Child:{ id@:"/Table/key" } 合并为每个副表一条
+	 * Child:{ id{}:[...] } 查询，结果按单个对象查询的 SQL 放入缓存，后续每一项直接从缓存取，避免 N+1 次查询。
+	 * 只合并一对一的，一对多时一次查询不能保证每个引用值都取到自己的数据。出错则忽略，由后续每一项单独查询
+	 * @param mainKey 主表 key
+	 * @param set 数组项内的键值对
+	 */
+	@SuppressWarnings("unchecked")
+	protected void onArrayChildBatchParse(String mainKey, Set<Entry<String, Object>> set) {
+		if (ENABLE_BATCH_ARRAY_CHILD == false || type != TYPE_ITEM || isSubquery || arrayConfig == null || arrayConfig.getPosition() != 0
+				|| (joinList != null && joinList.isEmpty() == false) || RequestMethod.isGetMethod(method, true) == false) {
+			return;
+		}
+
+		List<M> mainList = parser.getArrayMainCache(parentPath);
+		if (mainList == null || mainList.size() <= 1) {
+			return;
+		}
+
+		String mainPath = path + "/" + mainKey + "/";
+		boolean isAfterMain = false;
+		for (Entry<String, Object> entry : set) {
+			String key = entry == null ? null : String.valueOf(entry.getKey());
+			if (isAfterMain == false) {
+				isAfterMain = mainKey.equals(key);
+				continue;
+			}
+
+			Object value = entry.getValue();
+			if (value instanceof Map<?, ?> == false || JSONMap.isArrayKey(key) || JSONMap.isTableKey(Pair.parseEntry(key, true).getKey()) == false) {
+				continue;
+			}
+
+			try {
+				onArrayChildBatchParse(key, (M) value, mainPath, mainList);
+			}
+			catch (Exception e) {
+				Log.e(TAG, "onArrayChildBatchParse  key = " + key + "; catch (Exception e) = " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @param key 副表 key
+	 * @param child 副表对象
+	 * @param mainPath 主表路径，以 / 结尾
+	 * @param mainList 数组主表的全部数据
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	protected void onArrayChildBatchParse(String key, M child, String mainPath, List<M> mainList) throws Exception {
+		// 只有一个引用主表字段的 key@，其它都是普通字段或不影响结果的关键词
+		String refKey = null;
+		String targetKey = null;
+		for (Entry<String, Object> e : child.entrySet()) {
+			String k = e.getKey();
+			Object v = e.getValue();
+			if (k == null || v instanceof Map<?, ?> || v instanceof List<?> || k.endsWith("()")) {
+				return;
+			}
+
+			if (k.endsWith("@")) {
+				String rk = k.substring(0, k.length() - 1);
+				String targetPath = v instanceof String ? AbstractParser.getValuePath(path, (String) v) : null;
+				if (refKey != null || StringUtil.isName(rk) == false || targetPath == null || targetPath.startsWith(mainPath) == false) {
+					return;
+				}
+
+				refKey = rk;
+				targetKey = targetPath.substring(mainPath.length());
+				if (StringUtil.isName(targetKey) == false) {
+					return;
+				}
+			}
+			else if (k.startsWith("@") && BATCH_CHILD_KEY_LIST.contains(k) == false) {
+				return;
+			}
+		}
+		if (refKey == null) {
+			return;
+		}
+
+		String[] columns = StringUtil.split(getString(child, KEY_COLUMN));
+		if (columns != null && Arrays.asList(columns).contains(refKey) == false) {  // 没有这个字段就没法按值分组
+			return;
+		}
+
+		List<Object> valueList = new ArrayList<>();
+		for (M item : mainList) {
+			Object v = item == null ? null : item.get(targetKey);
+			if (v != null && valueList.contains(v) == false) {  // 引用值为 null 时不会查询
+				valueList.add(v);
+			}
+		}
+		if (valueList.size() <= 1) {
+			return;
+		}
+
+		// 和后续每一项一样解析出单个对象查询的 SQLConfig，只替换引用值来得到每一项的 SQL
+		SQLConfig<T, M, L> cc = newArrayChildConfig(key, child, refKey + "@", refKey, valueList.get(0));
+		// 不是主键则可能一对多，所有行都可能属于前面的引用值，其它值就取不到数据，反而多一次查询，并且没有 @order 时取到哪些行也不确定
+		if (cc == null || refKey.equals(cc.getIdKey()) == false) {
+			return;
+		}
+
+		SQLConfig<T, M, L> jc = newArrayChildConfig(key, child, refKey + "@", refKey + "{}", valueList);
+		if (jc == null) {
+			return;
+		}
+
+		// 按主键查询，每个值最多一条，数量为值的个数就不会截断，也和 @order 无关
+		jc.setCount(valueList.size()).setPage(0).setPosition(0);
+
+		M result = parser.executeSQL(jc, false);
+		List<M> rawList = result == null ? null : (List<M>) result.remove(AbstractSQLExecutor.KEY_RAW_LIST);
+		if (rawList == null) {
+			rawList = result == null || result.isEmpty() ? new ArrayList<>() : Arrays.asList(result);
+		}
+
+		Map<String, M> rowMap = new HashMap<>();
+		for (M row : rawList) {
+			Object v = row == null ? null : row.get(refKey);
+			if (v != null) {  // 主副表字段类型可能不同，例如 Long 和 Integer，所以按字符串匹配
+				rowMap.putIfAbsent(String.valueOf(v), row);
+			}
+		}
+
+		SQLExecutor<T, M, L> executor = parser.getSQLExecutor();
+		for (Object v : valueList) {
+			M row = rowMap.get(String.valueOf(v));
+			if (row == null) {  // 可能只是类型或格式不同没匹配上，交给后续单独查询
+				continue;
+			}
+
+			cc.putWhere(refKey, v, true);
+			List<M> list = new ArrayList<>(1);
+			list.add(row);
+			executor.putCache(cc.gainSQL(false), list, cc);
+		}
+	}
+
+	/**用副表对象的副本解析出 SQLConfig，把 refKey 替换为 key: value
+	 */
+	private SQLConfig<T, M, L> newArrayChildConfig(String name, M child, String refKey, String key, Object value) throws Exception {
+		M req = JSON.createJSONObject();
+		for (Entry<String, Object> e : child.entrySet()) {
+			if (refKey.equals(e.getKey())) {
+				req.put(key, value);
+			} else {
+				req.put(e.getKey(), e.getValue());
+			}
+		}
+
+		ObjectParser<T, M, L> op = parser.createObjectParser(req, path, null, false, true, false);
+		op = op.parse(name, false);
+		return op == null ? null : op.setSQLConfig().getSQLConfig();
+	}
+
+
 	//TODO 改用 MySQL json_add,json_remove,json_contains 等函数！不过就没有具体报错了，或许可以新增功能符，或者直接调 SQL 函数
 
 	/**PUT key:[]
@@ -768,6 +1083,70 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 
 	@Override
 	public void onTableArrayParse(String key, L valueArray) throws Exception {
+		// 不批量校验时 UNIQUE 要靠前面的项已经写入才能查出批量内的重复，所以也不能延迟到最后批量写
+		boolean batchable = ENABLE_BATCH_TABLE_ARRAY && valueArray.size() > 1 && isBatchable(valueArray)
+				&& (AbstractVerifier.ENABLE_BATCH_VERIFY || parser.isNeedVerifyContent() == false);
+		SQLExecutor<T, M, L> executor = batchable ? parser.getSQLExecutor() : null;
+		if (executor == null || executor.beginBatch() == false) {
+			onTableArrayParse(key, valueArray, null);
+			return;
+		}
+
+		try {
+			onTableArrayParse(key, valueArray, executor);
+		}
+		finally {
+			executor.endBatch();
+		}
+	}
+
+	/**合并校验 EXIST, UNIQUE 后有冲突的子项，都是冲突则一起报错，方便知道具体是哪些项
+	 * @param key
+	 * @param errorMap
+	 * @throws Exception
+	 */
+	private void throwVerifyError(String key, Map<Integer, Exception> errorMap) throws Exception {
+		StringBuilder sb = new StringBuilder("批量新增/修改失败！");
+		boolean first = true;
+		for (Entry<Integer, Exception> entry : errorMap.entrySet()) {
+			Exception e = entry.getValue();
+			if (e instanceof ConflictException == false) {
+				throw e;
+			}
+
+			sb.append(first ? "" : "；").append(key).append("/").append(entry.getKey()).append("：").append(e.getMessage());
+			first = false;
+		}
+		throw new ConflictException(sb.toString());
+	}
+
+	/**是否可以批量写，每一项都只有字段，没有 @key, key@, key() 及子对象等需要在执行后继续解析的内容
+	 * @param valueArray
+	 * @return
+	 */
+	protected boolean isBatchable(L valueArray) {
+		for (Object item : valueArray) {
+			if (item instanceof Map<?, ?> == false) {
+				return false;
+			}
+
+			for (Object k : ((Map<?, ?>) item).keySet()) {
+				if (k instanceof String == false || StringUtil.isName((String) k) == false) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**批量新增/修改
+	 * @param key
+	 * @param valueArray
+	 * @param batchExecutor 不为 null 则为批量写，execute 只收集 SQL 并返回预期的成功结果，
+	 *                      循环结束后合并执行，再按每一条的结果重新判断是否成功
+	 * @throws Exception
+	 */
+	protected void onTableArrayParse(String key, L valueArray, SQLExecutor<T, M, L> batchExecutor) throws Exception {
 		String childKey = key.substring(0, key.length() - JSONMap.KEY_ARRAY.length());
 
 		int allCount = 0;
@@ -791,8 +1170,52 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
         int firstFailIndex = -1;
         M firstFailReq = null;
         Throwable firstFailThrow = null;
+        List<Integer> batchIndexList = batchExecutor == null ? null : new ArrayList<>(valueArray.size());
+
+		// 先校验全部子项，EXIST, UNIQUE 合并查询，再逐项执行
+		List<M> verifiedList = null;
+		Map<Integer, Exception> verifyErrorMap = null;
+		if (isNeedVerifyContent && AbstractVerifier.ENABLE_BATCH_VERIFY && valueArray.size() > 1) {
+			verifiedList = new ArrayList<>(valueArray.size());
+			verifyErrorMap = new TreeMap<>();
+
+			VerifyBatch verifyBatch = new VerifyBatch();
+			AbstractVerifier.beginBatch(verifyBatch);
+			try {
+				for (int i = 0; i < valueArray.size(); i++) {
+					Object item = valueArray.get(i);
+					if (item instanceof Map<?, ?> == false) {  // 后面逐项执行时报错
+						verifiedList.add(null);
+						continue;
+					}
+
+					verifyBatch.setRow(i);
+					try {
+						verifiedList.add(parser.parseCorrectRequest(method, childKey, version, "", JSON.createJSONObject(childKey, item), maxUpdateCount, parser));
+					}
+					catch (Exception e) {
+						if (allowPartialFailed == false) {
+							throw e;
+						}
+
+						verifyBatch.remove(i);
+						verifiedList.add(null);
+						verifyErrorMap.put(i, e);
+					}
+				}
+			}
+			finally {
+				AbstractVerifier.endBatch();
+			}
+
+			Map<Integer, Exception> errorMap = verifyBatch.verify(parser);
+			if (allowPartialFailed == false && errorMap.isEmpty() == false) {
+				throwVerifyError(key, errorMap);
+			}
+			verifyErrorMap.putAll(errorMap);
+		}
+
 		for (int i = 0; i < valueArray.size(); i++) { //只要有一条失败，则抛出异常，全部失败
-			//TODO 改成一条多 VALUES 的 SQL 性能更高，报错也更会更好处理，更人性化
 			M item;
 			try {
 				item = JSON.get(valueArray, i);
@@ -811,11 +1234,21 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 
             M result = null;
             try {
-                if (isNeedVerifyContent) {
+                if (verifiedList != null) {
+                    Exception e = verifyErrorMap.get(i);
+                    if (e != null) {
+                        throw e;
+                    }
+                    req = verifiedList.get(i);
+                }
+                else if (isNeedVerifyContent) {
                     req = parser.parseCorrectRequest(method, childKey, version, "", req, maxUpdateCount, parser);
                 }
                 //parser.getMaxSQLCount() ? 可能恶意调用接口，把数据库拖死
                 result = (M) onChildParse(0, "" + i, req, null);
+                if (batchIndexList != null && result != null) {
+                    batchIndexList.add(i);
+                }
             }
             catch (Exception e) {
                 if (allowPartialFailed == false) {
@@ -855,6 +1288,47 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 			ids.add(id);
 		}
 
+		if (batchExecutor != null) {
+			List<M> results = batchExecutor.executeBatch();
+			int batchCount = batchIndexList.size();
+			if (results == null || results.size() != batchCount) {
+				throw new ServerException("服务器内部错误，批量新增/修改 " + key + ":[] 收集了 " + batchCount
+						+ " 条，但执行结果有 " + (results == null ? 0 : results.size()) + " 条！");
+			}
+
+			for (int j = 0; j < batchCount; j++) {
+				int i = batchIndexList.get(j);
+				M result = results.get(j);
+
+				Object id = ids.get(i);
+				if (id == null && result != null) {
+					id = result.get(idKey);
+					ids.set(i, id);
+				}
+
+				boolean success = JSONResponse.isSuccess(result);
+				int count = result == null ? 0 : getIntValue(result, JSONResponse.KEY_COUNT);
+				if (success && count == 1) {
+					continue;
+				}
+
+				String msg = "批量新增/修改失败！" + key + "/" + i + "：" + (success ? "成功但 count != 1 ！"
+						: (result == null ? "null" : getString(result, JSONResponse.KEY_MSG)));
+				if (allowPartialFailed == false) {
+					throw new ServerException(msg);
+				}
+
+				failedIds.add(id);
+				if (firstFailIndex < 0 || i < firstFailIndex) {
+					firstFailIndex = i;
+				}
+				if (firstFailThrow == null) {
+					firstFailThrow = new ServerException(msg);
+					firstFailReq = JSON.get(valueArray, i);
+				}
+			}
+		}
+
         int failedCount = failedIds == null ? 0 : failedIds.size();
         if (failedCount > 0 && failedCount >= allCount) {
             throw new ServerException("批量新增/修改 " + key + ":[] 中 " + allCount + " 个子项全部失败！"
@@ -967,6 +1441,9 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
 			}
 		}
 		sqlConfig.setCount(sqlConfig.getCount() <= 0 ? count : sqlConfig.getCount()).setPage(page).setPosition(position);
+		if (isArrayMainTable && arrayConfig != null) {
+			sqlConfig.setCursor(arrayConfig.getCursor());
+		}
 
 		parser.onVerifyRole(sqlConfig);
 
@@ -1161,6 +1638,20 @@ public abstract class AbstractObjectParser<T, M extends Map<String, Object>, L e
             // 提取并缓存数组主表的列表数据
             List<M> rawList = result == null ? null : (List<M>) result.remove(AbstractSQLExecutor.KEY_RAW_LIST);
 
+			if (sqlConfig.isCountOver() && result != null) {  // 移除 count(*) OVER() 查出的总数，给分页信息用
+				Object total = result.remove(AbstractSQLConfig.KEY_COUNT_OVER);
+				if (rawList != null) {
+					for (M row : rawList) {
+						if (row != null) {
+							row.remove(AbstractSQLConfig.KEY_COUNT_OVER);
+						}
+					}
+				}
+				if (total != null && parentPath != null && parentPath.contains("[]")) {
+					parser.putQueryResult(parentPath.substring(0, parentPath.lastIndexOf("[]") + 2) + "/" + JSONResponse.KEY_TOTAL, total);
+				}
+			}
+
             if (isArrayMainTable && position == 0 && rawList != null) {
 
                 isSimpleArray = (functionMap == null || functionMap.isEmpty())
@@ -8,16 +8,27 @@ package apijson.orm;
 import apijson.*;
 import apijson.orm.exception.ConflictException;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -82,6 +93,29 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 	public static int MAX_ARRAY_COUNT = 5;
 	public static int MAX_QUERY_DEPTH = 5;
 
+	/**
+	 * 并行解析最外层互不依赖的对象/数组用的线程池，为 null 则全部串行解析。JDK 21+ 可以用 Executors.newVirtualThreadPerTaskExecutor()
+	 * 只对 GET, HEAD 等查询请求生效，增删改请求需要在同一个事务内按顺序执行，仍然串行解析
+	 */
+	public static Executor PARALLEL_EXECUTOR = null;
+	/**
+	 * 最外层至少有几个对象/数组才并行解析
+	 */
+	public static int MIN_PARALLEL_COUNT = 2;
+
+	/**
+	 * 分页查总数 query:1,2 时，对不带条件的查询用表的统计信息估算总数，info 中返回 approximate:true
+	 */
+	public static boolean ENABLE_APPROXIMATE_COUNT = false;
+	/**
+	 * 估算的总数至少为多少才用，更小的表直接准确查询
+	 */
+	public static long APPROXIMATE_COUNT_MIN = 1000000;
+
+	public Executor getParallelExecutor() {
+		return PARALLEL_EXECUTOR;
+	}
+
 	public boolean isStartFrom1() {
 		return IS_START_FROM_1;
 	}
@@ -161,7 +195,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 	/**警告信息
 	 * Map<"Reference", "引用赋值获取路径 /Comment/userId 对应的值为 null！">
 	 */
-	protected Map<String, String> warnMap = new LinkedHashMap<>();
+	protected Map<String, String> warnMap = Collections.synchronizedMap(new LinkedHashMap<>());
 	public String getWarn(String type) {
 		return warnMap == null ? null : warnMap.get(type);
 	}
@@ -176,7 +210,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 	}
 	public AbstractParser<T, M, L> putWarn(String type, String warn) {
 		if (warnMap == null) {
-			warnMap = new LinkedHashMap<>();
+			warnMap = Collections.synchronizedMap(new LinkedHashMap<>());
 		}
 		warnMap.put(type, warn);
 		return this;
@@ -377,6 +411,15 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 	public String getGlobalCache() {
 		return globalCache;
 	}
+	protected Boolean globalPrimary;
+	public AbstractParser<T, M, L> setGlobalPrimary(Boolean globalPrimary) {
+		this.globalPrimary = globalPrimary;
+		return this;
+	}
+	@Override
+	public Boolean getGlobalPrimary() {
+		return globalPrimary;
+	}
 
 	@Override
 	public AbstractParser<T, M, L> setNeedVerify(boolean needVerify) {
@@ -421,14 +464,83 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 	protected Verifier<T, M, L> verifier;
 	protected Map<String, Object> queryResultMap;//path-result
 
+	protected RequestPlan requestPlan;
+	/**
+	 * @return 当前请求的节点及引用依赖，只在并行解析 GET, HEAD 等查询请求时才有，否则为 null
+	 */
+	public RequestPlan getRequestPlan() {
+		return requestPlan;
+	}
+
+	/**
+	 * 当前线程执行的并行分支，每个分支单独用一个 SQLExecutor(连接)
+	 */
+	private final ThreadLocal<Branch<T, M, L>> branchLocal = new ThreadLocal<>();
+	/**
+	 * 并行分支已执行的 SQL 数量，和 sqlExecutor 内的加起来才是总数，用来限制 MAX_SQL_COUNT
+	 */
+	private final AtomicInteger branchSQLCount = new AtomicInteger();
+	private final AtomicLong branchSQLDuration = new AtomicLong();
+
 	@Override
 	public SQLExecutor<T, M, L> getSQLExecutor() {
+		Branch<T, M, L> branch = branchLocal.get();
+		if (branch != null) {
+			branch.executor.setParser(this);
+			return branch.executor;
+		}
+
 		if (sqlExecutor == null) {
 			sqlExecutor = createSQLExecutor();
 		}
 		sqlExecutor.setParser(this);
 		return sqlExecutor;
 	}
+	/**在当前线程用单独的 SQLExecutor 执行并行分支，执行完后累加 SQL 数量和耗时，并关闭 SQLExecutor
+	 * @param callable
+	 * @return
+	 * @throws Exception
+	 */
+	public <V> V executeBranch(Callable<V> callable) throws Exception {
+		Branch<T, M, L> branch = new Branch<>(createSQLExecutor());
+		branchLocal.set(branch);
+		try {
+			return callable.call();
+		}
+		finally {
+			branchLocal.remove();
+
+			SQLExecutor<T, M, L> executor = branch.executor;
+			branchSQLCount.addAndGet(executor.getExecutedSQLCount() - branch.reportedCount);
+			branchSQLDuration.addAndGet(executor.getExecutedSQLDuration() + executor.getSqlResultDuration());
+			executor.close();
+		}
+	}
+
+	/**
+	 * @return 当前请求已执行的 SQL 总数，包括各个并行分支内执行的
+	 */
+	public int getExecutedSQLCount() {
+		Branch<T, M, L> branch = branchLocal.get();
+		if (branch != null) {
+			int count = branch.executor.getExecutedSQLCount();
+			branchSQLCount.addAndGet(count - branch.reportedCount);
+			branch.reportedCount = count;
+		}
+
+		SQLExecutor<T, M, L> executor = sqlExecutor;
+		return (executor == null ? 0 : executor.getExecutedSQLCount()) + branchSQLCount.get();
+	}
+
+	private static class Branch<T, M extends Map<String, Object>, L extends List<Object>> {
+		final SQLExecutor<T, M, L> executor;
+		int reportedCount;
+
+		Branch(SQLExecutor<T, M, L> executor) {
+			this.executor = executor;
+		}
+	}
+
 	@Override
 	public Verifier<T, M, L> getVerifier() {
 		if (verifier == null) {
@@ -471,6 +583,58 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		return JSON.toJSONString(parseResponse(request));
 	}
 
+	// 流式输出时不深拷贝格式化后的响应，而是在写的同时格式化 key
+	private boolean isStreamWrite;
+	// 需要格式化的最外层 key，不包括格式化之后才加的 time, sql:generate|cache|execute|maxExecute 等
+	private Set<String> writeFormatKeySet;
+
+	/**解析请求json并把结果直接写到 writer，不用先转为完整的 String，@format:true 时在写的同时格式化 key
+	 * @param request
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void parse(String request, @NotNull Writer writer) throws IOException {
+		isStreamWrite = true;
+		M response;
+		try {
+			response = parseResponse(request);
+		}
+		finally {
+			isStreamWrite = false;
+		}
+		write(response, writer);
+	}
+	/**解析请求json并把结果直接写到 writer，不用先转为完整的 String，@format:true 时在写的同时格式化 key
+	 * @param request
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void parse(M request, @NotNull Writer writer) throws IOException {
+		isStreamWrite = true;
+		M response;
+		try {
+			response = parseResponse(request);
+		}
+		finally {
+			isStreamWrite = false;
+		}
+		write(response, writer);
+	}
+	/**解析请求json并把结果以 UTF-8 编码直接写到 out
+	 * @param request
+	 * @param out
+	 * @throws IOException
+	 */
+	public void parse(M request, @NotNull OutputStream out) throws IOException {
+		parse(request, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+	}
+
+	private void write(M response, Writer writer) throws IOException {
+		Set<String> keySet = writeFormatKeySet;
+		writeFormatKeySet = null;
+		new JSONWriter(writer).write(response, keySet != null, keySet);
+	}
+
 	/**解析请求json并获取对应结果
 	 * @param request 先parseRequest中URLDecoder.decode(request, UTF_8);再parseResponse(getCorrectRequest(...))
 	 * @return parseResponse(requestObject);
@@ -561,6 +725,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 			setGlobalExplain(getBoolean(requestObject, KEY_EXPLAIN));
 			setGlobalCache(getString(requestObject, KEY_CACHE));
+			setGlobalPrimary(getBoolean(requestObject, KEY_PRIMARY));
 
 			requestObject.remove(KEY_DATABASE);
 			requestObject.remove(KEY_DATASOURCE);
@@ -570,13 +735,14 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 			requestObject.remove(KEY_EXPLAIN);
 			requestObject.remove(KEY_CACHE);
+			requestObject.remove(KEY_PRIMARY);
 		} catch (Exception e) {
 			return extendErrorResult(requestObject, e, requestMethod, getRequestURL(), isRoot);
 		}
 
 		final String requestString = JSON.toJSONString(request);//request传进去解析后已经变了
 
-		queryResultMap = new HashMap<String, Object>();
+		queryResultMap = Collections.synchronizedMap(new HashMap<String, Object>());  // 并行解析时多个线程读写
 
 		Exception error = null;
 		sqlExecutor = getSQLExecutor();
@@ -584,6 +750,11 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		try {
 			queryDepth = 0;
 			executedSQLDuration = 0;
+			branchSQLCount.set(0);
+			branchSQLDuration.set(0);
+			// 只有并行解析用到，没开启并行或者不是查询请求时不用遍历请求，避免白白增加开销
+			requestPlan = getParallelExecutor() != null && RequestMethod.isQueryMethod(requestMethod)
+					? RequestPlan.compile(request) : null;
 
 			requestObject = onObjectParse(request, null, null, null, false, null);
 
@@ -607,7 +778,9 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		requestObject.remove(KEY_CATALOG);
 		requestObject.remove(KEY_SCHEMA);
 
-		M res = (globalFormat != null && globalFormat) && JSONResponse.isSuccess(requestObject) ? JSONResponse.format(requestObject) : requestObject;
+		boolean isFormat = (globalFormat != null && globalFormat) && JSONResponse.isSuccess(requestObject);
+		writeFormatKeySet = isFormat && isStreamWrite ? new HashSet<>(requestObject.keySet()) : null;
+		M res = isFormat && isStreamWrite == false ? JSONResponse.format(requestObject) : requestObject;
 
 		long endTime = System.currentTimeMillis();
 		long duration = endTime - startTime;
@@ -615,10 +788,10 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		res.putIfAbsent("time", endTime);
 		if (Log.DEBUG) {
 			sqlExecutor = getSQLExecutor();
-			res.put("sql:generate|cache|execute|maxExecute", sqlExecutor.getGeneratedSQLCount() + "|" + sqlExecutor.getCachedSQLCount() + "|" + sqlExecutor.getExecutedSQLCount() + "|" + getMaxSQLCount());
+			res.put("sql:generate|cache|execute|maxExecute", sqlExecutor.getGeneratedSQLCount() + "|" + sqlExecutor.getCachedSQLCount() + "|" + getExecutedSQLCount() + "|" + getMaxSQLCount());
 			res.put("depth:count|max", queryDepth + "|" + getMaxQueryDepth());
 
-			executedSQLDuration += sqlExecutor.getExecutedSQLDuration() + sqlExecutor.getSqlResultDuration();
+			executedSQLDuration += sqlExecutor.getExecutedSQLDuration() + sqlExecutor.getSqlResultDuration() + branchSQLDuration.get();
 			long parseDuration = duration - executedSQLDuration;
 			res.put("time:start|duration|end|parse|sql", startTime + "|" + duration + "|" + endTime + "|" + parseDuration + "|" + executedSQLDuration);
 
@@ -1133,7 +1306,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 
 
-	protected Map<String, ObjectParser<T, M, L>> arrayObjectParserCacheMap = new HashMap<>();
+	protected Map<String, ObjectParser<T, M, L>> arrayObjectParserCacheMap = new ConcurrentHashMap<>();
 
 	//	protected SQLConfig<T, M, L> itemConfig;
 	/**获取单个对象，该对象处于parentObject内
@@ -1167,8 +1340,8 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 			if (queryDepth < d) {
 				queryDepth = d;
 				int maxQueryDepth = getMaxQueryDepth();
-				if (queryDepth > maxQueryDepth) {
-					throw new IllegalArgumentException(parentPath + "/" + name + ":{} 的深度(或者说层级) 为 " + queryDepth + " 已超限，必须在 1-" + maxQueryDepth + " 内 !");
+				if (d > maxQueryDepth) {
+					throw new IllegalArgumentException(parentPath + "/" + name + ":{} 的深度(或者说层级) 为 " + d + " 已超限，必须在 1-" + maxQueryDepth + " 内 !");
 				}
 			}
 		}
@@ -1204,20 +1377,53 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 			}
 			else {//Array Item Child
 				int query = arrayConfig.getQuery();
+				boolean isCountOver = false;
 
 				//total 这里不能用arrayConfig.getType()，因为在createObjectParser.onChildParse传到onObjectParse时已被改掉
 				if (type == SQLConfig.TYPE_ITEM_CHILD_0 && query != apijson.JSONRequest.QUERY_TABLE && position == 0) {
 
 					//TODO 应在这里判断 @column 中是否有聚合函数，而不是 AbstractSQLConfig.getColumnString
 
-					Map<String, Object> rp;
+					Map<String, Object> rp = null;
+					boolean isApproximate = false;
 					Boolean compat = arrayConfig.getCompat();
-					if (compat != null && compat) {
+
+					// 查总数和列表，用 count(*) OVER() 在主查询中同时查出总数，少查一次
+					if (query == apijson.JSONRequest.QUERY_ALL && (compat == null || compat == false)) {
+						SQLConfig<T, M, L> cfg = op.setSQLConfig(arrayConfig.getCount(), arrayConfig.getPage(), position).getSQLConfig();
+						if (cfg != null && cfg.isCountOverEnable()) {
+							isCountOver = true;
+							cfg.setCountOver(true);
+							try {
+								response = op.executeSQL().response();
+							}
+							finally {
+								cfg.setCountOver(false);
+							}
+
+							int index = parentPath.lastIndexOf("]/");
+							Object total = index < 0 ? null : queryResultMap.get(parentPath.substring(0, index) + "]/" + JSONResponse.KEY_TOTAL);
+							if (total instanceof Number) {
+								rp = JSON.createJSONObject(JSONResponse.KEY_COUNT, ((Number) total).longValue());
+							}
+							else if (arrayConfig.getPage() <= 0) {  // 第一页都没有数据
+								rp = JSON.createJSONObject(JSONResponse.KEY_COUNT, 0);
+							}
+							// 超出最后一页查不到数据，也就查不到总数，下面再单独查
+						}
+					}
+
+					if (rp != null) {
+						// 已经用 count(*) OVER() 查到
+					}
+					else if (compat != null && compat) {
 						// 解决对聚合函数字段通过 query:2 分页查总数返回值错误
 						// 这里可能改变了内部的一些数据，下方通过 arrayConfig 还原
 						SQLConfig<T, M, L> cfg = op.setSQLConfig(0, 0, 0).getSQLConfig();
 						boolean isExplain = cfg.isExplain();
 						cfg.setExplain(false);
+						String cursor = cfg.getCursor();
+						cfg.setCursor(null);  // 总数不受游标影响
 
 						Subquery subqy = new Subquery();
 						subqy.setFrom(cfg.getTable());
@@ -1230,11 +1436,22 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 						rp = executeSQL(countSQLCfg, false);
 
 						cfg.setExplain(isExplain);
+						cfg.setCursor(cursor);
 					}
 					else {
 						// 对聚合函数字段通过 query:2 分页查总数返回值错误
 						RequestMethod method = op.getMethod();
-						rp = op.setMethod(RequestMethod.HEAD).setSQLConfig().executeSQL().getSQLResponse();
+						op.setMethod(RequestMethod.HEAD).setSQLConfig();
+
+						// 超大的表不带条件查总数很慢，可以用表的统计信息估算
+						Long approximateCount = getApproximateCount(op.getSQLConfig());
+						if (approximateCount != null) {
+							isApproximate = true;
+							rp = JSON.createJSONObject(JSONResponse.KEY_COUNT, approximateCount);
+						}
+						else {
+							rp = op.executeSQL().getSQLResponse();
+						}
 						op.setMethod(method);
 					}
 
@@ -1271,10 +1488,13 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 							pagination.put(JSONResponse.KEY_MORE, page < max);
 							pagination.put(JSONResponse.KEY_FIRST, page == min);
 							pagination.put(JSONResponse.KEY_LAST, page == max);
+							if (isApproximate) {
+								pagination.put(JSONResponse.KEY_APPROXIMATE, true);
+							}
 
 							putQueryResult(pathPrefix + JSONResponse.KEY_INFO, pagination);
 
-							if (total <= count*(page - min)) {
+							if (isCountOver == false && total <= count*(page - min)) {
 								query = apijson.JSONRequest.QUERY_TOTAL;//数量不够了，不再往后查询
 							}
 						}
@@ -1284,7 +1504,10 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 				}
 
 				//Table
-				if (query == apijson.JSONRequest.QUERY_TOTAL) {
+				if (isCountOver) {
+					// 已经和总数一起查过
+				}
+				else if (query == apijson.JSONRequest.QUERY_TOTAL) {
 					response = null;//不再往后查询
 				} else {
 					response = op
@@ -1342,6 +1565,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		final Integer count = getInteger(request, apijson.JSONRequest.KEY_COUNT); //TODO 如果不想用默认数量可以改成 getIntValue(apijson.JSONRequest.KEY_COUNT);
 		final Integer page = getInteger(request, apijson.JSONRequest.KEY_PAGE);
 		final Object join = request.get(apijson.JSONRequest.KEY_JOIN);
+		final Object cursor = request.get(apijson.JSONRequest.KEY_CURSOR);
 
 		int query2;
 		if (query == null) {
@@ -1374,6 +1598,28 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 			throw new IllegalArgumentException(path + "/" + apijson.JSONRequest.KEY_PAGE + ":value 中 value 的值不合法！必须在 " + minPage + "-" + maxPage + " 内 !");
 		}
 
+		// cursor: true 或 "" 为游标分页第一页，之后传上一页 info 中返回的 cursor
+		String cursor2;
+		if (cursor == null || Boolean.FALSE.equals(cursor)) {
+			cursor2 = null;
+		}
+		else if (isSubquery) {
+			throw new UnsupportedOperationException(path + "/" + apijson.JSONRequest.KEY_CURSOR + ":value 不合法！子查询不支持游标分页！");
+		}
+		else if (Boolean.TRUE.equals(cursor)) {
+			cursor2 = "";
+		}
+		else if (cursor instanceof String) {
+			cursor2 = (String) cursor;
+		}
+		else {
+			throw new IllegalArgumentException(path + "/" + apijson.JSONRequest.KEY_CURSOR + ":value 中 value 的类型不合法！只能是 Boolean 或 String！");
+		}
+		if (cursor2 != null && page2 != 0) {
+			throw new IllegalArgumentException(path + "/" + apijson.JSONRequest.KEY_PAGE + ":value 不合法！游标分页不能传 "
+					+ apijson.JSONRequest.KEY_PAGE + "，只能用上一页返回的 " + apijson.JSONRequest.KEY_CURSOR + " 查询下一页！");
+		}
+
 		//不用total限制数量了，只用中断机制，total只在query = 1,2的时候才获取
 		int count2 = isSubquery || count != null ? (count == null ? 0 : count) : getDefaultQueryCount();
 		int max = isSubquery ? count2 : getMaxQueryCount();
@@ -1387,7 +1633,8 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		request.remove(apijson.JSONRequest.KEY_COUNT);
 		request.remove(apijson.JSONRequest.KEY_PAGE);
 		request.remove(apijson.JSONRequest.KEY_JOIN);
-		Log.d(TAG, "onArrayParse  query = " + query + "; count = " + count + "; page = " + page + "; join = " + join);
+		request.remove(apijson.JSONRequest.KEY_CURSOR);
+		Log.d(TAG, "onArrayParse  query = " + query + "; count = " + count + "; page = " + page + "; join = " + join + "; cursor = " + cursor);
 
 		if (request.isEmpty()) { // 如果条件成立，说明所有的 parentPath/name:request 中request都无效！！！ 后续都不执行，没必要还原数组关键词浪费性能
 			Log.e(TAG, "onArrayParse  request.isEmpty() >> return null;");
@@ -1414,6 +1661,11 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 				arrTableKey = childKeys[0];
 			}
 
+			if (cursor2 != null && childKeys != null && arrTableKey == null) {
+				throw new UnsupportedOperationException(path + "/" + apijson.JSONRequest.KEY_CURSOR + ":value 不合法！"
+						+ "游标分页需要取最后一条主表记录，不支持 Table-key[]:{} 这种提取字段值的数组！");
+			}
+
 
 			//Table<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
 
@@ -1424,6 +1676,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 					.setPage(page2)
 					.setQuery(query2)
 					.setCompat(compat)
+					.setCursor(cursor2)
 					.setTable(arrTableKey)
 					.setJoinList(joinList);
 
@@ -1467,6 +1720,10 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 			//Table>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
 
+			if (cursor2 != null) {
+				onCursorParse(request, path, arrTableKey, response, size);
+			}
+
 
 			/*
 			 * 支持引用取值后的数组
@@ -1503,6 +1760,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 			request.put(apijson.JSONRequest.KEY_COUNT, count);
 			request.put(apijson.JSONRequest.KEY_PAGE, page);
 			request.put(apijson.JSONRequest.KEY_JOIN, join);
+			request.put(apijson.JSONRequest.KEY_CURSOR, cursor);
 		}
 
 		if (Log.DEBUG) {
@@ -1513,6 +1771,64 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 
 
+	/**游标分页，用最后一条主表记录生成下一页的游标，放到 path/info 中，和 query:2 的分页信息合并
+	 * @param request
+	 * @param path
+	 * @param arrTableKey
+	 * @param response
+	 * @param size
+	 */
+	protected void onCursorParse(M request, String path, String arrTableKey, L response, int size) {
+		ObjectParser<T, M, L> op = arrayObjectParserCacheMap.get(path);
+		SQLConfig<T, M, L> config = op == null ? null : op.getSQLConfig();
+		if (config == null) {
+			return;
+		}
+
+		Object last = response == null || response.isEmpty() ? null : response.get(response.size() - 1);
+		if (last instanceof Map<?, ?> && arrTableKey == null) {  // []:{ Table:{}, ... } 中第一个 Table:{} 是主表
+			String mainKey = null;
+			for (Entry<String, Object> entry : request.entrySet()) {
+				if (entry.getValue() instanceof Map<?, ?>) {
+					mainKey = entry.getKey();
+					break;
+				}
+			}
+			last = mainKey == null ? null : ((Map<?, ?>) last).get(mainKey);
+		}
+
+		// 不足一页说明已经到最后了
+		boolean more = last instanceof Map<?, ?> && response.size() >= size;
+		@SuppressWarnings("unchecked")
+		String next = more ? KeysetCursor.parse(config.getOrder(), config.getIdKey()).encode((Map<String, Object>) last) : null;
+
+		String infoPath = path + "/" + JSONResponse.KEY_INFO;
+		Object info = queryResultMap.get(infoPath);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> pagination = info instanceof Map<?, ?> ? (Map<String, Object>) info : JSON.createJSONObject();
+		pagination.put(apijson.JSONRequest.KEY_COUNT, size);
+		pagination.put(JSONResponse.KEY_MORE, more);
+		pagination.put(JSONResponse.KEY_CURSOR, next);
+		putQueryResult(infoPath, pagination);
+	}
+
+
+	/**超大的表不带条件查总数时，用表的统计信息估算
+	 * @param config HEAD 查总数的 SQLConfig
+	 * @return 没开启、不支持或者估算值小于 APPROXIMATE_COUNT_MIN 时返回 null，需要准确查询
+	 * @throws Exception
+	 */
+	protected Long getApproximateCount(SQLConfig<T, M, L> config) throws Exception {
+		if (ENABLE_APPROXIMATE_COUNT == false || config == null) {
+			return null;
+		}
+
+		config.setParser(this);
+		Long count = getSQLExecutor().executeApproximateCount(config);
+		return count == null || count < APPROXIMATE_COUNT_MIN ? null : count;
+	}
+
+
 	private static final List<String> JOIN_COPY_KEY_LIST;
 	static {  // TODO 不全
 		JOIN_COPY_KEY_LIST = new ArrayList<String>();
@@ -2035,20 +2351,22 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		//取出key被valuePath包含的result，再从里面获取key对应的value
 		Object parent = null;
 		String[] keys = null;
-		for (Entry<String, Object> entry : queryResultMap.entrySet()){
-			String path = entry.getKey();
-			if (valuePath.startsWith(path + "/")) {
-				try {
-					parent = entry.getValue();
-				} catch (Exception e) {
-					Log.e(TAG, "getValueByPath  try { parent = (Map<String>) queryResultMap.get(path); } catch { "
-							+ "\n parent not instanceof Map<String>!");
-					parent = null;
-				}
-				if (parent != null) {
-					keys = StringUtil.splitPath(valuePath.substring(path.length()));
+		synchronized (queryResultMap) {  // 并行解析时其它线程可能同时 put
+			for (Entry<String, Object> entry : queryResultMap.entrySet()){
+				String path = entry.getKey();
+				if (valuePath.startsWith(path + "/")) {
+					try {
+						parent = entry.getValue();
+					} catch (Exception e) {
+						Log.e(TAG, "getValueByPath  try { parent = (Map<String>) queryResultMap.get(path); } catch { "
+								+ "\n parent not instanceof Map<String>!");
+						parent = null;
+					}
+					if (parent != null) {
+						keys = StringUtil.splitPath(valuePath.substring(path.length()));
+					}
+					break;
 				}
-				break;
 			}
 		}
 
@@ -2080,7 +2398,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 
 	public static final String KEY_SQL = "sql";
 
-	protected Map<String, List<M>> arrayMainCacheMap = new HashMap<>();
+	protected Map<String, List<M>> arrayMainCacheMap = Collections.synchronizedMap(new HashMap<>());
 	public void putArrayMainCache(String arrayPath, List<M> mainTableDataList) {
 		arrayMainCacheMap.put(arrayPath, mainTableDataList);
 	}
@@ -2159,7 +2477,7 @@ public abstract class AbstractParser<T, M extends Map<String, Object>, L extends
 		finally {
 			if (config.getPosition() == 0 && config.limitSQLCount()) {
 				int maxSQLCount = getMaxSQLCount();
-				int sqlCount = getSQLExecutor().getExecutedSQLCount();
+				int sqlCount = getExecutedSQLCount();
 				Log.d(TAG, "<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< \n\n\n 已执行 " + sqlCount + "/" + maxSQLCount + " 条 SQL \n\n\n >>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
 				if (sqlCount > maxSQLCount) {
 					throw new IllegalArgumentException("截至 " + config.getTable() + " 已执行 " + sqlCount + " 条 SQL，数量已超限，必须在 0-" + maxSQLCount + " 内 !");
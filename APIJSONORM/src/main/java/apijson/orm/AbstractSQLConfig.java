@@ -13,6 +13,7 @@ import apijson.orm.model.*;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static apijson.JSON.getBoolean;
@@ -44,6 +45,27 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	 */
 	public static boolean ENABLE_WITH_AS = false;
 
+	/**
+	 * 开启在分页查总数 query:2 时(在支持窗口函数的数据库及版本)用 count(*) OVER() 在主查询中同时查出总数，少查一次
+	 */
+	public static boolean ENABLE_COUNT_OVER = false;
+	/**
+	 * count(*) OVER() 查出的总数的字段别名，会在返回前从每一行移除
+	 */
+	public static final String KEY_COUNT_OVER = "@total";
+
+	/**
+	 * 缓存生成的 SQL，直到 set, put 等方法修改了条件、字段等，同一个对象在缓存 key、预编译、移除缓存等多处取 SQL 时不用重复生成。
+	 * 直接修改 getWhere(), getColumn() 等返回的 Map, List 后需要调用 clearSQLCache
+	 */
+	public static boolean ENABLE_SQL_CACHE = true;
+
+	/**
+	 * 表名 - 分表规则，例如 SHARD_RULE_MAP.put("Comment", ShardRule.hash("Comment", "momentId", 4));
+	 * 条件里没有分片键的查询会查全部分片再合并结果，子查询及 JOIN 副表不分片
+	 */
+	public static Map<String, ShardRule> SHARD_RULE_MAP = new ConcurrentHashMap<>();
+
 	/**
 	 * 对指定的方法，忽略空字符串，不作为 GET 条件，PUT 值等。可取值 new RequestMethod[]{ RequestMethod.GET, RequestMethod.POST ... }
 	 */
@@ -837,6 +859,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setVersion(int version) {
+		clearSQLCache();
 		this.version = version;
 		return this;
 	}
@@ -851,6 +874,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setTag(String tag) {
+		clearSQLCache();
 		this.tag = tag;
 		return this;
 	}
@@ -939,6 +963,9 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	private int position; //Table在[]中的位置
 	private int query; //apijson.JSONRequest.QUERY
 	private Boolean compat; //apijson.JSONMap.compat  query total
+	private String cursor; //apijson.JSONRequest.KEY_CURSOR 游标分页
+	private boolean countOver; //count(*) OVER() 查总数
+	private String shard; //分表的物理表
 	private int type; //ObjectParser.type
 	private int cache;
 	private boolean explain;
@@ -950,6 +977,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	private String procedure;
 
 	public AbstractSQLConfig<T, M, L> setProcedure(String procedure) {
+		clearSQLCache();
 		this.procedure = procedure;
 		return this;
 	}
@@ -980,6 +1008,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setMethod(RequestMethod method) {
+		clearSQLCache();
 		this.method = method;
 		return this;
 	}
@@ -998,6 +1027,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setMain(boolean main) {
+		clearSQLCache();
 		this.main = main;
 		return this;
 	}
@@ -1009,6 +1039,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setId(Object id) {
+		clearSQLCache();
 		this.id = id;
 		return this;
 	}
@@ -1019,6 +1050,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setIdIn(Object idIn) {
+		clearSQLCache();
 		this.idIn = idIn;
 		return this;
 	}
@@ -1030,6 +1062,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setUserId(Object userId) {
+		clearSQLCache();
 		this.userId = userId;
 		return this;
 	}
@@ -1040,6 +1073,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setUserIdIn(Object userIdIn) {
+		clearSQLCache();
 		this.userIdIn = userIdIn;
 		return this;
 	}
@@ -1051,6 +1085,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setRole(String role) {
+		clearSQLCache();
 		this.role = role;
 		return this;
 	}
@@ -1061,6 +1096,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setDistinct(boolean distinct) {
+		clearSQLCache();
 		this.distinct = distinct;
 		return this;
 	}
@@ -1071,6 +1107,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setDatabase(String database) {
+		clearSQLCache();
 		this.database = database;
 		return this;
 	}
@@ -1403,6 +1440,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 	@Override
 	public AbstractSQLConfig<T, M, L> setNamespace(String namespace) {
+		clearSQLCache();
 		this.namespace = namespace;
 		return this;
 	}
@@ -1421,6 +1459,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 	@Override
 	public AbstractSQLConfig<T, M, L> setCatalog(String catalog) {
+		clearSQLCache();
 		this.catalog = catalog;
 		return this;
 	}
@@ -1458,6 +1497,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 	@Override
 	public AbstractSQLConfig<T, M, L> setSchema(String schema) {
+		clearSQLCache();
 		if (schema != null) {
 			AbstractFunctionParser.verifySchema(schema, getTable());
 		}
@@ -1471,6 +1511,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setDatasource(String datasource) {
+		clearSQLCache();
 		this.datasource = datasource;
 		return this;
 	}
@@ -1491,6 +1532,11 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	public String gainSQLTable() {
 		// 如果要强制小写，则可在子类重写这个方法再 toLowerCase
 		// return DATABASE_POSTGRESQL.equals(getDatabase()) ? t.toLowerCase() : t;
+		String shard = getShard();
+		if (StringUtil.isNotEmpty(shard, true)) {
+			return shard;
+		}
+
 		String ot = getTable();
 		String nt = TABLE_KEY_MAP.get(ot);
 		return StringUtil.isEmpty(nt) ? ot : nt;
@@ -1513,6 +1559,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setTable(String table) { //Table已经在Parser中校验，所以这里不用防SQL注入
+		clearSQLCache();
 		this.table = table;
 		return this;
 	}
@@ -1527,6 +1574,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setAlias(String alias) {
+		clearSQLCache();
 		this.alias = alias;
 		return this;
 	}
@@ -1544,10 +1592,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return group;
 	}
 	public AbstractSQLConfig<T, M, L> setGroup(String... keys) {
+		clearSQLCache();
 		return setGroup(StringUtil.get(keys));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setGroup(String group) {
+		clearSQLCache();
 		this.group = group;
 		return this;
 	}
@@ -1624,6 +1674,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setHavingCombine(String havingCombine) {
+		clearSQLCache();
 		this.havingCombine = havingCombine;
 		return this;
 	}
@@ -1634,10 +1685,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setHaving(Map<String, Object> having) {
+		clearSQLCache();
 		this.having = having;
 		return this;
 	}
 	public AbstractSQLConfig<T, M, L> setHaving(String... conditions) {
+		clearSQLCache();
 		return setHaving(StringUtil.get(conditions));
 	}
 
@@ -1751,10 +1804,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return sample;
 	}
 	public AbstractSQLConfig<T, M, L> setSample(String... conditions) {
+		clearSQLCache();
 		return setSample(StringUtil.get(conditions));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setSample(String sample) {
+		clearSQLCache();
 		this.sample = sample;
 		return this;
 	}
@@ -1821,10 +1876,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return latest;
 	}
 	public AbstractSQLConfig<T, M, L> setLatest(String... conditions) {
+		clearSQLCache();
 		return setLatest(StringUtil.get(conditions));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setLatest(String latest) {
+		clearSQLCache();
 		this.latest = latest;
 		return this;
 	}
@@ -1886,10 +1943,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return partition;
 	}
 	public AbstractSQLConfig<T, M, L> setPartition(String... conditions) {
+		clearSQLCache();
 		return setPartition(StringUtil.get(conditions));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setPartition(String partition) {
+		clearSQLCache();
 		this.partition = partition;
 		return this;
 	}
@@ -1951,10 +2010,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return fill;
 	}
 	public AbstractSQLConfig<T, M, L> setFill(String... conditions) {
+		clearSQLCache();
 		return setFill(StringUtil.get(conditions));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setFill(String fill) {
+		clearSQLCache();
 		this.fill = fill;
 		return this;
 	}
@@ -2024,10 +2085,12 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return order;
 	}
 	public AbstractSQLConfig<T, M, L> setOrder(String... conditions) {
+		clearSQLCache();
 		return setOrder(StringUtil.get(conditions));
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setOrder(String order) {
+		clearSQLCache();
 		this.order = order;
 		return this;
 	}
@@ -2061,7 +2124,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		}
 
 
-		String order = StringUtil.trim(getOrder());
+		String order = getCursor() == null ? StringUtil.trim(getOrder()) : KeysetCursor.parse(getOrder(), getIdKey()).getOrder();
 		// SELECT * FROM sys.Moment ORDER BY userId ASC, rand();   前面的 userId ASC 和后面的 rand() 都有效
 		//		if ("rand()".equals(order)) {
 		//			return (hasPrefix ? " ORDER BY " : "") + StringUtil.concat(order, joinOrder, ", ");
@@ -2143,6 +2206,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setKeyMap(Map<String, String> keyMap) {
+		clearSQLCache();
 		this.keyMap = keyMap;
 		return this;
 	}
@@ -2153,6 +2217,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setRaw(List<String> raw) {
+		clearSQLCache();
 		this.raw = raw;
 		return this;
 	}
@@ -2213,6 +2278,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setJson(List<String> json) {
+		clearSQLCache();
 		this.json = json;
 		return this;
 	}
@@ -2224,6 +2290,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setFrom(Subquery<T, M, L> from) {
+		clearSQLCache();
 		this.from = from;
 		return this;
 	}
@@ -2234,6 +2301,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setColumn(List<String> column) {
+		clearSQLCache();
 		this.column = column;
 		return this;
 	}
@@ -2848,28 +2916,29 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return values;
 	}
 	public String getValuesString() {
-		String s = "";
-		if (values != null && values.size() > 0) {
-			Object[] items = new Object[values.size()];
-			List<Object> vs;
-			for (int i = 0; i < values.size(); i++) {
-				vs = values.get(i);
-				if (vs == null) {
-					continue;
-				}
+		if (values == null || values.isEmpty()) {
+			return "";
+		}
 
-				items[i] = "(";
-				for (int j = 0; j < vs.size(); j++) {
-					items[i] += ((j <= 0 ? "" : ",") + gainValue(vs.get(j)));
-				}
-				items[i] += ")";
+		StringBuilder sb = new StringBuilder();
+		boolean isFirst = true;
+		for (List<Object> vs : values) {
+			if (vs == null) {
+				continue;
+			}
+
+			sb.append(isFirst ? "(" : ",(");
+			for (int j = 0; j < vs.size(); j++) {
+				sb.append(j <= 0 ? "" : ",").append(gainValue(vs.get(j)));
 			}
-			s = StringUtil.get(items);
+			sb.append(")");
+			isFirst = false;
 		}
-		return s;
+		return sb.toString();
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setValues(List<List<Object>> valuess) {
+		clearSQLCache();
 		this.values = valuess;
 		return this;
 	}
@@ -2880,6 +2949,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setContent(Map<String, Object> content) {
+		clearSQLCache();
 		this.content = content;
 		return this;
 	}
@@ -2890,6 +2960,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCount(int count) {
+		clearSQLCache();
 		this.count = count;
 		return this;
 	}
@@ -2899,6 +2970,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setPage(int page) {
+		clearSQLCache();
 		this.page = page;
 		return this;
 	}
@@ -2918,6 +2990,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setQuery(int query) {
+		clearSQLCache();
 		this.query = query;
 		return this;
 	}
@@ -2927,9 +3000,140 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCompat(Boolean compat) {
+		clearSQLCache();
 		this.compat = compat;
 		return this;
 	}
+	@Override
+	public String getCursor() {
+		return cursor;
+	}
+	@Override
+	public AbstractSQLConfig<T, M, L> setCursor(String cursor) {
+		clearSQLCache();
+		this.cursor = cursor;
+		return this;
+	}
+
+	@Override
+	public ShardRule getShardRule() {
+		return SHARD_RULE_MAP.isEmpty() || isMain() == false ? null : SHARD_RULE_MAP.get(getTable());
+	}
+	@Override
+	public String getShard() {
+		return shard;
+	}
+	@Override
+	public AbstractSQLConfig<T, M, L> setShard(String shard) {
+		clearSQLCache();
+		this.shard = shard;
+		return this;
+	}
+
+	@Override
+	public List<String> gainShardList() {
+		ShardRule rule = getShardRule();
+		if (rule == null) {
+			return null;
+		}
+
+		String key = rule.getKey();
+		if (getMethod() == POST) {
+			List<String> column = getColumn();
+			List<List<Object>> values = getValues();
+			int index = column == null ? -1 : column.indexOf(key);
+			if (index < 0 || values == null || values.isEmpty()) {
+				throw new IllegalArgumentException(getTable() + " 是分表，POST 请求中必须传分片键 " + key + " ！");
+			}
+
+			List<Object> vs = new ArrayList<>(values.size());
+			for (List<Object> items : values) {
+				vs.add(items == null || items.size() <= index ? null : items.get(index));
+			}
+			return rule.route(vs);
+		}
+
+		// OR, NOT 等组合的条件不能按分片键过滤
+		if (StringUtil.isEmpty(getCombine(), true)) {
+			Object value = getWhere(key, true);
+			if (value != null && value instanceof Map<?, ?> == false) {
+				return Collections.singletonList(rule.route(value));
+			}
+
+			value = getWhere(key + "{}", true);
+			if (value instanceof Collection<?>) {
+				return rule.route((Collection<?>) value);
+			}
+		}
+
+		return rule.getTableList();
+	}
+
+	@Override
+	public boolean isCountOverEnable() {
+		// 游标分页时 WHERE 里有游标条件，count(*) OVER() 只能算出游标之后的数量，不是总数
+		if (ENABLE_COUNT_OVER == false || isExplain() || isTest() || isDistinct() || getShardRule() != null
+				|| RequestMethod.isGetMethod(getMethod(), true) == false || StringUtil.isNotEmpty(getCursor(), true)) {
+			return false;
+		}
+
+		// 加在最后的字段会被当成最后一个副表的，SELECT DISTINCT 窗口函数在去重前计算
+		List<Join<T, M, L>> joinList = getJoinList();
+		if ((joinList != null && joinList.isEmpty() == false) || getFrom() != null) {
+			return false;
+		}
+
+		// Oracle, DB2 等不支持 SELECT *, expr；MariaDB 10.2 才支持窗口函数
+		int[] nums = isMySQL() || isMariaDB() ? gainDBVersionNums() : null;
+		return (isMySQL() && nums[0] >= 8) || (isMariaDB() && (nums[0] > 10 || (nums[0] == 10 && nums.length > 1 && nums[1] >= 2)))
+				|| isTiDB() || isPostgreSQL() || isOpenGauss() || isTimescaleDB() || isCockroachDB() || isDuckDB()
+				|| isSQLServer() || isSQLite() || isPresto() || isTrino() || isSnowflake() || isDatabricks();
+	}
+	@Override
+	public boolean isCountOver() {
+		return countOver;
+	}
+	@Override
+	public AbstractSQLConfig<T, M, L> setCountOver(boolean countOver) {
+		clearSQLCache();
+		this.countOver = countOver;
+		return this;
+	}
+
+	@Override
+	public String gainApproximateCountSQL() {
+		if (isExplain() || isTest() || RequestMethod.isHeadMethod(getMethod(), true) == false || getShardRule() != null) {
+			return null;
+		}
+
+		// 统计信息只有整表的行数
+		Map<String, Object> where = getWhere();
+		Map<String, Object> having = getHaving();
+		List<String> column = getColumn();
+		List<Join<T, M, L>> joinList = getJoinList();
+		if ((where != null && where.isEmpty() == false) || (having != null && having.isEmpty() == false)
+				|| (column != null && column.isEmpty() == false) || (joinList != null && joinList.isEmpty() == false)
+				|| getFrom() != null || StringUtil.isNotEmpty(getGroup(), true) || StringUtil.isNotEmpty(getCursor(), true)) {
+			return null;
+		}
+
+		String schema = StringUtil.get(gainSQLSchema()).replace("'", "''");
+		String table = StringUtil.get(gainSQLTable()).replace("'", "''");
+		if (isMySQL() || isMariaDB() || isTiDB()) {
+			return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = '" + schema + "' AND TABLE_NAME = '" + table + "'";
+		}
+		if (isPostgreSQL() || isOpenGauss() || isTimescaleDB()) {  // 没 ANALYZE 过为 -1
+			return "SELECT c.reltuples FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+					+ " WHERE n.nspname = '" + schema + "' AND c.relname = '" + table + "'";
+		}
+		if (isSQLServer()) {
+			return "SELECT SUM(p.rows) FROM sys.partitions p WHERE p.object_id = OBJECT_ID('" + schema + "." + table + "') AND p.index_id IN (0, 1)";
+		}
+		if (isOracle() || isDameng()) {
+			return "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = '" + schema + "' AND TABLE_NAME = '" + table + "'";
+		}
+		return null;
+	}
 
 	@Override
 	public int getType() {
@@ -2937,6 +3141,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setType(int type) {
+		clearSQLCache();
 		this.type = type;
 		return this;
 	}
@@ -2947,11 +3152,13 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCache(int cache) {
+		clearSQLCache();
 		this.cache = cache;
 		return this;
 	}
 
 	public AbstractSQLConfig<T, M, L> setCache(String cache) {
+		clearSQLCache();
 		return setCache(getCache(cache));
 	}
 	public static int getCache(String cache) {
@@ -2991,6 +3198,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setExplain(boolean explain) {
+		clearSQLCache();
 		this.explain = explain;
 		return this;
 	}
@@ -3001,6 +3209,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setJoinList(List<Join<T, M, L>> joinList) {
+		clearSQLCache();
 		this.joinList = joinList;
 		return this;
 	}
@@ -3016,6 +3225,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setTest(boolean test) {
+		clearSQLCache();
 		this.test = test;
 		return this;
 	}
@@ -3111,6 +3321,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setNull(List<String> nulls) {
+		clearSQLCache();
 		this.nulls = nulls;
 		return this;
 	}
@@ -3121,6 +3332,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCast(Map<String, String> cast) {
+		clearSQLCache();
 		this.cast = cast;
 		return this;
 	}
@@ -3153,6 +3365,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCombine(String combine) {
+		clearSQLCache();
 		this.combine = combine;
 		return this;
 	}
@@ -3172,6 +3385,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setCombineMap(Map<String, List<String>> combineMap) {
+		clearSQLCache();
 		this.combineMap = combineMap;
 		return this;
 	}
@@ -3182,6 +3396,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setWhere(Map<String, Object> where) {
+		clearSQLCache();
 		this.where = where;
 		return this;
 	}
@@ -3225,6 +3440,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> putWhere(String key, Object value, boolean prior) {
+		clearSQLCache();
 		if (key != null) {
 			if (where == null) {
 				where = new LinkedHashMap<>();
@@ -3316,10 +3532,61 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	@Override
 	public String gainWhereString(boolean hasPrefix) throws Exception {
 		String combineExpr = getCombine();
+		String where;
 		if (StringUtil.isEmpty(combineExpr, false)) {
-			return getWhereString(hasPrefix, getMethod(), getWhere(), getCombineMap(), getJoinList(), ! isTest());
+			where = getWhereString(hasPrefix, getMethod(), getWhere(), getCombineMap(), getJoinList(), ! isTest());
+		}
+		else {
+			where = getWhereString(hasPrefix, getMethod(), getWhere(), combineExpr, getJoinList(), ! isTest());
+		}
+
+		// 游标条件的预编译值在最后，所以也要拼接在最后
+		String cursorString = gainCursorString();
+		if (cursorString.isEmpty()) {
+			return where;
+		}
+		if (where.isEmpty()) {
+			return (hasPrefix ? " WHERE " : "") + cursorString;
+		}
+		return (hasPrefix ? " WHERE ( " + where.substring(" WHERE ".length()) : "( " + where) + " ) AND " + cursorString;
+	}
+
+	/**获取游标分页条件，例如 @order:"date-,id+" 对应
+	 * date <= ? AND ( date < ? OR ( date = ? AND id > ? ) )
+	 * 第一项是为了让数据库能直接用索引的范围扫描，各数据库都支持，不用 (date, id) < (?, ?) 这种部分数据库不支持且不能混合升降序的写法
+	 * @return
+	 * @throws Exception
+	 */
+	public String gainCursorString() throws Exception {
+		String cursor = getCursor();
+		if (StringUtil.isEmpty(cursor, true) || RequestMethod.isQueryMethod(getMethod()) == false
+				|| RequestMethod.isHeadMethod(getMethod(), true)) {
+			return "";
+		}
+
+		KeysetCursor keysetCursor = KeysetCursor.parse(getOrder(), getIdKey());
+		List<String> keyList = keysetCursor.getKeyList();
+		List<Object> valueList = keysetCursor.decode(cursor);
+
+		StringBuilder sb = new StringBuilder();
+		if (keyList.size() > 1) {
+			String k = keyList.get(0);
+			sb.append(gainKey(k)).append(keysetCursor.isDesc(0) ? " <= " : " >= ").append(gainValue(k, k, valueList.get(0))).append(" AND ( ");
+		}
+
+		for (int i = 0; i < keyList.size(); i++) {
+			sb.append(i <= 0 ? "" : " OR ").append(i <= 0 ? "" : "( ");
+			for (int j = 0; j < i; j++) {
+				String k = keyList.get(j);
+				sb.append(gainKey(k)).append(" = ").append(gainValue(k, k, valueList.get(j))).append(" AND ");
+			}
+
+			String k = keyList.get(i);
+			sb.append(gainKey(k)).append(keysetCursor.isDesc(i) ? " < " : " > ").append(gainValue(k, k, valueList.get(i)));
+			sb.append(i <= 0 ? "" : " )");
 		}
-		return getWhereString(hasPrefix, getMethod(), getWhere(), combineExpr, getJoinList(), ! isTest());
+
+		return keyList.size() > 1 ? sb.append(" )").toString() : sb.toString();
 	}
 	/**获取WHERE
 	 * @param method
@@ -3376,7 +3643,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 					+ (isHaving ? " } }" : " }") + " 中条件 key:value 数量 " + size + " 已超过最大数量，必须在 0-" + maxCount + " 内！");
 		}
 
-		String result = "";
+		StringBuilder sb = new StringBuilder();
 
 		List<Object> preparedValues = getPreparedValueList();
 		if (preparedValues == null && isHaving == false) {
@@ -3470,7 +3737,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 						}
 						usedKeyCountMap.put(column, count);
 
-						result += "( " + gainCondition(isNot, wi) + " )";
+						sb.append("( ").append(gainCondition(isNot, wi)).append(" )");
 						isNot = false;
 						first = false;
 					}
@@ -3493,7 +3760,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 									+ "不允许首尾有空格，也不允许连续空格！左括号 ( 的右边 和 右括号 ) 的左边 都不允许有相邻空格！");
 						}
 
-						result += SQL.AND;
+						sb.append(SQL.AND);
 						lastLogic = c;
 						i ++;
 					}
@@ -3510,7 +3777,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 									+ "不允许首尾有空格，也不允许连续空格！左括号 ( 右边和右括号 ) 左边都不允许有相邻空格！");
 						}
 
-						result += SQL.OR;
+						sb.append(SQL.OR);
 						lastLogic = c;
 						i ++;
 					}
@@ -3541,7 +3808,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 					}
 
 					if (next == '(') {
-						result += SQL.NOT;
+						sb.append(SQL.NOT);
 						lastLogic = c;
 					}
 					else if (last <= 0 || last == ' ' || last == '(') {
@@ -3565,7 +3832,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 						+ "' 不合法！括号 (()) 嵌套层级 " + depth + " 已超过最大值，必须在 0-" + maxDepth + " 内！");
 					}
 
-					result += c;
+					sb.append(c);
 					lastLogic = 0;
 					first = true;
 				}
@@ -3576,7 +3843,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 						+ "' 不合法！左括号 ( 比 右括号 ) 少！数量必须相等从而完整闭合 (...) ！");
 					}
 
-					result += c;
+					sb.append(c);
 					lastLogic = 0;
 				}
 				else {
@@ -3600,7 +3867,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 		Set<Entry<String, Object>> set = conditionMap.entrySet();
 
-		String andCond = "";
+		StringBuilder andSb = new StringBuilder();
 		boolean isItemFirst = true;
 
 		for (Entry<String, Object> entry : set) {
@@ -3615,7 +3882,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 				continue;
 			}
 
-			andCond += (isItemFirst ? "" : AND) + "(" + wi + ")";
+			andSb.append(isItemFirst ? "" : AND).append("(").append(wi).append(")");
 			isItemFirst = false;
 		}
 
@@ -3623,6 +3890,8 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 			preparedValues.addAll(getPreparedValueList());
 		}
 
+		String result = sb.toString();
+		String andCond = andSb.toString();
 		if (StringUtil.isEmpty(result, true)) {
 			result = andCond;
 		}
@@ -3666,14 +3935,14 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 		List<String> keyList;
 
-		String whereString = "";
+		StringBuilder whereBuilder = new StringBuilder();
 
 		boolean isCombineFirst = true;
 		int logic;
 
 		boolean isItemFirst;
 		String c;
-		String cs;
+		StringBuilder cs = new StringBuilder();
 
 		for (Entry<String, List<String>> ce : combineSet) {
 			keyList = ce == null ? null : ce.getValue();
@@ -3692,7 +3961,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 			}
 
 			isItemFirst = true;
-			cs = "";
+			cs.setLength(0);
 			for (String key : keyList) {
 				c = gainWhereItem(key, where.get(key), method, verifyName);
 
@@ -3700,19 +3969,19 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 					continue;
 				}
 
-				cs += (isItemFirst ? "" : (Logic.isAnd(logic) ? AND : OR)) + "(" + c + ")";
+				cs.append(isItemFirst ? "" : (Logic.isAnd(logic) ? AND : OR)).append("(").append(c).append(")");
 				isItemFirst = false;
 			}
 
-			if (StringUtil.isEmpty(cs, true)) {//避免SQL条件连接错误
+			if (cs.length() <= 0) {//避免SQL条件连接错误
 				continue;
 			}
 
-			whereString += (isCombineFirst ? "" : AND) + (Logic.isNot(logic) ? NOT : "") + " (  " + cs + "  ) ";
+			whereBuilder.append(isCombineFirst ? "" : AND).append(Logic.isNot(logic) ? NOT : "").append(" (  ").append(cs).append("  ) ");
 			isCombineFirst = false;
 		}
 
-		whereString = concatJoinWhereString(whereString);
+		String whereString = concatJoinWhereString(whereBuilder.toString());
 
 		String s = StringUtil.isEmpty(whereString, true) ? "" : (hasPrefix ? " WHERE " : "") + whereString;
 
@@ -4098,7 +4367,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		//	return (value instanceof Number || value instanceof Boolean)
 		//	&& DATABASE_POSTGRESQL.equals(getDatabase()) ? value :  "'" + value + "'";
 		return (value instanceof Number || value instanceof Boolean)
-				? value :  "'" + value.toString().replaceAll("\\'", "\\\\'") + "'"; // MySQL 隐式转换用不了索引
+				? value :  "'" + value.toString().replace("'", "\\'") + "'"; // MySQL 隐式转换用不了索引
 	}
 
 	@Override
@@ -4215,9 +4484,9 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 						"key$:value 中 value 不能为 null，且类型必须是 String ！");
 			}
 
-			value = value.replaceAll("\\\\", "\\\\\\\\");
-			value = value.replaceAll("\\%", "\\\\%");
-			value = value.replaceAll("\\_", "\\\\_");
+			value = value.replace("\\", "\\\\");
+			value = value.replace("%", "\\%");
+			value = value.replace("_", "\\_");
 			if (l > 0) {
 				value = l + value;
 			}
@@ -4834,7 +5103,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	 */
 	public String gainSetString(RequestMethod method, Map<String, Object> content, boolean verifyName) throws Exception {
 		Set<String> set = content == null ? null : content.keySet();
-		String setString = "";
+		StringBuilder setString = new StringBuilder();
 
 		if (set != null && set.size() > 0) {
 			boolean isFirst = true;
@@ -4859,16 +5128,15 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 				value = entry.getValue();
 				String column = gainRealKey(method, key, false, true, verifyName);
 
-				setString += (isFirst ? "" : ", ") + (gainKey(column) + " = "
-						+ (keyType == 1 ? gainAddString(key, column, value) : (keyType == 2
-						? gainRemoveString(key, column, value) : gainValue(key, column, value)) )
-				);
+				setString.append(isFirst ? "" : ", ").append(gainKey(column)).append(" = ")
+						.append(keyType == 1 ? gainAddString(key, column, value) : (keyType == 2
+						? gainRemoveString(key, column, value) : gainValue(key, column, value)) );
 
 				isFirst = false;
 			}
 		}
 
-		if (setString.isEmpty()) {
+		if (setString.length() <= 0) {
 			throw new IllegalArgumentException("PUT 请求必须在Table内设置要修改的 key:value ！");
 		}
 		return (isClickHouse() ? " " : " SET ") + setString;
@@ -4917,19 +5185,56 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		return map;
 	}
 
+	private String cachedSQL;  // 不预编译的
+	private List<Object> cachedValueList;
+	private String cachedPreparedSQL;  // 预编译的
+	private List<Object> cachedPreparedValueList;
+
+	/**清空缓存的 SQL，下次 gainSQL 重新生成
+	 * @return
+	 */
+	public AbstractSQLConfig<T, M, L> clearSQLCache() {
+		cachedSQL = null;
+		cachedValueList = null;
+		cachedPreparedSQL = null;
+		cachedPreparedValueList = null;
+		return this;
+	}
+
 	/**
 	 * @return
 	 * @throws Exception
 	 */
 	@Override
 	public String gainSQL(boolean prepared) throws Exception {
+		String sql = prepared ? cachedPreparedSQL : cachedSQL;
+		if (sql != null) {
+			List<Object> valueList = prepared ? cachedPreparedValueList : cachedValueList;
+			setPreparedValueList(valueList == null ? new ArrayList<>() : new ArrayList<>(valueList));
+			return sql;
+		}
+
 		boolean isPrepared = isPrepared();
 		if (isPrepared == prepared) {
-			return gainSQL(this);
+			sql = gainSQL(this);
+		}
+		else {
+			sql = gainSQL(this.setPrepared(prepared));
+			setPrepared(isPrepared);
 		}
 
-		String sql = gainSQL(this.setPrepared(prepared));
-		setPrepared(isPrepared);
+		if (ENABLE_SQL_CACHE && sql != null) {
+			List<Object> valueList = getPreparedValueList();
+			valueList = valueList == null ? null : new ArrayList<>(valueList);
+			if (prepared) {
+				cachedPreparedSQL = sql;
+				cachedPreparedValueList = valueList;
+			}
+			else {
+				cachedSQL = sql;
+				cachedValueList = valueList;
+			}
+		}
 		return sql;
 	}
 	/**
@@ -5003,6 +5308,10 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 				config.setPreparedValueList(new ArrayList<Object>());
 				String column = config.gainColumnString();
+				if (config.isCountOver() && RequestMethod.isGetMethod(method, true)) {
+					String q = config.getQuote();
+					column += ", count(*) OVER()" + config.gainAs() + q + KEY_COUNT_OVER + q;
+				}
 				if (config.isOracle() || config.isDameng() || config.isKingBase()) {
 					//When config's database is oracle,Using subquery since Oracle12 below does not support OFFSET FETCH paging syntax.
 					//针对oracle分组后条数的统计
@@ -5034,11 +5343,11 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		List<String> list = config.getWithAsExprSQLList();
 		int size = list == null ? 0 : list.size();
 		if (size > 0) {
-			String withAsExpreSql = "WITH ";
+			StringBuilder withAsExpreSql = new StringBuilder("WITH ");
 			for (int i = 0; i < size; i++) {
-				withAsExpreSql += (i <= 0 ? "" : ",") + list.get(i) + "\n";
+				withAsExpreSql.append(i <= 0 ? "" : ",").append(list.get(i)).append("\n");
 			}
-			cSql = withAsExpreSql + cSql;
+			cSql = withAsExpreSql.append(cSql).toString();
 			config.clearWithAsExprListIfNeed();
 		}
 		return cSql;
@@ -5149,6 +5458,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 	}
 	@Override
 	public AbstractSQLConfig<T, M, L> setKeyPrefix(boolean keyPrefix) {
+		clearSQLCache();
 		this.keyPrefix = keyPrefix;
 		return this;
 	}
@@ -5953,7 +6263,7 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 
 					// 兼容 PUT @combine
 					// 解决AccessVerifier新增userId没有作为条件，而是作为内容，导致PUT，DELETE出错
-					if ((isWhere || (StringUtil.isName(key.replaceFirst("[+-]$", "")) == false))
+					if ((isWhere || (StringUtil.isName(key.endsWith("+") || key.endsWith("-") ? key.substring(0, key.length() - 1) : key) == false))
 							|| (isWhere == false && StringUtil.isNotEmpty(combineExpr, true) && isKeyInCombineExpr(combineExpr, key))) {
 						tableWhere.put(key, value);
 						if (whereList.contains(key) == false) {
@@ -6574,23 +6884,36 @@ public abstract class AbstractSQLConfig<T, M extends Map<String, Object>, L exte
 		void onMissingKey4Combine(String name, M request, String combine, String item, String key) throws Exception;
 	}
 
+	/**
+	 * 已废弃，并发时会生成重复的 id，改用 {@link #ID_GENERATOR}
+	 */
+	@Deprecated
 	public static Long LAST_ID;
 	static {
 		LAST_ID = System.currentTimeMillis();
 	}
 
+	/**
+	 * 默认的 id 生成器，为 null 则用数据库自增 id
+	 */
+	public static IdGenerator ID_GENERATOR = new IdGenerator.TimeSequence();
+	/**
+	 * 表名 - id 生成器，未配置的表用 ID_GENERATOR，例如 ID_GENERATOR_MAP.put("Comment", new IdGenerator.Snowflake(1, 1));
+	 */
+	public static Map<String, IdGenerator> ID_GENERATOR_MAP = new ConcurrentHashMap<>();
+
+	public static IdGenerator getIdGenerator(String database, String schema, String datasource, String table) {
+		IdGenerator generator = table == null ? null : ID_GENERATOR_MAP.get(table);
+		return generator != null ? generator : ID_GENERATOR;
+	}
+
 	public static abstract class SimpleCallback<T, M extends Map<String, Object>, L extends List<Object>> implements Callback<T, M, L> {
 
 		@SuppressWarnings("unchecked")
 		@Override
 		public T newId(RequestMethod method, String database, String schema, String datasource, String table) {
-			Long id = System.currentTimeMillis();
-			if (id <= LAST_ID) {
-				id = LAST_ID + 1; // 解决高并发下 id 冲突导致新增记录失败
-			}
-			LAST_ID = id;
-
-			return (T) id;
+			IdGenerator generator = getIdGenerator(database, schema, datasource, table);
+			return generator == null ? null : (T) Long.valueOf(generator.nextId(database, schema, datasource, table));
 		}
 
 		@Override
@@ -20,6 +20,11 @@ import java.time.Year;
 import java.util.Date;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**executor for query(read) or update(write) MySQL database
@@ -74,11 +79,154 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	}
 
 
+	/**
+	 * 跨请求共享的结果缓存，为 null 则不启用，例如 SHARED_CACHE = new LRUResultCache<>();
+	 * 只缓存 GET/HEAD 等查询请求的结果，@cache: "ROM" 的不缓存，POST/PUT/DELETE 后自动移除对应表的缓存
+	 */
+	public static ResultCache<? extends Map<String, Object>> SHARED_CACHE = null;
+
+	/**
+	 * 分页总数等 HEAD 查询结果的短期缓存，为 null 则不启用，例如 COUNT_CACHE = new LRUResultCache<>(10000, 8*1024*1024, 3000);
+	 * key 和 SHARED_CACHE 一样是 数据源 + 带条件值的 SQL，POST/PUT/DELETE 后自动移除对应表的缓存，一般 TTL 比 SHARED_CACHE 短
+	 */
+	public static ResultCache<? extends Map<String, Object>> COUNT_CACHE = null;
+
+	/**
+	 * 读写分离的数据源组，key 为主库的 @datasource，没有 @datasource 的 key 为 ""，例如
+	 * DATASOURCE_GROUP_MAP.put("", new DataSourceGroup("", DataSourceGroup.POLICY_LEAST_ACTIVE, "REPLICA_0", "REPLICA_1"));
+	 * 没有写事务的 GET/GETS/HEAD/HEADS 分发到从库，写操作及同一请求内写之后的查询都用主库
+	 */
+	public static final Map<String, DataSourceGroup> DATASOURCE_GROUP_MAP = new ConcurrentHashMap<>();
+
+	/**
+	 * 跨分片查询时并行执行各分片 SQL 的线程池，为 null 则串行执行，同一个连接上的分片总是串行执行
+	 */
+	public static Executor SHARD_EXECUTOR = null;
+
 	/**
 	 * 缓存 Map
 	 */
 	protected Map<String, List<M>> cacheMap = new HashMap<>();
 
+	/**获取跨请求共享的结果缓存，可在子类重写来按数据源等返回不同的实例
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public ResultCache<M> getSharedCache() {
+		return (ResultCache<M>) SHARED_CACHE;
+	}
+
+	/**获取总数缓存，可在子类重写来按数据源等返回不同的实例
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public ResultCache<M> getCountCache() {
+		return (ResultCache<M>) COUNT_CACHE;
+	}
+
+	/**是否可以使用总数缓存
+	 * @param config
+	 * @return
+	 */
+	protected boolean isCountCacheEnabled(SQLConfig<T, M, L> config) {
+		return config != null && RequestMethod.isHeadMethod(config.getMethod(), true) && isSharedCacheEnabled(config);
+	}
+
+	/**是否可以使用跨请求共享的结果缓存
+	 * @param config  一般主表 SQLConfig<T, M, L> 不为 null，JOIN 副表的为 null
+	 * @return
+	 */
+	protected boolean isSharedCacheEnabled(SQLConfig<T, M, L> config) {
+		if (config == null || config.isExplain() || config.getCache() == JSONMap.CACHE_ROM
+				|| RequestMethod.isQueryMethod(config.getMethod()) == false) {
+			return false;
+		}
+
+		// 写请求在事务内查询，可能读到其它请求还未提交的旧缓存
+		Parser<T, M, L> p = config.gainParser();
+		return p == null || RequestMethod.isQueryMethod(p.getMethod());
+	}
+
+	/**跨请求共享的结果缓存 key，同样的 SQL 在不同数据源的结果不同
+	 * @param sql
+	 * @param config
+	 * @return
+	 */
+	protected String getSharedCacheKey(String sql, @NotNull SQLConfig<T, M, L> config) {
+		return getConnectionKey(config.getDatabase(), config.getDatasource(), config.getNamespace(), config.getCatalog()) + "\n" + sql;
+	}
+
+	/**获取结果依赖的所有表，包括 JOIN 副表和子查询的表
+	 * @param config
+	 * @return
+	 */
+	protected Set<String> getDependentTables(@NotNull SQLConfig<T, M, L> config) {
+		Set<String> tables = new HashSet<>();
+		addDependentTables(tables, config, 0);
+		return tables;
+	}
+	private void addDependentTables(Set<String> tables, SQLConfig<T, M, L> config, int depth) {
+		if (config == null || depth > AbstractParser.MAX_QUERY_DEPTH) {
+			return;
+		}
+
+		String table = config.getTable();
+		if (table != null) {
+			tables.add(table);
+		}
+
+		List<Join<T, M, L>> joinList = config.getJoinList();
+		if (joinList != null) {
+			for (Join<T, M, L> join : joinList) {
+				if (join != null) {
+					addDependentTables(tables, join.getJoinConfig(), depth + 1);
+				}
+			}
+		}
+
+		Subquery<T, M, L> from = config.getFrom();
+		if (from != null) {
+			addDependentTables(tables, from.gainConfig(), depth + 1);
+		}
+
+		Map<String, Object> where = config.getWhere();
+		if (where != null) {
+			for (Object v : where.values()) {
+				if (v instanceof Subquery) {
+					addDependentTables(tables, ((Subquery<T, M, L>) v).gainConfig(), depth + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 当前事务内修改过的表，提交后再次移除共享缓存，避免提交前被其它请求用旧数据重新缓存
+	 */
+	protected Set<String> modifiedTableSet;
+
+	/**移除依赖指定表的跨请求共享缓存
+	 * @param config
+	 */
+	protected void invalidateSharedCache(@NotNull SQLConfig<T, M, L> config) {
+		ResultCache<M> sharedCache = getSharedCache();
+		ResultCache<M> countCache = getCountCache();
+		String table = config.getTable();
+		if ((sharedCache == null && countCache == null) || table == null) {
+			return;
+		}
+
+		if (sharedCache != null) {
+			sharedCache.invalidate(table);
+		}
+		if (countCache != null) {
+			countCache.invalidate(table);
+		}
+		if (modifiedTableSet == null) {
+			modifiedTableSet = new HashSet<>();
+		}
+		modifiedTableSet.add(table);
+	}
+
 	/**保存缓存
 	 * @param sql  key
 	 * @param list  value
@@ -92,6 +240,16 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 		}
 
 		cacheMap.put(sql, list);
+
+		ResultCache<M> sharedCache = getSharedCache();
+		if (sharedCache != null && isSharedCacheEnabled(config)) {
+			sharedCache.put(getSharedCacheKey(sql, config), list, getDependentTables(config));
+		}
+
+		ResultCache<M> countCache = getCountCache();
+		if (countCache != null && isCountCacheEnabled(config)) {
+			countCache.put(getSharedCacheKey(sql, config), list, getDependentTables(config));
+		}
 	}
 
 	/**获取缓存
@@ -100,7 +258,25 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	 */
 	@Override
 	public List<M> getCache(String sql, SQLConfig<T, M, L> config) {
-		return cacheMap.get(sql);
+		List<M> list = cacheMap.get(sql);
+		if (list != null || sql == null) {
+			return list;
+		}
+
+		ResultCache<M> sharedCache = getSharedCache();
+		if (sharedCache != null && isSharedCacheEnabled(config)) {
+			list = sharedCache.get(getSharedCacheKey(sql, config));
+		}
+
+		ResultCache<M> countCache = list != null ? null : getCountCache();
+		if (countCache != null && isCountCacheEnabled(config)) {
+			list = countCache.get(getSharedCacheKey(sql, config));
+		}
+
+		if (list != null) {  // 数组内后续 position 直接从 cacheMap 取，不用每次都复制
+			cacheMap.put(sql, list);
+		}
+		return list;
 	}
 
 	/**获取缓存
@@ -138,6 +314,16 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 			return;
 		}
 		cacheMap.remove(sql);
+
+		ResultCache<M> sharedCache = getSharedCache();
+		if (sharedCache != null && config != null) {
+			sharedCache.remove(getSharedCacheKey(sql, config));
+		}
+
+		ResultCache<M> countCache = getCountCache();
+		if (countCache != null && config != null) {
+			countCache.remove(getSharedCacheKey(sql, config));
+		}
 	}
 
 
@@ -165,6 +351,13 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	 */
 	@Override
 	public M execute(@NotNull SQLConfig<T, M, L> config, boolean unknownType) throws Exception {
+		if (unknownType == false && config.getShard() == null) {
+			List<String> shardList = config.gainShardList();
+			if (shardList != null) {
+				return executeShards(config, shardList);
+			}
+		}
+
 		long executedSQLStartTime = System.currentTimeMillis();
 		final String sql = config.gainSQL(false);
 
@@ -206,6 +399,7 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 					executedSQLCount ++;
 					executedSQLStartTime = System.currentTimeMillis();
 				}
+				primarySticky = true;  // 存储过程等可能写入
 				Statement statement = getStatement(config);
 				rs = execute(statement, sql);
 				int updateCount = statement.getUpdateCount();
@@ -216,6 +410,10 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 				result = JSON.createJSONObject();
 				result.put(JSONResponse.KEY_COUNT, updateCount);
 				result.put("update", updateCount >= 0);
+
+				if (RequestMethod.isQueryMethod(config.getMethod()) == false) {  // 存储过程等可能修改了当前表
+					invalidateSharedCache(config);
+				}
 				//导致后面 rs.getMetaData() 报错 Operation not allowed after ResultSet closed		result.put("moreResults", statement.getMoreResults());
 			}
 			else {
@@ -224,6 +422,12 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 				case POST:
 				case PUT:
 				case DELETE:
+					primarySticky = true;
+					if (batchConfigList != null && isExplain == false) {  // 批量写，先收集，在 executeBatch 时合并执行
+						batchConfigList.add(config);
+						return newUpdateResult(config, 1, false);
+					}
+
 					if (isExplain == false) { //只有 SELECT 才能 EXPLAIN
 						executedSQLCount ++;
 						executedSQLStartTime = System.currentTimeMillis();
@@ -237,27 +441,7 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 						throw new IllegalAccessException("没权限访问或对象不存在！");  // NotExistException 会被 catch 转为成功状态
 					}
 
-					// updateCount>0时收集结果。例如更新操作成功时，返回count(affected rows)、id字段
-					result = parser.newSuccessResult();  // TODO 对 APIAuto 及其它现有的前端/客户端影响比较大，暂时还是返回 code 和 msg，5.0 再移除  JSON.createJSONObject();
-
-					//id,id{}至少一个会有，一定会返回，不用抛异常来阻止关联写操作时前面错误导致后面无条件执行！
-					result.put(JSONResponse.KEY_COUNT, updateCount);//返回修改的记录数
-
-					String idKey = config.getIdKey();
-					if (config.getId() != null) {
-						result.put(idKey, config.getId());
-					}
-					if (config.getIdIn() != null) {
-						result.put(idKey + "[]", config.getIdIn());
-					}
-
-					if (method == RequestMethod.PUT || method == RequestMethod.DELETE) {
-						config.setMethod(RequestMethod.GET);
-						removeCache(config.gainSQL(false), config);
-						config.setMethod(method);
-					}
-
-					return result;
+					return newUpdateResult(config, updateCount, true);
 
 				case GET:
 				case GETS:
@@ -312,61 +496,19 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 			else {
 				//		final boolean cache = config.getCount() != 1;
 				//		Log.d(TAG, "select  cache = " + cache + "; resultList" + (resultList == null ? "=" : "!=") + "null");
-				try {  // 设置初始容量为查到的数据量，解决频繁扩容导致的延迟，貌似只有 rs.last 取 rs.getRow() ? 然后又得 rs.beforeFirst 重置位置以便下方取值
-					rs.last();  //移到最后一行
-					resultList = new ArrayList<>(rs.getRow());
-					rs.beforeFirst();
-				}
-				catch (Throwable e) {
-					Log.e(TAG, "try { rs.last(); resultList = new ArrayList<>(rs.getRow()); rs.beforeFirst(); >> } catch (Throwable e) = " + e.getMessage());
-					int capacity;
-					if (config.getId() != null) {  // id:Object 一定是 AND 条件，最终返回数据最多就这么多
-						capacity = 1;
+				if (isStreamingResult(config)) {  // 只能向前读，不能 rs.last，否则驱动会把全部数据缓存到客户端
+					resultList = new ArrayList<>(estimateCapacity(config));
+				}
+				else {
+					try {  // 设置初始容量为查到的数据量，解决频繁扩容导致的延迟，貌似只有 rs.last 取 rs.getRow() ? 然后又得 rs.beforeFirst 重置位置以便下方取值
+						rs.last();  //移到最后一行
+						resultList = new ArrayList<>(rs.getRow());
+						rs.beforeFirst();
 					}
-					else {
-						Object idIn = config.getIdIn();
-						if (idIn instanceof Collection<?>) {  // id{}:[] 一定是 AND 条件，最终返回数据最多就这么多
-							capacity = ((Collection<?>) idIn).size();
-						}
-						else {  // 预估容量
-							capacity = config.getCount() <= 0 ? AbstractParser.MAX_QUERY_COUNT : config.getCount();
-							if (capacity > 100) {
-								// 有 WHERE 条件，条件越多过滤数据越多，暂时不考虑 @combine:"a | (b & !c)" 里面 | OR 和 ! NOT 条件，太复杂也不是很必要
-								Map<String, List<String>> combine = config.getCombineMap();
-
-								List<String> andList = combine == null ? null : combine.get("&");
-								int andCondCount = andList == null ? (config.getWhere() == null ? 0 : config.getWhere().size()) : andList.size();
-
-								List<String> orList = combine == null ? null : combine.get("|");
-								int orCondCount = orList == null ? 0 : orList.size();
-
-								List<String> notList = combine == null ? null : combine.get("!");
-								int notCondCount = notList == null ? 0 : notList.size();
-
-								// 有 GROUP BY 分组，字段越少过滤数据越多
-								String[] group = StringUtil.split(config.getGroup());
-								int groupCount = group == null ? 0 : group.length;
-								if (groupCount > 0 && Arrays.asList(group).contains(config.getIdKey())) {
-									groupCount = 0;
-								}
-
-								// 有 HAVING 聚合函数，字段越多过滤数据越多，暂时不考虑 @combine:"a | (b & !c)" 里面 | OR 和 ! NOT 条件，太复杂也不是很必要
-								Map<String, Object> having = config.getHaving();
-								int havingCount = having == null ? 0 : having.size();
-
-								capacity /= Math.pow(1.5, Math.log10(capacity)
-										+ andCondCount
-										+ ((orCondCount <= 0 ? 0 : 2.0d/orCondCount)  // 1: 2.3, 2: 1.5, 3: 1.3, 4: 1.23, 5: 1.18
-										+ (notCondCount/5.0d)  // 1: 1.08, 2: 1.18, 3: 1.28, 4: 1.38, 1.50
-										+ (groupCount <= 0 ? 0 : 10.0d/groupCount))  // 1: 57.7, 7.6, 3: 3.9, 4: 2.8, 5: 2.3
-										+ havingCount
-										);
-								capacity += 1;  // 避免正好比需要容量少一点点导致多一次扩容，大量数据 System.arrayCopy
-							}
-						}
+					catch (Throwable e) {
+						Log.e(TAG, "try { rs.last(); resultList = new ArrayList<>(rs.getRow()); rs.beforeFirst(); >> } catch (Throwable e) = " + e.getMessage());
+						resultList = new ArrayList<>(estimateCapacity(config));
 					}
-
-					resultList = new ArrayList<>(capacity);
 				}
 
 				int index = -1;
@@ -400,6 +542,10 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 
 //				FIXME 统计游标查找的时长？可能 ResultSet.next() 及 getTableName, getColumnName, getObject 比较耗时，因为不是一次加载到内存，而是边读边发
 
+				Map<Join<T, M, L>, JoinLayout> joinLayoutMap = columnIndexAndJoinMap == null ? null : new IdentityHashMap<>();
+				Map<ViceKey, M> viceChildMap = columnIndexAndJoinMap == null ? null : new LinkedHashMap<>();
+				columnLabels = isExplain ? null : new String[length];
+
 				long lastCursorTime = System.currentTimeMillis();
 				while (rs.next()) {
 					sqlResultDuration += System.currentTimeMillis() - lastCursorTime;
@@ -421,7 +567,8 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 						// }
 
 						// bugfix-修复非常规数据库字段，获取表名失败导致输出异常
-						Join curJoin = columnIndexAndJoinMap == null ? null : columnIndexAndJoinMap[i - 1];  // columnIndexAndJoinMap.get(i);
+						@SuppressWarnings("unchecked")
+						Join<T, M, L> curJoin = columnIndexAndJoinMap == null ? null : columnIndexAndJoinMap[i - 1];  // columnIndexAndJoinMap.get(i);
 
 						// 为什么 isExplain == false 不用判断？因为所有字段都在一张 Query Plan 表
 						if (index <= 0 && columnIndexAndJoinMap != null) { // && viceColumnStart > length) {
@@ -591,30 +738,14 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 						Join prevJoin = columnIndexAndJoinMap == null || i < 2 ? null : columnIndexAndJoinMap[i - 2];
 						if (curJoin != prevJoin) {  // 前后字段不在同一个表对象，即便后面出现 null，也不该是主表数据，而是逻辑 bug 导致
 							SQLConfig<T, M, L> viceConfig = curJoin != null && curJoin.isSQLJoin() ? curJoin.getCacheConfig() : null;
-							boolean hasPK = false;
+							ViceKey viceKey = null;
 							if (viceConfig != null) {  //FIXME 只有和主表关联才能用 item，否则应该从 childMap 查其它副表数据
-								List<On> onList = curJoin.getOnList();
-								int size = onList == null ? 0 : onList.size();
-								if (size > 0) {
-									String idKey = viceConfig.getIdKey();
-									String tblKey = config.gainTableKey();
-									for (int j = size - 1; j >= 0; j--) {
-										On on = onList.get(j);
-										String ok = on == null ? null : on.getOriginKey();
-										if (ok == null) {
-											throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[" + j + (on == null ? "] = null！" : ".getOriginKey() = null！"));
-										}
-
-										String k = ok.substring(0, ok.length() - 1);
-										String ttk = on.getTargetTableKey();
-
-										M target = StringUtil.equals(ttk, tblKey) ? item : (viceItem == null ? null : JSON.get(viceItem, ttk));
-										Object v = target == null ? null : target.get(on.getTargetKey());
-										hasPK = hasPK || (k.equals(idKey) && v != null);
-
-										viceConfig.putWhere(k, v, true);
-									}
+								JoinLayout joinLayout = joinLayoutMap.get(curJoin);
+								if (joinLayout == null) {
+									joinLayout = new JoinLayout(curJoin, viceConfig.getIdKey(), config.gainTableKey());
+									joinLayoutMap.put(curJoin, joinLayout);
 								}
+								viceKey = joinLayout.getViceKey(item, viceItem);
 							}
 
 							if (viceConfig == null) { // StringUtil.isEmpty(viceSql, true)) {
@@ -633,20 +764,20 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 								}
 								curItem = JSON.get(viceItem, viceName);
 
-								String viceSql = hasPK ? viceConfig.gainSQL(false) : null; // TODO 在 SQLConfig<T, M, L> 缓存 SQL，减少大量的重复生成
-								M curCache = hasPK ? childMap.get(viceSql) : null;
+								// 先按 ON 条件的值去重，循环结束后每组值只生成一次 viceSql，避免每行都重新生成 SQL
+								M curCache = viceKey == null ? null : viceChildMap.get(viceKey);
 
 								if (curItem == null || curItem.isEmpty()) {
 									// 导致前面判断重复 key 出错 curItem = curCache != null ? curCache : JSON.createJSONObject();
 									curItem = JSON.createJSONObject();
 									viceItem.put(viceName, curItem);
-									if (hasPK && curCache == null) {
-										childMap.put(viceSql, curItem);
+									if (viceKey != null && curCache == null) {
+										viceChildMap.put(viceKey, curItem);
 									}
 								}
-								else if (hasPK) {
+								else if (viceKey != null) {
 									if (curCache == null || curCache.isEmpty()) {
-										childMap.put(viceSql, curItem);
+										viceChildMap.put(viceKey, curItem);
 									}
 									else {
 										curCache.putAll(curItem);
@@ -668,9 +799,23 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 
 					Log.d(TAG, "execute  while (rs.next()) { resultList.put( " + index + ", result); " + "\n >>>>>>>>>>>>>>>>>>>>>>>>>>> \n\n");
 				}
+
+				if (viceChildMap != null) {  // 每组 ON 条件的值只生成一次 viceSql
+					for (Entry<ViceKey, M> entry : viceChildMap.entrySet()) {
+						String viceSql = entry.getKey().gainSQL();
+						M curCache = childMap.get(viceSql);
+						if (curCache == null || curCache.isEmpty()) {
+							childMap.put(viceSql, entry.getValue());
+						}
+						else {
+							curCache.putAll(entry.getValue());
+						}
+					}
+				}
 			}
 		}
 		finally {
+			columnLabels = null;
 			if (rs != null) {
 				try {
 					rs.close();
@@ -743,108 +888,578 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	}
 
 
-	/**@ APP JOIN 查询副表并缓存到 childMap
+	/**切换到分片，分片在其它 @datasource 时也切换数据源
 	 * @param config
-	 * @param resultList
-	 * @param childMap
-	 * @throws Exception
+	 * @param shard
+	 * @return 原来的 @datasource，用于 {@link #resetShard(SQLConfig, String)} 还原
 	 */
-	protected void executeAppJoin(SQLConfig<T, M, L> config, List<M> resultList, Map<String, List<M>> childMap, Map<String, String> keyMap) throws Exception {
-		List<Join<T, M, L>> joinList = config.getJoinList();
-		if (joinList != null) {
+	protected String switchShard(@NotNull SQLConfig<T, M, L> config, @NotNull String shard) {
+		String datasource = config.getDatasource();
+		ShardRule rule = config.getShardRule();
+		String ds = rule == null ? null : rule.getDatasource(shard);
+
+		config.setShard(shard);
+		if (ds != null) {
+			config.setDatasource(ds);
+		}
+		return datasource;
+	}
+	protected void resetShard(@NotNull SQLConfig<T, M, L> config, String datasource) {
+		config.setShard(null);
+		config.setDatasource(datasource);
+	}
 
-			for (Join<T, M, L> join : joinList) {
-				if (join.isAppJoin() == false) {
-					Log.i(TAG, "executeAppJoin  for (Join j : joinList) >> j.isAppJoin() == false >>  continue;");
-					continue;
-				}
+	/**在分表上执行，只有一个分片则直接路由，否则 PUT/DELETE 广播到全部分片，GET/HEAD 查全部分片再合并结果
+	 * @param config
+	 * @param shardList 路由到的物理表
+	 * @return
+	 * @throws Exception
+	 */
+	protected M executeShards(@NotNull SQLConfig<T, M, L> config, @NotNull List<String> shardList) throws Exception {
+		if (shardList.size() == 1 || (config.isExplain() && shardList.isEmpty() == false)) {
+			String datasource = switchShard(config, shardList.get(0));
+			try {
+				return execute(config, false);
+			}
+			finally {
+				resetShard(config, datasource);
+			}
+		}
 
-				SQLConfig<T, M, L> cc = join.getCacheConfig(); //这里用config改了getSQL后再还原很麻烦，所以提前给一个config2更好
-				if (cc == null) {
-					if (Log.DEBUG) {
-						throw new NullPointerException("服务器内部错误, executeAppJoin cc == null ! 导致不能缓存 @ APP JOIN 的副表数据！");
-					}
-					continue;
-				}
+		Parser<T, M, L> parser2 = config.gainParser();
+		parser = parser2 != null ? parser2 : getParser();
 
-				SQLConfig<T, M, L> jc = join.getJoinConfig();
+		RequestMethod method = config.getMethod();
+		if (method == RequestMethod.POST) {
+			throw new IllegalArgumentException(config.getTable() + " 是分表，POST 请求中的全部记录必须在同一个分片！");
+		}
 
-				List<On> onList = join.getOnList();
-				On on = onList == null || onList.isEmpty() ? null : onList.get(0);  // APP JOIN 应该有且只有一个 ON 条件
-				String originKey = on == null ? null : on.getOriginKey();
-				if (originKey == null) {
-					throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[0" + (on == null ? "] = null！" : ".getOriginKey() = null！"));
+		if (RequestMethod.isQueryMethod(method) == false) {  // 没有分片键的 PUT, DELETE 广播到全部分片
+			primarySticky = true;
+			int updateCount = 0;
+			for (String shard : shardList) {
+				String datasource = switchShard(config, shard);
+				try {
+					executedSQLCount ++;
+					long startTime = System.currentTimeMillis();
+					updateCount += executeUpdate(config);
+					executedSQLDuration += System.currentTimeMillis() - startTime;
 				}
-				String key = on.getKey();
-				if (key == null) {
-					throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[0" + (on == null ? "] = null！" : ".getKey() = null！"));
+				finally {
+					resetShard(config, datasource);
 				}
+			}
 
-				// 取出 "id@": "@/User/userId" 中所有 userId 的值
-				List<Object> targetValueList = new ArrayList<>();
+			if (updateCount <= 0) {
+				throw new IllegalAccessException("没权限访问或对象不存在！");  // NotExistException 会被 catch 转为成功状态
+			}
+			return newUpdateResult(config, updateCount, true);
+		}
 
-				for (int i = 0; i < resultList.size(); i++) {
-					M mainTable = resultList.get(i);
-					Object targetValue = mainTable == null ? null : mainTable.get(on.getTargetKey());
+		boolean isHead = RequestMethod.isHeadMethod(method, true);
+		Map<String, String> functionMap = isHead ? null : getAggregateFunctionMap(config);
+		Map<String, Object> having = config.getHaving();
+		if (having != null && having.isEmpty() == false && isHead == false) {
+			throw new IllegalArgumentException(config.getTable() + " 是分表，跨分片查询不支持 @having ！请在条件中传分片键 " + config.getShardRule().getKey() + " ！");
+		}
 
-					if (targetValue != null && targetValueList.contains(targetValue) == false) {
-						targetValueList.add(targetValue);
+		// 逻辑表的 SQL 作为合并后结果的缓存 key
+		String sql = config.gainSQL(false);
+		int position = config.getPosition();
+		List<M> cache = getCache(sql, config);
+		M result = getCacheItem(cache, position, config);
+		if (result != null) {
+			cachedSQLCount ++;
+			if (cache.size() > 1) {
+				result.put(KEY_RAW_LIST, cache);
+			}
+			return result;
+		}
+
+		// 每个分片都要查出前 page + 1 页，合并后再取第 page 页
+		int page = config.getPage();
+		int count = config.getCount();
+		if (isHead == false && count > 0) {
+			config.setPage(0);
+			config.setCount((page + 1)*count);
+		}
+		config.setPosition(0);
+
+		long total = 0;
+		List<List<M>> listList = new ArrayList<>(shardList.size());
+		try {
+			prefetchShards(config, shardList);
+
+			for (String shard : shardList) {
+				String datasource = switchShard(config, shard);
+				try {
+					M r = execute(config, false);
+					if (isHead) {
+						Object c = r == null ? null : r.get(JSONResponse.KEY_COUNT);
+						total += c instanceof Number ? ((Number) c).longValue() : 0;
+						continue;
 					}
-				}
 
-				if (targetValueList.isEmpty() && config.isExplain() == false) {
-					throw new NotExistException("targetValueList.isEmpty() && config.isExplain() == false");
+					Object rawList = r == null ? null : r.get(KEY_RAW_LIST);
+					if (rawList instanceof List<?>) {
+						@SuppressWarnings("unchecked")
+						List<M> list = (List<M>) rawList;  // execute 中放入的就是 List<M>
+						listList.add(list);
+					}
+					else {
+						listList.add(r == null || r.isEmpty() ? new ArrayList<>() : Arrays.asList(r));
+					}
+				}
+				finally {
+					resetShard(config, datasource);
 				}
+			}
+		}
+		finally {
+			closeShardResultSets();
+			config.setPage(page);
+			config.setCount(count);
+			config.setPosition(position);
+		}
 
-				// 替换为 "id{}": [userId1, userId2, userId3...]
-				jc.putWhere(originKey, null, false);  // remove originKey
-				jc.putWhere(key + "{}", targetValueList, true);  // add originKey{}          }
+		if (isHead) {
+			result = parser.newSuccessResult();
+			result.put(JSONResponse.KEY_COUNT, total);
+			putCache(sql, Arrays.asList(result), config);
+			return result;
+		}
 
-                jc.setMain(true).setPreparedValueList(new ArrayList<>());
+		List<M> resultList = mergeShardResults(config, listList, functionMap);
+		int size = resultList.size();
+		int offset = count <= 0 ? 0 : page*count;
+		if (offset > 0 || (count > 0 && size > count)) {
+			resultList = new ArrayList<>(resultList.subList(Math.min(offset, size), Math.min(offset + count, size)));
+		}
 
-				// 放一块逻辑更清晰，也避免解析 * 等不支持或性能开销
-				//        String q = jc.getQuote();
-				//        if (allChildCount > 0 && jc.getCount() <= 0) {
-				//          List<String> column = jc.getColumn();
-				//          if (column == null || column.isEmpty()) {
-				//            column = Arrays.asList("*;row_number()OVER(PARTITION BY " + q + key + q + " ORDER BY " + q + key + q + " ASC):_row_num_");
-				//          }
-				//          else {
-				//            column.add("row_number()OVER(PARTITION BY " + q + key + q + " ORDER BY " + q + key + q + " ASC):_row_num_");
-				//          }
-				//          jc.setColumn(column);
-				//        }
+		result = position >= resultList.size() ? JSON.createJSONObject() : resultList.get(position);
+		if (position == 0 && resultList.size() > 1 && result != null && result.isEmpty() == false) {
+			result = JSON.createJSONObject(result);
+			result.put(KEY_RAW_LIST, resultList);
+		}
 
-				int childCount = cc.getCount();
-				int allChildCount = childCount*config.getCount();  // 所有分组子项数量总和
-				boolean isOne2Many = childCount != 1 || join.isOne2Many();
-				// 一对多会漏副表数据  TODO 似乎一对一走以下优化 row_number() <= childCount 逻辑也没问题
-				//        if (isOne2Many == false && allChildCount > 0 && jc.getCount() < allChildCount) {
-				//          jc.setCount(allChildCount);
-				//        }
+		putCache(sql, resultList, config);
+		return result;
+	}
 
-				boolean prepared = jc.isPrepared();
-				String sql = jc.gainSQL(false);
+	/**
+	 * 分片 - 提前并行查出的 ResultSet，execute 中 executeQuery 直接取用
+	 */
+	protected Map<String, ResultSet> shardResultSetMap;
 
-				if (StringUtil.isEmpty(sql, true)) {
-					throw new NullPointerException(TAG + ".executeAppJoin  StringUtil.isEmpty(sql, true) >> return null;");
+	/**有 SHARD_EXECUTOR 时并行执行各分片的查询，连接及 Statement 在当前线程准备，同一个连接上的分片串行执行
+	 * @param config
+	 * @param shardList
+	 * @throws Exception
+	 */
+	protected void prefetchShards(@NotNull SQLConfig<T, M, L> config, @NotNull List<String> shardList) throws Exception {
+		Executor executor = SHARD_EXECUTOR;
+		if (executor == null || config.isTDengine()) {
+			return;
+		}
+
+		Map<Connection, List<Object[]>> taskMap = new LinkedHashMap<>();
+		for (String shard : shardList) {
+			String datasource = switchShard(config, shard);
+			try {
+				String sql = config.gainSQL(false);
+				if (getCache(sql, config) != null) {
+					continue;
 				}
 
-				String sql2 = null;
-				if (childCount > 0 && isOne2Many && (jc.isMySQL() == false || jc.gainDBVersionNums()[0] >= 8)) {
-					//          加 row_number 字段并不会导致 count 等聚合函数统计出错，结果偏大，SQL JOIN 才会，之前没发现是因为缓存失效 bug
-					//          boolean noAggrFun = true;
-					//          List<String> column = jc.getColumn();
-					//          if (column != null) {
-					//            for (String c : column) {
-					//              int start = c == null ? -1 : c.indexOf("(");
-					//              int end = start <= 0 ? -1 : c.lastIndexOf(")");
-					//              if (start > 0 && end > start) {
-					//                String fun = c.substring(0, start);
-					//                if (AbstractSQLConfig.SQL_AGGREGATE_FUNCTION_MAP.containsKey(fun)) {
-					//                  noAggrFun = false;
-					//                  break;
-					//                }
+				DataSourceGroup.Replica replica = selectReplica(config);
+				this.replica = replica;
+				Statement statement;
+				try {
+					if (config.isPrepared()) {
+						statement = getStatement(config, null);
+						sql = null;  // PreparedStatement 不用传 SQL
+					}
+					else {
+						statement = getConnection(config).createStatement();
+						addStatement(statement);
+					}
+				}
+				finally {
+					this.replica = null;
+				}
+
+				taskMap.computeIfAbsent(statement.getConnection(), k -> new ArrayList<>())
+						.add(new Object[]{ shard, statement, sql, replica });
+			}
+			finally {
+				resetShard(config, datasource);
+			}
+		}
+
+		if (taskMap.size() <= 1) {  // 都在同一个连接上，并行没有意义，交给 execute 按顺序执行
+			return;
+		}
+
+		if (shardResultSetMap == null) {
+			shardResultSetMap = new ConcurrentHashMap<>();
+		}
+
+		List<CompletableFuture<Void>> futureList = new ArrayList<>(taskMap.size());
+		for (List<Object[]> taskList : taskMap.values()) {
+			futureList.add(CompletableFuture.runAsync(() -> {
+				for (Object[] task : taskList) {
+					Statement statement = (Statement) task[1];
+					String sql = (String) task[2];
+					DataSourceGroup.Replica replica = (DataSourceGroup.Replica) task[3];
+					if (replica != null) {
+						replica.onStart();
+					}
+
+					long startTime = System.currentTimeMillis();
+					boolean success = false;
+					try {
+						ResultSet rs = sql == null ? ((PreparedStatement) statement).executeQuery() : executeQuery(statement, sql);
+						shardResultSetMap.put((String) task[0], rs);
+						success = true;
+					}
+					catch (SQLException e) {
+						success = isConnectionException(e) == false;
+						throw new CompletionException(e);
+					}
+					catch (Exception e) {
+						throw new CompletionException(e);
+					}
+					finally {
+						if (replica != null) {
+							replica.onEnd(System.currentTimeMillis() - startTime, success);
+						}
+					}
+				}
+			}, executor));
+		}
+
+		try {
+			CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	protected void closeShardResultSets() {
+		if (shardResultSetMap == null) {
+			return;
+		}
+
+		for (ResultSet rs : shardResultSetMap.values()) {
+			try {
+				rs.close();
+			}
+			catch (SQLException e) {
+				Log.w(TAG, "closeShardResultSets  rs.close() >> catch (SQLException e) = " + e.getMessage());
+			}
+		}
+		shardResultSetMap = null;
+	}
+
+	private static final Pattern PATTERN_AGGREGATE = Pattern.compile("^\\s*(count|sum|min|max|avg)\\s*\\((.*)\\)\\s*(?::\\s*(\\w+))?\\s*$", Pattern.CASE_INSENSITIVE);
+
+	/**解析 @column 中可以跨分片合并的聚合函数
+	 * @param config
+	 * @return 字段名(别名) - count, sum, min, max
+	 */
+	protected Map<String, String> getAggregateFunctionMap(@NotNull SQLConfig<T, M, L> config) {
+		List<String> column = config.getColumn();
+		if (column == null || column.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, String> map = new LinkedHashMap<>();
+		for (String c : column) {
+			Matcher matcher = c == null ? null : PATTERN_AGGREGATE.matcher(c);
+			if (matcher == null || matcher.matches() == false) {
+				continue;
+			}
+
+			String fun = matcher.group(1).toLowerCase();
+			String arg = matcher.group(2).trim();
+			if ("avg".equals(fun) || arg.toLowerCase().startsWith("distinct")) {
+				throw new IllegalArgumentException(config.getTable() + " 是分表，跨分片查询的 @column 中不支持 " + c
+						+ " ！avg 请改为 sum 和 count 再相除，或者在条件中传分片键 " + config.getShardRule().getKey() + " ！");
+			}
+
+			String alias = matcher.group(3);
+			map.put(StringUtil.isEmpty(alias) ? c.trim() : alias, fun);
+		}
+		return map;
+	}
+
+	/**合并各分片的结果，有 @group, 聚合函数 或 DISTINCT 时重新聚合/去重，有 @order 时按排序归并
+	 * @param config
+	 * @param listList 各分片的结果，每个都已经按 @order 排好序
+	 * @param functionMap {@link #getAggregateFunctionMap(SQLConfig)}
+	 * @return
+	 */
+	protected List<M> mergeShardResults(@NotNull SQLConfig<T, M, L> config, @NotNull List<List<M>> listList, Map<String, String> functionMap) {
+		Comparator<M> comparator = getShardComparator(config);
+		String group = config.getGroup();
+		boolean isGroup = StringUtil.isNotEmpty(group, true) || (functionMap != null && functionMap.isEmpty() == false);
+
+		if (isGroup || config.isDistinct()) {
+			String[] groupKeys = StringUtil.split(group);
+			Map<Object, M> map = new LinkedHashMap<>();
+			for (List<M> list : listList) {
+				for (M row : list) {
+					Object key;
+					if (isGroup == false) {
+						key = row;
+					}
+					else if (groupKeys == null) {
+						key = Boolean.TRUE;  // 没有 @group 的聚合只有一行
+					}
+					else {
+						List<Object> values = new ArrayList<>(groupKeys.length);
+						for (String k : groupKeys) {
+							values.add(row.get(k));
+						}
+						key = values;
+					}
+
+					M old = map.get(key);
+					if (old == null) {
+						map.put(key, isGroup ? JSON.createJSONObject(row) : row);
+					}
+					else if (isGroup) {
+						for (Entry<String, String> entry : functionMap.entrySet()) {
+							String k = entry.getKey();
+							old.put(k, aggregate(entry.getValue(), old.get(k), row.get(k)));
+						}
+					}
+				}
+			}
+
+			List<M> list = new ArrayList<>(map.values());
+			if (comparator != null) {
+				list.sort(comparator);
+			}
+			return list;
+		}
+
+		if (comparator == null) {
+			List<M> list = new ArrayList<>();
+			for (List<M> l : listList) {
+				list.addAll(l);
+			}
+			return list;
+		}
+
+		// k 路归并
+		PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> {
+			int c = comparator.compare(listList.get(a[0]).get(a[1]), listList.get(b[0]).get(b[1]));
+			return c != 0 ? c : Integer.compare(a[0], b[0]);
+		});
+		int size = 0;
+		for (int i = 0; i < listList.size(); i++) {
+			size += listList.get(i).size();
+			if (listList.get(i).isEmpty() == false) {
+				queue.add(new int[]{ i, 0 });
+			}
+		}
+
+		List<M> list = new ArrayList<>(size);
+		while (queue.isEmpty() == false) {
+			int[] head = queue.poll();
+			List<M> l = listList.get(head[0]);
+			list.add(l.get(head[1]));
+			if (++ head[1] < l.size()) {
+				queue.add(head);
+			}
+		}
+		return list;
+	}
+
+	/**按 @order 比较行，游标分页时为实际使用的排序
+	 * @param config
+	 * @return 没有 @order 则返回 null
+	 */
+	protected Comparator<M> getShardComparator(@NotNull SQLConfig<T, M, L> config) {
+		String order = config.getOrder();
+		if (config.getCursor() != null) {
+			order = KeysetCursor.parse(order, config.getIdKey()).getOrder();
+		}
+
+		String[] items = StringUtil.split(StringUtil.trim(order));
+		if (items == null || items.length <= 0) {
+			return null;
+		}
+
+		Comparator<M> comparator = null;
+		for (String item : items) {
+			boolean desc = item.endsWith("-");
+			String key = desc || item.endsWith("+") ? item.substring(0, item.length() - 1) : item;
+			Comparator<M> c = (a, b) -> compareValue(a.get(key), b.get(key));
+			if (desc) {
+				c = c.reversed();
+			}
+			comparator = comparator == null ? c : comparator.thenComparing(c);
+		}
+		return comparator;
+	}
+
+	/**和数据库一样 null 在前
+	 */
+	protected static int compareValue(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		if (a instanceof Number && b instanceof Number) {
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}
+		if (a instanceof Comparable && a.getClass().isInstance(b)) {
+			return compareComparable(a, b);
+		}
+		return a.toString().compareTo(b.toString());
+	}
+
+	/**调用方已确保 b 和 a 是同一个类，例如都是 String, Timestamp, Boolean
+	 */
+	@SuppressWarnings("unchecked")
+	private static <C extends Comparable<? super C>> int compareComparable(Object a, Object b) {
+		return ((C) a).compareTo((C) b);
+	}
+
+	/**合并两个分片的聚合结果
+	 * @param function count, sum, min, max
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	protected static Object aggregate(String function, Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? b : a;
+		}
+
+		switch (function) {
+			case "min":
+				return compareValue(a, b) <= 0 ? a : b;
+			case "max":
+				return compareValue(a, b) >= 0 ? a : b;
+			default:  // count, sum
+				if (a instanceof Number == false || b instanceof Number == false) {
+					return a;
+				}
+				BigDecimal sum = new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+				if (a instanceof BigDecimal || a instanceof Double || a instanceof Float) {
+					return a instanceof BigDecimal ? sum : (Object) sum.doubleValue();
+				}
+				return a instanceof Integer && sum.compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) <= 0 ? (Object) sum.intValue() : (Object) sum.longValue();
+		}
+	}
+
+
+	/**@ APP JOIN 查询副表并缓存到 childMap
+	 * @param config
+	 * @param resultList
+	 * @param childMap
+	 * @throws Exception
+	 */
+	protected void executeAppJoin(SQLConfig<T, M, L> config, List<M> resultList, Map<String, List<M>> childMap, Map<String, String> keyMap) throws Exception {
+		List<Join<T, M, L>> joinList = config.getJoinList();
+		if (joinList != null) {
+
+			for (Join<T, M, L> join : joinList) {
+				if (join.isAppJoin() == false) {
+					Log.i(TAG, "executeAppJoin  for (Join j : joinList) >> j.isAppJoin() == false >>  continue;");
+					continue;
+				}
+
+				SQLConfig<T, M, L> cc = join.getCacheConfig(); //这里用config改了getSQL后再还原很麻烦，所以提前给一个config2更好
+				if (cc == null) {
+					if (Log.DEBUG) {
+						throw new NullPointerException("服务器内部错误, executeAppJoin cc == null ! 导致不能缓存 @ APP JOIN 的副表数据！");
+					}
+					continue;
+				}
+
+				SQLConfig<T, M, L> jc = join.getJoinConfig();
+
+				List<On> onList = join.getOnList();
+				On on = onList == null || onList.isEmpty() ? null : onList.get(0);  // APP JOIN 应该有且只有一个 ON 条件
+				String originKey = on == null ? null : on.getOriginKey();
+				if (originKey == null) {
+					throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[0" + (on == null ? "] = null！" : ".getOriginKey() = null！"));
+				}
+				String key = on.getKey();
+				if (key == null) {
+					throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[0" + (on == null ? "] = null！" : ".getKey() = null！"));
+				}
+
+				// 取出 "id@": "@/User/userId" 中所有 userId 的值
+				List<Object> targetValueList = new ArrayList<>();
+
+				for (int i = 0; i < resultList.size(); i++) {
+					M mainTable = resultList.get(i);
+					Object targetValue = mainTable == null ? null : mainTable.get(on.getTargetKey());
+
+					if (targetValue != null && targetValueList.contains(targetValue) == false) {
+						targetValueList.add(targetValue);
+					}
+				}
+
+				if (targetValueList.isEmpty() && config.isExplain() == false) {
+					throw new NotExistException("targetValueList.isEmpty() && config.isExplain() == false");
+				}
+
+				// 替换为 "id{}": [userId1, userId2, userId3...]
+				jc.putWhere(originKey, null, false);  // remove originKey
+				jc.putWhere(key + "{}", targetValueList, true);  // add originKey{}          }
+
+                jc.setMain(true).setPreparedValueList(new ArrayList<>());
+
+				// 放一块逻辑更清晰，也避免解析 * 等不支持或性能开销
+				//        String q = jc.getQuote();
+				//        if (allChildCount > 0 && jc.getCount() <= 0) {
+				//          List<String> column = jc.getColumn();
+				//          if (column == null || column.isEmpty()) {
+				//            column = Arrays.asList("*;row_number()OVER(PARTITION BY " + q + key + q + " ORDER BY " + q + key + q + " ASC):_row_num_");
+				//          }
+				//          else {
+				//            column.add("row_number()OVER(PARTITION BY " + q + key + q + " ORDER BY " + q + key + q + " ASC):_row_num_");
+				//          }
+				//          jc.setColumn(column);
+				//        }
+
+				int childCount = cc.getCount();
+				int allChildCount = childCount*config.getCount();  // 所有分组子项数量总和
+				boolean isOne2Many = childCount != 1 || join.isOne2Many();
+				// 一对多会漏副表数据  TODO 似乎一对一走以下优化 row_number() <= childCount 逻辑也没问题
+				//        if (isOne2Many == false && allChildCount > 0 && jc.getCount() < allChildCount) {
+				//          jc.setCount(allChildCount);
+				//        }
+
+				boolean prepared = jc.isPrepared();
+				String sql = jc.gainSQL(false);
+
+				if (StringUtil.isEmpty(sql, true)) {
+					throw new NullPointerException(TAG + ".executeAppJoin  StringUtil.isEmpty(sql, true) >> return null;");
+				}
+
+				String sql2 = null;
+				if (childCount > 0 && isOne2Many && (jc.isMySQL() == false || jc.gainDBVersionNums()[0] >= 8)) {
+					//          加 row_number 字段并不会导致 count 等聚合函数统计出错，结果偏大，SQL JOIN 才会，之前没发现是因为缓存失效 bug
+					//          boolean noAggrFun = true;
+					//          List<String> column = jc.getColumn();
+					//          if (column != null) {
+					//            for (String c : column) {
+					//              int start = c == null ? -1 : c.indexOf("(");
+					//              int end = start <= 0 ? -1 : c.lastIndexOf(")");
+					//              if (start > 0 && end > start) {
+					//                String fun = c.substring(0, start);
+					//                if (AbstractSQLConfig.SQL_AGGREGATE_FUNCTION_MAP.containsKey(fun)) {
+					//                  noAggrFun = false;
+					//                  break;
+					//                }
 					//              }
 					//            }
 					//          }
@@ -1031,9 +1646,121 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 		return resultList;
 	}
 
+	/**
+	 * 当前结果集每个字段对应的 key，第一行计算后缓存，后面的行直接取，只在 execute 读取主查询结果时有值
+	 */
+	protected String[] columnLabels;
+
+	/**JOIN 副表的 ON 条件，每次 execute 只解析一次，避免每行都 substring 等。
+	 * Join 随请求创建，这里不跨 execute 缓存，3 张副表的解析只要不到 1 微秒，相比映射结果集的耗时可以忽略，见 JoinBenchmark
+	 */
+	protected static class JoinLayout {
+		final Join<?, ?, ?> join;
+		final String[] keys;  // 副表字段，去掉了末尾的 @
+		final String[] targetTableKeys;
+		final String[] targetKeys;
+		final boolean[] mainTargets;
+		final boolean[] idKeys;
+
+		JoinLayout(@NotNull Join<?, ?, ?> join, String idKey, String tableKey) {
+			this.join = join;
+
+			List<On> onList = join.getOnList();
+			int size = onList == null ? 0 : onList.size();
+			keys = new String[size];
+			targetTableKeys = new String[size];
+			targetKeys = new String[size];
+			mainTargets = new boolean[size];
+			idKeys = new boolean[size];
+
+			for (int j = 0; j < size; j++) {
+				On on = onList.get(j);
+				String ok = on == null ? null : on.getOriginKey();
+				if (ok == null) {
+					throw new NullPointerException("服务器内部错误，List<Join> 中 Join.onList[" + j + (on == null ? "] = null！" : ".getOriginKey() = null！"));
+				}
+
+				keys[j] = ok.substring(0, ok.length() - 1);
+				targetTableKeys[j] = on.getTargetTableKey();
+				targetKeys[j] = on.getTargetKey();
+				mainTargets[j] = StringUtil.equals(targetTableKeys[j], tableKey);
+				idKeys[j] = keys[j].equals(idKey);
+			}
+		}
+
+		/**取当前行 ON 条件的值
+		 * @param item 主表数据
+		 * @param viceItem 之前的副表数据
+		 * @return ON 条件不包含副表主键的值则返回 null，不缓存
+		 */
+		ViceKey getViceKey(Map<String, Object> item, Map<String, Object> viceItem) {
+			if (keys.length <= 0) {
+				return null;
+			}
+
+			boolean hasPK = false;
+			Object[] values = new Object[keys.length];
+			for (int j = 0; j < keys.length; j++) {
+				Map<String, Object> target = mainTargets[j] ? item : (viceItem == null ? null : JSON.get(viceItem, targetTableKeys[j]));
+				Object v = target == null ? null : target.get(targetKeys[j]);
+				hasPK = hasPK || (idKeys[j] && v != null);
+				values[j] = v;
+			}
+
+			return hasPK ? new ViceKey(this, values) : null;
+		}
+	}
+
+	/**JOIN 副表 + 当前行 ON 条件的值，用来代替 viceSql 给副表数据去重
+	 */
+	protected static class ViceKey {
+		final JoinLayout layout;
+		final Object[] values;
+		final int hash;
+
+		ViceKey(JoinLayout layout, Object[] values) {
+			this.layout = layout;
+			this.values = values;
+			this.hash = 31*System.identityHashCode(layout) + Arrays.hashCode(values);
+		}
+
+		/**生成副表缓存的 SQL，和副表单独查询时的 SQL 一致
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		String gainSQL() throws Exception {
+			SQLConfig viceConfig = layout.join.getCacheConfig();
+			for (int j = values.length - 1; j >= 0; j--) {
+				viceConfig.putWhere(layout.keys[j], values[j], true);
+			}
+			return viceConfig.gainSQL(false);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof ViceKey == false) {
+				return false;
+			}
+			ViceKey vk = (ViceKey) obj;
+			return layout == vk.layout && Arrays.equals(values, vk.values);
+		}
+	}
+
 	protected String getKey(@NotNull SQLConfig<T, M, L> config, @NotNull ResultSet rs, @NotNull ResultSetMetaData rsmd
 			, final int row, @NotNull M table, final int columnIndex, Map<String, M> childMap
 			, Map<String, String> keyMap) throws Exception {
+		String[] labels = columnLabels;
+		String label = row <= 0 || labels == null ? null : labels[columnIndex - 1];
+		if (label != null) {  // 同一个结果集每行的字段名都一样，只在第一行计算
+			return label;
+		}
+
 		long startTime = System.currentTimeMillis();
 		String key = rsmd.getColumnLabel(columnIndex);  // dotIndex < 0 ? label : label.substring(dotIndex + 1);
 		sqlResultDuration += System.currentTimeMillis() - startTime;
@@ -1043,7 +1770,7 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 			String realTableName = AbstractSQLConfig.TABLE_KEY_MAP.get(tableName);
 
 			String pattern = "^" + (StringUtil.isEmpty(realTableName, true) ? tableName : realTableName) + "\\." + "[a-zA-Z]+$";
-			boolean isMatch = Pattern.matches(pattern, key);
+			boolean isMatch = PatternCache.compile(pattern).matcher(key).matches();
 			if (isMatch) {
 				key = key.split("\\.")[1];
 			}
@@ -1056,6 +1783,9 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 			}
 		}
 
+		if (labels != null) {
+			labels[columnIndex - 1] = key;
+		}
 		return key;
 	}
 
@@ -1202,29 +1932,468 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	}
 
 
-	@Override  // 重写是为了返回类型从 Statement 改为 PreparedStatement，避免其它方法出错
-	public PreparedStatement getStatement(@NotNull SQLConfig<T, M, L> config) throws Exception {
-		return getStatement(config, null);
-	}
+	/**POST/PUT/DELETE 执行成功后的结果，例如 count(affected rows)、id 字段
+	 * @param config
+	 * @param updateCount
+	 * @param executed 是否已经执行，已执行才让缓存失效
+	 * @return
+	 * @throws Exception
+	 */
+	protected M newUpdateResult(@NotNull SQLConfig<T, M, L> config, int updateCount, boolean executed) throws Exception {
+		RequestMethod method = config.getMethod();
+		if (executed) {
+			invalidateSharedCache(config);
+		}
 
-	@Override
+		// updateCount>0时收集结果。例如更新操作成功时，返回count(affected rows)、id字段
+		M result = parser.newSuccessResult();  // TODO 对 APIAuto 及其它现有的前端/客户端影响比较大，暂时还是返回 code 和 msg，5.0 再移除  JSON.createJSONObject();
+
+		//id,id{}至少一个会有，一定会返回，不用抛异常来阻止关联写操作时前面错误导致后面无条件执行！
+		result.put(JSONResponse.KEY_COUNT, updateCount);//返回修改的记录数
+
+		String idKey = config.getIdKey();
+		if (config.getId() != null) {
+			result.put(idKey, config.getId());
+		}
+		if (config.getIdIn() != null) {
+			result.put(idKey + "[]", config.getIdIn());
+		}
+
+		if (executed && (method == RequestMethod.PUT || method == RequestMethod.DELETE)) {
+			config.setMethod(RequestMethod.GET);
+			removeCache(config.gainSQL(false), config);
+			config.setMethod(method);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * 批量写时一条 SQL 最多的预编译参数数量，SQL Server 限制 2100，PostgreSQL 限制 32767，MySQL 限制 65535
+	 */
+	public static int MAX_BATCH_PARAM_COUNT = 2000;
+	/**
+	 * 批量写时每次 executeBatch 最多的条数
+	 */
+	public static int MAX_BATCH_SIZE = 1000;
+
+	/**
+	 * 批量写收集的 SQLConfig，为 null 则不在批量写
+	 */
+	protected List<SQLConfig<T, M, L>> batchConfigList;
+
+	@Override
+	public boolean beginBatch() {
+		batchConfigList = new ArrayList<>();
+		return true;
+	}
+
+	@Override
+	public void endBatch() {
+		batchConfigList = null;
+	}
+
+	/**连续的同一条预编译 SQL 为一组，同一组内 POST 合并为一条多 VALUES 的 INSERT，其它的用 JDBC addBatch/executeBatch，
+	 * 失败则逐条重新执行，以便得到每一条的结果
+	 */
+	@Override
+	public List<M> executeBatch() throws Exception {
+		List<SQLConfig<T, M, L>> configList = batchConfigList;
+		batchConfigList = null;
+
+		int size = configList == null ? 0 : configList.size();
+		List<M> results = new ArrayList<>(size);
+		if (size <= 0) {
+			return results;
+		}
+
+		for (int i = 0; i < size; i++) {
+			results.add(null);
+		}
+
+		// 只合并连续的相同 SQL，保持和请求中一样的写入顺序
+		String groupKey = null;
+		List<Integer> group = new ArrayList<>();
+		for (int i = 0; i <= size; i++) {
+			SQLConfig<T, M, L> config = i < size ? configList.get(i) : null;
+			// TDengine 等不支持 PreparedStatement，非预编译的 SQL 每条都不一样
+			String key = config == null || config.isPrepared() == false || config.isTDengine() ? null : config.gainSQL(true);
+			if (group.isEmpty() == false && (key == null || key.equals(groupKey) == false)) {
+				executeGroup(configList, group, results);
+				group.clear();
+			}
+
+			if (config == null) {
+				break;
+			}
+			if (key == null) {
+				results.set(i, executeSingle(config));
+				continue;
+			}
+
+			groupKey = key;
+			group.add(i);
+		}
+
+		return results;
+	}
+
+	/**执行连续的同一条预编译 SQL，按 MAX_BATCH_SIZE 分批
+	 */
+	protected void executeGroup(@NotNull List<SQLConfig<T, M, L>> configList, @NotNull List<Integer> group
+			, @NotNull List<M> results) throws Exception {
+		for (int start = 0; start < group.size(); start += MAX_BATCH_SIZE) {
+			List<Integer> indexes = group.subList(start, Math.min(group.size(), start + MAX_BATCH_SIZE));
+			List<SQLConfig<T, M, L>> configs = new ArrayList<>(indexes.size());
+			for (Integer index : indexes) {
+				configs.add(configList.get(index));
+			}
+
+			List<M> groupResults;
+			if (configs.size() <= 1) {
+				groupResults = Arrays.asList(executeSingle(configs.get(0)));
+			}
+			else if (isMultiValues(configs)) {
+				groupResults = executeMultiValues(configs);
+			}
+			else if (isStatementBatch(configs)) {
+				groupResults = executeStatementBatch(configs);
+			}
+			else {
+				groupResults = new ArrayList<>(configs.size());
+				for (SQLConfig<T, M, L> config : configs) {
+					groupResults.add(executeSingle(config));
+				}
+			}
+
+			for (int i = 0; i < indexes.size(); i++) {
+				results.set(indexes.get(i), groupResults.get(i));
+			}
+		}
+	}
+
+	/**单独执行一条，把异常转为错误结果
+	 */
+	protected M executeSingle(@NotNull SQLConfig<T, M, L> config) {
+		try {
+			return execute(config, false);
+		}
+		catch (Exception e) {
+			return parser.newErrorResult(e);
+		}
+	}
+
+	/**是否合并为一条多 VALUES 的 INSERT，需要所有 id 都已生成，否则拿不到每一条的自增 id
+	 */
+	protected boolean isMultiValues(@NotNull List<SQLConfig<T, M, L>> configs) {
+		SQLConfig<T, M, L> first = configs.get(0);
+		if (first.getMethod() != RequestMethod.POST) {
+			return false;
+		}
+		if ((first.isMySQL() || first.isMariaDB() || first.isTiDB() || first.isPostgreSQL() || first.isCockroachDB()
+				|| first.isOpenGauss() || first.isTimescaleDB() || first.isSQLServer() || first.isSQLite() || first.isDuckDB()
+				|| first.isClickHouse() || first.isDb2()) == false) {
+			return false;
+		}
+
+		for (SQLConfig<T, M, L> config : configs) {
+			List<List<Object>> values = config.getId() == null ? null : config.getValues();
+			if (values == null || values.size() != 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**是否用 JDBC addBatch/executeBatch 执行。自增 id 的 POST 要在 executeBatch 后通过 getGeneratedKeys 按顺序拿到每一条的 id，
+	 * Oracle, 较早的 SQL Server 等驱动批量执行时不返回或只返回最后一条，这些数据库的自增 id 的 POST 只能逐条执行
+	 */
+	protected boolean isStatementBatch(@NotNull List<SQLConfig<T, M, L>> configs) {
+		SQLConfig<T, M, L> first = configs.get(0);
+		if (first.getMethod() != RequestMethod.POST || first.getId() != null) {
+			return true;
+		}
+		return first.isMySQL() || first.isMariaDB() || first.isTiDB() || first.isPostgreSQL() || first.isCockroachDB()
+				|| first.isOpenGauss() || first.isTimescaleDB();
+	}
+
+	/**合并为 INSERT INTO ... VALUES (...),(...) 执行，整条 SQL 是原子的，失败则逐条重新执行
+	 */
+	protected List<M> executeMultiValues(@NotNull List<SQLConfig<T, M, L>> configs) throws Exception {
+		List<M> results = new ArrayList<>(configs.size());
+
+		SQLConfig<T, M, L> first = configs.get(0);
+		List<List<Object>> firstValues = first.getValues();
+		int columnCount = Math.max(1, firstValues.get(0).size());
+		int rowCount = Math.max(1, MAX_BATCH_PARAM_COUNT/columnCount);
+
+		for (int start = 0; start < configs.size(); start += rowCount) {
+			List<SQLConfig<T, M, L>> chunk = configs.subList(start, Math.min(configs.size(), start + rowCount));
+
+			List<List<Object>> valuess = new ArrayList<>(chunk.size());
+			for (SQLConfig<T, M, L> config : chunk) {
+				valuess.add(config.getValues().get(0));
+			}
+
+			int count;
+			Connection conn = null;
+			Savepoint savepoint = null;
+			first.setValues(valuess);
+			try {
+				// 事务中失败后 PostgreSQL 等会中止整个事务，先设置保存点，失败后回滚到这里再逐条执行
+				conn = getConnection(first);
+				savepoint = conn.getAutoCommit() ? null : conn.setSavepoint();
+
+				executedSQLCount ++;
+				long startTime = System.currentTimeMillis();
+				count = executeUpdate(first);
+				executedSQLDuration += System.currentTimeMillis() - startTime;
+			}
+			catch (Exception e) {
+				Log.e(TAG, "executeMultiValues  catch (Exception e) = " + e.getMessage() + " >> 逐条重新执行");
+				count = -1;
+				if (savepoint != null) {
+					conn.rollback(savepoint);
+				}
+			}
+			finally {
+				first.setValues(firstValues);
+			}
+
+			if (savepoint != null && count >= 0) {
+				try {
+					conn.releaseSavepoint(savepoint);
+				}
+				catch (SQLException e) {  // 部分驱动不支持，事务结束时会自动释放
+					Log.w(TAG, "executeMultiValues  conn.releaseSavepoint(savepoint) catch (SQLException e) = " + e.getMessage());
+				}
+			}
+
+			if (count == chunk.size()) {
+				for (SQLConfig<T, M, L> config : chunk) {
+					results.add(newUpdateResult(config, 1, true));
+				}
+			}
+			else if (count < 0) {
+				for (SQLConfig<T, M, L> config : chunk) {
+					results.add(executeSingle(config));
+				}
+			}
+			else {  // 已经写入，但不知道哪些失败了
+				for (SQLConfig<T, M, L> config : chunk) {
+					results.add(parser.newErrorResult(new SQLException("批量新增 " + chunk.size() + " 条，但 count = " + count + " ！")));
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**用 JDBC addBatch/executeBatch 执行同一条预编译 SQL，部分失败时按驱动返回的 updateCounts 得到每一条的结果，
+	 * 驱动在失败后中止的，剩下的逐条重新执行；事务中失败则回滚到执行前的保存点，全部逐条重新执行
+	 */
+	protected List<M> executeStatementBatch(@NotNull List<SQLConfig<T, M, L>> configs) throws Exception {
+		SQLConfig<T, M, L> first = configs.get(0);
+		boolean isAutoId = first.getMethod() == RequestMethod.POST && first.getId() == null;
+
+		// 事务中失败后 PostgreSQL 等会中止整个事务，先设置保存点，失败后回滚到这里再逐条执行
+		Connection conn = getConnection(first);
+		Savepoint savepoint = conn.getAutoCommit() ? null : conn.setSavepoint();
+
+		PreparedStatement statement = getStatement(first);
+		statement.addBatch();
+		for (int i = 1; i < configs.size(); i++) {
+			SQLConfig<T, M, L> config = configs.get(i);
+			config.gainSQL(true);  // 生成预编译值
+			List<Object> valueList = config.getPreparedValueList();
+
+			statement.clearParameters();
+			int valueCount = valueList == null ? 0 : valueList.size();
+			for (int j = 0; j < valueCount; j++) {
+				statement = setArgument(config, statement, j, valueList.get(j));
+			}
+			statement.addBatch();
+		}
+
+		int[] counts;
+		Exception error = null;
+		executedSQLCount ++;
+		long startTime = System.currentTimeMillis();
+		try {
+			counts = statement.executeBatch();
+		}
+		catch (BatchUpdateException e) {
+			Log.e(TAG, "executeStatementBatch  catch (BatchUpdateException e) = " + e.getMessage());
+			counts = e.getUpdateCounts();
+			error = e;
+		}
+		finally {
+			executedSQLDuration += System.currentTimeMillis() - startTime;
+			statement.clearBatch();
+		}
+
+		if (savepoint != null) {
+			if (error != null) {  // 成功的那些也被回滚了，updateCounts 不再可信
+				conn.rollback(savepoint);
+				counts = null;
+			}
+			else {
+				try {
+					conn.releaseSavepoint(savepoint);
+				}
+				catch (SQLException e) {  // 部分驱动不支持，事务结束时会自动释放
+					Log.w(TAG, "executeStatementBatch  conn.releaseSavepoint(savepoint) catch (SQLException e) = " + e.getMessage());
+				}
+			}
+		}
+
+		if (isAutoId && error == null) {
+			ResultSet rs = statement.getGeneratedKeys();
+			if (rs != null) {
+				try {
+					for (int i = 0; i < configs.size() && rs.next(); i++) {
+						configs.get(i).setId(rs.getLong(1));
+					}
+				}
+				finally {
+					rs.close();
+				}
+			}
+		}
+
+		List<M> results = new ArrayList<>(configs.size());
+		for (int i = 0; i < configs.size(); i++) {
+			SQLConfig<T, M, L> config = configs.get(i);
+			if (counts == null || i >= counts.length) {  // 驱动在失败后中止，剩下的没有执行，或者已回滚到保存点
+				results.add(executeSingle(config));
+				continue;
+			}
+
+			int count = counts[i];
+			if (count == Statement.EXECUTE_FAILED) {
+				results.add(parser.newErrorResult(error != null ? error : new SQLException("批量执行第 " + i + " 条失败！")));
+			}
+			else if (count == 0) {
+				results.add(parser.newErrorResult(new IllegalAccessException("没权限访问或对象不存在！")));
+			}
+			else {  // SUCCESS_NO_INFO 也算成功
+				results.add(newUpdateResult(config, count == Statement.SUCCESS_NO_INFO ? 1 : count, true));
+			}
+		}
+
+		return results;
+	}
+
+	/**预估查询结果的数量，用来设置 List 初始容量，减少扩容
+	 * @param config
+	 * @return
+	 */
+	protected int estimateCapacity(@NotNull SQLConfig<T, M, L> config) {
+		int capacity;
+		if (config.getId() != null) {  // id:Object 一定是 AND 条件，最终返回数据最多就这么多
+			capacity = 1;
+		}
+		else {
+			Object idIn = config.getIdIn();
+			if (idIn instanceof Collection<?>) {  // id{}:[] 一定是 AND 条件，最终返回数据最多就这么多
+				capacity = ((Collection<?>) idIn).size();
+			}
+			else {  // 预估容量
+				capacity = config.getCount() <= 0 ? AbstractParser.MAX_QUERY_COUNT : config.getCount();
+				if (capacity > 100) {
+					// 有 WHERE 条件，条件越多过滤数据越多，暂时不考虑 @combine:"a | (b & !c)" 里面 | OR 和 ! NOT 条件，太复杂也不是很必要
+					Map<String, List<String>> combine = config.getCombineMap();
+
+					List<String> andList = combine == null ? null : combine.get("&");
+					int andCondCount = andList == null ? (config.getWhere() == null ? 0 : config.getWhere().size()) : andList.size();
+
+					List<String> orList = combine == null ? null : combine.get("|");
+					int orCondCount = orList == null ? 0 : orList.size();
+
+					List<String> notList = combine == null ? null : combine.get("!");
+					int notCondCount = notList == null ? 0 : notList.size();
+
+					// 有 GROUP BY 分组，字段越少过滤数据越多
+					String[] group = StringUtil.split(config.getGroup());
+					int groupCount = group == null ? 0 : group.length;
+					if (groupCount > 0 && Arrays.asList(group).contains(config.getIdKey())) {
+						groupCount = 0;
+					}
+
+					// 有 HAVING 聚合函数，字段越多过滤数据越多，暂时不考虑 @combine:"a | (b & !c)" 里面 | OR 和 ! NOT 条件，太复杂也不是很必要
+					Map<String, Object> having = config.getHaving();
+					int havingCount = having == null ? 0 : having.size();
+
+					capacity /= Math.pow(1.5, Math.log10(capacity)
+							+ andCondCount
+							+ ((orCondCount <= 0 ? 0 : 2.0d/orCondCount)  // 1: 2.3, 2: 1.5, 3: 1.3, 4: 1.23, 5: 1.18
+							+ (notCondCount/5.0d)  // 1: 1.08, 2: 1.18, 3: 1.28, 4: 1.38, 1.50
+							+ (groupCount <= 0 ? 0 : 10.0d/groupCount))  // 1: 57.7, 7.6, 3: 3.9, 4: 2.8, 5: 2.3
+							+ havingCount
+							);
+					capacity += 1;  // 避免正好比需要容量少一点点导致多一次扩容，大量数据 System.arrayCopy
+				}
+			}
+		}
+
+		return capacity;
+	}
+
+	/**
+	 * 是否开启流式读取，开启后 GET 查询使用 TYPE_FORWARD_ONLY, CONCUR_READ_ONLY 的 Statement 并设置 fetchSize，
+	 * 不再通过 rs.last() 获取数量，避免 MySQL Connector/J, pgjdbc 等驱动把整个结果集缓存到客户端
+	 */
+	public static boolean ENABLE_STREAMING_RESULT = false;
+	/**
+	 * 流式读取时每次从数据库取的行数，<= 0 则用驱动默认值。
+	 * MySQL 需要在连接参数加 useCursorFetch=true 或者重写 getFetchSize 返回 Integer.MIN_VALUE，
+	 * PostgreSQL 需要在事务内(autoCommit = false)才会按 fetchSize 分批读取
+	 */
+	public static int DEFAULT_FETCH_SIZE = 100;
+
+	/**是否流式读取查询结果，可在子类重写来按数据库、表等区分
+	 * @param config
+	 * @return
+	 */
+	public boolean isStreamingResult(@NotNull SQLConfig<T, M, L> config) {
+		return ENABLE_STREAMING_RESULT && RequestMethod.isGetMethod(config.getMethod(), true);
+	}
+
+	/**流式读取时每次从数据库取的行数
+	 * @param config
+	 * @return <= 0 则用驱动默认值
+	 */
+	public int getFetchSize(@NotNull SQLConfig<T, M, L> config) {
+		return DEFAULT_FETCH_SIZE;
+	}
+
+	@Override  // 重写是为了返回类型从 Statement 改为 PreparedStatement，避免其它方法出错
+	public PreparedStatement getStatement(@NotNull SQLConfig<T, M, L> config) throws Exception {
+		return getStatement(config, null);
+	}
+
+	@Override
 	public PreparedStatement getStatement(@NotNull SQLConfig<T, M, L> config, String sql) throws Exception {
 		if (StringUtil.isEmpty(sql)) {
 			sql = config.gainSQL(config.isPrepared());
 		}
 
 		Connection conn = getConnection(config);
-		PreparedStatement statement; //创建Statement对象
+
+		int resultSetType = ResultSet.TYPE_FORWARD_ONLY;
+		int resultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
+		String[] generatedColumns = null;
+		boolean generatedKeys = false;
 		if (config.getMethod() == RequestMethod.POST && config.getId() == null) { //自增id
 			if (config.isOracle()) {
 				// 解决 oracle 使用自增主键 插入获取不到id问题
-				String[] generatedColumns = {config.getIdKey()};
-				statement = conn.prepareStatement(sql, generatedColumns);
+				generatedColumns = new String[]{config.getIdKey()};
 			} else {
-				statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+				generatedKeys = true;
 			}
 		}
-		else if (RequestMethod.isGetMethod(config.getMethod(), true)) {
+		else if (RequestMethod.isGetMethod(config.getMethod(), true) && isStreamingResult(config) == false) {
             // if (config.isPresto() || config.isTrino()) {
             //    statement = getConnection(config).prepareStatement(sql); // , ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
             // } else {
@@ -1235,13 +2404,47 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
             if (config.isMySQL() || config.isTiDB() || config.isMariaDB() || config.isOracle() || config.isSQLServer() || config.isDb2()
 					|| config.isPostgreSQL() || config.isCockroachDB() || config.isOpenGauss() || config.isTimescaleDB() || config.isQuestDB()
 			) {
-                statement = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_UPDATABLE);
-            } else {
-                statement = conn.prepareStatement(sql);
+				resultSetType = ResultSet.TYPE_SCROLL_SENSITIVE;
+				resultSetConcurrency = ResultSet.CONCUR_UPDATABLE;
             }
 		}
+
+		// 非预编译的 SQL 带了值，基本不会重复，不缓存
+		StatementCache statementCache = config.isPrepared() ? getStatementCache(conn) : null;
+		String statementKey = statementCache == null ? null : StatementCache.getKey(sql, resultSetType, resultSetConcurrency
+				, generatedColumns != null ? "columns:" + generatedColumns[0] : (generatedKeys ? "keys" : null));
+
+		PreparedStatement statement = statementCache == null ? null : statementCache.get(statementKey); //创建Statement对象
+		if (statement != null) {
+			statement.clearParameters();
+		}
 		else {
-			statement = conn.prepareStatement(sql);
+			if (generatedColumns != null) {
+				statement = conn.prepareStatement(sql, generatedColumns);
+			}
+			else if (generatedKeys) {
+				statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			}
+			else if (resultSetType != ResultSet.TYPE_FORWARD_ONLY || resultSetConcurrency != ResultSet.CONCUR_READ_ONLY) {
+				statement = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+			}
+			else {
+				statement = conn.prepareStatement(sql);
+			}
+
+			if (statementCache != null) {
+				statementCache.put(statementKey, statement);
+			}
+			else {
+				addStatement(statement);
+			}
+		}
+
+		if (isStreamingResult(config)) {
+			int fetchSize = getFetchSize(config);
+			if (fetchSize > 0 || fetchSize == Integer.MIN_VALUE) {
+				statement.setFetchSize(fetchSize);
+			}
 		}
 
 		List<Object> valueList = config.isPrepared() ? config.getPreparedValueList() : null;
@@ -1260,7 +2463,6 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 				statement = setArgument(config, statement, i, valueList.get(i));
 			}
 		}
-		// statement.close();
 
 		return statement;
 	}
@@ -1276,6 +2478,71 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 		return statement;
 	}
 
+	/**
+	 * 内置的连接池，为 null 则不启用，每次都通过 DriverManager 新建连接，例如 CONNECTION_POOL = new ConnectionPool();
+	 * 已经在子类重写 getConnection 并使用 Druid, HikariCP 等连接池的不需要开启
+	 */
+	public static ConnectionPool CONNECTION_POOL = null;
+
+	/**获取连接池，可在子类重写来按数据源等返回不同的实例
+	 * @return
+	 */
+	public ConnectionPool getConnectionPool() {
+		return CONNECTION_POOL;
+	}
+
+	/**
+	 * 每个连接最多缓存的 PreparedStatement 数量，<= 0 则不缓存，每次都新建并在 close 时关闭。
+	 * 开启了连接池的，缓存和连接一起复用；否则只在同一个请求内复用
+	 */
+	public static int STATEMENT_CACHE_SIZE = 50;
+
+	/**
+	 * 不是连接池借出的连接 - 这个连接上缓存的 PreparedStatement
+	 */
+	protected Map<Connection, StatementCache> statementCacheMap;
+	/**
+	 * 没有缓存的 Statement，在 close 时关闭
+	 */
+	protected List<Statement> statementList;
+
+	/**获取连接上缓存的 PreparedStatement
+	 * @param connection
+	 * @return 为 null 则不缓存
+	 */
+	protected StatementCache getStatementCache(Connection connection) {
+		int maxSize = STATEMENT_CACHE_SIZE;
+		if (maxSize <= 0 || connection == null) {
+			return null;
+		}
+
+		ConnectionPool pool = getConnectionPool();
+		StatementCache statementCache = pool == null ? null : pool.getStatementCache(connection, maxSize);
+		if (statementCache != null) {
+			return statementCache;
+		}
+
+		if (statementCacheMap == null) {
+			statementCacheMap = new IdentityHashMap<>();
+		}
+		statementCache = statementCacheMap.get(connection);
+		if (statementCache == null) {
+			statementCache = new StatementCache(maxSize);
+			statementCacheMap.put(connection, statementCache);
+		}
+		return statementCache;
+	}
+
+	/**记录没有缓存的 Statement，在 close 时关闭
+	 * @param statement
+	 */
+	protected void addStatement(Statement statement) {
+		if (statementList == null) {
+			statementList = new ArrayList<>();
+		}
+		statementList.add(statement);
+	}
+
 	protected Map<String, Connection> connectionMap = new HashMap<>();
 	public Map<String, Connection> getConnectionMap() {
 		if (connectionMap == null) {
@@ -1296,12 +2563,26 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	@NotNull
 	@Override
 	public Connection getConnection(@NotNull SQLConfig<T, M, L> config) throws Exception {
-		String connectionKey = getConnectionKey(config);
+		DataSourceGroup.Replica replica = this.replica;
+		String datasource = config.getDatasource();
+		String connectionKey = replica == null ? getConnectionKey(config)
+				: getConnectionKey(config.getDatabase(), replica.getName(), config.getNamespace(), config.getCatalog());
+
 		connection = getConnection(connectionKey);
 		if (connection == null || connection.isClosed()) {
 			Log.i(TAG, "select  connection " + (connection == null ? " = null" : ("isClosed = " + connection.isClosed()))) ;
-			// PostgreSQL 不允许 cross-database
-			connection = DriverManager.getConnection(config.gainDBUri(), config.gainDBAccount(), config.gainDBPassword());
+			ConnectionPool pool = getConnectionPool();
+			if (replica != null) {  // gainDBUri 等按 @datasource 映射到从库
+				config.setDatasource(replica.getName());
+			}
+			try {
+				connection = pool == null ? newConnection(config) : pool.borrow(connectionKey, () -> newConnection(config));
+			}
+			finally {
+				if (replica != null) {
+					config.setDatasource(datasource);
+				}
+			}
 			putConnection(connectionKey, connection);
 		}
 
@@ -1314,6 +2595,101 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 		return connection;
 	}
 
+	/**新建物理连接
+	 * @param config
+	 * @return
+	 * @throws Exception
+	 */
+	public Connection newConnection(@NotNull SQLConfig<T, M, L> config) throws Exception {
+		// PostgreSQL 不允许 cross-database
+		return DriverManager.getConnection(config.gainDBUri(), config.gainDBAccount(), config.gainDBPassword());
+	}
+
+	/**
+	 * 当前查询使用的从库，只在 executeQuery 内不为 null
+	 */
+	protected DataSourceGroup.Replica replica;
+	/**
+	 * 本次请求已经写过，之后的查询都用主库，避免主从延迟导致读不到刚写入的数据
+	 */
+	protected boolean primarySticky;
+
+	/**获取读写分离的数据源组，可在子类重写来按 database 等返回
+	 * @param config
+	 * @return 为 null 则不分离，全部用主库
+	 */
+	public DataSourceGroup getDataSourceGroup(@NotNull SQLConfig<T, M, L> config) {
+		return DATASOURCE_GROUP_MAP.isEmpty() ? null : DATASOURCE_GROUP_MAP.get(StringUtil.get(config.getDatasource()));
+	}
+
+	/**是否必须用主库，写操作、事务内、同一请求内写之后的查询、@primary:true 等
+	 * @param config
+	 * @return
+	 */
+	protected boolean isPrimaryRequired(@NotNull SQLConfig<T, M, L> config) {
+		if (primarySticky || config.isExplain() || config.isTDengine()
+				|| RequestMethod.isQueryMethod(config.getMethod()) == false
+				|| getTransactionIsolation() != Connection.TRANSACTION_NONE) {
+			return true;
+		}
+
+		Parser<T, M, L> p = config.gainParser();
+		if (p == null) {
+			p = getParser();
+		}
+		return p != null && (RequestMethod.isQueryMethod(p.getMethod()) == false || Boolean.TRUE.equals(p.getGlobalPrimary()));
+	}
+
+	/**选择查询用的从库
+	 * @param config
+	 * @return 为 null 则用主库
+	 */
+	protected DataSourceGroup.Replica selectReplica(@NotNull SQLConfig<T, M, L> config) {
+		DataSourceGroup group = getDataSourceGroup(config);
+		return group == null || isPrimaryRequired(config) ? null : group.select();
+	}
+
+	/**是否为连接失败等从库不可用的异常，SQL 语法错误等不算
+	 * @param e
+	 * @return
+	 */
+	protected boolean isConnectionException(SQLException e) {
+		String state = e.getSQLState();
+		return e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+				|| e instanceof SQLRecoverableException || (state != null && state.startsWith("08"));
+	}
+
+	/**丢弃从库的连接，不归还到连接池
+	 * @param config
+	 * @param replica
+	 */
+	protected void discardConnection(@NotNull SQLConfig<T, M, L> config, @NotNull DataSourceGroup.Replica replica) {
+		String key = getConnectionKey(config.getDatabase(), replica.getName(), config.getNamespace(), config.getCatalog());
+		Connection conn = connectionMap == null ? null : connectionMap.remove(key);
+		if (conn == null) {
+			return;
+		}
+
+		StatementCache statementCache = statementCacheMap == null ? null : statementCacheMap.remove(conn);
+		if (statementCache != null) {
+			statementCache.close();
+		}
+		try {
+			conn.close();
+		}
+		catch (SQLException e) {
+			Log.w(TAG, "discardConnection  conn.close() >> catch (SQLException e) = " + e.getMessage());
+		}
+
+		ConnectionPool pool = getConnectionPool();
+		if (pool != null) {
+			pool.release(conn);  // 已关闭，连接池会丢弃
+		}
+		if (connection == conn) {
+			connection = null;
+		}
+	}
+
 	public String getConnectionKey(@NotNull SQLConfig<T, M, L> config) {
 		return getConnectionKey(config.getDatabase(), config.getDatasource(), config.getNamespace(), config.getCatalog());
 	}
@@ -1446,6 +2822,20 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 				}
 			}
 		}
+
+		ResultCache<M> sharedCache = getSharedCache();
+		ResultCache<M> countCache = getCountCache();
+		if (modifiedTableSet != null) {
+			for (String table : modifiedTableSet) {
+				if (sharedCache != null) {
+					sharedCache.invalidate(table);
+				}
+				if (countCache != null) {
+					countCache.invalidate(table);
+				}
+			}
+		}
+		modifiedTableSet = null;
 	}
 	//事务处理 >>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
 
@@ -1455,58 +2845,173 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 	public void close() {
 		cacheMap.clear();
 		cacheMap = null;
+		modifiedTableSet = null;
 
 		generatedSQLCount = 0;
 		cachedSQLCount = 0;
 		executedSQLCount = 0;
 
+		if (statementList != null) {
+			for (Statement statement : statementList) {
+				try {
+					statement.close();
+				}
+				catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			statementList = null;
+		}
+
+		// 连接池借出的连接，缓存的 PreparedStatement 由连接池管理，和连接一起复用
+		if (statementCacheMap != null) {
+			for (StatementCache statementCache : statementCacheMap.values()) {
+				statementCache.close();
+			}
+			statementCacheMap = null;
+		}
+
 		if (connectionMap == null || connectionMap.isEmpty()) {
 			return;
 		}
 
+		ConnectionPool pool = getConnectionPool();
 		Collection<Connection> connections = connectionMap.values();
 		if (connections != null) {
 			for (Connection connection : connections) {
 				try {
+					// 归还到连接池前清理事务状态，未提交的都回滚，避免下一个请求在同一连接上继续之前的事务
+					if (pool != null && connection != null && isolationMap.remove(connection) != null
+							&& connection.isClosed() == false && connection.getAutoCommit() == false) {
+						connection.rollback();
+						connection.setAutoCommit(true);
+					}
+
+					if (pool != null && pool.release(connection)) {
+						continue;
+					}
+
 					if (connection != null && connection.isClosed() == false) {
 						connection.close();
 					}
 				}
 				catch (SQLException e) {
 					e.printStackTrace();
+					if (pool != null) {
+						pool.release(connection);
+					}
 				}
 			}
 		}
 
+		isolationMap.clear();
 		connectionMap.clear();
 		connectionMap = null;
+		connection = null;
+		primarySticky = false;
 	}
 
 	@Override
 	public ResultSet executeQuery(@NotNull SQLConfig<T, M, L> config, String sql) throws Exception {
-		if (config.isPrepared() == false || config.isTDengine() // TDengine JDBC 不支持 PreparedStatement
-            || (config.isExplain() && (config.isPresto() || config.isTrino()))) { // Presto JDBC 0.277 在 EXPLAIN 模式下预编译值不会替代 ? 占位导致报错
+		ResultSet shardResultSet = shardResultSetMap == null || config.getShard() == null ? null : shardResultSetMap.remove(config.getShard());
+		if (shardResultSet != null) {
+			return shardResultSet;
+		}
 
-            Connection conn = getConnection(config);
-            Statement stt = conn.createStatement();
-            // Statement stt = config.isTDengine()
-            //        ? conn.createStatement() // fix Presto: ResultSet: Exception: set type is TYPE_FORWARD_ONLY, Result set concurrency must be CONCUR_READ_ONLY
-            //        : conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
+		DataSourceGroup.Replica replica = selectReplica(config);
+		if (replica == null) {
+			return executeQuery(config, sql, null);
+		}
 
-            return executeQuery(stt, StringUtil.isEmpty(sql) ? config.gainSQL(false) : sql);
+		replica.onStart();
+		long startTime = System.currentTimeMillis();
+		boolean success = true;
+		try {
+			return executeQuery(config, sql, replica);
 		}
+		catch (SQLException e) {
+			if (isConnectionException(e) == false) {
+				throw e;
+			}
 
-        // Presto JDBC 0.277 在 EXPLAIN 模式下预编译值不会替代 ? 占位导致报错
-		PreparedStatement stt = getStatement(config, sql);
-		ResultSet rs = stt.executeQuery();  //PreparedStatement 不用传 SQL
-		//		if (config.isExplain() && (config.isSQLServer() || config.isOracle())) {
-		// FIXME 返回的是 boolean 值			rs = stt.getMoreResults(Statement.CLOSE_CURRENT_RESULT);
-		//		}
+			success = false;
+			Log.w(TAG, "executeQuery  replica = " + replica.getName() + " >> catch (SQLException e) = " + e.getMessage() + " >> 改用主库重试");
+			discardConnection(config, replica);
+		}
+		finally {
+			replica.onEnd(System.currentTimeMillis() - startTime, success);
+		}
 
-		return rs;
+		return executeQuery(config, sql, null);
+	}
+
+	/**在指定的从库或主库执行查询
+	 * @param config
+	 * @param sql
+	 * @param replica 为 null 则用主库
+	 * @return
+	 * @throws Exception
+	 */
+	protected ResultSet executeQuery(@NotNull SQLConfig<T, M, L> config, String sql, DataSourceGroup.Replica replica) throws Exception {
+		this.replica = replica;
+		try {
+			if (config.isPrepared() == false || config.isTDengine() // TDengine JDBC 不支持 PreparedStatement
+	            || (config.isExplain() && (config.isPresto() || config.isTrino()))) { // Presto JDBC 0.277 在 EXPLAIN 模式下预编译值不会替代 ? 占位导致报错
+
+	            Connection conn = getConnection(config);
+	            Statement stt = conn.createStatement();
+	            addStatement(stt);
+	            if (isStreamingResult(config)) {
+	                int fetchSize = getFetchSize(config);
+	                if (fetchSize > 0 || fetchSize == Integer.MIN_VALUE) {
+	                    stt.setFetchSize(fetchSize);
+	                }
+	            }
+	            // Statement stt = config.isTDengine()
+	            //        ? conn.createStatement() // fix Presto: ResultSet: Exception: set type is TYPE_FORWARD_ONLY, Result set concurrency must be CONCUR_READ_ONLY
+	            //        : conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
+
+	            return executeQuery(stt, StringUtil.isEmpty(sql) ? config.gainSQL(false) : sql);
+			}
+
+	        // Presto JDBC 0.277 在 EXPLAIN 模式下预编译值不会替代 ? 占位导致报错
+			PreparedStatement stt = getStatement(config, sql);
+			ResultSet rs = stt.executeQuery();  //PreparedStatement 不用传 SQL
+			//		if (config.isExplain() && (config.isSQLServer() || config.isOracle())) {
+			// FIXME 返回的是 boolean 值			rs = stt.getMoreResults(Statement.CLOSE_CURRENT_RESULT);
+			//		}
+
+			return rs;
+		}
+		finally {
+			this.replica = null;
+		}
 	}
 
 
+	@Override
+	public Long executeApproximateCount(@NotNull SQLConfig<T, M, L> config) throws Exception {
+		String sql = config.gainApproximateCountSQL();
+		if (StringUtil.isEmpty(sql, true)) {
+			return null;
+		}
+
+		Log.d(TAG, "executeApproximateCount  sql = \n" + sql);
+		executedSQLCount ++;
+		long startTime = System.currentTimeMillis();
+
+		Statement stt = getConnection(config).createStatement();
+		addStatement(stt);
+		try (ResultSet rs = executeQuery(stt, sql)) {
+			Object value = rs.next() ? rs.getObject(1) : null;
+			long count = value instanceof Number ? ((Number) value).longValue() : -1;
+			return count < 0 ? null : count;  // 没有统计信息
+		}
+		finally {
+			executedSQLDuration += System.currentTimeMillis() - startTime;
+		}
+	}
+
 	@Override
 	public int executeUpdate(@NotNull SQLConfig<T, M, L> config, String sql) throws Exception {
 		Statement stt;
@@ -1514,6 +3019,7 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 		if (config.isTDengine()) {
 			Connection conn = getConnection(config);
             stt = conn.createStatement();
+            addStatement(stt);
 			//stt = config.isTDengine()
             //        ? conn.createStatement() // fix Presto: ResultSet: Exception: set type is TYPE_FORWARD_ONLY, Result set concurrency must be CONCUR_READ_ONLY
             //        : conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
@@ -1531,8 +3037,15 @@ public abstract class AbstractSQLExecutor<T, M extends Map<String, Object>, L ex
 
 		if (config.getId() == null && config.getMethod() == RequestMethod.POST) {  // 自增id
 			ResultSet rs = stt.getGeneratedKeys();
-			if (rs != null && rs.next()) {
-				config.setId(rs.getLong(1));
+			if (rs != null) {
+				try {
+					if (rs.next()) {
+						config.setId(rs.getLong(1));
+					}
+				}
+				finally {
+					rs.close();
+				}
 			}
 		}
 
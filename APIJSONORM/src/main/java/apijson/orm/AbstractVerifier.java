@@ -60,6 +60,7 @@ import apijson.orm.model.AllColumn;
 import apijson.orm.model.AllTableComment;
 import apijson.orm.model.AllColumnComment;
 import apijson.orm.model.TestRecord;
+import apijson.orm.script.ScriptEnginePool;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -82,6 +83,24 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 	/**开启校验请求传参内容
 	*/
 	public static boolean ENABLE_VERIFY_CONTENT = true;
+	/**VERIFY 中 key{}:"condition", key$:"pattern" 优先在内存中计算，不支持的才通过数据库校验
+	*/
+	public static boolean ENABLE_VERIFY_CONDITION_IN_MEMORY = true;
+	/**Table[]:[{}] 批量新增/修改时合并 EXIST, UNIQUE 校验，见 {@link VerifyBatch}
+	*/
+	public static boolean ENABLE_BATCH_VERIFY = true;
+
+	private static final ThreadLocal<VerifyBatch> BATCH_LOCAL = new ThreadLocal<>();
+
+	/**开始收集当前线程内 parse 的 EXIST, UNIQUE 校验，不立即查数据库，必须在 finally 中调用 {@link #endBatch()}
+	 * @param batch
+	 */
+	public static void beginBatch(@NotNull VerifyBatch batch) {
+		BATCH_LOCAL.set(batch);
+	}
+	public static void endBatch() {
+		BATCH_LOCAL.remove();
+	}
 
 	/**未登录，不明身份的用户
 	 */
@@ -109,9 +128,23 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 //	public static ParserCreator<T, M, L> PARSER_CREATOR;
 
+	/**
+	 * IF 等脚本的引擎池通过它创建引擎，见 {@link ScriptEnginePool#ENGINE_CREATOR}
+	 */
 	public static ScriptEngineManager SCRIPT_ENGINE_MANAGER;
+	/**
+	 * 已废弃，同一个引擎被多个线程共用会互相覆盖变量，IF 脚本已改为在 {@link ScriptEnginePool} 借出的引擎上执行，不再使用它
+	 */
+	@Deprecated
 	public static ScriptEngine SCRIPT_ENGINE;
 
+	/**IF 脚本中当前对象 JSON 字符串的变量名，每次执行时通过 Bindings 传入
+	 */
+	public static final String IF_VARIABLE = "curObjJSON";
+	/**IF 脚本的前置代码，把 Bindings 传入的 JSON 字符串解析为 curObj
+	 */
+	public static final String IF_PRE_CODE = "var curObj = JSON.parse(" + IF_VARIABLE + ");";
+
 	// 共享 STRUCTURE_MAP 则不能 remove 等做任何变更，否则在并发情况下可能会出错，加锁效率又低，所以这里改为忽略对应的 key
 	public static Map<String, Entry<String, Object>> ROLE_MAP;
 
@@ -236,7 +269,8 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 	@SuppressWarnings("unchecked")
 	@Override
 	public T newId(RequestMethod method, String database, String schema, String datasource, String table) {
-		return (T) Long.valueOf(System.currentTimeMillis());
+		IdGenerator generator = AbstractSQLConfig.getIdGenerator(database, schema, datasource, table);
+		return generator == null ? null : (T) Long.valueOf(generator.nextId(database, schema, datasource, table));
 	}
 
 
@@ -924,23 +958,9 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		}
 
 		// 获取配置<<<<<<<<<<<<<<<<<<<<<<<<<<<<
-		M type = JSON.get(target, TYPE.name());
-		M verify = JSON.get(target, VERIFY.name());
-		M insert = JSON.get(target, INSERT.name());
-		M update = JSON.get(target, UPDATE.name());
-		M replace = JSON.get(target, REPLACE.name());
-
-		String exist = StringUtil.get(getString(target, EXIST.name()));
-		String unique = StringUtil.get(getString(target, UNIQUE.name()));
-		String remove = StringUtil.get(getString(target, REMOVE.name()));
-		String must = StringUtil.get(getString(target, MUST.name()));
-		String refuse = StringUtil.get(getString(target, REFUSE.name()));
-
-		Object _if = target.get(IF.name());
-		boolean ifIsStr = _if instanceof String && StringUtil.isNotEmpty(_if, true);
-		M ifObj = ifIsStr == false && _if instanceof Map<?,?> ? (M) _if : null;
-//				: (_if instanceof String ? new apijson.JSONMap((String) _if, "" /* "throw new Error('')" */ ) : null);
-		if (ifObj == null && _if != null && ifIsStr == false) {
+		VerifyRule rule = VerifyRule.get(target);  // 同一个 structure 只编译一次
+
+		if (rule.isIfInvalid()) {
 //			if (_if instanceof List<?>) {
 //			}
 			throw new IllegalArgumentException(name + ": { " + IF.name() + ": value } 中 value 类型错误！只允许 String, JSONRequest！");
@@ -948,11 +968,9 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 //		Object code = target.get(CODE.name());
 
-		String allowPartialUpdateFail = StringUtil.get(getString(target, ALLOW_PARTIAL_UPDATE_FAIL.name()));
-
 
 		// 移除字段<<<<<<<<<<<<<<<<<<<
-		String[] removes = StringUtil.split(remove);
+		String[] removes = rule.getRemoves();
 		if (removes != null && removes.length > 0) {
 			for (String r : removes) {
 				real.remove(r);
@@ -961,7 +979,8 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		// 移除字段>>>>>>>>>>>>>>>>>>>
 
 		// 判断必要字段是否都有<<<<<<<<<<<<<<<<<<<
-		String[] musts = StringUtil.split(must);
+		String must = rule.getMust();
+		String[] musts = rule.getMusts();
 		Set<String> mustSet = new HashSet<String>();
 
 		if (musts != null && musts.length > 0) {
@@ -981,14 +1000,11 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 		// 解析内容<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
 
-		Set<Map.Entry<String, Object>> set = new LinkedHashSet<>(target.entrySet());
+		List<Map.Entry<String, Object>> set = rule.getChildList();  // 已去掉 null 和 操作关键词
 		if (set.isEmpty() == false) {
 
 			for (Map.Entry<String, Object> entry : set) {
-                String key = entry == null ? null : entry.getKey();
-				if (key == null || OPERATION_KEY_LIST.contains(key)) {
-					continue;
-				}
+                String key = entry.getKey();
                 Object tvalue = entry.getValue();
                 Object rvalue = real.get(key);
 				if (callback.onParse(key, tvalue, rvalue) == false) {
@@ -1029,7 +1045,7 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		Set<String> rkset = real.keySet(); // 解析内容并没有改变rkset
 
 		// 解析不允许的字段<<<<<<<<<<<<<<<<<<<
-		String[] refuses = StringUtil.split(refuse);
+		String[] refuses = rule.getRefuses();
 		Set<String> refuseSet = new HashSet<String>();
 
 		if (refuses != null && refuses.length > 0) {
@@ -1142,11 +1158,7 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 		// 校验与修改Request<<<<<<<<<<<<<<<<<
 		// 在tableKeySet校验后操作，避免 导致put/add进去的Table 被当成原Request的内容
-		real = operate(TYPE, type, real, parser);
-		real = operate(VERIFY, verify, real, parser);
-		real = operate(INSERT, insert, real, parser);
-		real = operate(UPDATE, update, real, parser);
-		real = operate(REPLACE, replace, real, parser);
+		real = operate(rule, real, parser);
 		// 校验与修改Request>>>>>>>>>>>>>>>>>
 
 
@@ -1167,32 +1179,44 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 		// TODO 放在operate前？考虑性能、operate修改后再验证的值是否和原来一样
 		// 校验存在<<<<<<<<<<<<<<<<<<<
-		String[] exists = StringUtil.split(exist);
+		String[] exists = rule.getExists();
 		if (exists != null && exists.length > 0) {
 			long exceptId = getLongValue(real, finalIdKey);
 			Map<String,Object> map = new HashMap<>();
 			for (String e : exists) {
 				map.put(e,real.get(e));
 			}
-			verifyExist(name, map, exceptId, parser);
+
+			VerifyBatch batch = BATCH_LOCAL.get();
+			if (batch != null) {
+				batch.add(false, name, map, exceptId, finalIdKey);
+			} else {
+				verifyExist(name, map, exceptId, parser);
+			}
 		}
 		// 校验存在>>>>>>>>>>>>>>>>>>>
 
 		// TODO 放在operate前？考虑性能、operate修改后再验证的值是否和原来一样
 		// 校验重复<<<<<<<<<<<<<<<<<<<
-		String[] uniques = StringUtil.split(unique);
+		String[] uniques = rule.getUniques();
 		if (uniques != null && uniques.length > 0) {
 			long exceptId = getLongValue(real, finalIdKey);
 			Map<String,Object> map = new HashMap<>();
 			for (String u : uniques) {
 				map.put(u, real.get(u));
 			}
-			verifyRepeat(name, map, exceptId, finalIdKey, parser);
+
+			VerifyBatch batch = BATCH_LOCAL.get();
+			if (batch != null) {
+				batch.add(true, name, map, exceptId, finalIdKey);
+			} else {
+				verifyRepeat(name, map, exceptId, finalIdKey, parser);
+			}
 		}
 		// 校验重复>>>>>>>>>>>>>>>>>>>
 
 		// 校验并配置允许批量增删改部分失败<<<<<<<<<<<<<<<<<<<
-		String[] partialFails = StringUtil.split(allowPartialUpdateFail);
+		String[] partialFails = rule.getPartialFails();
 		if (partialFails != null && partialFails.length > 0) {
 			for (String key : partialFails) {
                 if (JSONMap.isArrayKey(key) == false) {
@@ -1218,74 +1242,31 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		// 校验并配置允许部分批量增删改失败>>>>>>>>>>>>>>>>>>>
 
 
-		String[] nks = ifObj == null ? null : StringUtil.split(getString(real, JSONMap.KEY_NULL));
+		List<VerifyRule.IfRule> ifList = rule.getIfList();
+		String[] nks = ifList == null ? null : StringUtil.split(getString(real, JSONMap.KEY_NULL));
 		Collection<?> nkl = nks == null || nks.length <= 0 ? new HashSet<>() : Arrays.asList(nks);
 
-		Set<Map.Entry<String, Object>> ifSet = ifObj == null ? null : ifObj.entrySet();
-		if (ifIsStr || (ifSet != null && ifSet.isEmpty() == false)) {
+		if (rule.isIfString() || (ifList != null && ifList.isEmpty() == false)) {
 			// 没必要限制，都是后端配置的，安全可控，而且可能确实有特殊需求，需要 id, @column 等
 //			List<String> condKeys = new ArrayList<>(Arrays.asList(apijson.JSONMap.KEY_ID, apijson.JSONMap.KEY_ID_IN
 //					, apijson.JSONMap.KEY_USER_ID, apijson.JSONMap.KEY_USER_ID_IN));
 //			condKeys.addAll(apijson.JSONMap.TABLE_KEY_LIST);
 
-			String preCode = "var curObj = " + JSON.toJSONString(real) + ";";
+			// 脚本内容固定，在引擎池中编译后缓存，每次只通过新的 Bindings 传入当前对象，不再拼接到代码里
+			Map<String, Object> variables = new HashMap<>(2);
+			variables.put(IF_VARIABLE, JSON.toJSONString(real));
 
 			// 未传的 key 在后面 eval 时总是报错 undefined，而且可能有冲突，例如对象里有 "curObj": val 键值对，就会覆盖当前对象定义，还不如都是 curObj.sex 这样取值
-//			Set<Map.Entry<String, Object>> rset = real.entrySet();
-//			for (Map.Entry<String, Object> entry : rset) {
-//				String k = entry == null ? null : entry.getKey();
-//				if (StringUtil.isEmpty(k)) {
-//					continue;
-//				}
-//				String vn = JSONResponse.formatOtherKey(k);
-//				if (StringUtil.isName(vn) == false) { // 通过 curObj['id@'] 这样取值，写在 IF 配置里
-//					continue;
-//				}
-//
-//				Object v = entry.getValue();
-//				String vs = v instanceof String ? "\"" + ((String) v).replaceAll("\"", "\\\"") + "\""
-//						: (JSON.isBooleanOrNumberOrString(v) ? v.toString() : JSON.format(v));
-//				preCode += "\nvar " + vn + " = " + vs + ";";
-//			}
 
-			if (ifIsStr) {
-				String ifStr = (String) _if;
-				int ind = ifStr.indexOf(":");
-				String lang = ind < 0 || ind > 20 ? null : ifStr.substring(0, ind);
-				boolean isName = StringUtil.isName(lang);
-				ScriptEngine engine = getScriptEngine(isName ? lang : null);
-				engine.eval(preCode + "\n" + (isName ? ifStr.substring(ind + 1) : ifStr));
+			if (rule.isIfString()) {
+				ScriptEnginePool.get(rule.getIfLang()).eval(rule.getIfScript(), variables);
 			}
 			else {
-				for (Map.Entry<String, Object> entry : ifSet) {
-					String k = entry == null ? null : entry.getKey();
-//					if (condKeys.contains(k)) {
-//						throw new IllegalArgumentException("Request 表 structure 配置的 " + ON.name()
-//								+ ":{ " + k + ":value } 中 key 不合法，不允许传 [" + StringUtil.join(condKeys.toArray(new String[]{})) + "] 中的任何一个 ！");
-//					}
-
-					Object v = k == null ? null : entry.getValue();
+				for (VerifyRule.IfRule ifRule : ifList) {
+					String k = ifRule.getKey();
+					Object v = ifRule.getValue();
 					if (v instanceof String) {
-						int ind = k.indexOf(":");
-						String lang = ind < 0 || ind > 20 ? null : k.substring(0, ind);
-						boolean isName = StringUtil.isName(lang);
-						ScriptEngine engine = getScriptEngine(isName ? lang : null);
-						k = isName ? k.substring(ind + 1) : k;
-
-						boolean isElse = StringUtil.isEmpty(k, false); // 其它直接报错，不允许传 StringUtil.isEmpty(k, true) || "ELSE".equals(k);
-//						String code = preCode + "\n\n" + (StringUtil.isEmpty(v, false) ? k : (isElse ? v : "if (" + k + ") {\n  " + v + "\n}"));
-						String code = preCode + "\n\n" + (isElse ? v : "if (" + k + ") {\n  " + v + "\n}");
-
-//						ScriptExecutor executor = new JavaScriptExecutor();
-//						executor.execute(null, real, )
-
-						engine.eval(code);
-
-//						PARSER_CREATOR.createFunctionParser()
-//								.setCurrentObject(real)
-//								.setKey(k)
-//								.setMethod(method)
-//								.invoke()
+						ScriptEnginePool.get(ifRule.getLang()).eval(ifRule.getScript(), variables);
 						continue;
 					}
 
@@ -1304,6 +1285,11 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		return real;
 	}
 
+	/**已废弃，返回的引擎可能被多个线程共用，改用 {@link ScriptEnginePool#get(String)}
+	 * @param lang
+	 * @return
+	 */
+	@Deprecated
 	public static ScriptEngine getScriptEngine(String lang) {
 		boolean isEmpty = StringUtil.isEmpty(lang, true);
 		ScriptEngine engine = isEmpty ? SCRIPT_ENGINE : SCRIPT_ENGINE_MANAGER.getEngineByName(lang);
@@ -1316,51 +1302,53 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 	}
 
 
-	/**执行操作
-	 * @param opt
-	 * @param targetChild
+	/**按编译好的规则依次执行 TYPE, VERIFY, INSERT, UPDATE, REPLACE 操作
+	 * @param rule
 	 * @param real
 	 * @param parser
 	 * @return
 	 * @throws Exception
 	 */
-	private static <T, M extends Map<String, Object>, L extends List<Object>> M operate(Operation opt, M targetChild
+	private static <T, M extends Map<String, Object>, L extends List<Object>> M operate(@NotNull VerifyRule rule
             , M real, @NotNull Parser<T, M, L> parser) throws Exception {
-		if (targetChild == null) {
+		List<Map.Entry<String, Object>> typeList = rule.getTypeList();
+		List<VerifyRule.ValueRule> verifyList = rule.getVerifyList();
+		List<Map.Entry<String, Object>> insertList = rule.getInsertList();
+		List<Map.Entry<String, Object>> updateList = rule.getUpdateList();
+		List<Map.Entry<String, Object>> replaceList = rule.getReplaceList();
+		if (typeList == null && verifyList == null && insertList == null && updateList == null && replaceList == null) {
 			return real;
 		}
 		if (real == null) {
 			throw new IllegalArgumentException("operate  real == null!!!");
 		}
 
-		Set<Map.Entry<String, Object>> set = new LinkedHashSet<>(targetChild.entrySet());
-		for (Map.Entry<String, Object> e : set) {
-			String tk = e == null ? null : e.getKey();
-			if (tk == null || OPERATION_KEY_LIST.contains(tk)) {
-				continue;
+		if (typeList != null) {
+			for (Map.Entry<String, Object> e : typeList) {
+				verifyType(e.getKey(), e.getValue(), real);
 			}
-
-			Object tv = e.getValue();
-
-			if (opt == TYPE) {
-				verifyType(tk, tv, real);
+		}
+		if (verifyList != null) {
+			for (VerifyRule.ValueRule vr : verifyList) {
+				verifyValue(vr, real, parser);
 			}
-			else if (opt == VERIFY) {
-				verifyValue(tk, tv, real, parser);
+		}
+		if (insertList != null) {
+			for (Map.Entry<String, Object> e : insertList) {
+				if (real.containsKey(e.getKey()) == false) {
+					real.put(e.getKey(), e.getValue());
+				}
 			}
-			else if (opt == UPDATE) {
-				real.put(tk, tv);
+		}
+		if (updateList != null) {
+			for (Map.Entry<String, Object> e : updateList) {
+				real.put(e.getKey(), e.getValue());
 			}
-			else {
-				if (real.containsKey(tk)) {
-					if (opt == REPLACE) {
-						real.put(tk, tv);
-					}
-				}
-				else {
-					if (opt == INSERT) {
-						real.put(tk, tv);
-					}
+		}
+		if (replaceList != null) {
+			for (Map.Entry<String, Object> e : replaceList) {
+				if (real.containsKey(e.getKey())) {
+					real.put(e.getKey(), e.getValue());
 				}
 			}
 		}
@@ -1509,46 +1497,49 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 
 
 	/**验证值
-	 * @param tk
-	 * @param tv
+	 * @param rule
 	 * @param real
 	 * @param parser
 	 * @throws Exception
 	 */
-	private static <T, M extends Map<String, Object>, L extends List<Object>> void verifyValue(@NotNull String tk
-			, @NotNull Object tv, @NotNull M real, @NotNull Parser<T, M, L> parser) throws Exception {
-		if (tv == null) {
-			throw new IllegalArgumentException("operate  operate == VERIFY " + tk + ":" + tv + " ,  >> tv == null!!!");
-		}
+	private static <T, M extends Map<String, Object>, L extends List<Object>> void verifyValue(@NotNull VerifyRule.ValueRule rule
+			, @NotNull M real, @NotNull Parser<T, M, L> parser) throws Exception {
+		String tk = rule.getKey();
+		Object tv = rule.getValue();
+		Logic logic = rule.getLogic();
 
 		String rk;
 		Object rv;
-		Logic logic;
-		if (tk.endsWith("$")) {  // 模糊搜索
-			verifyCondition("$", real, tk, tv, parser);
-		}
-		else if (tk.endsWith("~")) {  // 正则匹配
-			logic = new Logic(tk.substring(0, tk.length() - 1));
+		switch (rule.getType()) {
+		case VerifyRule.ValueRule.TYPE_NULL:
+			throw new IllegalArgumentException("operate  operate == VERIFY " + tk + ":" + tv + " ,  >> tv == null!!!");
+		case VerifyRule.ValueRule.TYPE_CONDITION:  // 模糊搜索 key$ 或 rv符合tv条件 key{}
+			verifyCondition(rule.getFunChar(), real, tk, tv, logic, rule.getCondition(), parser);
+			break;
+		case VerifyRule.ValueRule.TYPE_REGEX: {  // 正则匹配
 			rk = logic.getKey();
 			rv = real.get(rk);
 			if (rv == null) {
 				return;
 			}
 
-			L array = AbstractSQLConfig.newJSONArray(tv);
+			List<?> array = rule.getValues();
+			Pattern[] patterns = rule.getPatterns();
 
 			boolean m;
 			boolean isOr = false;
 			Pattern reg;
-			for (Object r : array) {
+			for (int i = 0; i < array.size(); i++) {
+				Object r = array.get(i);
 				if (r instanceof String == false) {
 					throw new UnsupportedDataTypeException(rk + ":" + rv + " 中value只支持 String 或 [String] 类型！");
 				}
-				reg = COMPILE_MAP.get(r);
+				reg = patterns[i];
 				if (reg == null) {
-					reg = Pattern.compile((String) r);
+					reg = PatternCache.compile((String) r, true);
 				}
-				m = reg.matcher("" + rv).matches();
+				// COMPILE_MAP 内是后端代码注册的，不需要线性匹配模式
+				m = PatternCache.matches(reg, "" + rv, PatternCache.ENABLE_LINEAR && COMPILE_MAP.get(r) != reg);
 				if (m) {
 					if (logic.isNot()) {
 						throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
@@ -1567,49 +1558,39 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 			if (isOr == false && logic.isOr()) {
 				throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
 			}
+			break;
 		}
-		else if (tk.endsWith("{}")) { //rv符合tv条件或在tv内
-			if (tv instanceof String) {//TODO  >= 0, < 10
-				verifyCondition("{}", real, tk, tv, parser);
+		case VerifyRule.ValueRule.TYPE_IN:  //rv在tv内
+			rk = logic.getKey();
+			rv = real.get(rk);
+			if (rv == null) {
+				return;
 			}
-			else if (tv instanceof List<?>) {
-				logic = new Logic(tk.substring(0, tk.length() - 2));
-				rk = logic.getKey();
-				rv = real.get(rk);
-				if (rv == null) {
-					return;
-				}
 
-				if (((L) tv).contains(rv) == logic.isNot()) {
-					throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
-				}
+			if (rule.getValues().contains(rv) == logic.isNot()) {
+				throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
 			}
-			else {
-				throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
+			break;
+		case VerifyRule.ValueRule.TYPE_LENGTH: {  //字符串长度
+			rk = logic.getKey();
+			rv = real.get(rk);
+			if (rv == null) {
+				return;
 			}
-		}
-		else if (tk.endsWith("{L}")) { //字符串长度
-			if (tv instanceof String) {
-				logic = new Logic(tk.substring(0, tk.length() - 3));
 
-				rk = logic.getKey();
-				rv = real.get(rk);
-				if (rv == null) {
-					return;
+			String content = rv.toString();
+			String[] rules = rule.getLengthRules();
+			String[] ops = rule.getLengthOps();
+			int[] nums = rule.getLengthNums();
+			for (int i = 0; i < rules.length; i++) {
+				// 规则不合法的由 verifyRV 抛出原来的异常
+				if (ops[i] == null ? ! verifyRV(rules[i], content) : ! verifyLength(ops[i], nums[i], content)) {
+					throw new IllegalArgumentException(rk + ":value 中value长度不合法！必须匹配 " + tk + ":" + tv + " !");
 				}
-				String[] tvs = tv.toString().split(",");
-				for (String tvItem : tvs) {
-					if (!verifyRV(tvItem,rv.toString())) {
-						throw new IllegalArgumentException(rk + ":value 中value长度不合法！必须匹配 " + tk + ":" + tv + " !");
-					}
-				}
-			}
-			else {
-				throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
 			}
+			break;
 		}
-		else if (tk.endsWith("<>")) { //rv包含tv内的值
-			logic = new Logic(tk.substring(0, tk.length() - 2));
+		case VerifyRule.ValueRule.TYPE_CONTAINS: {  //rv包含tv内的值
 			rk = logic.getKey();
 			rv = real.get(rk);
 			if (rv == null) {
@@ -1620,11 +1601,9 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 				throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
 			}
 
-			L array = AbstractSQLConfig.newJSONArray(tv);
-
 			boolean isOr = false;
-			for (Object o : array) {
-				if (((L) rv).contains(o)) {
+			for (Object o : rule.getValues()) {
+				if (((Collection<?>) rv).contains(o)) {
 					if (logic.isNot()) {
 						throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
 					}
@@ -1642,8 +1621,11 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 			if (isOr == false && logic.isOr()) {
 				throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 " + tk + ":" + tv + " !");
 			}
+			break;
 		}
-		else {
+		case VerifyRule.ValueRule.TYPE_UNSUPPORTED:
+			throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
+		default:
 			throw new IllegalArgumentException("服务器Request表verify配置错误！");
 		}
 	}
@@ -1657,6 +1639,20 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 	 * @throws UnsupportedDataTypeException
 	 */
 	private static boolean verifyRV(String rule,String content) throws UnsupportedDataTypeException {
+		String[] ln = parseLengthRule(rule);
+		// first和second为空表示规则不合法
+		if (ln == null) {
+			throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
+		}
+
+		return verifyLength(ln[0], Integer.parseInt(ln[1]), content);
+	}
+
+	/**解析字符串长度规则，例如 >=10 解析为 [">=", "10"]
+	 * @param rule
+	 * @return 规则不合法则返回 null
+	 */
+	static String[] parseLengthRule(String rule) {
 		String first = null;
 		String second = null;
 		Matcher matcher = VERIFY_LENGTH_PATTERN.matcher(rule);
@@ -1664,12 +1660,13 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 			first = StringUtil.isEmpty(first)?matcher.group("first"):first;
 			second = StringUtil.isEmpty(second)?matcher.group("second"):second;
 		}
-		// first和second为空表示规则不合法
 		if(StringUtil.isEmpty(first) || StringUtil.isEmpty(second)){
-			throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
+			return null;
 		}
+		return new String[]{ first, second };
+	}
 
-		int secondNum = Integer.parseInt(second);
+	private static boolean verifyLength(String first, int secondNum, String content) throws UnsupportedDataTypeException {
 		switch (Objects.requireNonNull(first)){
 			case ">":
 				return content.length() > secondNum;
@@ -1687,19 +1684,20 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 		throw new UnsupportedDataTypeException("服务器Request表verify配置错误！");
 	}
 
-	/**通过数据库执行SQL语句来验证条件
+	/**验证条件，能在内存中计算的直接计算，否则通过数据库执行SQL语句来验证
 	 * @param funChar
 	 * @param real
 	 * @param tk
 	 * @param tv
+	 * @param logic tk 去掉 funChar 后的逻辑运算
+	 * @param condition 编译好的条件，为 null 则通过数据库验证
 	 * @param parser
 	 * @throws Exception
 	 */
 	private static <T, M extends Map<String, Object>, L extends List<Object>> void verifyCondition(
-			@NotNull String funChar, @NotNull M real, @NotNull String tk, @NotNull Object tv
-			, @NotNull Parser<T, M, L> parser) throws Exception {
+			@NotNull String funChar, @NotNull M real, @NotNull String tk, @NotNull Object tv, @NotNull Logic logic
+			, ConditionEvaluator condition, @NotNull Parser<T, M, L> parser) throws Exception {
 		//不能用Parser, 0 这种不符合 StringUtil.isName !
-		Logic logic = new Logic(tk.substring(0, tk.length() - funChar.length()));
 		String rk = logic.getKey();
 		Object rv = real.get(rk);
 		if (rv == null) {
@@ -1710,6 +1708,14 @@ public abstract class AbstractVerifier<T, M extends Map<String, Object>, L exten
 			throw new IllegalArgumentException(rk + ":value 中value不合法！value 中不允许有单引号 ' ！");
 		}
 
+		Boolean match = ENABLE_VERIFY_CONDITION_IN_MEMORY && condition != null ? condition.evaluate(rv) : null;
+		if (match != null) {
+			if (match == false) {
+				throw new IllegalArgumentException(rk + ":value 中value不合法！必须匹配 '" + tk + "': '" + tv + "' ！");
+			}
+			return;
+		}
+
 		SQLConfig<T, M, L> config = parser.createSQLConfig().setMethod(RequestMethod.GET).setCount(1).setPage(0);
 		config.setTest(true);
 		//		config.setTable(Test.class.getSimpleName());
@@ -0,0 +1,321 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import apijson.StringUtil;
+
+/**在内存中计算 Request 表 VERIFY 里 key{}:"condition" 和 key$:"pattern" 条件，不用每次都查数据库
+ * 只支持和 {@link AbstractSQLConfig#gainRangeString} 的 >, >=, <, <=, =, !=, <>, =null, !=null 数值比较
+ * 及 {@link AbstractSQLConfig#gainSearchString} 的 LIKE 一致的语法，其它情况 compile 返回 null，仍然通过数据库校验
+ * @author Lemon
+ */
+public class ConditionEvaluator {
+
+	private static final int OP_IS_NULL = 0;
+	private static final int OP_NOT_NULL = 1;
+	private static final int OP_GT = 2;
+	private static final int OP_GTE = 3;
+	private static final int OP_LT = 4;
+	private static final int OP_LTE = 5;
+	private static final int OP_EQ = 6;
+	private static final int OP_NE = 7;
+
+	/**编译条件
+	 * @param funChar {} 或 $
+	 * @param logic key 前的逻辑运算符，例如 age&{} 中的 &
+	 * @param tv 条件
+	 * @return 不能在内存中计算则返回 null
+	 */
+	public static ConditionEvaluator compile(String funChar, Logic logic, Object tv) {
+		if (logic == null || tv == null) {
+			return null;
+		}
+		if ("{}".equals(funChar)) {
+			return tv instanceof String ? compileRange(logic, (String) tv) : null;
+		}
+		if ("$".equals(funChar)) {
+			return compileSearch(logic, tv);
+		}
+		return null;
+	}
+
+	/**key{}:"condition0;condition1,condition2" 和 gainRangeString 一样，; 和 , 分隔的都用同一个逻辑运算符连接
+	 */
+	private static ConditionEvaluator compileRange(Logic logic, String range) {
+		String[] cs = StringUtil.split(range, ";", false);
+		if (cs == null || cs.length <= 0) {
+			return null;
+		}
+
+		List<Object> termList = new ArrayList<>();
+		for (String expr : cs) {
+			// 函数、超长表达式 等都交给数据库，包括报错
+			if (expr == null || expr.length() > 100 || expr.contains("(")) {
+				return null;
+			}
+
+			String[] ccs = StringUtil.split(expr, false);
+			if (ccs == null || ccs.length <= 0) {
+				return null;
+			}
+			for (String c : ccs) {
+				Term term = parseTerm(c);
+				if (term == null) {
+					return null;
+				}
+				termList.add(term);
+			}
+		}
+
+		return new ConditionEvaluator(false, logic, termList);
+	}
+
+	private static Term parseTerm(String c) {
+		c = c == null ? "" : c.trim();
+		if ("=null".equals(c)) {
+			return new Term(OP_IS_NULL, null);
+		}
+		if ("!=null".equals(c)) {
+			return new Term(OP_NOT_NULL, null);
+		}
+
+		int op;
+		int len;
+		if (c.startsWith(">=")) {
+			op = OP_GTE;
+			len = 2;
+		}
+		else if (c.startsWith("<=")) {
+			op = OP_LTE;
+			len = 2;
+		}
+		else if (c.startsWith("!=") || c.startsWith("<>")) {
+			op = OP_NE;
+			len = 2;
+		}
+		else if (c.startsWith(">")) {
+			op = OP_GT;
+			len = 1;
+		}
+		else if (c.startsWith("<")) {
+			op = OP_LT;
+			len = 1;
+		}
+		else if (c.startsWith("=")) {
+			op = OP_EQ;
+			len = 1;
+		}
+		else {
+			return null;
+		}
+
+		BigDecimal num = parseNumber(c.substring(len).trim());
+		return num == null ? null : new Term(op, num);
+	}
+
+	/**key$:"pattern" 或 key$:["pattern0", "pattern1"]
+	 */
+	private static ConditionEvaluator compileSearch(Logic logic, Object tv) {
+		Collection<?> arr = tv instanceof Collection<?> ? (Collection<?>) tv : Collections.singletonList(tv);
+		if (arr.isEmpty()) {
+			return null;
+		}
+
+		List<Object> termList = new ArrayList<>(arr.size());
+		for (Object v : arr) {
+			if (v instanceof String == false || ((String) v).isEmpty()) {  // 交给数据库校验报错
+				return null;
+			}
+			// gainLikeString 不带 ESCAPE，MySQL, PostgreSQL 等默认用 \ 转义，SQL Server, Oracle 等则当成普通字符，只能交给数据库
+			if (((String) v).indexOf('\\') >= 0) {
+				return null;
+			}
+			termList.add(v);
+		}
+		return new ConditionEvaluator(true, logic, termList);
+	}
+
+	/**只接受普通的十进制数，"1e3", "0x10", "+1" 等各数据库转换规则不一样的交给数据库
+	 */
+	private static BigDecimal parseNumber(String s) {
+		if (s == null || s.isEmpty()) {
+			return null;
+		}
+
+		int start = s.charAt(0) == '-' ? 1 : 0;
+		boolean hasDigit = false;
+		boolean hasDot = false;
+		for (int i = start; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				hasDigit = true;
+			}
+			else if (c == '.' && hasDot == false && hasDigit) {
+				hasDot = true;
+			}
+			else {
+				return null;
+			}
+		}
+		if (hasDigit == false || s.endsWith(".")) {
+			return null;
+		}
+		return new BigDecimal(s);
+	}
+
+
+	private final boolean isSearch;
+	private final boolean isAnd;
+	private final boolean isNot;
+	private final List<Object> termList;
+
+	private ConditionEvaluator(boolean isSearch, Logic logic, List<Object> termList) {
+		this.isSearch = isSearch;
+		this.isAnd = logic.isAnd();
+		this.isNot = logic.isNot();
+		this.termList = termList;
+	}
+
+	/**计算条件
+	 * @param rv 请求中的值，不能为 null
+	 * @return 不能在内存中计算则返回 null，需要通过数据库校验
+	 */
+	public Boolean evaluate(Object rv) {
+		if (rv == null) {
+			return null;
+		}
+
+		boolean result = isAnd;
+		if (isSearch) {
+			if (rv instanceof String == false && rv instanceof Number == false) {
+				return null;
+			}
+
+			String s = rv.toString();
+			for (Object t : termList) {
+				String pattern = (String) t;
+				boolean m = like(s, pattern, false);
+				if (m != like(s, pattern, true)) {  // 是否区分大小写取决于数据库和字段的排序规则
+					return null;
+				}
+				if (m != isAnd) {  // AND 遇到 false 或 OR 遇到 true 就可以结束
+					result = m;
+					break;
+				}
+			}
+		}
+		else {
+			BigDecimal num = null;
+			for (Object t : termList) {
+				Term term = (Term) t;
+				boolean m;
+				if (term.op == OP_IS_NULL || term.op == OP_NOT_NULL) {
+					m = term.op == OP_NOT_NULL;
+				}
+				else {
+					if (num == null) {
+						num = rv instanceof Number || rv instanceof String ? parseNumber(rv.toString()) : null;
+						if (num == null) {  // 'abc' > 1 这种各数据库处理不一样
+							return null;
+						}
+					}
+					m = term.compare(num);
+				}
+
+				if (m != isAnd) {
+					result = m;
+					break;
+				}
+			}
+		}
+
+		return isNot ? ! result : result;
+	}
+
+	/**SQL LIKE，% 匹配任意个字符，_ 匹配单个字符，不处理转义，含 \ 的 pattern 在 compile 时已经交给数据库
+	 * @param s
+	 * @param pattern
+	 * @param ignoreCase
+	 * @return
+	 */
+	public static boolean like(String s, String pattern, boolean ignoreCase) {
+		int si = 0;
+		int pi = 0;
+		int starP = -1;  // 最近一个 % 后的 pattern 位置
+		int starS = -1;  // 最近一个 % 匹配到的 s 位置
+		int sl = s.length();
+		int pl = pattern.length();
+
+		while (si < sl) {
+			if (pi < pl) {
+				char p = pattern.charAt(pi);
+				if (p == '%') {
+					starP = ++ pi;
+					starS = si;
+					continue;
+				}
+
+				if (p == '_' || equals(s.charAt(si), p, ignoreCase)) {
+					si ++;
+					pi ++;
+					continue;
+				}
+			}
+
+			if (starP < 0) {
+				return false;
+			}
+			// 回到上一个 %，多匹配一个字符
+			pi = starP;
+			si = ++ starS;
+		}
+
+		while (pi < pl && pattern.charAt(pi) == '%') {
+			pi ++;
+		}
+		return pi >= pl;
+	}
+
+	private static boolean equals(char a, char b, boolean ignoreCase) {
+		return a == b || (ignoreCase && Character.toLowerCase(a) == Character.toLowerCase(b));
+	}
+
+
+	private static class Term {
+		final int op;
+		final BigDecimal value;
+
+		Term(int op, BigDecimal value) {
+			this.op = op;
+			this.value = value;
+		}
+
+		boolean compare(BigDecimal num) {
+			int c = num.compareTo(value);
+			switch (op) {
+				case OP_GT:
+					return c > 0;
+				case OP_GTE:
+					return c >= 0;
+				case OP_LT:
+					return c < 0;
+				case OP_LTE:
+					return c <= 0;
+				case OP_EQ:
+					return c == 0;
+				default:
+					return c != 0;
+			}
+		}
+	}
+
+}
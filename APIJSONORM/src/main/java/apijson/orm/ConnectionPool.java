@@ -0,0 +1,410 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import apijson.Log;
+
+/**内置的 JDBC 连接池，按 {@link AbstractSQLExecutor#getConnectionKey(String, String, String, String)} 分组，
+ * 每组有上限，支持借出超时、空闲回收、借出时校验 以及 监控指标
+ * @author Lemon
+ */
+public class ConnectionPool {
+	private static final String TAG = "ConnectionPool";
+
+	public static int DEFAULT_MAX_SIZE = 20;
+	public static long DEFAULT_BORROW_TIMEOUT = 10*1000L;
+	public static long DEFAULT_MAX_IDLE_TIME = 10*60*1000L;
+	public static int DEFAULT_VALIDATION_TIMEOUT = 3;
+
+	private final int maxSize;
+	private final long borrowTimeout;
+	private final long maxIdleTime;
+	private final int validationTimeout;
+
+	private final Map<String, Group> groupMap = new ConcurrentHashMap<>();
+	/**
+	 * 已借出的连接 - 所属分组，用来判断归还的连接是否属于连接池
+	 */
+	private final Map<Connection, Group> borrowedMap = Collections.synchronizedMap(new IdentityHashMap<>());
+	/**
+	 * 连接 - 这个连接上缓存的 PreparedStatement，和连接一起复用，连接关闭时一起关闭
+	 */
+	private final Map<Connection, StatementCache> statementCacheMap = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	private final AtomicLong createCount = new AtomicLong();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong returnCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong invalidCount = new AtomicLong();
+	private final AtomicLong evictCount = new AtomicLong();
+	private final AtomicLong waitTime = new AtomicLong();
+
+	private Timer evictTimer;
+
+	public ConnectionPool() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_BORROW_TIMEOUT, DEFAULT_MAX_IDLE_TIME, DEFAULT_VALIDATION_TIMEOUT);
+	}
+	/**
+	 * @param maxSize 每组最大连接数
+	 * @param borrowTimeout 借出等待超时(ms)
+	 * @param maxIdleTime 最大空闲时间(ms)，超过后关闭，<= 0 则不回收
+	 * @param validationTimeout 借出时校验超时(s)，< 0 则不校验
+	 */
+	public ConnectionPool(int maxSize, long borrowTimeout, long maxIdleTime, int validationTimeout) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException(TAG + " maxSize 必须 > 0 ！");
+		}
+		this.maxSize = maxSize;
+		this.borrowTimeout = borrowTimeout;
+		this.maxIdleTime = maxIdleTime;
+		this.validationTimeout = validationTimeout;
+
+		if (maxIdleTime > 0) {
+			long period = Math.max(1000L, maxIdleTime/2);
+			evictTimer = new Timer(TAG + "-evictor", true);
+			evictTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					evictIdle();
+				}
+			}, period, period);
+		}
+	}
+
+	/**借出连接，没有空闲连接且未达到上限则新建，否则等待其它请求归还
+	 * @param key 分组 key
+	 * @param creator 新建连接
+	 * @return
+	 * @throws Exception
+	 */
+	public Connection borrow(String key, Callable<Connection> creator) throws Exception {
+		Group group = groupMap.computeIfAbsent(key, k -> new Group());
+
+		long startTime = System.currentTimeMillis();
+		long deadline = startTime + borrowTimeout;
+		while (true) {
+			Connection conn = null;
+			boolean create = false;
+
+			group.lock.lock();
+			try {
+				while (true) {
+					evictIdle(group, System.currentTimeMillis());
+
+					IdleConnection idle = group.idleDeque.pollFirst();
+					if (idle != null) {
+						conn = idle.connection;
+						break;
+					}
+
+					if (group.total < maxSize) {
+						group.total ++;
+						create = true;
+						break;
+					}
+
+					long remain = deadline - System.currentTimeMillis();
+					if (remain <= 0) {
+						timeoutCount.incrementAndGet();
+						throw new SQLTimeoutException(TAG + ".borrow  等待 " + borrowTimeout + "ms 后仍然没有可用连接！"
+								+ "key = " + key + "; maxSize = " + maxSize);
+					}
+					group.notEmpty.await(remain, TimeUnit.MILLISECONDS);
+				}
+			}
+			finally {
+				group.lock.unlock();
+			}
+
+			if (create) {
+				try {
+					conn = creator.call();
+					if (conn == null) {
+						throw new SQLException(TAG + ".borrow  creator.call() 返回了 null ！");
+					}
+					group.defaultIsolationMap.put(conn, conn.getTransactionIsolation());
+				}
+				catch (Exception e) {
+					discard(group, conn);
+					throw e;
+				}
+
+				createCount.incrementAndGet();
+			}
+			else if (isValid(conn) == false) {
+				invalidCount.incrementAndGet();
+				discard(group, conn);
+				continue;
+			}
+
+			borrowedMap.put(conn, group);
+			borrowCount.incrementAndGet();
+			waitTime.addAndGet(System.currentTimeMillis() - startTime);
+			return conn;
+		}
+	}
+
+	/**归还连接，调用前需要先提交或回滚事务
+	 * @param connection
+	 * @return 是否为连接池借出的连接，不是则需要调用方自己关闭
+	 */
+	public boolean release(Connection connection) {
+		Group group = connection == null ? null : borrowedMap.remove(connection);
+		if (group == null) {
+			return false;
+		}
+
+		returnCount.incrementAndGet();
+		try {
+			if (connection.isClosed()) {
+				discard(group, connection);
+				return true;
+			}
+
+			// 还原成新建时的状态，避免影响下一个借出的请求
+			if (connection.getAutoCommit() == false) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			Integer isolation = group.defaultIsolationMap.get(connection);
+			if (isolation != null && isolation != Connection.TRANSACTION_NONE && connection.getTransactionIsolation() != isolation) {
+				connection.setTransactionIsolation(isolation);
+			}
+		}
+		catch (SQLException e) {
+			Log.e(TAG, "release  catch (SQLException e) = " + e.getMessage());
+			discard(group, connection);
+			return true;
+		}
+
+		group.lock.lock();
+		try {
+			group.idleDeque.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+			group.notEmpty.signal();
+		}
+		finally {
+			group.lock.unlock();
+		}
+		return true;
+	}
+
+	/**获取已借出连接上缓存的 PreparedStatement，没有则新建
+	 * @param connection
+	 * @param maxSize 每个连接最多缓存的数量
+	 * @return 不是连接池借出的连接则返回 null
+	 */
+	public StatementCache getStatementCache(Connection connection, int maxSize) {
+		if (connection == null || maxSize <= 0 || borrowedMap.containsKey(connection) == false) {
+			return null;
+		}
+		return statementCacheMap.computeIfAbsent(connection, c -> new StatementCache(maxSize));
+	}
+
+	protected boolean isValid(Connection connection) {
+		if (validationTimeout < 0) {
+			return true;
+		}
+		try {
+			return connection.isClosed() == false && connection.isValid(validationTimeout);
+		}
+		catch (Throwable e) {
+			return false;
+		}
+	}
+
+	/**关闭连接并让出名额
+	 */
+	private void discard(Group group, Connection connection) {
+		if (connection != null) {
+			group.defaultIsolationMap.remove(connection);
+			close(connection);
+		}
+
+		group.lock.lock();
+		try {
+			group.total --;
+			group.notEmpty.signal();
+		}
+		finally {
+			group.lock.unlock();
+		}
+	}
+
+	/**回收所有分组中空闲超时的连接
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		for (Group group : groupMap.values()) {
+			group.lock.lock();
+			try {
+				evictIdle(group, now);
+			}
+			finally {
+				group.lock.unlock();
+			}
+		}
+	}
+
+	/**需要在 group.lock 内调用。最近归还的在队头，所以从队尾开始找
+	 */
+	private void evictIdle(Group group, long now) {
+		if (maxIdleTime <= 0) {
+			return;
+		}
+
+		Iterator<IdleConnection> iterator = group.idleDeque.descendingIterator();
+		while (iterator.hasNext()) {
+			IdleConnection idle = iterator.next();
+			if (now - idle.lastUsedTime < maxIdleTime) {
+				break;
+			}
+
+			iterator.remove();
+			group.total --;
+			group.defaultIsolationMap.remove(idle.connection);
+			evictCount.incrementAndGet();
+			close(idle.connection);
+		}
+	}
+
+	/**关闭所有空闲连接，已借出的连接在归还时仍可正常处理
+	 */
+	public void close() {
+		if (evictTimer != null) {
+			evictTimer.cancel();
+			evictTimer = null;
+		}
+
+		for (Group group : groupMap.values()) {
+			group.lock.lock();
+			try {
+				IdleConnection idle;
+				while ((idle = group.idleDeque.pollFirst()) != null) {
+					group.total --;
+					group.defaultIsolationMap.remove(idle.connection);
+					close(idle.connection);
+				}
+			}
+			finally {
+				group.lock.unlock();
+			}
+		}
+	}
+
+	private void close(Connection connection) {
+		StatementCache statementCache = statementCacheMap.remove(connection);
+		if (statementCache != null) {
+			statementCache.close();
+		}
+
+		try {
+			connection.close();
+		}
+		catch (Throwable e) {
+			Log.e(TAG, "close  catch (Throwable e) = " + e.getMessage());
+		}
+	}
+
+
+	public int getActiveCount(String key) {
+		Group group = groupMap.get(key);
+		if (group == null) {
+			return 0;
+		}
+		group.lock.lock();
+		try {
+			return group.total - group.idleDeque.size();
+		}
+		finally {
+			group.lock.unlock();
+		}
+	}
+	public int getIdleCount(String key) {
+		Group group = groupMap.get(key);
+		if (group == null) {
+			return 0;
+		}
+		group.lock.lock();
+		try {
+			return group.idleDeque.size();
+		}
+		finally {
+			group.lock.unlock();
+		}
+	}
+
+	/**监控指标
+	 * @return { create, borrow, return, timeout, invalid, evict, waitTime, active, idle, groups: { key: { active, idle } } }
+	 */
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> groups = new LinkedHashMap<>();
+		int active = 0;
+		int idle = 0;
+		for (String key : groupMap.keySet()) {
+			int a = getActiveCount(key);
+			int i = getIdleCount(key);
+			active += a;
+			idle += i;
+
+			Map<String, Object> g = new LinkedHashMap<>();
+			g.put("active", a);
+			g.put("idle", i);
+			groups.put(key, g);
+		}
+
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("create", createCount.get());
+		metrics.put("borrow", borrowCount.get());
+		metrics.put("return", returnCount.get());
+		metrics.put("timeout", timeoutCount.get());
+		metrics.put("invalid", invalidCount.get());
+		metrics.put("evict", evictCount.get());
+		metrics.put("waitTime", waitTime.get());
+		metrics.put("active", active);
+		metrics.put("idle", idle);
+		metrics.put("maxSize", maxSize);
+		metrics.put("groups", groups);
+		return metrics;
+	}
+
+
+	private static class Group {
+		final ReentrantLock lock = new ReentrantLock();
+		final Condition notEmpty = lock.newCondition();
+		final ArrayDeque<IdleConnection> idleDeque = new ArrayDeque<>();
+		final Map<Connection, Integer> defaultIsolationMap = Collections.synchronizedMap(new IdentityHashMap<>());
+		int total;
+	}
+
+	private static class IdleConnection {
+		final Connection connection;
+		final long lastUsedTime;
+
+		IdleConnection(Connection connection, long lastUsedTime) {
+			this.connection = connection;
+			this.lastUsedTime = lastUsedTime;
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import apijson.NotNull;
+import apijson.StringUtil;
+
+/**读写分离的数据源组，一个主库 + N 个从库，名称都是 @datasource 的值，由 SQLConfig.gainDBUri 等映射到具体的数据库。
+ * 查询按 轮询/最少执行中/延迟加权 选从库，连续失败的从库暂时摘除，过一段时间再重试，从库都不可用时用主库
+ * @author Lemon
+ * @see AbstractSQLExecutor#DATASOURCE_GROUP_MAP
+ */
+public class DataSourceGroup {
+
+	/**
+	 * 轮询
+	 */
+	public static final String POLICY_ROUND_ROBIN = "ROUND_ROBIN";
+	/**
+	 * 执行中的查询最少的
+	 */
+	public static final String POLICY_LEAST_ACTIVE = "LEAST_ACTIVE";
+	/**
+	 * 按平均延迟的倒数加权随机
+	 */
+	public static final String POLICY_LATENCY = "LATENCY";
+
+	/**
+	 * 连续失败多少次后摘除
+	 */
+	public static int MAX_FAILURE_COUNT = 3;
+	/**
+	 * 摘除多久后再重试(ms)
+	 */
+	public static long RETRY_INTERVAL = 30*1000L;
+	/**
+	 * 平均延迟中最近一次的权重，越大越快反映延迟变化
+	 */
+	public static double LATENCY_WEIGHT = 0.2;
+
+	private final String primary;
+	private final String policy;
+	private final List<Replica> replicaList;
+	private final AtomicInteger index = new AtomicInteger();
+
+	/**
+	 * @param primary 主库的 @datasource
+	 * @param policy {@link #POLICY_ROUND_ROBIN}, {@link #POLICY_LEAST_ACTIVE}, {@link #POLICY_LATENCY}，为空则为 ROUND_ROBIN
+	 * @param replicas 从库的 @datasource
+	 */
+	public DataSourceGroup(@NotNull String primary, String policy, String... replicas) {
+		this.primary = primary;
+		this.policy = StringUtil.isEmpty(policy, true) ? POLICY_ROUND_ROBIN : policy;
+
+		List<Replica> list = new ArrayList<>();
+		if (replicas != null) {
+			for (String r : replicas) {
+				if (StringUtil.isNotEmpty(r, true)) {
+					list.add(new Replica(r));
+				}
+			}
+		}
+		this.replicaList = Collections.unmodifiableList(list);
+	}
+
+	public String getPrimary() {
+		return primary;
+	}
+	public String getPolicy() {
+		return policy;
+	}
+	public List<Replica> getReplicaList() {
+		return replicaList;
+	}
+
+	/**选择从库
+	 * @return 没有可用的从库则返回 null，用主库
+	 */
+	public Replica select() {
+		int size = replicaList.size();
+		if (size <= 0) {
+			return null;
+		}
+
+		long now = System.currentTimeMillis();
+		int start = (index.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+		if (POLICY_LEAST_ACTIVE.equals(policy)) {
+			Replica selected = null;
+			for (int i = 0; i < size; i++) {  // 从轮询位置开始，同样少时不会总是第一个
+				Replica r = replicaList.get((start + i) % size);
+				if (r.isAvailable(now) && (selected == null || r.activeCount.get() < selected.activeCount.get())) {
+					selected = r;
+				}
+			}
+			return selected;
+		}
+
+		if (POLICY_LATENCY.equals(policy)) {
+			double[] weights = new double[size];
+			double sum = 0;
+			for (int i = 0; i < size; i++) {
+				Replica r = replicaList.get(i);
+				weights[i] = r.isAvailable(now) ? 1/(1 + r.latency) : 0;
+				sum += weights[i];
+			}
+			if (sum <= 0) {
+				return null;
+			}
+
+			double random = ThreadLocalRandom.current().nextDouble(sum);
+			for (int i = 0; i < size; i++) {
+				random -= weights[i];
+				if (weights[i] > 0 && random < 0) {
+					return replicaList.get(i);
+				}
+			}
+			// 浮点误差
+			for (int i = size - 1; i >= 0; i--) {
+				if (weights[i] > 0) {
+					return replicaList.get(i);
+				}
+			}
+			return null;
+		}
+
+		for (int i = 0; i < size; i++) {
+			Replica r = replicaList.get((start + i) % size);
+			if (r.isAvailable(now)) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return { primary, policy, replicas: [{ name, available, active, latency, query, failure }] }
+	 */
+	public Map<String, Object> getMetrics() {
+		long now = System.currentTimeMillis();
+		List<Map<String, Object>> replicas = new ArrayList<>(replicaList.size());
+		for (Replica r : replicaList) {
+			Map<String, Object> m = new LinkedHashMap<>();
+			m.put("name", r.name);
+			m.put("available", r.isAvailable(now));
+			m.put("active", r.activeCount.get());
+			m.put("latency", r.latency);
+			m.put("query", r.queryCount.get());
+			m.put("failure", r.totalFailureCount.get());
+			replicas.add(m);
+		}
+
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("primary", primary);
+		metrics.put("policy", policy);
+		metrics.put("replicas", replicas);
+		return metrics;
+	}
+
+
+	/**从库及其健康状态
+	 */
+	public static class Replica {
+		private final String name;
+		private final AtomicInteger activeCount = new AtomicInteger();
+		private final AtomicInteger failureCount = new AtomicInteger();
+		private final AtomicLong totalFailureCount = new AtomicLong();
+		private final AtomicLong queryCount = new AtomicLong();
+		/**
+		 * 平均延迟(ms)
+		 */
+		private volatile double latency;
+		private volatile long downTime;
+
+		private Replica(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+		public int getActiveCount() {
+			return activeCount.get();
+		}
+		public double getLatency() {
+			return latency;
+		}
+
+		/**摘除后过了 RETRY_INTERVAL 允许再试，成功一次就恢复
+		 */
+		public boolean isAvailable(long now) {
+			return failureCount.get() < MAX_FAILURE_COUNT || now - downTime >= RETRY_INTERVAL;
+		}
+
+		public void onStart() {
+			activeCount.incrementAndGet();
+			queryCount.incrementAndGet();
+		}
+
+		/**
+		 * @param duration 耗时(ms)
+		 * @param success 是否成功，连接失败等
+		 */
+		public void onEnd(long duration, boolean success) {
+			activeCount.decrementAndGet();
+			if (success) {
+				failureCount.set(0);
+				double l = latency;
+				latency = l <= 0 ? duration : l + LATENCY_WEIGHT*(duration - l);
+				return;
+			}
+
+			totalFailureCount.incrementAndGet();
+			if (failureCount.incrementAndGet() >= MAX_FAILURE_COUNT) {
+				downTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**POST 新增记录时生成 id，会被多个请求同时调用，实现类必须线程安全且不能返回重复的 id
+ * 可通过 {@link AbstractSQLConfig#ID_GENERATOR} 和 {@link AbstractSQLConfig#ID_GENERATOR_MAP} 按表配置
+ * @author Lemon
+ */
+public interface IdGenerator {
+
+	/**
+	 * @param database
+	 * @param schema
+	 * @param datasource
+	 * @param table
+	 * @return 新的 id
+	 */
+	long nextId(String database, String schema, String datasource, String table);
+
+
+	/**毫秒时间戳，同一毫秒内有多个则往后顺延 1，通过 AtomicLong CAS 保证单调递增且不重复，不需要加锁
+	 * 和原来 AbstractSQLConfig.LAST_ID 生成的 id 格式一致
+	 */
+	class TimeSequence implements IdGenerator {
+		private final AtomicLong lastId;
+
+		public TimeSequence() {
+			this(System.currentTimeMillis());
+		}
+		/**
+		 * @param lastId 已用过的最大 id，后续生成的都比它大
+		 */
+		public TimeSequence(long lastId) {
+			this.lastId = new AtomicLong(lastId);
+		}
+
+		@Override
+		public long nextId(String database, String schema, String datasource, String table) {
+			long now = System.currentTimeMillis();
+			return lastId.accumulateAndGet(now, (last, time) -> time > last ? time : last + 1);
+		}
+
+		public long getLastId() {
+			return lastId.get();
+		}
+	}
+
+
+	/**Snowflake 雪花算法：时间戳(ms) | datacenterId | workerId | 序号，分布式部署时每个实例配置不同的 workerId, datacenterId
+	 * 时间戳和序号放在同一个 AtomicLong 内 CAS 更新，不需要加锁；同一毫秒内序号用完或时钟回拨时沿用并顺延上次的时间戳，不会等待或抛异常
+	 */
+	class Snowflake implements IdGenerator {
+		/**
+		 * 2020-01-01 00:00:00 UTC
+		 */
+		public static long DEFAULT_EPOCH = 1577836800000L;
+		public static int DEFAULT_WORKER_BITS = 5;
+		public static int DEFAULT_DATACENTER_BITS = 5;
+		public static int DEFAULT_SEQUENCE_BITS = 12;
+
+		private final long epoch;
+		private final long workerId;
+		private final long datacenterId;
+		private final int sequenceBits;
+		private final int workerShift;
+		private final int datacenterShift;
+		private final int timeShift;
+		private final long maxSequence;
+
+		/**
+		 * (相对 epoch 的时间戳 << sequenceBits) | 序号
+		 */
+		private final AtomicLong state = new AtomicLong();
+
+		public Snowflake(long workerId, long datacenterId) {
+			this(workerId, datacenterId, DEFAULT_WORKER_BITS, DEFAULT_DATACENTER_BITS, DEFAULT_SEQUENCE_BITS, DEFAULT_EPOCH);
+		}
+		/**
+		 * @param workerId 0 到 2^workerBits - 1
+		 * @param datacenterId 0 到 2^datacenterBits - 1
+		 * @param workerBits
+		 * @param datacenterBits
+		 * @param sequenceBits 每毫秒最多 2^sequenceBits 个，三个 bits 加起来不能超过 22，剩下的 41 位给时间戳
+		 * @param epoch 起始时间(ms)
+		 */
+		public Snowflake(long workerId, long datacenterId, int workerBits, int datacenterBits, int sequenceBits, long epoch) {
+			if (workerBits < 0 || datacenterBits < 0 || sequenceBits <= 0 || workerBits + datacenterBits + sequenceBits > 22) {
+				throw new IllegalArgumentException("Snowflake workerBits, datacenterBits >= 0, sequenceBits > 0，且加起来不能超过 22 ！");
+			}
+			if (workerId < 0 || workerId >= (1L << workerBits)) {
+				throw new IllegalArgumentException("Snowflake workerId 必须在 0-" + ((1L << workerBits) - 1) + " 内 !");
+			}
+			if (datacenterId < 0 || datacenterId >= (1L << datacenterBits)) {
+				throw new IllegalArgumentException("Snowflake datacenterId 必须在 0-" + ((1L << datacenterBits) - 1) + " 内 !");
+			}
+
+			this.epoch = epoch;
+			this.workerId = workerId;
+			this.datacenterId = datacenterId;
+			this.sequenceBits = sequenceBits;
+			this.workerShift = sequenceBits;
+			this.datacenterShift = sequenceBits + workerBits;
+			this.timeShift = sequenceBits + workerBits + datacenterBits;
+			this.maxSequence = (1L << sequenceBits) - 1;
+		}
+
+		@Override
+		public long nextId(String database, String schema, String datasource, String table) {
+			while (true) {
+				long now = System.currentTimeMillis() - epoch;
+				long last = state.get();
+				long lastTime = last >>> sequenceBits;
+				long lastSequence = last & maxSequence;
+
+				long time;
+				long sequence;
+				if (now > lastTime) {
+					time = now;
+					sequence = 0;
+				}
+				else if (lastSequence < maxSequence) {  // 同一毫秒，或者时钟回拨
+					time = lastTime;
+					sequence = lastSequence + 1;
+				}
+				else {  // 序号用完，借用下一毫秒
+					time = lastTime + 1;
+					sequence = 0;
+				}
+
+				if (state.compareAndSet(last, (time << sequenceBits) | sequence)) {
+					return (time << timeShift) | (datacenterId << datacenterShift) | (workerId << workerShift) | sequence;
+				}
+			}
+		}
+	}
+
+
+	/**号段分配：每张表每次向 {@link Allocator} 预留一段 [start, start + step) 的 id，在内存中用 AtomicLong 依次分配，
+	 * 用完才再次申请，只有申请时加锁，适合需要较短且连续递增 id 的场景。服务重启后当前号段内未用完的 id 会被跳过
+	 */
+	class Segment implements IdGenerator {
+		public static int DEFAULT_STEP = 1000;
+
+		/**号段申请，一般基于数据库实现，例如
+		 * UPDATE id_segment SET max_id = max_id + step WHERE table_name = ? 后 SELECT max_id - step
+		 */
+		public interface Allocator {
+			/**
+			 * @param database
+			 * @param schema
+			 * @param datasource
+			 * @param table
+			 * @param step
+			 * @return 号段起始 id start，[start, start + step) 只能分配给当前调用方
+			 * @throws Exception
+			 */
+			long allocate(String database, String schema, String datasource, String table, int step) throws Exception;
+		}
+
+		private final Allocator allocator;
+		private final int step;
+		private final Map<String, Holder> holderMap = new ConcurrentHashMap<>();
+
+		public Segment(Allocator allocator) {
+			this(allocator, DEFAULT_STEP);
+		}
+		public Segment(Allocator allocator, int step) {
+			if (allocator == null) {
+				throw new IllegalArgumentException("Segment allocator 不能为 null ！");
+			}
+			if (step <= 0) {
+				throw new IllegalArgumentException("Segment step 必须 > 0 ！");
+			}
+			this.allocator = allocator;
+			this.step = step;
+		}
+
+		@Override
+		public long nextId(String database, String schema, String datasource, String table) {
+			String key = database + "." + schema + "." + datasource + "." + table;
+			Holder holder = holderMap.computeIfAbsent(key, k -> new Holder());
+
+			while (true) {
+				Range range = holder.range;
+				if (range != null) {
+					long id = range.cursor.getAndIncrement();
+					if (id < range.end) {
+						return id;
+					}
+				}
+
+				synchronized (holder) {
+					if (holder.range == range) {  // 没有被其它线程换成新号段
+						long start;
+						try {
+							start = allocator.allocate(database, schema, datasource, table, step);
+						}
+						catch (Exception e) {
+							throw new IllegalStateException("Segment 为 " + table + " 申请号段失败！" + e.getMessage(), e);
+						}
+						holder.range = new Range(start, start + step);
+					}
+				}
+			}
+		}
+
+		private static class Holder {
+			volatile Range range;
+		}
+
+		private static class Range {
+			final AtomicLong cursor;
+			final long end;
+
+			Range(long start, long end) {
+				this.cursor = new AtomicLong(start);
+				this.end = end;
+			}
+		}
+	}
+
+}
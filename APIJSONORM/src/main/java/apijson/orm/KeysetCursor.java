@@ -0,0 +1,141 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import apijson.JSON;
+import apijson.JSONMap;
+import apijson.NotNull;
+import apijson.StringUtil;
+
+/**游标(Keyset/Seek)分页，按 @order 中的字段记住上一页最后一条的值，
+ * 下一页用 WHERE (c0 > v0) OR (c0 = v0 AND c1 > v1) ... 代替 OFFSET，不用扫描并丢弃前面所有页，翻到多深都一样快。
+ * 为了排序唯一，@order 中没有主键时会自动在最后加上 id+；排序字段的值不能为 null
+ * @author Lemon
+ */
+public class KeysetCursor {
+
+	private final String order;
+	private final List<String> keyList;
+	private final List<Boolean> descList;
+
+	private KeysetCursor(String order, List<String> keyList, List<Boolean> descList) {
+		this.order = order;
+		this.keyList = keyList;
+		this.descList = descList;
+	}
+
+	/**解析 @order
+	 * @param order @order:"date-,id+" 中的 "date-,id+"
+	 * @param idKey 主键，作为最后一个排序字段保证顺序唯一
+	 * @return
+	 * @throws IllegalArgumentException 有 rand(), 函数 等不能作为游标的排序
+	 */
+	public static KeysetCursor parse(String order, String idKey) throws IllegalArgumentException {
+		String finalIdKey = StringUtil.isEmpty(idKey, true) ? JSONMap.KEY_ID : idKey;
+
+		List<String> keyList = new ArrayList<>();
+		List<Boolean> descList = new ArrayList<>();
+		String[] items = StringUtil.split(StringUtil.trim(order));
+		if (items != null) {
+			for (String item : items) {
+				boolean desc = item.endsWith("-");
+				String key = desc || item.endsWith("+") ? item.substring(0, item.length() - 1) : item;
+				if (StringUtil.isName(key) == false) {
+					throw new IllegalArgumentException("游标分页的 @order:value 中 " + item + " 不合法！"
+							+ "value 里面用 , 分割的每一项必须是 column+ / column- 且其中 column 必须是 1 个单词！不支持 rand() 等函数！");
+				}
+				if (keyList.contains(key)) {
+					throw new IllegalArgumentException("游标分页的 @order:value 中 " + key + " 重复！");
+				}
+
+				keyList.add(key);
+				descList.add(desc);
+			}
+		}
+
+		if (keyList.contains(finalIdKey) == false) {
+			keyList.add(finalIdKey);
+			descList.add(false);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < keyList.size(); i++) {
+			sb.append(i <= 0 ? "" : ",").append(keyList.get(i)).append(descList.get(i) ? "-" : "+");
+		}
+		return new KeysetCursor(sb.toString(), keyList, descList);
+	}
+
+	/**
+	 * @return 实际使用的排序，例如 "date-,id+"
+	 */
+	public String getOrder() {
+		return order;
+	}
+	public List<String> getKeyList() {
+		return keyList;
+	}
+	public boolean isDesc(int index) {
+		return descList.get(index);
+	}
+
+	/**用最后一条记录生成下一页的游标
+	 * @param row 最后一条记录，必须包含排序字段
+	 * @return Base64 编码，对前端不透明
+	 * @throws IllegalArgumentException
+	 */
+	public String encode(@NotNull Map<String, Object> row) throws IllegalArgumentException {
+		List<Object> list = new ArrayList<>(keyList.size() + 1);
+		list.add(order);
+		for (String key : keyList) {
+			Object value = row.get(key);
+			if (value == null) {
+				throw new IllegalArgumentException("游标分页的排序字段 " + key + " 的值不能为 null！"
+						+ "@column 中必须包含 @order 中的全部字段，且这些字段不能有 null 值！");
+			}
+			if (JSON.isBoolOrNumOrStr(value) == false) {
+				value = value.toString();
+			}
+			list.add(value);
+		}
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(JSON.toJSONString(list).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**解析前端传回的游标
+	 * @param cursor
+	 * @return 排序字段对应的值
+	 * @throws IllegalArgumentException 格式不对或者和当前的 @order 不一致
+	 */
+	public List<Object> decode(@NotNull String cursor) throws IllegalArgumentException {
+		List<Object> list;
+		try {
+			list = JSON.parseArray(new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8));
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("cursor:value 中 value 不合法！必须是上一页 info 中返回的 cursor ！", e);
+		}
+
+		if (list == null || list.size() != keyList.size() + 1 || order.equals(list.get(0)) == false) {
+			throw new IllegalArgumentException("cursor:value 中 value 不合法！和当前 @order:\"" + order
+					+ "\" 不匹配，改变排序后必须从第一页重新查询！");
+		}
+
+		List<Object> values = new ArrayList<>(list.subList(1, list.size()));
+		for (Object value : values) {
+			if (value == null || JSON.isBoolOrNumOrStr(value) == false) {
+				throw new IllegalArgumentException("cursor:value 中 value 不合法！排序字段的值只能是 Boolean, Number, String ！");
+			}
+		}
+		return values;
+	}
+
+}
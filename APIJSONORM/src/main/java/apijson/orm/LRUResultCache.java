@@ -0,0 +1,316 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import apijson.JSON;
+import apijson.Log;
+
+/**默认的跨请求共享结果缓存，按最近最少使用(LRU)淘汰，限制条数和估算的内存占用，支持按表配置过期时间(TTL)
+ * 存取都会复制每行数据，避免不同请求之间互相修改同一个对象
+ * @author Lemon
+ */
+public class LRUResultCache<M extends Map<String, Object>> implements ResultCache<M> {
+	private static final String TAG = "LRUResultCache";
+
+	public static int DEFAULT_MAX_COUNT = 10000;
+	public static long DEFAULT_MAX_BYTES = 64L*1024*1024;
+	public static long DEFAULT_TTL = 60*1000L;
+
+	private final int maxCount;
+	private final long maxBytes;
+	private final long defaultTtl;
+
+	/**
+	 * 表对应的缓存过期时间(ms)，<= 0 则不缓存这张表的数据
+	 */
+	private final Map<String, Long> ttlMap = new ConcurrentHashMap<>();
+
+	private final LinkedHashMap<String, CacheEntry<M>> entryMap;
+	/**
+	 * Table 名 - 依赖这张表的缓存 key 集合
+	 */
+	private final Map<String, Set<String>> tableKeyMap = new HashMap<>();
+
+	private long bytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long invalidationCount;
+
+	public LRUResultCache() {
+		this(DEFAULT_MAX_COUNT, DEFAULT_MAX_BYTES, DEFAULT_TTL);
+	}
+	/**
+	 * @param maxCount 最大条数
+	 * @param maxBytes 估算的最大内存占用
+	 * @param defaultTtl 默认过期时间(ms)
+	 */
+	public LRUResultCache(int maxCount, long maxBytes, long defaultTtl) {
+		this.maxCount = maxCount;
+		this.maxBytes = maxBytes;
+		this.defaultTtl = defaultTtl;
+		this.entryMap = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**设置表对应的缓存过期时间
+	 * @param table 请求传进来的 Table 名
+	 * @param ttl 过期时间(ms)，<= 0 则不缓存
+	 * @return
+	 */
+	public LRUResultCache<M> setTtl(String table, long ttl) {
+		ttlMap.put(table, ttl);
+		return this;
+	}
+	public long getTtl(String table) {
+		Long ttl = table == null ? null : ttlMap.get(table);
+		return ttl == null ? defaultTtl : ttl;
+	}
+
+	@Override
+	public List<M> get(String key) {
+		if (key == null) {
+			return null;
+		}
+
+		CacheEntry<M> entry;
+		synchronized (this) {
+			entry = entryMap.get(key);
+			if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+				removeEntry(key);
+				entry = null;
+			}
+
+			if (entry == null) {
+				missCount ++;
+				return null;
+			}
+			hitCount ++;
+		}
+
+		return copyList(entry.list);
+	}
+
+	@Override
+	public void put(String key, List<M> list, Collection<String> tables) {
+		if (key == null || list == null) {
+			return;
+		}
+
+		// 取依赖的表中配置过的最短 TTL，都没配置才用默认值，这样单表的 TTL 也可以比默认值长
+		Long ttl = null;
+		if (tables != null) {
+			for (String table : tables) {
+				Long t = table == null ? null : ttlMap.get(table);
+				if (t != null && (ttl == null || t < ttl)) {
+					ttl = t;
+				}
+			}
+		}
+		if (ttl == null) {
+			ttl = defaultTtl;
+		}
+		if (ttl <= 0) {
+			return;
+		}
+
+		List<M> copy = copyList(list);
+		long size = estimateSize(copy);
+		if (size > maxBytes) {
+			Log.i(TAG, "put  size > maxBytes >> return;");
+			return;
+		}
+
+		CacheEntry<M> entry = new CacheEntry<>(copy, System.currentTimeMillis() + ttl, size
+				, tables == null ? new HashSet<>() : new HashSet<>(tables));
+
+		synchronized (this) {
+			removeEntry(key);
+
+			entryMap.put(key, entry);
+			bytes += size;
+			for (String table : entry.tables) {
+				Set<String> keys = tableKeyMap.get(table);
+				if (keys == null) {
+					keys = new HashSet<>();
+					tableKeyMap.put(table, keys);
+				}
+				keys.add(key);
+			}
+
+			Iterator<Map.Entry<String, CacheEntry<M>>> iterator = entryMap.entrySet().iterator();
+			while ((entryMap.size() > maxCount || bytes > maxBytes) && iterator.hasNext()) {
+				Map.Entry<String, CacheEntry<M>> e = iterator.next();
+				String k = e.getKey();
+				if (k.equals(key)) {
+					continue;
+				}
+
+				iterator.remove();
+				onRemoved(k, e.getValue());
+				evictionCount ++;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		removeEntry(key);
+	}
+
+	@Override
+	public synchronized void invalidate(String table) {
+		Set<String> keys = table == null ? null : tableKeyMap.remove(table);
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+
+		for (String key : new ArrayList<>(keys)) {
+			if (removeEntry(key)) {
+				invalidationCount ++;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		entryMap.clear();
+		tableKeyMap.clear();
+		bytes = 0;
+	}
+
+	private boolean removeEntry(String key) {
+		CacheEntry<M> entry = entryMap.remove(key);
+		if (entry == null) {
+			return false;
+		}
+
+		onRemoved(key, entry);
+		return true;
+	}
+
+	/**已经从 entryMap 移除，这里同步 bytes 和 tableKeyMap
+	 */
+	private void onRemoved(String key, CacheEntry<M> entry) {
+		bytes -= entry.size;
+		for (String table : entry.tables) {
+			Set<String> keys = tableKeyMap.get(table);
+			if (keys != null && keys.remove(key) && keys.isEmpty()) {
+				tableKeyMap.remove(table);
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entryMap.size();
+	}
+	public synchronized long getBytes() {
+		return bytes;
+	}
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	public synchronized long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+
+	protected List<M> copyList(List<M> list) {
+		List<M> copy = new ArrayList<>(list.size());
+		for (M item : list) {
+			copy.add(item == null ? null : copyMap(item));
+		}
+		return copy;
+	}
+
+	protected M copyMap(Map<String, Object> map) {
+		M copy = JSON.createJSONObject();
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			copy.put(e.getKey(), copyValue(e.getValue()));
+		}
+		return copy;
+	}
+
+	/**深拷贝 Map 和 Collection，其它值(String, Number 等)不可变或者不会被修改，直接复用
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected Object copyValue(Object value) {
+		if (value instanceof Map<?, ?>) {
+			return copyMap((Map<String, Object>) value);
+		}
+		if (value instanceof Collection<?>) {
+			Collection<?> c = (Collection<?>) value;
+			List<Object> copy = value instanceof List<?> ? JSON.createJSONArray() : new ArrayList<>(c.size());
+			for (Object v : c) {
+				copy.add(copyValue(v));
+			}
+			return copy;
+		}
+		return value;
+	}
+
+	/**估算内存占用，不需要很精确，只用来限制总量
+	 * @param value
+	 * @return
+	 */
+	protected long estimateSize(Object value) {
+		if (value == null) {
+			return 8;
+		}
+		if (value instanceof String) {
+			return 40 + 2L*((String) value).length();
+		}
+		if (value instanceof Map<?, ?>) {
+			long size = 48;
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				size += 32 + estimateSize(e.getKey()) + estimateSize(e.getValue());
+			}
+			return size;
+		}
+		if (value instanceof Collection<?>) {
+			long size = 40;
+			for (Object v : (Collection<?>) value) {
+				size += 8 + estimateSize(v);
+			}
+			return size;
+		}
+		return 24;
+	}
+
+
+	private static class CacheEntry<M> {
+		final List<M> list;
+		final long expireTime;
+		final long size;
+		final Set<String> tables;
+
+		CacheEntry(List<M> list, long expireTime, long size, Set<String> tables) {
+			this.list = list;
+			this.expireTime = expireTime;
+			this.size = size;
+			this.tables = tables;
+		}
+	}
+
+}
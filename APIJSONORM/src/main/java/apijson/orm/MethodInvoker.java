@@ -0,0 +1,221 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import apijson.Log;
+import apijson.NotNull;
+
+/**远程函数调用器，按 类+方法名+参数类型 缓存查找到的方法及转换好的 MethodHandle，
+ * 不用每次调用都 getMethod 查找，MethodHandle 在 JIT 后也比 Method.invoke 少了每次的访问及参数检查
+ * @author Lemon
+ */
+public class MethodInvoker {
+	private static final String TAG = "MethodInvoker";
+
+	/**
+	 * 最多缓存的调用器数量，超过后淘汰任意一个，<= 0 则不缓存
+	 */
+	public static int MAX_SIZE = 2000;
+
+	private static final Map<Key, MethodInvoker> INVOKER_MAP = new ConcurrentHashMap<>();
+
+	private static final AtomicLong HIT_COUNT = new AtomicLong();
+	private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+	/**获取调用器，没有则查找并缓存
+	 * @param cls
+	 * @param methodName
+	 * @param parameterTypes
+	 * @return
+	 * @throws NoSuchMethodException 和 Class.getMethod 一样找不到就抛异常
+	 */
+	public static MethodInvoker get(@NotNull Class<?> cls, @NotNull String methodName, @NotNull Class<?>[] parameterTypes) throws NoSuchMethodException {
+		Key key = new Key(cls, methodName, parameterTypes);
+		MethodInvoker invoker = MAX_SIZE > 0 ? INVOKER_MAP.get(key) : null;
+		if (invoker != null) {
+			HIT_COUNT.incrementAndGet();
+			return invoker;
+		}
+
+		MISS_COUNT.incrementAndGet();
+		invoker = new MethodInvoker(cls.getMethod(methodName, parameterTypes));
+
+		if (MAX_SIZE > 0) {
+			if (INVOKER_MAP.size() >= MAX_SIZE) {
+				Iterator<Key> iterator = INVOKER_MAP.keySet().iterator();
+				while (INVOKER_MAP.size() >= MAX_SIZE && iterator.hasNext()) {
+					iterator.next();
+					iterator.remove();
+				}
+			}
+			INVOKER_MAP.put(new Key(cls, methodName, parameterTypes.clone()), invoker);
+		}
+		return invoker;
+	}
+
+	public static long getHitCount() {
+		return HIT_COUNT.get();
+	}
+	public static long getMissCount() {
+		return MISS_COUNT.get();
+	}
+	public static int getSize() {
+		return INVOKER_MAP.size();
+	}
+	public static void clear() {
+		INVOKER_MAP.clear();
+	}
+
+
+	private final Method method;
+	private final Class<?>[] parameterTypes;
+	/**
+	 * (Object target, Object[] args)Object，类或方法不可访问时为 null，用 Method.invoke
+	 */
+	private final MethodHandle handle;
+
+	private MethodInvoker(Method method) {
+		this.method = method;
+		this.parameterTypes = method.getParameterTypes();
+
+		MethodHandle h = null;
+		if (Modifier.isStatic(method.getModifiers()) == false && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+			try {
+				int count = method.getParameterCount();
+				h = MethodHandles.publicLookup().unreflect(method)
+						.asType(MethodType.genericMethodType(count + 1))
+						.asSpreader(Object[].class, count);
+			}
+			catch (Throwable e) {
+				Log.w(TAG, "MethodInvoker  " + method + " unreflect 失败，改用 Method.invoke ！" + e.getMessage());
+			}
+		}
+		this.handle = h;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	/**调用，和 Method.invoke 一样把方法内抛出的异常包装为 InvocationTargetException，
+	 * target 或参数类型不对则在调用前抛 NullPointerException 或 IllegalArgumentException，不会包装
+	 * @param target
+	 * @param args
+	 * @return
+	 * @throws Exception
+	 */
+	public Object invoke(Object target, Object[] args) throws Exception {
+		if (handle == null) {
+			return method.invoke(target, args);
+		}
+
+		Object[] realArgs = args == null ? new Object[0] : args;
+		if (realArgs.length != parameterTypes.length) {
+			throw new IllegalArgumentException("wrong number of arguments");
+		}
+		// MethodHandle 转换参数时的 ClassCastException 等和方法内抛出的分不开，所以先和 Method.invoke 一样检查
+		if (target == null) {
+			throw new NullPointerException("target == null for " + method);
+		}
+		if (method.getDeclaringClass().isInstance(target) == false) {
+			throw new IllegalArgumentException("object is not an instance of declaring class");
+		}
+		for (int i = 0; i < realArgs.length; i++) {
+			if (isAssignable(parameterTypes[i], realArgs[i]) == false) {
+				throw new IllegalArgumentException("argument type mismatch");
+			}
+		}
+
+		try {
+			return (Object) handle.invokeExact(target, realArgs);
+		}
+		catch (Throwable e) {
+			throw new InvocationTargetException(e);
+		}
+	}
+
+	/**和 Method.invoke 一样，基本类型参数只允许对应的包装类及拓宽转换，例如 Integer 可以传给 long，Long 不能传给 int
+	 */
+	private static boolean isAssignable(Class<?> type, Object arg) {
+		if (type.isPrimitive() == false) {
+			return arg == null || type.isInstance(arg);
+		}
+		if (arg == null) {
+			return false;
+		}
+
+		Class<?> c = arg.getClass();
+		if (type == int.class) {
+			return c == Integer.class || c == Short.class || c == Byte.class || c == Character.class;
+		}
+		if (type == long.class) {
+			return c == Long.class || c == Integer.class || c == Short.class || c == Byte.class || c == Character.class;
+		}
+		if (type == double.class) {
+			return c == Double.class || c == Float.class || c == Long.class || c == Integer.class
+					|| c == Short.class || c == Byte.class || c == Character.class;
+		}
+		if (type == float.class) {
+			return c == Float.class || c == Long.class || c == Integer.class || c == Short.class || c == Byte.class || c == Character.class;
+		}
+		if (type == boolean.class) {
+			return c == Boolean.class;
+		}
+		if (type == short.class) {
+			return c == Short.class || c == Byte.class;
+		}
+		if (type == char.class) {
+			return c == Character.class;
+		}
+		return c == Byte.class;  // byte
+	}
+
+
+	private static final class Key {
+		private final Class<?> cls;
+		private final String methodName;
+		private final Class<?>[] parameterTypes;
+		private final int hash;
+
+		Key(Class<?> cls, String methodName, Class<?>[] parameterTypes) {
+			this.cls = cls;
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+			this.hash = 31*(31*cls.hashCode() + methodName.hashCode()) + Arrays.hashCode(parameterTypes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj instanceof Key == false) {
+				return false;
+			}
+
+			Key k = (Key) obj;
+			return cls == k.cls && methodName.equals(k.methodName) && Arrays.equals(parameterTypes, k.parameterTypes);
+		}
+	}
+
+}
@@ -117,6 +117,7 @@ public interface Parser<T, M extends Map<String, Object>, L extends List<Object>
 	String getGlobalSchema();
 	Boolean getGlobalExplain();
 	String getGlobalCache();
+	Boolean getGlobalPrimary();
 
 	
 	int getTransactionIsolation();
@@ -0,0 +1,197 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import apijson.JSONMap;
+import apijson.StringUtil;
+
+/**请求中对象/数组节点的顺序及节点间的 key@ 引用依赖，并行解析时用来判断哪些节点可以同时执行
+ * @author Lemon
+ */
+public class RequestPlan {
+
+	/**解析请求中的节点及依赖
+	 * @param request 已经过校验和修正的请求
+	 * @return
+	 */
+	public static RequestPlan compile(Map<String, Object> request) {
+		if (request == null) {
+			return null;
+		}
+
+		RequestPlan plan = new RequestPlan();
+		plan.compile(null, null, request);
+
+		for (Node node : plan.nodeList) {
+			for (String target : node.referenceList) {
+				Node dependency = plan.findNode(target);
+				if (dependency != null && dependency != node && target.startsWith(node.path + "/") == false) {
+					node.dependencySet.add(dependency.path);
+				}
+			}
+		}
+		return plan;
+	}
+
+
+	private final List<Node> nodeList = new ArrayList<>();
+	private final Map<String, Node> nodeMap = new LinkedHashMap<>();
+
+	private RequestPlan() {
+	}
+
+	/**
+	 * @return 按请求中的顺序排列的对象/数组节点
+	 */
+	public List<Node> getNodeList() {
+		return Collections.unmodifiableList(nodeList);
+	}
+	/**
+	 * @param path 例如 User, []/Comment
+	 * @return
+	 */
+	public Node getNode(String path) {
+		return nodeMap.get(path);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void compile(Node parent, String parentPath, Map<String, Object> request) {
+		for (Map.Entry<String, Object> e : request.entrySet()) {
+			String key = e.getKey();
+			Object value = e.getValue();
+			if (key == null) {
+				continue;
+			}
+
+			if (parent != null && key.endsWith("@")) {
+				if (value instanceof String) {  // key@: "/Table/key"
+					String target = (String) value;
+					parent.referenceList.add(target.startsWith("/") ? AbstractParser.getAbsPath(parent.parentPath, target) : target);
+				}
+				else if (value instanceof Map<?, ?>) {  // key@: { "from": "Table", "Table": {} } 子查询内也可能引用其它节点
+					parent.hasSubquery = true;
+				}
+				continue;
+			}
+			if (parent != null && key.endsWith("()")) {  // key(): "fun(arg)" 远程函数可能有共享状态
+				parent.hasFunction = true;
+				continue;
+			}
+
+			if (value instanceof Map<?, ?> == false || key.startsWith("@") || key.endsWith("@")) {
+				continue;
+			}
+
+			String path = AbstractParser.getAbsPath(parentPath, key);
+			Entry<String, String> entry = Pair.parseEntry(key, true);
+
+			Node node = new Node(path, parentPath, key, entry.getKey(), entry.getValue()
+					, JSONMap.isTableKey(entry.getKey()), JSONMap.isArrayKey(key));
+			nodeList.add(node);
+			nodeMap.put(path, node);
+
+			compile(node, path, (Map<String, Object>) value);
+		}
+	}
+
+	/**找引用路径所在的节点，例如 Moment/userId 在 Moment 节点，[]/Comment/id 在 []/Comment 节点
+	 */
+	private Node findNode(String target) {
+		String path = StringUtil.get(target);
+		while (path.isEmpty() == false) {
+			Node node = nodeMap.get(path);
+			if (node != null) {
+				return node;
+			}
+
+			int index = path.lastIndexOf("/");
+			path = index < 0 ? "" : path.substring(0, index);
+		}
+		return null;
+	}
+
+
+	/**请求中的对象或数组
+	 */
+	public static class Node {
+		private final String path;
+		private final String parentPath;
+		private final String name;
+		private final String table;
+		private final String alias;
+		private final boolean isTable;
+		private final boolean isArray;
+		private final List<String> referenceList = new ArrayList<>();
+		private final Set<String> dependencySet = new LinkedHashSet<>();
+		private boolean hasSubquery;
+		private boolean hasFunction;
+
+		Node(String path, String parentPath, String name, String table, String alias, boolean isTable, boolean isArray) {
+			this.path = path;
+			this.parentPath = parentPath;
+			this.name = name;
+			this.table = table;
+			this.alias = alias;
+			this.isTable = isTable;
+			this.isArray = isArray;
+		}
+
+		public String getPath() {
+			return path;
+		}
+		public String getParentPath() {
+			return parentPath;
+		}
+		public String getName() {
+			return name;
+		}
+		public String getTable() {
+			return table;
+		}
+		public String getAlias() {
+			return alias;
+		}
+		public boolean isTable() {
+			return isTable;
+		}
+		public boolean isArray() {
+			return isArray;
+		}
+		/**
+		 * @return 内部 key@ 引用的绝对路径
+		 */
+		public List<String> getReferenceList() {
+			return Collections.unmodifiableList(referenceList);
+		}
+		/**
+		 * @return 是否包含 key@:{} 子查询，子查询内的引用没有解析到 dependencySet
+		 */
+		public boolean hasSubquery() {
+			return hasSubquery;
+		}
+		/**
+		 * @return 是否直接包含 key():"fun(arg)" 远程函数
+		 */
+		public boolean hasFunction() {
+			return hasFunction;
+		}
+		/**
+		 * @return 引用到的其它节点路径，不包括自身及子节点
+		 */
+		public Set<String> getDependencySet() {
+			return Collections.unmodifiableSet(dependencySet);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**跨请求共享的 SQL 结果缓存，必须线程安全
+ * @author Lemon
+ * @see LRUResultCache
+ */
+public interface ResultCache<M extends Map<String, Object>> {
+
+	/**获取缓存
+	 * @param key  一般为 数据源 + SQL
+	 * @return 不存在或已过期则返回 null
+	 */
+	List<M> get(String key);
+
+	/**保存缓存
+	 * @param key  一般为 数据源 + SQL
+	 * @param list  value
+	 * @param tables  结果依赖的表，包括 JOIN 副表和子查询的表，任意一张表被修改都会让这条缓存失效
+	 */
+	void put(String key, List<M> list, Collection<String> tables);
+
+	/**移除缓存
+	 * @param key
+	 */
+	void remove(String key);
+
+	/**移除依赖指定表的所有缓存，POST/PUT/DELETE 后调用
+	 * @param table  请求传进来的 Table 名
+	 */
+	void invalidate(String table);
+
+	/**清空缓存
+	 */
+	void clear();
+
+}
@@ -215,6 +215,40 @@ public interface SQLConfig<T, M extends Map<String, Object>, L extends List<Obje
 	Boolean getCompat();
 	SQLConfig<T, M, L> setCompat(Boolean compat);
 
+	/**游标分页，null - 不用游标，"" - 第一页，其它 - 上一页返回的游标
+	 * @return
+	 * @see KeysetCursor
+	 */
+	String getCursor();
+	SQLConfig<T, M, L> setCursor(String cursor);
+
+	/**是否可以在主查询中用 count(*) OVER() 同时查出分页总数，不用再单独查一次
+	 * @return
+	 */
+	boolean isCountOverEnable();
+	boolean isCountOver();
+	SQLConfig<T, M, L> setCountOver(boolean countOver);
+
+	/**从表的统计信息查估算总行数的 SQL
+	 * @return 数据库不支持，或者有条件、分组等不能用整表估算值时返回 null
+	 */
+	String gainApproximateCountSQL();
+
+	/**分表规则
+	 * @return 不分表则返回 null
+	 * @see ShardRule
+	 */
+	ShardRule getShardRule();
+	/**当前查询的物理表，为 null 则按条件路由
+	 * @return
+	 */
+	String getShard();
+	SQLConfig<T, M, L> setShard(String shard);
+	/**按条件中的分片键或 POST 的值路由到的全部物理表
+	 * @return 不分表则返回 null
+	 */
+	List<String> gainShardList();
+
 	int getPosition();
 	SQLConfig<T, M, L> setPosition(int position);
 
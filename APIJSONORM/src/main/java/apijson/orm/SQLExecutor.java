@@ -80,6 +80,37 @@ public interface SQLExecutor<T, M extends Map<String, Object>, L extends List<Ob
 	}
 	int executeUpdate(@NotNull SQLConfig<T, M, L> config, String sql) throws Exception;
 
+	/**从表的统计信息查估算总行数
+	 * @param config
+	 * @return 不支持或者没有统计信息则返回 null
+	 * @throws Exception
+	 * @see SQLConfig#gainApproximateCountSQL()
+	 */
+	default Long executeApproximateCount(@NotNull SQLConfig<T, M, L> config) throws Exception {
+		return null;
+	}
+
+
+	/**开始批量写，之后 POST/PUT/DELETE 的 execute 只收集 SQLConfig 并返回预期的成功结果，在 executeBatch 时合并执行
+	 * @return 是否支持批量写，不支持则仍然逐条执行
+	 */
+	default boolean beginBatch() {
+		return false;
+	}
+
+	/**执行 beginBatch 后收集的所有写操作，并结束批量写
+	 * @return 和收集顺序一致的每条结果，失败的为错误结果
+	 * @throws Exception
+	 */
+	default List<M> executeBatch() throws Exception {
+		return null;
+	}
+
+	/**结束批量写，丢弃还没执行的写操作
+	 */
+	default void endBatch() {
+	}
+
 
 	/**判断是否为JSON类型
 	* @param config
@@ -0,0 +1,256 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import apijson.NotNull;
+import apijson.StringUtil;
+
+/**分表规则，按分片键的值把一张逻辑表路由到多张物理表，物理表还可以分布在不同的 @datasource。
+ * 条件里有 分片键 或 分片键{}:[] 时只查对应的分片，否则查全部分片再合并结果
+ * @author Lemon
+ * @see AbstractSQLConfig#SHARD_RULE_MAP
+ */
+public class ShardRule {
+
+	/**
+	 * 按分片键的哈希值取模
+	 */
+	public static final String TYPE_HASH = "HASH";
+	/**
+	 * 按分片键的数值范围
+	 */
+	public static final String TYPE_RANGE = "RANGE";
+	/**
+	 * 按分片键的日期格式化后的后缀，例如 yyyyMM 按月分表
+	 */
+	public static final String TYPE_DATE = "DATE";
+
+	private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+	private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+	private final String table;
+	private final String key;
+	private final String type;
+	private final List<String> tableList;
+	private final long[] bounds;
+	private final DateTimeFormatter formatter;
+	private final Map<String, String> datasourceMap = new ConcurrentHashMap<>();
+
+	private ShardRule(String table, String key, String type, List<String> tableList, long[] bounds, DateTimeFormatter formatter) {
+		if (StringUtil.isName(key) == false) {
+			throw new IllegalArgumentException("分片键 " + key + " 不合法！必须是 1 个字段名！");
+		}
+
+		this.table = table;
+		this.key = key;
+		this.type = type;
+		this.tableList = Collections.unmodifiableList(tableList);
+		this.bounds = bounds;
+		this.formatter = formatter;
+	}
+
+	/**按哈希值取模，物理表为 table_0, table_1 ... table_{count - 1}
+	 * @param table 逻辑表
+	 * @param key 分片键
+	 * @param count 分片数量
+	 * @return
+	 */
+	public static ShardRule hash(@NotNull String table, @NotNull String key, int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("分片数量 count 必须 > 0 ！");
+		}
+
+		List<String> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(table + "_" + i);
+		}
+		return new ShardRule(table, key, TYPE_HASH, list, null, null);
+	}
+
+	/**按数值范围，bounds 为 [1000000, 2000000] 时 < 1000000 的在 table_0，< 2000000 的在 table_1，其它的在 table_2
+	 * @param table 逻辑表
+	 * @param key 分片键
+	 * @param bounds 递增的分界值
+	 * @return
+	 */
+	public static ShardRule range(@NotNull String table, @NotNull String key, @NotNull long... bounds) {
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] <= bounds[i - 1]) {
+				throw new IllegalArgumentException("分片的分界值 bounds 必须递增！");
+			}
+		}
+
+		List<String> list = new ArrayList<>(bounds.length + 1);
+		for (int i = 0; i <= bounds.length; i++) {
+			list.add(table + "_" + i);
+		}
+		return new ShardRule(table, key, TYPE_RANGE, list, Arrays.copyOf(bounds, bounds.length), null);
+	}
+
+	/**按日期，format 为 yyyyMM 时 2024-01-15 的在 table_202401
+	 * @param table 逻辑表
+	 * @param key 分片键
+	 * @param format 日期格式
+	 * @param suffixes 已有的全部后缀，条件里没有分片键时查这些分片
+	 * @return
+	 */
+	public static ShardRule date(@NotNull String table, @NotNull String key, @NotNull String format, String... suffixes) {
+		List<String> list = new ArrayList<>();
+		if (suffixes != null) {
+			for (String s : suffixes) {
+				list.add(table + "_" + s);
+			}
+		}
+		return new ShardRule(table, key, TYPE_DATE, list, null, DateTimeFormatter.ofPattern(format));
+	}
+
+	/**分片所在的数据源，不设置则和逻辑表的 @datasource 一样
+	 * @param shard 物理表
+	 * @param datasource
+	 * @return
+	 */
+	public ShardRule putDatasource(@NotNull String shard, @NotNull String datasource) {
+		datasourceMap.put(shard, datasource);
+		return this;
+	}
+	public String getDatasource(String shard) {
+		return shard == null || datasourceMap.isEmpty() ? null : datasourceMap.get(shard);
+	}
+
+	public String getTable() {
+		return table;
+	}
+	public String getKey() {
+		return key;
+	}
+	public String getType() {
+		return type;
+	}
+	/**
+	 * @return 全部物理表
+	 */
+	public List<String> getTableList() {
+		return tableList;
+	}
+
+	/**路由到物理表
+	 * @param value 分片键的值
+	 * @return
+	 */
+	public String route(Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException(table + " 的分片键 " + key + " 的值不能为 null ！");
+		}
+
+		if (TYPE_DATE.equals(type)) {
+			return table + "_" + formatter.format(toDateTime(value));
+		}
+
+		if (TYPE_RANGE.equals(type)) {
+			long v = toLong(value);
+			int i = 0;
+			while (i < bounds.length && v >= bounds[i]) {
+				i ++;
+			}
+			return tableList.get(i);
+		}
+
+		return tableList.get((int) Math.floorMod(toHash(value), (long) tableList.size()));
+	}
+
+	/**路由到物理表，去重
+	 * @param values 分片键的多个值
+	 * @return
+	 */
+	public List<String> route(@NotNull Collection<?> values) {
+		Set<String> set = new LinkedHashSet<>();
+		for (Object v : values) {
+			set.add(route(v));
+		}
+		return new ArrayList<>(set);
+	}
+
+	private long toLong(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		try {
+			return Long.parseLong(value.toString().trim());  // 数字字符串和数字路由到同一分片
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException(table + " 的分片键 " + key + " 的值 " + value + " 不是整数！", e);
+		}
+	}
+
+	/**数字及数字字符串先统一为 BigDecimal，1, 1.0, "1", "1.00" 都路由到同一分片，其它值用 String.hashCode
+	 * @param value
+	 * @return
+	 */
+	private static long toHash(Object value) {
+		BigDecimal num = null;
+		if (value instanceof BigDecimal) {
+			num = (BigDecimal) value;
+		}
+		else if (value instanceof Number || value instanceof String) {
+			try {
+				num = new BigDecimal(value.toString().trim());
+			}
+			catch (NumberFormatException e) {  // Double.NaN, 非数字字符串等
+			}
+		}
+
+		if (num == null) {
+			return value.toString().hashCode();
+		}
+
+		num = num.stripTrailingZeros();
+		if (num.scale() <= 0 && num.compareTo(LONG_MIN) >= 0 && num.compareTo(LONG_MAX) <= 0) {
+			return num.longValue();
+		}
+		return num.toPlainString().hashCode();
+	}
+
+	private static TemporalAccessor toDateTime(Object value) {
+		if (value instanceof java.util.Date) {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(((java.util.Date) value).getTime()), ZoneId.systemDefault());
+		}
+		if (value instanceof LocalDate) {
+			return ((LocalDate) value).atStartOfDay();
+		}
+		if (value instanceof TemporalAccessor) {
+			return (TemporalAccessor) value;
+		}
+		if (value instanceof Number) {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) value).longValue()), ZoneId.systemDefault());
+		}
+
+		String s = value.toString().trim();
+		try {
+			return s.length() <= 10 ? LocalDate.parse(s).atStartOfDay() : LocalDateTime.parse(s.replace(' ', 'T'));
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("分片键的值 " + value + " 不是 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss 格式的日期！", e);
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.sql.PreparedStatement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import apijson.Log;
+
+/**单个连接内的 PreparedStatement 缓存，按最近最少使用(LRU)淘汰，淘汰时关闭
+ * 同一个连接同一时间只会被一个请求使用，所以这里不需要线程安全
+ * @author Lemon
+ */
+public class StatementCache {
+	private static final String TAG = "StatementCache";
+
+	private final int maxSize;
+	private final LinkedHashMap<String, PreparedStatement> statementMap;
+
+	private long hitCount;
+	private long missCount;
+
+	public StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.statementMap = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @param sql 预编译 SQL，值都是 ? 占位
+	 * @param resultSetType
+	 * @param resultSetConcurrency
+	 * @param generatedKeys 返回自增主键的方式，例如 Statement.RETURN_GENERATED_KEYS 或 Oracle 的主键名
+	 * @return
+	 */
+	public static String getKey(String sql, int resultSetType, int resultSetConcurrency, String generatedKeys) {
+		return resultSetType + "," + resultSetConcurrency + "," + (generatedKeys == null ? "" : generatedKeys) + ":" + sql;
+	}
+
+	public PreparedStatement get(String key) {
+		PreparedStatement statement = statementMap.get(key);
+		try {
+			if (statement != null && statement.isClosed()) {
+				statementMap.remove(key);
+				statement = null;
+			}
+		} catch (Throwable e) {
+			statementMap.remove(key);
+			statement = null;
+		}
+
+		if (statement == null) {
+			missCount ++;
+		} else {
+			hitCount ++;
+		}
+		return statement;
+	}
+
+	public void put(String key, PreparedStatement statement) {
+		PreparedStatement old = statementMap.put(key, statement);
+		if (old != null && old != statement) {
+			close(old);
+		}
+
+		Iterator<Map.Entry<String, PreparedStatement>> iterator = statementMap.entrySet().iterator();
+		while (statementMap.size() > maxSize && iterator.hasNext()) {
+			Map.Entry<String, PreparedStatement> e = iterator.next();
+			if (e.getValue() == statement) {
+				continue;
+			}
+
+			iterator.remove();
+			close(e.getValue());
+		}
+	}
+
+	/**关闭所有缓存的 PreparedStatement
+	 */
+	public void close() {
+		for (PreparedStatement statement : statementMap.values()) {
+			close(statement);
+		}
+		statementMap.clear();
+	}
+
+	public int size() {
+		return statementMap.size();
+	}
+	public long getHitCount() {
+		return hitCount;
+	}
+	public long getMissCount() {
+		return missCount;
+	}
+
+	private static void close(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (Throwable e) {
+			Log.e(TAG, "close  catch (Throwable e) = " + e.getMessage());
+		}
+	}
+
+}
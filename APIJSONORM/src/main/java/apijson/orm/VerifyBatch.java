@@ -0,0 +1,335 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import apijson.JSONMap;
+import apijson.Log;
+import apijson.NotNull;
+import apijson.RequestMethod;
+import apijson.StringUtil;
+import apijson.orm.exception.ConflictException;
+
+/**Table[]:[{}] 批量新增/修改时合并 Request 表 VERIFY 里的 EXIST, UNIQUE 校验，
+ * 先在内存中找出批量内互相重复的项，再按 表+字段 分组，每组只用一条 key{}:[...] 查询，而不是每一项都查一次数据库，
+ * 最后在内存中按每一项的值匹配查询结果，得到具体哪些项冲突。含 null、JSON 等值或结果可能不准确时退回单独校验
+ * @author Lemon
+ */
+public class VerifyBatch {
+	private static final String TAG = "VerifyBatch";
+
+	/**
+	 * 每组查询最多返回的条数，超过则退回单独校验
+	 */
+	public static int MAX_COUNT = 1000;
+
+	private final Map<String, Group> groupMap = new LinkedHashMap<>();
+	private int row;
+
+	/**
+	 * @param row 当前校验的是第几项
+	 */
+	public void setRow(int row) {
+		this.row = row;
+	}
+	public int getRow() {
+		return row;
+	}
+
+	/**收集当前项的校验
+	 * @param unique true - UNIQUE 不能重复, false - EXIST 必须存在
+	 * @param table
+	 * @param param 字段及值，和 verifyExist, verifyRepeat 一样多个字段为 AND 关系
+	 * @param exceptId UNIQUE 排除的 id
+	 * @param idKey
+	 */
+	public void add(boolean unique, String table, Map<String, Object> param, long exceptId, String idKey) {
+		if (param == null || param.isEmpty()) {
+			return;
+		}
+
+		List<String> keyList = new ArrayList<>(new TreeMap<>(param).keySet());
+		String finalIdKey = StringUtil.isEmpty(idKey, false) ? JSONMap.KEY_ID : idKey;
+		String groupKey = (unique ? "UNIQUE:" : "EXIST:") + table + ":" + keyList + (unique ? ":" + finalIdKey : "");
+
+		Group group = groupMap.get(groupKey);
+		if (group == null) {
+			group = new Group(unique, table, keyList, finalIdKey);
+			groupMap.put(groupKey, group);
+		}
+		group.itemList.add(new Item(row, param, exceptId, getTuple(keyList, param)));
+	}
+
+	/**去掉某一项收集的校验，用于这一项后续校验失败的情况
+	 * @param row
+	 */
+	public void remove(int row) {
+		for (Group group : groupMap.values()) {
+			group.itemList.removeIf(item -> item.row == row);
+		}
+	}
+
+	public boolean isEmpty() {
+		for (Group group : groupMap.values()) {
+			if (group.itemList.isEmpty() == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**执行收集的校验
+	 * @param parser
+	 * @return 校验失败的项 { row: Exception }，没有则为空
+	 * @throws Exception 查询出错
+	 */
+	public <T, M extends Map<String, Object>, L extends List<Object>> Map<Integer, Exception> verify(
+			@NotNull Parser<T, M, L> parser) throws Exception {
+		Map<Integer, Exception> errorMap = new TreeMap<>();
+		for (Group group : groupMap.values()) {
+			verify(group, parser, errorMap);
+		}
+		return errorMap;
+	}
+
+	private <T, M extends Map<String, Object>, L extends List<Object>> void verify(Group group
+			, Parser<T, M, L> parser, Map<Integer, Exception> errorMap) throws Exception {
+		List<Item> itemList = new ArrayList<>();
+		for (Item item : group.itemList) {
+			if (errorMap.containsKey(item.row)) {
+				continue;
+			}
+			if (item.tuple == null) {  // IS NULL 等不能合并为 IN，单独校验
+				verifyItem(group, item, parser, errorMap);
+				continue;
+			}
+			itemList.add(item);
+		}
+
+		// 批量内互相重复，不用查数据库
+		if (group.unique) {
+			Map<List<String>, Item> firstMap = new HashMap<>();
+			Iterator<Item> iterator = itemList.iterator();
+			while (iterator.hasNext()) {
+				Item item = iterator.next();
+				Item first = firstMap.putIfAbsent(item.tuple, item);
+				if (first != null && (item.exceptId <= 0 || item.exceptId != first.exceptId)) {
+					errorMap.put(item.row, new ConflictException(getDescription(item.param)
+							+ "的数据和第 " + first.row + " 项重复，不能重复！"));
+					iterator.remove();
+				}
+			}
+		}
+		if (itemList.isEmpty()) {
+			return;
+		}
+
+		List<List<Object>> valuesList = new ArrayList<>(group.keyList.size());
+		for (int k = 0; k < group.keyList.size(); k++) {
+			Map<String, Object> valueMap = new LinkedHashMap<>();
+			for (Item item : itemList) {
+				valueMap.putIfAbsent(item.tuple.get(k), item.param.get(group.keyList.get(k)));
+			}
+			valuesList.add(new ArrayList<>(valueMap.values()));
+		}
+
+		List<M> rowList = query(group, valuesList, parser);
+		if (rowList == null) {
+			Log.w(TAG, "verify  " + group.table + " " + group.keyList + " rowList == null >> 结果被截断，单独校验");
+			for (Item item : itemList) {
+				verifyItem(group, item, parser, errorMap);
+			}
+			return;
+		}
+
+		Map<List<String>, List<Object>> idMap = new HashMap<>();
+		boolean matchAll = true;
+		for (M r : rowList) {
+			List<String> tuple = r == null ? null : getTuple(group.keyList, r);
+			if (tuple == null) {  // 取不到字段值
+				matchAll = false;
+				continue;
+			}
+			idMap.computeIfAbsent(tuple, t -> new ArrayList<>()).add(r.get(group.idKey));
+		}
+
+		if (group.unique == false) {
+			for (Item item : itemList) {
+				if (idMap.containsKey(item.tuple) == false) {  // 可能只是类型或大小写等格式不同没匹配上，单独校验
+					verifyItem(group, item, parser, errorMap);
+				}
+			}
+			return;
+		}
+
+		// 数据库按排序规则等比较可能和内存中不一样，有没匹配上的结果就不能确定哪些项冲突
+		if (matchAll) {
+			Set<List<String>> tupleSet = new HashSet<>();
+			for (Item item : itemList) {
+				tupleSet.add(item.tuple);
+			}
+			matchAll = tupleSet.containsAll(idMap.keySet());
+		}
+
+		for (Item item : itemList) {
+			List<Object> ids = idMap.get(item.tuple);
+			boolean conflict = false;
+			if (ids != null) {
+				for (Object id : ids) {
+					if (item.exceptId <= 0 || id == null || String.valueOf(item.exceptId).equals(getString(id)) == false) {
+						conflict = true;
+						break;
+					}
+				}
+			}
+
+			if (conflict) {
+				errorMap.put(item.row, new ConflictException(getDescription(item.param) + "的数据已经存在，不能重复！"));
+			}
+			else if (matchAll == false) {
+				verifyItem(group, item, parser, errorMap);
+			}
+		}
+	}
+
+	/**一条 key0{}:[...], key1{}:[...] 查询
+	 * @return 结果超过 MAX_COUNT 条则返回 null
+	 */
+	@SuppressWarnings("unchecked")
+	private <T, M extends Map<String, Object>, L extends List<Object>> List<M> query(Group group
+			, List<List<Object>> valuesList, Parser<T, M, L> parser) throws Exception {
+		List<String> columnList = new ArrayList<>(group.keyList);
+		if (group.unique && columnList.contains(group.idKey) == false) {
+			columnList.add(group.idKey);
+		}
+
+		SQLConfig<T, M, L> config = parser.createSQLConfig().setMethod(RequestMethod.GET).setCount(MAX_COUNT + 1).setPage(0);
+		config.setTable(group.table);
+		config.setColumn(columnList);
+		for (int k = 0; k < group.keyList.size(); k++) {
+			List<Object> values = valuesList.get(k);
+			String key = group.keyList.get(k);
+			if (values.size() == 1) {
+				config.putWhere(key, values.get(0), false);
+			} else {
+				config.putWhere(key + "{}", values, false);
+			}
+		}
+
+		SQLExecutor<T, M, L> executor = parser.getSQLExecutor();
+		try {
+			M result = executor.execute(config, false);
+			List<M> rowList = result == null ? null : (List<M>) result.remove(AbstractSQLExecutor.KEY_RAW_LIST);
+			if (rowList == null) {
+				rowList = result == null || result.isEmpty() ? new ArrayList<>() : Arrays.asList(result);
+			}
+			return rowList.size() > MAX_COUNT ? null : rowList;
+		} finally {
+			executor.close();
+		}
+	}
+
+	/**和不批量时一样单独校验
+	 */
+	private <T, M extends Map<String, Object>, L extends List<Object>> void verifyItem(Group group, Item item
+			, Parser<T, M, L> parser, Map<Integer, Exception> errorMap) throws Exception {
+		try {
+			if (group.unique) {
+				AbstractVerifier.verifyRepeat(group.table, item.param, item.exceptId, group.idKey, parser);
+			} else {
+				AbstractVerifier.verifyExist(group.table, item.param, item.exceptId, parser);
+			}
+		}
+		catch (ConflictException e) {
+			errorMap.put(item.row, e);
+		}
+	}
+
+
+	/**和 verifyExist, verifyRepeat 报错信息一致
+	 */
+	private static String getDescription(Map<String, Object> param) {
+		StringBuilder sb = new StringBuilder();
+		param.forEach((key, value) -> sb.append("key:").append(key).append(" value:").append(value).append(" "));
+		return sb.toString();
+	}
+
+	/**
+	 * @return 有 null, JSON 等不能用 IN 查询的值则返回 null
+	 */
+	private static List<String> getTuple(List<String> keyList, Map<String, Object> param) {
+		List<String> tuple = new ArrayList<>(keyList.size());
+		for (String key : keyList) {
+			String s = getString(param.get(key));
+			if (s == null) {
+				return null;
+			}
+			tuple.add(s);
+		}
+		return tuple;
+	}
+
+	/**数据库返回的类型可能和请求中的不同，例如 Long 和 Integer, 1.0 和 1，所以统一转为字符串比较
+	 */
+	private static String getString(Object value) {
+		if (value == null || value instanceof Map || value instanceof Collection || value.getClass().isArray()) {
+			return null;
+		}
+		if (value instanceof Number) {
+			try {
+				BigDecimal num = new BigDecimal(value.toString());
+				return num.signum() == 0 ? "0" : num.stripTrailingZeros().toPlainString();
+			}
+			catch (NumberFormatException e) {  // NaN, Infinity
+				return value.toString();
+			}
+		}
+		return value instanceof String || value instanceof Boolean || value instanceof Character ? value.toString() : null;
+	}
+
+
+	private static class Group {
+		final boolean unique;
+		final String table;
+		final List<String> keyList;
+		final String idKey;
+		final List<Item> itemList = new ArrayList<>();
+
+		Group(boolean unique, String table, List<String> keyList, String idKey) {
+			this.unique = unique;
+			this.table = table;
+			this.keyList = keyList;
+			this.idKey = idKey;
+		}
+	}
+
+	private static class Item {
+		final int row;
+		final Map<String, Object> param;
+		final long exceptId;
+		final List<String> tuple;
+
+		Item(int row, Map<String, Object> param, long exceptId, List<String> tuple) {
+			this.row = row;
+			this.param = param;
+			this.exceptId = exceptId;
+			this.tuple = tuple;
+		}
+	}
+
+}
@@ -0,0 +1,572 @@
+/*Copyright (C) 2020 Tencent.  All rights reserved.
+
+This source code is licensed under the Apache License Version 2.0.*/
+
+
+package apijson.orm;
+
+import static apijson.orm.Operation.ALLOW_PARTIAL_UPDATE_FAIL;
+import static apijson.orm.Operation.EXIST;
+import static apijson.orm.Operation.IF;
+import static apijson.orm.Operation.INSERT;
+import static apijson.orm.Operation.MUST;
+import static apijson.orm.Operation.REFUSE;
+import static apijson.orm.Operation.REMOVE;
+import static apijson.orm.Operation.REPLACE;
+import static apijson.orm.Operation.TYPE;
+import static apijson.orm.Operation.UNIQUE;
+import static apijson.orm.Operation.UPDATE;
+import static apijson.orm.Operation.VERIFY;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import apijson.JSON;
+import apijson.PatternCache;
+import apijson.StringUtil;
+
+/**Request 表 structure 编译后的校验规则，TYPE, VERIFY, INSERT 等操作关键词及 key:"a,b" 在编译时提前拆分和解析好，
+ * 校验时不用再遍历和判断 structure 里的每个 key，也不用重复 new Logic, Pattern.compile 等
+ * 按 structure 对象本身(不是 equals)缓存，REQUEST_MAP 重新加载后是新的对象，会自动重新编译；
+ * 如果直接修改了已缓存的 structure，需要调用 {@link #clear()}
+ * @author Lemon
+ */
+public class VerifyRule {
+
+	/**
+	 * 最多缓存的规则数量，按最近最少使用(LRU)淘汰，<= 0 则不缓存
+	 */
+	public static int MAX_SIZE = 1000;
+
+	private static final Map<IdentityKey, VerifyRule> RULE_MAP = new LinkedHashMap<IdentityKey, VerifyRule>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<IdentityKey, VerifyRule> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private static final AtomicLong HIT_COUNT = new AtomicLong();
+	private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+	/**获取 structure 对应的校验规则，没有则编译并缓存
+	 * @param target structure
+	 * @return
+	 */
+	public static VerifyRule get(Map<String, Object> target) {
+		if (target == null) {
+			return null;
+		}
+
+		IdentityKey key = new IdentityKey(target);
+		if (MAX_SIZE > 0) {
+			VerifyRule rule;
+			synchronized (RULE_MAP) {
+				rule = RULE_MAP.get(key);
+			}
+			if (rule != null && rule.size == target.size()) {
+				HIT_COUNT.incrementAndGet();
+				return rule;
+			}
+		}
+
+		MISS_COUNT.incrementAndGet();
+		VerifyRule rule = compile(target);
+		// 不含操作关键词的，例如 wrapRequest 每次新建的 { Table: structure }，编译和直接遍历一样，不用缓存
+		if (MAX_SIZE > 0 && rule.hasOperation) {
+			synchronized (RULE_MAP) {
+				RULE_MAP.put(key, rule);
+			}
+		}
+		return rule;
+	}
+
+	public static long getHitCount() {
+		return HIT_COUNT.get();
+	}
+	public static long getMissCount() {
+		return MISS_COUNT.get();
+	}
+	public static int getSize() {
+		synchronized (RULE_MAP) {
+			return RULE_MAP.size();
+		}
+	}
+	public static void clear() {
+		synchronized (RULE_MAP) {
+			RULE_MAP.clear();
+		}
+	}
+
+	/**编译 structure
+	 * @param target
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static VerifyRule compile(Map<String, Object> target) {
+		VerifyRule rule = new VerifyRule(target);
+
+		for (Map.Entry<String, Object> entry : target.entrySet()) {
+			String key = entry == null ? null : entry.getKey();
+			if (key == null) {
+				continue;
+			}
+			if (AbstractVerifier.OPERATION_KEY_LIST.contains(key)) {
+				rule.hasOperation = true;
+				continue;
+			}
+			rule.childList.add(new AbstractMap.SimpleImmutableEntry<>(key, entry.getValue()));
+		}
+
+		rule.typeList = compileEntryList((Map<String, Object>) target.get(TYPE.name()));
+		Map<String, Object> verify = (Map<String, Object>) target.get(VERIFY.name());
+		if (verify != null) {
+			List<Map.Entry<String, Object>> list = compileEntryList(verify);
+			rule.verifyList = new ArrayList<>(list.size());
+			for (Map.Entry<String, Object> e : list) {
+				rule.verifyList.add(compileValue(e.getKey(), e.getValue()));
+			}
+		}
+		rule.insertList = compileEntryList((Map<String, Object>) target.get(INSERT.name()));
+		rule.updateList = compileEntryList((Map<String, Object>) target.get(UPDATE.name()));
+		rule.replaceList = compileEntryList((Map<String, Object>) target.get(REPLACE.name()));
+
+		rule.exists = split(target, EXIST.name());
+		rule.uniques = split(target, UNIQUE.name());
+		rule.removes = split(target, REMOVE.name());
+		rule.must = StringUtil.get(JSON.getString(target, MUST.name()));
+		rule.musts = StringUtil.split(rule.must);
+		rule.refuses = split(target, REFUSE.name());
+		rule.partialFails = split(target, ALLOW_PARTIAL_UPDATE_FAIL.name());
+
+		Object _if = target.get(IF.name());
+		rule.ifValue = _if;
+		rule.ifIsStr = _if instanceof String && StringUtil.isNotEmpty(_if, true);
+		if (rule.ifIsStr) {
+			String ifStr = (String) _if;
+			int ind = ifStr.indexOf(":");
+			String lang = ind < 0 || ind > 20 ? null : ifStr.substring(0, ind);
+			boolean isName = StringUtil.isName(lang);
+			rule.ifLang = isName ? lang : null;
+			rule.ifCode = "\n" + (isName ? ifStr.substring(ind + 1) : ifStr);
+			rule.ifScript = AbstractVerifier.IF_PRE_CODE + rule.ifCode;
+		}
+		else if (_if instanceof Map<?, ?>) {
+			Map<String, Object> ifObj = (Map<String, Object>) _if;
+			rule.ifList = new ArrayList<>(ifObj.size());
+			for (Map.Entry<String, Object> entry : ifObj.entrySet()) {
+				rule.ifList.add(compileIf(entry));
+			}
+		}
+
+		return rule;
+	}
+
+	private static String[] split(Map<String, Object> target, String key) {
+		return StringUtil.split(StringUtil.get(JSON.getString(target, key)));
+	}
+
+	/**去掉 null 和 操作关键词
+	 */
+	private static List<Map.Entry<String, Object>> compileEntryList(Map<String, Object> map) {
+		if (map == null) {
+			return null;
+		}
+
+		List<Map.Entry<String, Object>> list = new ArrayList<>(map.size());
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			String k = e == null ? null : e.getKey();
+			if (k == null || AbstractVerifier.OPERATION_KEY_LIST.contains(k)) {
+				continue;
+			}
+			list.add(new AbstractMap.SimpleImmutableEntry<>(k, e.getValue()));
+		}
+		return list;
+	}
+
+	private static IfRule compileIf(Map.Entry<String, Object> entry) {
+		String k = entry == null ? null : entry.getKey();
+		Object v = k == null ? null : entry.getValue();
+
+		IfRule rule = new IfRule(k, v);
+		if (v instanceof String) {
+			int ind = k.indexOf(":");
+			String lang = ind < 0 || ind > 20 ? null : k.substring(0, ind);
+			boolean isName = StringUtil.isName(lang);
+			String cond = isName ? k.substring(ind + 1) : k;
+
+			boolean isElse = StringUtil.isEmpty(cond, false); // 其它直接报错，不允许传 StringUtil.isEmpty(k, true) || "ELSE".equals(k);
+			rule.lang = isName ? lang : null;
+			rule.code = "\n\n" + (isElse ? v : "if (" + cond + ") {\n  " + v + "\n}");
+			rule.script = AbstractVerifier.IF_PRE_CODE + rule.code;
+		}
+		return rule;
+	}
+
+	/**编译 VERIFY:{ key:value } 中的单个键值对
+	 * @param tk
+	 * @param tv
+	 * @return
+	 */
+	public static ValueRule compileValue(String tk, Object tv) {
+		ValueRule rule = new ValueRule(tk, tv);
+		if (tv == null) {
+			rule.type = ValueRule.TYPE_NULL;
+			return rule;
+		}
+
+		if (tk.endsWith("$")) {  // 模糊搜索
+			rule.type = ValueRule.TYPE_CONDITION;
+			rule.funChar = "$";
+			rule.logic = new Logic(tk.substring(0, tk.length() - 1));
+			rule.condition = ConditionEvaluator.compile(rule.funChar, rule.logic, tv);
+		}
+		else if (tk.endsWith("~")) {  // 正则匹配
+			rule.type = ValueRule.TYPE_REGEX;
+			rule.logic = new Logic(tk.substring(0, tk.length() - 1));
+
+			List<Object> array = AbstractSQLConfig.newJSONArray(tv);
+			rule.values = array;
+			rule.patterns = new Pattern[array.size()];
+			for (int i = 0; i < array.size(); i++) {
+				Object r = array.get(i);
+				if (r instanceof String == false) {
+					continue;
+				}
+				Pattern reg = AbstractVerifier.COMPILE_MAP.get(r);
+				try {
+					rule.patterns[i] = reg != null ? reg : PatternCache.compile((String) r, true);
+				}
+				catch (Exception e) {  // 校验时再抛异常，保持原来 rv == null 时不报错
+				}
+			}
+		}
+		else if (tk.endsWith("{}")) { //rv符合tv条件或在tv内
+			if (tv instanceof String) {
+				rule.type = ValueRule.TYPE_CONDITION;
+				rule.funChar = "{}";
+				rule.logic = new Logic(tk.substring(0, tk.length() - 2));
+				rule.condition = ConditionEvaluator.compile(rule.funChar, rule.logic, tv);
+			}
+			else if (tv instanceof List<?>) {
+				rule.type = ValueRule.TYPE_IN;
+				rule.logic = new Logic(tk.substring(0, tk.length() - 2));
+				rule.values = (List<?>) tv;
+			}
+			else {
+				rule.type = ValueRule.TYPE_UNSUPPORTED;
+			}
+		}
+		else if (tk.endsWith("{L}")) { //字符串长度
+			if (tv instanceof String) {
+				rule.type = ValueRule.TYPE_LENGTH;
+				rule.logic = new Logic(tk.substring(0, tk.length() - 3));
+
+				String[] tvs = tv.toString().split(",");
+				rule.lengthRules = tvs;
+				rule.lengthOps = new String[tvs.length];
+				rule.lengthNums = new int[tvs.length];
+				for (int i = 0; i < tvs.length; i++) {
+					String[] ln = AbstractVerifier.parseLengthRule(tvs[i]);
+					if (ln == null) {
+						continue;
+					}
+					try {
+						rule.lengthNums[i] = Integer.parseInt(ln[1]);
+						rule.lengthOps[i] = ln[0];
+					}
+					catch (Exception e) {  // 校验时再抛异常
+					}
+				}
+			}
+			else {
+				rule.type = ValueRule.TYPE_UNSUPPORTED;
+			}
+		}
+		else if (tk.endsWith("<>")) { //rv包含tv内的值
+			rule.type = ValueRule.TYPE_CONTAINS;
+			rule.logic = new Logic(tk.substring(0, tk.length() - 2));
+			rule.values = AbstractSQLConfig.newJSONArray(tv);
+		}
+		else {
+			rule.type = ValueRule.TYPE_ILLEGAL;
+		}
+
+		return rule;
+	}
+
+
+	private final Map<String, Object> target;
+	private final int size;
+	private boolean hasOperation;
+
+	private final List<Map.Entry<String, Object>> childList = new ArrayList<>();
+	private List<Map.Entry<String, Object>> typeList;
+	private List<ValueRule> verifyList;
+	private List<Map.Entry<String, Object>> insertList;
+	private List<Map.Entry<String, Object>> updateList;
+	private List<Map.Entry<String, Object>> replaceList;
+
+	private String[] exists;
+	private String[] uniques;
+	private String[] removes;
+	private String must;
+	private String[] musts;
+	private String[] refuses;
+	private String[] partialFails;
+
+	private Object ifValue;
+	private boolean ifIsStr;
+	private String ifLang;
+	private String ifCode;
+	private String ifScript;
+	private List<IfRule> ifList;
+
+	private VerifyRule(Map<String, Object> target) {
+		this.target = target;
+		this.size = target.size();
+	}
+
+	public Map<String, Object> getTarget() {
+		return target;
+	}
+	/**
+	 * @return 是否包含 TYPE, VERIFY 等操作关键词
+	 */
+	public boolean hasOperation() {
+		return hasOperation;
+	}
+	/**
+	 * @return 除操作关键词外的键值对，按 structure 中的顺序
+	 */
+	public List<Map.Entry<String, Object>> getChildList() {
+		return Collections.unmodifiableList(childList);
+	}
+	public List<Map.Entry<String, Object>> getTypeList() {
+		return typeList;
+	}
+	public List<ValueRule> getVerifyList() {
+		return verifyList;
+	}
+	public List<Map.Entry<String, Object>> getInsertList() {
+		return insertList;
+	}
+	public List<Map.Entry<String, Object>> getUpdateList() {
+		return updateList;
+	}
+	public List<Map.Entry<String, Object>> getReplaceList() {
+		return replaceList;
+	}
+	public String[] getExists() {
+		return exists;
+	}
+	public String[] getUniques() {
+		return uniques;
+	}
+	public String[] getRemoves() {
+		return removes;
+	}
+	public String getMust() {
+		return must;
+	}
+	public String[] getMusts() {
+		return musts;
+	}
+	public String[] getRefuses() {
+		return refuses;
+	}
+	public String[] getPartialFails() {
+		return partialFails;
+	}
+	/**
+	 * @return IF 原始值
+	 */
+	public Object getIfValue() {
+		return ifValue;
+	}
+	public boolean isIfString() {
+		return ifIsStr;
+	}
+	/**
+	 * @return IF:"lang:code" 中的 lang，没有则为 null
+	 */
+	public String getIfLang() {
+		return ifLang;
+	}
+	/**
+	 * @return IF:"lang:code" 中拼接在 curObj 定义后的代码
+	 */
+	public String getIfCode() {
+		return ifCode;
+	}
+	/**
+	 * @return IF:"lang:code" 的完整脚本，包括 curObj 定义，内容固定，用于编译缓存
+	 */
+	public String getIfScript() {
+		return ifScript;
+	}
+	/**
+	 * @return IF:{ "cond": "code", "key": {} } 中的每一项，不是 {} 则为 null
+	 */
+	public List<IfRule> getIfList() {
+		return ifList;
+	}
+	/**
+	 * @return IF 值类型错误，只允许 String, JSONRequest
+	 */
+	public boolean isIfInvalid() {
+		return ifValue != null && ifIsStr == false && ifList == null;
+	}
+
+
+	/**IF:{ key: value } 中的一项
+	 */
+	public static class IfRule {
+		private final String key;
+		private final Object value;
+		private String lang;
+		private String code;
+		private String script;
+
+		IfRule(String key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Object getValue() {
+			return value;
+		}
+		/**
+		 * @return value 为 String 时 key 中的脚本语言
+		 */
+		public String getLang() {
+			return lang;
+		}
+		/**
+		 * @return value 为 String 时拼接在 curObj 定义后的代码，否则为 null
+		 */
+		public String getCode() {
+			return code;
+		}
+		/**
+		 * @return value 为 String 时包括 curObj 定义的完整脚本，否则为 null
+		 */
+		public String getScript() {
+			return script;
+		}
+	}
+
+
+	/**VERIFY:{ key:value } 中的一项
+	 */
+	public static class ValueRule {
+		public static final int TYPE_NULL = 0;
+		public static final int TYPE_CONDITION = 1;
+		public static final int TYPE_REGEX = 2;
+		public static final int TYPE_IN = 3;
+		public static final int TYPE_LENGTH = 4;
+		public static final int TYPE_CONTAINS = 5;
+		public static final int TYPE_UNSUPPORTED = 6;
+		public static final int TYPE_ILLEGAL = 7;
+
+		private final String key;
+		private final Object value;
+		private int type;
+		private String funChar;
+		private Logic logic;
+		private ConditionEvaluator condition;
+		private List<?> values;
+		private Pattern[] patterns;
+		private String[] lengthRules;
+		private String[] lengthOps;
+		private int[] lengthNums;
+
+		ValueRule(String key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Object getValue() {
+			return value;
+		}
+		public int getType() {
+			return type;
+		}
+		/**
+		 * @return TYPE_CONDITION 的 $ 或 {}
+		 */
+		public String getFunChar() {
+			return funChar;
+		}
+		public Logic getLogic() {
+			return logic;
+		}
+		/**
+		 * @return TYPE_CONDITION 中能在内存中计算的条件，不能则为 null
+		 */
+		public ConditionEvaluator getCondition() {
+			return condition;
+		}
+		/**
+		 * @return TYPE_REGEX, TYPE_IN, TYPE_CONTAINS 的值列表
+		 */
+		public List<?> getValues() {
+			return values;
+		}
+		/**
+		 * @return TYPE_REGEX 中和 values 一一对应的正则，不是 String 或 编译失败的为 null
+		 */
+		public Pattern[] getPatterns() {
+			return patterns;
+		}
+		/**
+		 * @return TYPE_LENGTH 的 >=1, <=10 等原始规则
+		 */
+		public String[] getLengthRules() {
+			return lengthRules;
+		}
+		/**
+		 * @return TYPE_LENGTH 中和 lengthRules 一一对应的比较符，规则不合法的为 null
+		 */
+		public String[] getLengthOps() {
+			return lengthOps;
+		}
+		public int[] getLengthNums() {
+			return lengthNums;
+		}
+	}
+
+
+	private static final class IdentityKey {
+		private final Object target;
+		private final int hash;
+
+		IdentityKey(Object target) {
+			this.target = target;
+			this.hash = System.identityHashCode(target);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).target == target;
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ package apijson.orm.model;
 import apijson.MethodAccess;
 
 /**远程函数
+ * deterministic 为 1 表示结果只由参数值决定，会按参数值缓存结果，见 {@link apijson.orm.AbstractFunctionParser#KEY_DETERMINISTIC}
  * @author Lemon
  */
 @MethodAccess(POST = {}, PUT = {}, DELETE = {})
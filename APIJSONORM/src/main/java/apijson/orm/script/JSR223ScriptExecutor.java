@@ -16,23 +16,71 @@ import apijson.orm.AbstractFunctionParser;
 
 /**
  * JSR223 script engine的统一实现抽象类
+ * isLockScript 的脚本在同一个 scriptEngine 上加锁串行执行，其它脚本从引擎池借出引擎并发执行，每个引擎有自己编译的脚本副本
  */
 public abstract class JSR223ScriptExecutor<T, M extends Map<String, Object>, L extends List<Object>> implements ScriptExecutor<T, M, L> {
+	/**
+	 * 引擎池默认的最大引擎数量，<= 0 则不使用引擎池，全部在 scriptEngine 上执行
+	 */
+	public static int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+	/**
+	 * 引擎池满时默认最多等待的时间(ms)，<= 0 则一直等待
+	 */
+	public static long DEFAULT_POOL_MAX_WAIT = 10000;
+
 	protected ScriptEngine scriptEngine;
+	protected ScriptEnginePool enginePool;
 
 	private final Map<String, CompiledScript> compiledScriptMap = new ConcurrentHashMap<>();
-	
+	// <name, convertScript 后的脚本>，引擎池中每个引擎按脚本内容各自编译并缓存
+	private final Map<String, String> scriptMap = new ConcurrentHashMap<>();
+	private final Object lock = new Object();
+
 	@Override
 	public ScriptExecutor<T, M, L> init() {
-		ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
-		scriptEngine = scriptEngineManager.getEngineByName(scriptEngineName());
+		scriptEngine = createScriptEngine();
+
+		int poolSize = getPoolSize();
+		enginePool = poolSize > 0 ? new ScriptEnginePool(scriptEngineName(), poolSize, getPoolMaxWait(), lang -> createScriptEngine()) : null;
 		return this;
 	}
 
+	/**创建引擎，scriptEngine 和引擎池中的引擎都由它创建，
+	 * 子类需要在引擎上预先加载公共脚本、设置全局变量等则重写这个方法，不要只改 init 中的 scriptEngine
+	 * @return
+	 */
+	protected ScriptEngine createScriptEngine() {
+		return new ScriptEngineManager().getEngineByName(scriptEngineName());
+	}
+
+	/**
+	 * @return 引擎池的最大引擎数量，<= 0 则不使用引擎池
+	 */
+	protected int getPoolSize() {
+		return DEFAULT_POOL_SIZE;
+	}
+	/**
+	 * @return 引擎池满时最多等待的时间(ms)
+	 */
+	protected long getPoolMaxWait() {
+		return DEFAULT_POOL_MAX_WAIT;
+	}
+
+	/**
+	 * @return 引擎池监控指标，不使用引擎池则为 null
+	 */
+	public Map<String, Object> getPoolMetrics() {
+		return enginePool == null ? null : enginePool.getMetrics();
+	}
+
 	protected abstract String scriptEngineName();
 	
 	protected abstract Object extendParameter(AbstractFunctionParser<T, M, L> parser, Map<String, Object> currentObject, String methodName, Object[] args);
 
+	/**
+	 * @param methodName
+	 * @return 是否需要加锁串行执行，例如脚本依赖或修改了引擎内的全局状态
+	 */
 	protected abstract boolean isLockScript(String methodName);
 
 	protected String convertScript(String script) {
@@ -42,8 +90,10 @@ public abstract class JSR223ScriptExecutor<T, M extends Map<String, Object>, L e
 	@Override
 	public void load(String name, String script) {
 		try {
-			CompiledScript compiledScript = ((Compilable) scriptEngine).compile(convertScript(script));
+			String converted = convertScript(script);
+			CompiledScript compiledScript = ((Compilable) scriptEngine).compile(converted);
 			compiledScriptMap.put(name, compiledScript);
+			scriptMap.put(name, converted);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -69,11 +119,33 @@ public abstract class JSR223ScriptExecutor<T, M extends Map<String, Object>, L e
 		metaMap.put("tag", parser == null ? null : parser.getTag());
 		metaMap.put("args", args);
 		bindings.put("_meta", metaMap);
-		return compiledScript.eval(bindings);
+
+		if (isLockScript(methodName)) {
+			synchronized (lock) {
+				return compiledScript.eval(bindings);
+			}
+		}
+
+		String script = enginePool == null ? null : scriptMap.get(methodName);
+		if (script == null) {
+			return compiledScript.eval(bindings);
+		}
+
+		ScriptEnginePool.Slot slot = enginePool.borrow();
+		try {
+			return slot.eval(script, bindings);
+		}
+		finally {
+			enginePool.release(slot);
+		}
 	}
 
 	@Override
 	public void cleanCache() {
 		compiledScriptMap.clear();
+		scriptMap.clear();
+		if (enginePool != null) {
+			enginePool.clear();
+		}
 	}
 }
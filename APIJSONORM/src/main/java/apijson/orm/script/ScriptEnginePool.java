@@ -0,0 +1,318 @@
+package apijson.orm.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import apijson.NotNull;
+import apijson.StringUtil;
+import apijson.orm.AbstractVerifier;
+
+/**
+ * JSR223 脚本引擎池，每个引擎同一时间只被一个线程使用，并缓存自己编译过的脚本，
+ * 每次执行都用新的 Bindings 传参，不会互相覆盖变量。
+ * 可以通过 {@link #get(String)} 按语言共享不限数量的池，也可以 new 一个限制引擎数量的池，满了则等待其它线程归还
+ */
+public class ScriptEnginePool {
+
+	/**
+	 * 不限数量的池最多保留的空闲引擎数量，并发更高时临时创建，归还时超出的直接丢弃
+	 */
+	public static int MAX_IDLE = 16;
+	/**
+	 * 每个引擎最多缓存的编译后脚本数量，按最近最少使用(LRU)淘汰
+	 */
+	public static int MAX_SCRIPT_SIZE = 500;
+
+	/**创建引擎，例如需要在引擎上预先加载公共脚本、设置全局变量等
+	 */
+	public interface EngineCreator {
+		ScriptEngine createEngine(@NotNull String lang);
+	}
+
+	/**
+	 * 默认通过 {@link AbstractVerifier#SCRIPT_ENGINE_MANAGER} 创建引擎，替换它或者这个 ENGINE_CREATOR 即可自定义 IF 等脚本用的引擎
+	 */
+	public static EngineCreator ENGINE_CREATOR = lang -> {
+		ScriptEngineManager manager = AbstractVerifier.SCRIPT_ENGINE_MANAGER;
+		if (manager == null) {
+			throw new NullPointerException("AbstractVerifier.SCRIPT_ENGINE_MANAGER == null!");
+		}
+		synchronized (manager) {  // ScriptEngineManager 不保证线程安全
+			return manager.getEngineByName(lang);
+		}
+	};
+
+	private static final Map<String, ScriptEnginePool> POOL_MAP = new ConcurrentHashMap<>();
+
+	/**
+	 * @param lang 脚本语言，为空则为 js
+	 * @return
+	 */
+	public static ScriptEnginePool get(String lang) {
+		String name = StringUtil.isEmpty(lang, true) ? "js" : lang;
+		return POOL_MAP.computeIfAbsent(name, k -> new ScriptEnginePool(k, 0, 0));
+	}
+
+	/**清空全部池及编译后的脚本，正在使用的引擎归还时丢弃
+	 */
+	public static void clearAll() {
+		for (ScriptEnginePool pool : POOL_MAP.values()) {
+			pool.clear();
+		}
+	}
+
+
+	private final String lang;
+	private final EngineCreator engineCreator;
+	private final int maxTotal;
+	private final long maxWait;
+	private final Semaphore semaphore;
+	private final ConcurrentLinkedQueue<Slot> idleQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private volatile int generation;
+
+	private final AtomicLong createCount = new AtomicLong();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong compileCount = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicInteger peakCount = new AtomicInteger();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong waitTime = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	/**
+	 * @param lang 脚本语言
+	 * @param maxTotal 最多同时借出的引擎数量，<= 0 则不限制
+	 * @param maxWait 借出的引擎数量达到 maxTotal 时最多等待的时间(ms)，<= 0 则一直等待
+	 */
+	public ScriptEnginePool(@NotNull String lang, int maxTotal, long maxWait) {
+		this(lang, maxTotal, maxWait, null);
+	}
+	/**
+	 * @param lang 脚本语言
+	 * @param maxTotal 最多同时借出的引擎数量，<= 0 则不限制
+	 * @param maxWait 借出的引擎数量达到 maxTotal 时最多等待的时间(ms)，<= 0 则一直等待
+	 * @param engineCreator 创建引擎，为 null 则用 {@link #ENGINE_CREATOR}
+	 */
+	public ScriptEnginePool(@NotNull String lang, int maxTotal, long maxWait, EngineCreator engineCreator) {
+		this.lang = lang;
+		this.engineCreator = engineCreator;
+		this.maxTotal = maxTotal;
+		this.maxWait = maxWait;
+		this.semaphore = maxTotal > 0 ? new Semaphore(maxTotal, true) : null;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**执行脚本
+	 * @param script 完整的脚本，作为编译缓存的 key
+	 * @param variables 本次执行的变量，放到新的 Bindings 里
+	 * @return
+	 * @throws ScriptException
+	 */
+	public Object eval(String script, Map<String, Object> variables) throws ScriptException {
+		Slot slot = borrow();
+		try {
+			return slot.eval(script, variables);
+		}
+		finally {
+			release(slot);
+		}
+	}
+
+	/**借出引擎，用完必须在 finally 中 {@link #release(Slot)}
+	 * @return
+	 */
+	public Slot borrow() {
+		borrowCount.incrementAndGet();
+		acquire();
+
+		int active = activeCount.incrementAndGet();
+		peakCount.accumulateAndGet(active, Math::max);
+
+		Slot slot = idleQueue.poll();
+		if (slot != null) {
+			idleCount.decrementAndGet();
+			if (slot.generation == generation) {
+				return slot;
+			}
+		}
+
+		ScriptEngine engine;
+		try {
+			engine = (engineCreator != null ? engineCreator : ENGINE_CREATOR).createEngine(lang);
+		}
+		catch (RuntimeException e) {
+			activeCount.decrementAndGet();
+			if (semaphore != null) {
+				semaphore.release();
+			}
+			throw e;
+		}
+		if (engine == null) {
+			activeCount.decrementAndGet();
+			if (semaphore != null) {
+				semaphore.release();
+			}
+			throw new NullPointerException("找不到可执行 " + lang + " 脚本的引擎！engine == null!");
+		}
+
+		createCount.incrementAndGet();
+		return new Slot(engine, generation);
+	}
+
+	private void acquire() {
+		if (semaphore == null || semaphore.tryAcquire()) {
+			return;
+		}
+
+		waitCount.incrementAndGet();
+		long startTime = System.currentTimeMillis();
+		try {
+			if (maxWait <= 0) {
+				semaphore.acquire();
+			}
+			else if (semaphore.tryAcquire(maxWait, TimeUnit.MILLISECONDS) == false) {
+				timeoutCount.incrementAndGet();
+				throw new IllegalStateException(lang + " 脚本引擎池的 " + maxTotal + " 个引擎都在使用中，等待 " + maxWait + " ms 后仍然没有空闲的！");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(lang + " 脚本引擎池等待空闲引擎时被中断！", e);
+		}
+		finally {
+			waitTime.addAndGet(System.currentTimeMillis() - startTime);
+		}
+	}
+
+	/**归还引擎
+	 * @param slot
+	 */
+	public void release(Slot slot) {
+		if (slot == null) {
+			return;
+		}
+
+		activeCount.decrementAndGet();
+		if (semaphore != null) {
+			semaphore.release();
+		}
+
+		if (slot.generation != generation) {
+			return;
+		}
+		if (idleCount.incrementAndGet() > (maxTotal > 0 ? maxTotal : MAX_IDLE)) {
+			idleCount.decrementAndGet();
+			return;
+		}
+		idleQueue.offer(slot);
+	}
+
+	public void clear() {
+		generation ++;
+		while (idleQueue.poll() != null) {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**监控指标，wait, waitTime, timeout 及 peak 接近 maxTotal 说明池已饱和
+	 * @return { lang, maxTotal, create, borrow, active, peak, idle, wait, waitTime, timeout, compile, hit }
+	 */
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("lang", lang);
+		metrics.put("maxTotal", maxTotal);
+		metrics.put("create", createCount.get());
+		metrics.put("borrow", borrowCount.get());
+		metrics.put("active", activeCount.get());
+		metrics.put("peak", peakCount.get());
+		metrics.put("idle", idleCount.get());
+		metrics.put("wait", waitCount.get());
+		metrics.put("waitTime", waitTime.get());
+		metrics.put("timeout", timeoutCount.get());
+		metrics.put("compile", compileCount.get());
+		metrics.put("hit", hitCount.get());
+		return metrics;
+	}
+
+
+	/**池中的一个引擎及其编译过的脚本，只在借出的线程内使用
+	 */
+	public class Slot {
+		private final ScriptEngine engine;
+		private final int generation;
+		private final Map<String, CompiledScript> scriptMap = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+				return size() > MAX_SCRIPT_SIZE;
+			}
+		};
+
+		private Slot(ScriptEngine engine, int generation) {
+			this.engine = engine;
+			this.generation = generation;
+		}
+
+		public ScriptEngine getEngine() {
+			return engine;
+		}
+
+		/**获取编译后的脚本，引擎不支持编译则返回 null
+		 * @param script
+		 * @return
+		 * @throws ScriptException
+		 */
+		public CompiledScript compile(String script) throws ScriptException {
+			if (engine instanceof Compilable == false) {
+				return null;
+			}
+
+			CompiledScript compiledScript = MAX_SCRIPT_SIZE > 0 ? scriptMap.get(script) : null;
+			if (compiledScript != null) {
+				hitCount.incrementAndGet();
+				return compiledScript;
+			}
+
+			compileCount.incrementAndGet();
+			compiledScript = ((Compilable) engine).compile(script);
+			if (MAX_SCRIPT_SIZE > 0) {
+				scriptMap.put(script, compiledScript);
+			}
+			return compiledScript;
+		}
+
+		public Object eval(String script, Map<String, Object> variables) throws ScriptException {
+			Bindings bindings = new SimpleBindings();
+			if (variables != null) {
+				bindings.putAll(variables);
+			}
+
+			CompiledScript compiledScript = compile(script);
+			return compiledScript == null ? engine.eval(script, bindings) : compiledScript.eval(bindings);
+		}
+	}
+
+}